@@ -0,0 +1,42 @@
+package io.zipcoder.persistenceapp.benchmarks;
+
+import io.zipcoder.persistenceapp.models.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Read paths over the generated org chart
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HierarchyBenchmarks {
+    
+    @Benchmark
+    public List<Employee> getAllReportsOfTop(OrgChartState chart) {
+        return chart.employeeService.getAllReports(chart.topId);
+    }
+    
+    @Benchmark
+    public List<Employee> getAllReportsOfMiddleManager(OrgChartState chart) {
+        return chart.employeeService.getAllReports(chart.middleManagerId);
+    }
+    
+    @Benchmark
+    public List<Employee> getReportingHierarchyOfDeepestEmployee(OrgChartState chart) {
+        return chart.employeeService.getReportingHierarchy(chart.deepestId);
+    }
+    
+    @Benchmark
+    public List<Employee> getEmployeesByDepartment(OrgChartState chart) {
+        return chart.employeeService.getEmployeesByDepartment(chart.departmentNumber);
+    }
+}
@@ -0,0 +1,121 @@
+package io.zipcoder.persistenceapp.benchmarks;
+
+import io.zipcoder.persistenceapp.models.BatchOperation;
+import io.zipcoder.persistenceapp.models.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Destructive operations: each measured call gets freshly imported data, so they run as single shots
+// (one call per iteration) with the setup outside the measurement
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class MutationBenchmarks {
+    
+    @State(Scope.Thread)
+    public static class Merge {
+        
+        @Param({"1000"})
+        public int departmentSize;
+        
+        String absorbing;
+        String absorbed;
+        
+        @Setup(Level.Iteration)
+        public void importDepartments(OrgChartState chart) {
+            absorbing = OrgChartState.uniqueName("absorbing");
+            absorbed = OrgChartState.uniqueName("absorbed");
+            for (String name : new String[] {absorbing, absorbed}) {
+                long manager = chart.importTeam(name, 10, departmentSize / 10);
+                long deptNum = chart.departmentService.getDepartmentByName(name).orElseThrow(IllegalStateException::new)
+                    .getDepartmentNumber();
+                chart.departmentService.setDepartmentManager(deptNum, manager);
+            }
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Team {
+        
+        @Param({"10"})
+        public int middleManagers;
+        
+        @Param({"100"})
+        public int reportsPerMiddleManager;
+        
+        long managerId;
+        
+        @Setup(Level.Iteration)
+        public void importTeam(OrgChartState chart) {
+            managerId = chart.importTeam(OrgChartState.uniqueName("team"), middleManagers, reportsPerMiddleManager);
+        }
+    }
+    
+    // A reorganisation: every report of a freshly imported team moves to the next middle manager along
+    @State(Scope.Thread)
+    public static class Reorganisation {
+        
+        @Param({"10"})
+        public int middleManagers;
+        
+        @Param({"20"})
+        public int reportsPerMiddleManager;
+        
+        List<BatchOperation> moves;
+        
+        @Setup(Level.Iteration)
+        public void plan(OrgChartState chart) {
+            long managerId = chart.importTeam(OrgChartState.uniqueName("reorg"), middleManagers, reportsPerMiddleManager);
+            List<Employee> middle = chart.employeeService.getDirectReports(managerId);
+            moves = new ArrayList<>();
+            for (int m = 0; m < middle.size(); m++) {
+                Long next = middle.get((m + 1) % middle.size()).getEmployeeNumber();
+                for (Employee report : chart.employeeService.getDirectReports(middle.get(m).getEmployeeNumber())) {
+                    BatchOperation move = new BatchOperation(BatchOperation.Type.SET_MANAGER, report.getEmployeeNumber());
+                    move.setManagerEmployeeNumber(next);
+                    moves.add(move);
+                }
+            }
+        }
+    }
+    
+    @Benchmark
+    public Object mergeDepartments(OrgChartState chart, Merge merge) {
+        return chart.departmentService.mergeDepartments(merge.absorbing, merge.absorbed);
+    }
+    
+    @Benchmark
+    public void removeDirectReportsOnly(OrgChartState chart, Team team) {
+        chart.employeeService.removeDirectReportsOnly(team.managerId);
+    }
+    
+    // One transaction per move, as with PUT /API/employees/{id}/manager/{managerId} per employee
+    @Benchmark
+    public void reorganiseOneCallEach(OrgChartState chart, Reorganisation reorganisation) {
+        for (BatchOperation move : reorganisation.moves) {
+            chart.employeeService.setManager(move.getEmployeeNumber(), move.getManagerEmployeeNumber());
+        }
+    }
+    
+    // All moves in one transaction, as with POST /API/batch
+    @Benchmark
+    public Object reorganiseInOneBatch(OrgChartState chart, Reorganisation reorganisation) {
+        return chart.batchService.apply(reorganisation.moves);
+    }
+}
@@ -0,0 +1,139 @@
+package io.zipcoder.persistenceapp.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zipcoder.persistenceapp.PersistenceStarterApplication;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeImportRecord;
+import io.zipcoder.persistenceapp.services.BatchService;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeImportService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The application on the in-memory H2 profile, loaded with a generated org chart: a balanced tree of
+// `employees` people, `depth` levels below the top, split into `departments` by top-level branch.
+@State(Scope.Benchmark)
+public class OrgChartState {
+    
+    private static final AtomicInteger NAMES = new AtomicInteger();
+    
+    @Param({"10000"})
+    public int employees;
+    
+    @Param({"6"})
+    public int depth;
+    
+    @Param({"10"})
+    public int departments;
+    
+    // true: traversals answered by the in-memory org graph; false: by the hierarchy index in the database
+    @Param({"true", "false"})
+    public boolean orgGraph;
+    
+    ConfigurableApplicationContext context;
+    EmployeeService employeeService;
+    DepartmentService departmentService;
+    EmployeeImportService importService;
+    BatchService batchService;
+    PlatformTransactionManager transactionManager;
+    ObjectMapper objectMapper;
+    
+    long topId;
+    long middleManagerId;
+    long deepestId;
+    long departmentNumber;
+    
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(PersistenceStarterApplication.class)
+            .web(WebApplicationType.NONE)
+            .profiles("h2")
+            .run("--app.org-graph.enabled=" + orgGraph, "--logging.level.root=WARN");
+        employeeService = context.getBean(EmployeeService.class);
+        departmentService = context.getBean(DepartmentService.class);
+        importService = context.getBean(EmployeeImportService.class);
+        batchService = context.getBean(BatchService.class);
+        transactionManager = context.getBean(PlatformTransactionManager.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        
+        String chart = "chart";
+        importService.importEmployees(orgChart(chart, employees, depth, departments).iterator());
+        topId = topOf(chart + "-0");
+        List<Employee> everyone = employeeService.getAllReports(topId);
+        deepestId = everyone.get(everyone.size() - 1).getEmployeeNumber();
+        middleManagerId = employeeService.getDirectReports(topId).get(0).getEmployeeNumber();
+        departmentNumber = departmentService.getDepartmentByName(chart + "-" + Math.min(1, departments - 1))
+            .orElseThrow(IllegalStateException::new).getDepartmentNumber();
+    }
+    
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+    
+    // Import a two-level team (a manager, middle managers, their reports) into a new department; returns the manager
+    long importTeam(String department, int middleManagers, int reportsPerMiddleManager) {
+        List<EmployeeImportRecord> records = new ArrayList<>();
+        records.add(record("top", null, department));
+        for (int m = 0; m < middleManagers; m++) {
+            records.add(record("m" + m, "top", department));
+            for (int r = 0; r < reportsPerMiddleManager; r++) {
+                records.add(record("m" + m + "-" + r, "m" + m, department));
+            }
+        }
+        importService.importEmployees(records.iterator());
+        return topOf(department);
+    }
+    
+    static String uniqueName(String prefix) {
+        return prefix + "-" + NAMES.incrementAndGet();
+    }
+    
+    // The member of a department without a manager
+    long topOf(String department) {
+        long deptNum = departmentService.getDepartmentByName(department).orElseThrow(IllegalStateException::new).getDepartmentNumber();
+        return employeeService.getEmployeesByDepartment(deptNum).stream()
+            .filter(e -> e.getManager() == null)
+            .findFirst().orElseThrow(IllegalStateException::new)
+            .getEmployeeNumber();
+    }
+    
+    // Balanced tree in input order: employee i reports to (i - 1) / fanout, with the fanout picked so the tree
+    // is `depth` levels deep; departments follow the top-level branch an employee sits in
+    static List<EmployeeImportRecord> orgChart(String prefix, int employees, int depth, int departments) {
+        int fanout = Math.max(2, (int) Math.ceil(Math.pow(employees, 1.0 / Math.max(1, depth))));
+        int[] branch = new int[employees];
+        List<EmployeeImportRecord> records = new ArrayList<>(employees);
+        for (int i = 0; i < employees; i++) {
+            int parent = (i - 1) / fanout;
+            branch[i] = i == 0 || parent == 0 ? i : branch[parent];
+            records.add(record(prefix + i, i == 0 ? null : prefix + parent, prefix + "-" + (branch[i] % departments)));
+        }
+        return records;
+    }
+    
+    private static EmployeeImportRecord record(String sourceId, String managerSourceId, String department) {
+        EmployeeImportRecord record = new EmployeeImportRecord();
+        record.setSourceId(sourceId);
+        record.setFirstName("First-" + sourceId);
+        record.setLastName("Last-" + sourceId);
+        record.setTitle(managerSourceId == null ? "Director" : "Engineer");
+        record.setEmail(sourceId + "@example.com");
+        record.setManagerSourceId(managerSourceId);
+        record.setDepartmentName(department);
+        return record;
+    }
+}
@@ -0,0 +1,133 @@
+package io.zipcoder.persistenceapp.benchmarks;
+
+import io.zipcoder.persistenceapp.PersistenceStarterApplication;
+import io.zipcoder.persistenceapp.models.DepartmentDto;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeImportService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// API reads over HTTP with many concurrent clients (one per JMH thread, more than Tomcat has workers), per
+// request execution mode. Throughput plus the latency distribution (p99 in the sample-time results):
+//   mvn -Pjmh verify -Djmh.args="RequestLoadBenchmarks -p tomcatThreads=20"
+// mode=virtual needs the forked JVM on Java 21+: add -p mode=platform,virtual -jvm /path/to/jdk-21/bin/java
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(200)
+@Fork(1)
+public class RequestLoadBenchmarks {
+    
+    @State(Scope.Benchmark)
+    public static class Server {
+        
+        @Param({"platform"})
+        public String mode;
+        
+        @Param({"200"})
+        public int tomcatThreads;
+        
+        // Requests allowed to use the database at once (DatabaseConcurrencyFilter)
+        @Param({"10"})
+        public int maxConcurrency;
+        
+        @Param({"10000"})
+        public int employees;
+        
+        ConfigurableApplicationContext context;
+        HttpClient client;
+        String baseUrl;
+        long[] departmentNumbers;
+        long[] employeeNumbers;
+        
+        @Setup(Level.Trial)
+        public void start() {
+            context = new SpringApplicationBuilder(PersistenceStarterApplication.class)
+                .profiles("h2")
+                .run("--server.port=0",
+                    "--app.execution.mode=" + mode,
+                    "--server.tomcat.threads.max=" + tomcatThreads,
+                    "--app.db.max-concurrency=" + maxConcurrency,
+                    "--spring.datasource.hikari.maximum-pool-size=" + maxConcurrency,
+                    // Queue rather than reject, so every measured request is a real response
+                    "--app.db.acquire-timeout=60s",
+                    "--logging.level.root=WARN");
+            String chart = "load";
+            int departments = 10;
+            context.getBean(EmployeeImportService.class)
+                .importEmployees(OrgChartState.orgChart(chart, employees, 6, departments).iterator());
+            // Narrow trees have fewer top-level branches than departments: only some names are used
+            DepartmentService departmentService = context.getBean(DepartmentService.class);
+            departmentNumbers = IntStream.range(0, departments)
+                .mapToObj(i -> departmentService.getDepartmentByName(chart + "-" + i))
+                .flatMap(Optional::stream)
+                .mapToLong(DepartmentDto::getDepartmentNumber)
+                .toArray();
+            employeeNumbers = context.getBean(EmployeeService.class).getEmployeesPage(null, null, employees).getItems().stream()
+                .mapToLong(Employee::getEmployeeNumber)
+                .toArray();
+            client = HttpClient.newHttpClient();
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+        
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+        
+        String get(String path) throws IOException, InterruptedException {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(path + " answered " + response.statusCode());
+            }
+            return response.body();
+        }
+        
+        long anyDepartment() {
+            return departmentNumbers[ThreadLocalRandom.current().nextInt(departmentNumbers.length)];
+        }
+        
+        long anyEmployee() {
+            return employeeNumbers[ThreadLocalRandom.current().nextInt(employeeNumbers.length)];
+        }
+    }
+    
+    // Endpoints answering with projections rather than entities, so the time is the request and its query
+    @Benchmark
+    public String spanOfControl(Server server) throws Exception {
+        return server.get("/API/employees/" + server.anyEmployee() + "/span");
+    }
+    
+    @Benchmark
+    public String departmentSummaries(Server server) throws Exception {
+        return server.get("/API/employees/department/" + server.anyDepartment() + "/summary");
+    }
+}
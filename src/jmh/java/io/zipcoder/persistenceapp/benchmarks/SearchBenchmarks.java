@@ -0,0 +1,127 @@
+package io.zipcoder.persistenceapp.benchmarks;
+
+import io.zipcoder.persistenceapp.search.EmployeeDocument;
+import io.zipcoder.persistenceapp.search.EmployeeSearchIndex;
+import io.zipcoder.persistenceapp.search.SearchQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Search index queries on a generated directory (no database: the index is built straight from documents)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmarks {
+
+    private static final int PAGE_SIZE = 10;
+
+    @State(Scope.Benchmark)
+    public static class Directory {
+
+        @Param("1000000")
+        public int employees;
+
+        EmployeeSearchIndex index;
+        SearchQuery oneLetter;
+        SearchQuery threeLetters;
+        SearchQuery fullName;
+        SearchQuery nameAndTitle;
+        SearchQuery phonePrefix;
+
+        @Setup(Level.Trial)
+        public void build() {
+            Random random = new Random(42);
+            String[] firstNames = names(random, 2_000);
+            String[] lastNames = names(random, 20_000);
+            String[] titles = {"Engineer", "Senior Engineer", "Analyst", "Manager", "Director", "Designer",
+                "Account Executive", "Support Specialist", "Recruiter", "Accountant"};
+            List<EmployeeDocument> documents = new ArrayList<>(employees);
+            for (long i = 1; i <= employees; i++) {
+                // Skewed towards the front of each pool, like real name frequencies
+                String first = firstNames[skewed(random, firstNames.length)];
+                String last = lastNames[skewed(random, lastNames.length)];
+                documents.add(new EmployeeDocument(i, first, last, first.toLowerCase() + "." + last.toLowerCase() + i + "@example.com",
+                    titles[random.nextInt(titles.length)], String.format("555-%07d", i), i % 50 + 1, "Department " + (i % 50 + 1)));
+            }
+            index = new EmployeeSearchIndex();
+            index.rebuild(documents);
+
+            EmployeeDocument sample = documents.get(employees / 2);
+            oneLetter = SearchQuery.parse(sample.getLastName().substring(0, 1));
+            threeLetters = SearchQuery.parse(sample.getLastName().substring(0, 3));
+            fullName = SearchQuery.parse(sample.getFirstName() + " " + sample.getLastName().substring(0, 3));
+            nameAndTitle = SearchQuery.parse(sample.getLastName().substring(0, 2) + " title:engineer");
+            phonePrefix = SearchQuery.parse("555-00");
+        }
+    }
+
+    @Benchmark
+    public long[] typeaheadOneLetter(Directory directory) {
+        return directory.index.search(directory.oneLetter, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public long[] typeaheadThreeLetters(Directory directory) {
+        return directory.index.search(directory.threeLetters, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public long[] typeaheadThirdPage(Directory directory) {
+        return directory.index.search(directory.threeLetters, 2 * PAGE_SIZE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public long[] firstNameAndSurnamePrefix(Directory directory) {
+        return directory.index.search(directory.fullName, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public long[] surnamePrefixAndTitle(Directory directory) {
+        return directory.index.search(directory.nameAndTitle, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public long[] phoneNumberPrefix(Directory directory) {
+        return directory.index.search(directory.phonePrefix, 0, PAGE_SIZE);
+    }
+
+    // Pronounceable generated names ("Talomer", "Brisan", ...)
+    private static String[] names(Random random, int count) {
+        String[] onsets = {"b", "br", "c", "ch", "d", "f", "g", "h", "j", "k", "l", "m", "n", "p", "r", "s", "sh", "t", "v", "w"};
+        String[] vowels = {"a", "e", "i", "o", "u", "ai", "ea", "ou"};
+        String[] codas = {"", "n", "r", "l", "s", "m", "th", "ck"};
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int syllables = 2 + random.nextInt(2);
+            for (int s = 0; s < syllables; s++) {
+                name.append(onsets[random.nextInt(onsets.length)]).append(vowels[random.nextInt(vowels.length)]);
+            }
+            name.append(codas[random.nextInt(codas.length)]);
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            names[i] = name.toString();
+        }
+        return names;
+    }
+
+    private static int skewed(Random random, int size) {
+        double u = random.nextDouble();
+        return (int) (u * u * size);
+    }
+}
@@ -0,0 +1,156 @@
+package io.zipcoder.persistenceapp.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeDto;
+import io.zipcoder.persistenceapp.serialization.FieldSelection;
+import org.hibernate.Hibernate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Writing what the employee endpoints return, with everything already loaded (no lazy loading measured): entities
+// and DTOs as JSON, and the DTOs and a fields= projection in each negotiable format. The bytes per employee of
+// every format and payload are printed once per trial.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmarks {
+    
+    // The compact listing the request had in mind
+    static final String PROJECTED_FIELDS = "employeeNumber,lastName,email";
+    
+    @State(Scope.Benchmark)
+    public static class Loaded {
+        
+        Employee manager;
+        List<Employee> department;
+        List<EmployeeDto> departmentDtos;
+        List<Map<String, Object>> departmentProjection;
+        FieldSelection projectedFields;
+        
+        @Setup(Level.Trial)
+        public void load(OrgChartState chart) {
+            TransactionTemplate transaction = new TransactionTemplate(chart.transactionManager);
+            department = transaction.execute(status -> {
+                List<Employee> employees = chart.employeeService.getEmployeesByDepartment(chart.departmentNumber);
+                employees.forEach(Loaded::initialize);
+                return employees;
+            });
+            manager = transaction.execute(status -> {
+                Employee employee = chart.employeeService.getAllReports(chart.topId, 1).get(0);
+                initialize(employee);
+                return employee;
+            });
+            departmentDtos = department.stream().map(EmployeeDto::from).collect(Collectors.toList());
+            projectedFields = FieldSelection.parse(PROJECTED_FIELDS, FieldSelection.EMPLOYEE_FIELDS);
+            departmentProjection = chart.employeeService.getEmployeeFields(projectedFields, chart.departmentNumber);
+            
+            System.out.printf("%n%d employees, bytes per employee:%n", department.size());
+            System.out.printf("  %-26s %8.1f%n", "entities json", bytesPerEmployee(chart.objectMapper, department));
+            for (String format : Encoding.FORMATS) {
+                ObjectMapper mapper = Encoding.mapper(chart, format);
+                System.out.printf("  %-26s %8.1f%n", "dtos " + format, bytesPerEmployee(mapper, departmentDtos));
+                System.out.printf("  %-26s %8.1f%n", "projection " + format, bytesPerEmployee(mapper, departmentProjection));
+            }
+        }
+        
+        private double bytesPerEmployee(ObjectMapper mapper, List<?> employees) {
+            try {
+                return (double) mapper.writeValueAsBytes(employees).length / employees.size();
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        // Everything Employee's JSON reaches: manager and its department, department, direct reports and theirs
+        private static void initialize(Employee employee) {
+            if (employee.getManager() != null) {
+                Hibernate.initialize(employee.getManager());
+                Hibernate.initialize(employee.getManager().getDepartment());
+            }
+            Hibernate.initialize(employee.getDepartment());
+            Hibernate.initialize(employee.getDirectReports());
+            employee.getDirectReports().forEach(report -> Hibernate.initialize(report.getDepartment()));
+        }
+    }
+    
+    // The mapper behind each Accept format: the application's JSON mapper and its Smile and CBOR converters
+    @State(Scope.Benchmark)
+    public static class Encoding {
+        
+        static final String[] FORMATS = {"json", "smile", "cbor"};
+        
+        @Param({"json", "smile", "cbor"})
+        public String format;
+        
+        ObjectMapper mapper;
+        
+        @Setup(Level.Trial)
+        public void choose(OrgChartState chart) {
+            mapper = mapper(chart, format);
+        }
+        
+        static ObjectMapper mapper(OrgChartState chart, String format) {
+            switch (format) {
+                case "smile":
+                    return chart.context.getBean(MappingJackson2SmileHttpMessageConverter.class).getObjectMapper();
+                case "cbor":
+                    return chart.context.getBean(MappingJackson2CborHttpMessageConverter.class).getObjectMapper();
+                default:
+                    return chart.objectMapper;
+            }
+        }
+    }
+    
+    @Benchmark
+    public byte[] serializeManagerWithReports(OrgChartState chart, Loaded loaded) throws JsonProcessingException {
+        return chart.objectMapper.writeValueAsBytes(loaded.manager);
+    }
+    
+    @Benchmark
+    public byte[] serializeDepartmentEmployees(OrgChartState chart, Loaded loaded) throws JsonProcessingException {
+        return chart.objectMapper.writeValueAsBytes(loaded.department);
+    }
+    
+    @Benchmark
+    public byte[] serializeDepartmentEmployeeDtos(OrgChartState chart, Loaded loaded) throws JsonProcessingException {
+        return chart.objectMapper.writeValueAsBytes(loaded.departmentDtos);
+    }
+    
+    @Benchmark
+    public byte[] encodeDepartmentEmployeeDtos(Loaded loaded, Encoding encoding) throws JsonProcessingException {
+        return encoding.mapper.writeValueAsBytes(loaded.departmentDtos);
+    }
+    
+    @Benchmark
+    public byte[] encodeDepartmentProjection(Loaded loaded, Encoding encoding) throws JsonProcessingException {
+        return encoding.mapper.writeValueAsBytes(loaded.departmentProjection);
+    }
+    
+    // Select and encode end to end, the work behind GET /API/employees/department/{n}?fields=...
+    @Benchmark
+    public byte[] selectAndEncodeDepartmentProjection(OrgChartState chart, Loaded loaded, Encoding encoding) throws JsonProcessingException {
+        return encoding.mapper.writeValueAsBytes(chart.employeeService.getEmployeeFields(loaded.projectedFields, chart.departmentNumber));
+    }
+}
@@ -0,0 +1,131 @@
+package io.zipcoder.persistenceapp.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.zipcoder.persistenceapp.models.CacheStatistics;
+import io.zipcoder.persistenceapp.models.DepartmentDto;
+import io.zipcoder.persistenceapp.models.EmployeeDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Read-through cache for single employee and department lookups. Entries are immutable DTOs, bounded in
+// number (Caffeine's W-TinyLFU eviction) and in age, so an entry that missed an eviction cannot outlive
+// the TTL. Services evict exactly the entries a change touches once its transaction has finished.
+// The same statistics are published as cache.* meters (tagged by cache name) for the metrics endpoint.
+@Component
+public class DirectoryCache implements MeterBinder {
+    
+    private final LookupCache<Long, EmployeeDto> employees;
+    private final LookupCache<Long, DepartmentDto> departments;
+    private final LookupCache<String, Long> departmentNumbersByName;
+    
+    public DirectoryCache(@Value("${app.cache.employees.maximum-size:10000}") long employeesMaximumSize,
+                          @Value("${app.cache.employees.expire-after-write:10m}") Duration employeesTtl,
+                          @Value("${app.cache.departments.maximum-size:1000}") long departmentsMaximumSize,
+                          @Value("${app.cache.departments.expire-after-write:1h}") Duration departmentsTtl) {
+        this.employees = new LookupCache<>("employees", employeesMaximumSize, employeesTtl);
+        this.departments = new LookupCache<>("departments", departmentsMaximumSize, departmentsTtl);
+        this.departmentNumbersByName = new LookupCache<>("departmentNumbersByName", departmentsMaximumSize, departmentsTtl);
+    }
+    
+    // ==================== LOOKUPS ====================
+    
+    // Cached employee, loading it on a miss (a loader returning null means "no such employee" and is not cached)
+    public Optional<EmployeeDto> employee(Long employeeNumber, Function<Long, EmployeeDto> loader) {
+        return employees.get(employeeNumber, loader);
+    }
+    
+    public Optional<DepartmentDto> department(Long departmentNumber, Function<Long, DepartmentDto> loader) {
+        return departments.get(departmentNumber, loader);
+    }
+    
+    public Optional<Long> departmentNumber(String departmentName, Function<String, Long> loader) {
+        return departmentNumbersByName.get(departmentName, loader);
+    }
+    
+    // ==================== EVICTION ====================
+    
+    public void evictEmployees(Collection<Long> employeeNumbers) {
+        employeeNumbers.forEach(employees::invalidate);
+    }
+    
+    public void evictDepartments(Collection<Long> departmentNumbers) {
+        departmentNumbers.forEach(departments::invalidate);
+    }
+    
+    // A department whose name changed or that is gone: drops the name lookup as well
+    public void evictDepartment(Long departmentNumber, String departmentName) {
+        departments.invalidate(departmentNumber);
+        if (departmentName != null) {
+            departmentNumbersByName.invalidate(departmentName);
+        }
+    }
+    
+    // ==================== STATISTICS ====================
+    
+    public List<CacheStatistics> statistics() {
+        return Arrays.asList(employees.statistics(), departments.statistics(), departmentNumbersByName.statistics());
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        employees.bindTo(registry);
+        departments.bindTo(registry);
+        departmentNumbersByName.bindTo(registry);
+    }
+    
+    private static final class LookupCache<K, V> {
+        
+        private final String name;
+        private final long maximumSize;
+        private final Cache<K, V> cache;
+        private final LongAdder invalidations = new LongAdder();
+        
+        LookupCache(String name, long maximumSize, Duration timeToLive) {
+            this.name = name;
+            this.maximumSize = maximumSize;
+            this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+        }
+        
+        Optional<V> get(K key, Function<? super K, ? extends V> loader) {
+            return Optional.ofNullable(cache.get(key, loader));
+        }
+        
+        void invalidate(K key) {
+            if (cache.asMap().remove(key) != null) {
+                invalidations.increment();
+            }
+        }
+        
+        CacheStatistics statistics() {
+            CacheStats stats = cache.stats();
+            return new CacheStatistics(name, cache.estimatedSize(), maximumSize, stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.evictionCount(), invalidations.sum());
+        }
+        
+        void bindTo(MeterRegistry registry) {
+            CaffeineCacheMetrics.monitor(registry, cache, name);
+            FunctionCounter.builder("cache.invalidations", invalidations, LongAdder::sum)
+                .description("Entries dropped because the data behind them changed")
+                .tag("cache", name)
+                .register(registry);
+        }
+    }
+}
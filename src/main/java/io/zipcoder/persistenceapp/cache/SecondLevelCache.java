@@ -0,0 +1,59 @@
+package io.zipcoder.persistenceapp.cache;
+
+import io.zipcoder.persistenceapp.models.CacheRegionStatistics;
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Hibernate's second-level and query cache (regions configured in application.conf). Hibernate keeps it in
+// step with everything written through JPA, including bulk JPQL and native statements; writers that go
+// around it with plain JDBC call in here once their transaction has finished.
+@Component
+public class SecondLevelCache {
+    
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    // ==================== EVICTION ====================
+    
+    // Employees were inserted or re-linked behind Hibernate's back: cached report and member lists, and
+    // cached query results, may be missing them. Cached entities themselves are unaffected (no existing
+    // row's mapped columns changed).
+    public void evictEmployeeCollectionsAndQueries() {
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        cache.evictCollectionData(Employee.class.getName() + ".directReports");
+        cache.evictCollectionData(Department.class.getName() + ".employees");
+        cache.evictQueryRegions();
+    }
+    
+    // ==================== STATISTICS ====================
+    
+    // Every entity, collection and query results region; the update timestamps region only serves lookups
+    // for the others and is left out
+    public List<CacheRegionStatistics> statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        List<CacheRegionStatistics> regions = new ArrayList<>();
+        String[] names = statistics.getSecondLevelCacheRegionNames();
+        Arrays.sort(names);
+        for (String name : names) {
+            if (name.equals(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME)) {
+                continue;
+            }
+            org.hibernate.stat.CacheRegionStatistics region = name.equals(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME)
+                ? statistics.getQueryRegionStatistics(name)
+                : statistics.getDomainDataRegionStatistics(name);
+            regions.add(new CacheRegionStatistics(name, region.getHitCount(), region.getMissCount(), region.getPutCount()));
+        }
+        return regions;
+    }
+}
@@ -0,0 +1,59 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.BatchOperation;
+import io.zipcoder.persistenceapp.models.BatchResult;
+import io.zipcoder.persistenceapp.models.ReorgPreview;
+import io.zipcoder.persistenceapp.services.BatchService;
+import io.zipcoder.persistenceapp.services.ReorgPreviewService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/API/batch")
+public class BatchController {
+    
+    static final int MAX_OPERATIONS = 10000;
+    
+    @Autowired
+    private BatchService batchService;
+    
+    @Autowired
+    private ReorgPreviewService reorgPreviewService;
+    
+    // RUN a list of operations in one transaction: 200 when all were applied, 400 with each
+    // operation's outcome when one failed and the batch was rolled back (409 if it lost a race)
+    @PostMapping
+    public ResponseEntity<BatchResult> applyBatch(@RequestBody List<BatchOperation> operations) {
+        if (operations.size() > MAX_OPERATIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_OPERATIONS + " operations per batch");
+        }
+        try {
+            return ResponseEntity.ok(batchService.apply(operations));
+        } catch (BatchService.Failed e) {
+            HttpStatus status = ConflictHandler.isConflict(e.getCause()) ? HttpStatus.CONFLICT : HttpStatus.BAD_REQUEST;
+            return ResponseEntity.status(status).body(e.getResult());
+        }
+    }
+    
+    // PREVIEW what a list of operations would do to the org chart without applying it: who moves, new depths
+    // and spans of control, and departments left without a manager (400 if an operation would fail)
+    @PostMapping("/preview")
+    public ReorgPreview previewBatch(@RequestBody List<BatchOperation> operations) {
+        if (operations.size() > MAX_OPERATIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_OPERATIONS + " operations per batch");
+        }
+        try {
+            return reorgPreviewService.preview(operations);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
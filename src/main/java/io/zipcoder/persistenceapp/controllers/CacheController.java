@@ -0,0 +1,36 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.cache.DirectoryCache;
+import io.zipcoder.persistenceapp.cache.SecondLevelCache;
+import io.zipcoder.persistenceapp.models.CacheRegionStatistics;
+import io.zipcoder.persistenceapp.models.CacheStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/API/cache")
+public class CacheController {
+    
+    @Autowired
+    private DirectoryCache directoryCache;
+    
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+    
+    // GET hit / miss / eviction counters of the lookup caches
+    @GetMapping("/stats")
+    public ResponseEntity<List<CacheStatistics>> getCacheStatistics() {
+        return ResponseEntity.ok(directoryCache.statistics());
+    }
+    
+    // GET hit / miss / put counters of the Hibernate second-level cache regions and the query cache
+    @GetMapping("/second-level/stats")
+    public ResponseEntity<List<CacheRegionStatistics>> getSecondLevelCacheStatistics() {
+        return ResponseEntity.ok(secondLevelCache.statistics());
+    }
+}
@@ -0,0 +1,122 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.ChangeEvent;
+import io.zipcoder.persistenceapp.models.ChangePage;
+import io.zipcoder.persistenceapp.services.ChangeLogService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Incremental sync for downstream systems: poll GET /API/changes?since=<next from the last page>, optionally
+// long-polling (wait=<seconds>), or keep GET /API/changes/stream open for server-sent events.
+@RestController
+@RequestMapping("/API/changes")
+public class ChangeController {
+    
+    private static final int DEFAULT_LIMIT = 500;
+    private static final int MAX_LIMIT = 5000;
+    private static final int MAX_WAIT_SECONDS = 60;
+    
+    @Autowired
+    private ChangeLogService changeLogService;
+    
+    @Value("${app.changes.stream-timeout:30m}")
+    private Duration streamTimeout;
+    
+    // GET up to limit changes after a sequence number, oldest first. With wait > 0 and nothing new yet, the
+    // request is held until a change commits or the wait runs out (then the page is empty)
+    @GetMapping
+    public DeferredResult<ChangePage> getChanges(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "" + DEFAULT_LIMIT) int limit,
+            @RequestParam(defaultValue = "0") int wait) {
+        int size = Math.max(1, Math.min(limit, MAX_LIMIT));
+        long waitMillis = TimeUnit.SECONDS.toMillis(Math.max(0, Math.min(wait, MAX_WAIT_SECONDS)));
+        DeferredResult<ChangePage> result = new DeferredResult<>(waitMillis > 0 ? waitMillis : null,
+            () -> new ChangePage(Collections.emptyList(), since, size));
+        
+        ChangePage page = changeLogService.changesAfter(since, size);
+        if (!page.getChanges().isEmpty() || waitMillis == 0) {
+            result.setResult(page);
+            return result;
+        }
+        CompletableFuture<Void> changed = changeLogService.awaitChangesAfter(since);
+        result.onCompletion(() -> changed.cancel(false));
+        changed.thenRunAsync(() -> result.setResult(changeLogService.changesAfter(since, size)));
+        return result;
+    }
+    
+    // GET changes as server-sent events (event id = sequence number): everything after since, or after the
+    // Last-Event-ID a reconnecting EventSource sends, then each change as it commits
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        ChangeStream stream = new ChangeStream(emitter, lastEventId != null ? lastEventId : since);
+        emitter.onCompletion(stream::close);
+        emitter.onTimeout(stream::close);
+        emitter.onError(e -> stream.close());
+        CompletableFuture.runAsync(stream::send);
+        return emitter;
+    }
+    
+    // One open event stream: sends what is there, waits for the next commit, repeats
+    private final class ChangeStream {
+        
+        private final SseEmitter emitter;
+        private long position;
+        private volatile CompletableFuture<Void> changed;
+        private volatile boolean closed;
+        
+        ChangeStream(SseEmitter emitter, long position) {
+            this.emitter = emitter;
+            this.position = position;
+        }
+        
+        void send() {
+            try {
+                ChangePage page;
+                do {
+                    page = changeLogService.changesAfter(position, MAX_LIMIT);
+                    for (ChangeEvent change : page.getChanges()) {
+                        emitter.send(SseEmitter.event().id(String.valueOf(change.getSequence())).name("change").data(change));
+                    }
+                    position = page.getNext();
+                } while (page.isMore() && !closed);
+            } catch (IOException | IllegalStateException e) {
+                // The client went away: the emitter's completion callbacks close the stream
+                emitter.completeWithError(e);
+                return;
+            }
+            if (!closed) {
+                changed = changeLogService.awaitChangesAfter(position);
+                changed.thenRunAsync(this::send);
+                if (closed) {
+                    changed.cancel(false);
+                }
+            }
+        }
+        
+        void close() {
+            closed = true;
+            CompletableFuture<Void> waiting = changed;
+            if (waiting != null) {
+                waiting.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.services.ChangeLogService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.context.request.NativeWebRequest;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Conditional GET for hot read endpoints. The ETag is the change log head plus the encoding the response is
+// written in (JSON, Smile and CBOR bodies differ). Every mutating service method moves the head in the same
+// transaction as its change, so while it stands still nothing in the directory has changed, on any node: a
+// coarse validator (any change revalidates every response), but one read of a single row, where validators
+// for what each response shows would have to look at every employee it embeds. It is read first in the same
+// read-only transaction as the query, so a response is never newer than its ETag, and a matching
+// If-None-Match gets 304 on that one statement. Vary: Accept keeps a shared cache from handing one encoding
+// to a client that asked for another. Cache-Control lets a shared cache (a local reverse proxy) serve a
+// response for app.http.proxy-max-age, then revalidate it; clients revalidate every time.
+@Component
+class ConditionalGet {
+    
+    // Encodings the endpoints write, in the order content negotiation prefers them (see SerializationConfiguration)
+    private static final List<MediaType> ENCODINGS = Arrays.asList(MediaType.APPLICATION_JSON,
+        MediaType.valueOf("application/x-jackson-smile"), MediaType.APPLICATION_CBOR);
+    
+    @Autowired
+    private ChangeLogService changeLog;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ContentNegotiationManager contentNegotiationManager;
+    
+    @Value("${app.http.proxy-max-age:5s}")
+    private Duration proxyMaxAge;
+    
+    private TransactionTemplate readOnly;
+    private CacheControl cacheControl;
+    
+    @PostConstruct
+    void init() {
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        cacheControl = CacheControl.maxAge(Duration.ZERO).mustRevalidate().sMaxAge(proxyMaxAge);
+    }
+    
+    <T> ResponseEntity<T> respond(NativeWebRequest request, Supplier<T> query) {
+        String encoding = encoding(request);
+        return readOnly.execute(status -> {
+            String etag = "\"" + changeLog.headSequence() + "-" + encoding + "\"";
+            if (request.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl)
+                                     .varyBy(HttpHeaders.ACCEPT).build();
+            }
+            return ResponseEntity.ok().eTag(etag).cacheControl(cacheControl).varyBy(HttpHeaders.ACCEPT).body(query.get());
+        });
+    }
+    
+    // The encoding the response will be written in: the first one the client accepts, in its order of
+    // preference (JSON when it accepts none of them, content negotiation turns the request down then)
+    private String encoding(NativeWebRequest request) {
+        try {
+            List<MediaType> accepted = contentNegotiationManager.resolveMediaTypes(request);
+            MediaType.sortBySpecificityAndQuality(accepted);
+            for (MediaType type : accepted) {
+                for (MediaType encoding : ENCODINGS) {
+                    if (type.isCompatibleWith(encoding)) {
+                        return encoding.getSubtype();
+                    }
+                }
+            }
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            // An unreadable Accept header is turned down by content negotiation as well
+        }
+        return MediaType.APPLICATION_JSON.getSubtype();
+    }
+}
@@ -0,0 +1,31 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import javax.persistence.LockTimeoutException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PessimisticLockException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// A write that lost a race with another one: the row's version moved on since the client read it, or a
+// row lock could not be taken. The transaction rolled back, so the client can re-read and retry (409).
+// Failures at commit come translated by Spring; an explicit flush in a service throws the JPA ones.
+@RestControllerAdvice
+public class ConflictHandler {
+    
+    @ExceptionHandler({ConcurrencyFailureException.class, OptimisticLockException.class,
+        PessimisticLockException.class, LockTimeoutException.class})
+    public void conflict(HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.CONFLICT.value(), "Changed concurrently; re-read and retry");
+    }
+    
+    // True for the failures handled above
+    static boolean isConflict(Throwable e) {
+        return e instanceof ConcurrencyFailureException || e instanceof OptimisticLockException
+            || e instanceof PessimisticLockException || e instanceof LockTimeoutException;
+    }
+}
@@ -1,13 +1,24 @@
 package io.zipcoder.persistenceapp.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zipcoder.persistenceapp.models.DeletionJob;
 import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.DepartmentDto;
+import io.zipcoder.persistenceapp.models.DepartmentStats;
+import io.zipcoder.persistenceapp.models.DepartmentSummary;
+import io.zipcoder.persistenceapp.models.KeysetPage;
+import io.zipcoder.persistenceapp.serialization.FieldSelection;
+import io.zipcoder.persistenceapp.services.DeletionJobService;
 import io.zipcoder.persistenceapp.services.DepartmentService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -17,6 +28,15 @@ public class DepartmentController {
     @Autowired
     private DepartmentService departmentService;
     
+    @Autowired
+    private DeletionJobService deletionJobService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private ConditionalGet conditionalGet;
+    
     // ==================== BASIC CRUD ====================
     
     // CREATE department
@@ -26,34 +46,82 @@ public class DepartmentController {
         return new ResponseEntity<>(created, HttpStatus.CREATED);
     }
     
-    // GET all departments
+    // GET all departments; 304 while the directory is unchanged
     @GetMapping
-    public ResponseEntity<List<Department>> getAllDepartments() {
-        List<Department> departments = departmentService.getAllDepartments();
-        return ResponseEntity.ok(departments);
+    public ResponseEntity<List<Department>> getAllDepartments(NativeWebRequest request) {
+        return conditionalGet.respond(request, departmentService::getAllDepartments);
+    }
+    
+    // GET all departments reduced to the listed fields, e.g. ?fields=departmentNumber,departmentName,headcount
+    @GetMapping(params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getAllDepartmentFields(@RequestParam String fields) {
+        return ResponseEntity.ok(departmentService.getDepartmentFields(
+            EmployeeController.fieldSelection(fields, FieldSelection.DEPARTMENT_FIELDS)));
+    }
+    
+    // GET all departments reduced to number, name, manager number and headcount (one SQL statement)
+    @GetMapping("/summary")
+    public ResponseEntity<List<DepartmentSummary>> getDepartmentSummaries() {
+        return ResponseEntity.ok(departmentService.getDepartmentSummaries());
+    }
+    
+    // GET one keyset page of departments (pass nextCursor back as cursor for the next page)
+    @GetMapping("/page")
+    public ResponseEntity<KeysetPage<Department>> getDepartmentsPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + EmployeeController.DEFAULT_PAGE_SIZE) int size) {
+        return ResponseEntity.ok(departmentService.getDepartmentsPage(
+            EmployeeController.afterKey(cursor), EmployeeController.pageSize(size)));
+    }
+    
+    // GET one keyset page of departments reduced to the listed fields
+    @GetMapping(value = "/page", params = "fields")
+    public ResponseEntity<KeysetPage<Map<String, Object>>> getDepartmentFieldsPage(
+            @RequestParam String fields,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + EmployeeController.DEFAULT_PAGE_SIZE) int size) {
+        return ResponseEntity.ok(departmentService.getDepartmentFieldsPage(
+            EmployeeController.fieldSelection(fields, FieldSelection.DEPARTMENT_FIELDS),
+            EmployeeController.afterKey(cursor), EmployeeController.pageSize(size)));
+    }
+    
+    // GET all departments as an NDJSON stream
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamAllDepartments() {
+        return NdjsonStreams.stream(objectMapper, departmentService::forEachDepartment);
     }
     
     // GET department by ID
     @GetMapping("/{id}")
-    public ResponseEntity<Department> getDepartmentById(@PathVariable Long id) {
-        Optional<Department> department = departmentService.getDepartmentById(id);
+    public ResponseEntity<DepartmentDto> getDepartmentById(@PathVariable Long id) {
+        Optional<DepartmentDto> department = departmentService.getDepartmentById(id);
         return department.map(ResponseEntity::ok)
                          .orElse(ResponseEntity.notFound().build());
     }
     
+    // GET precomputed statistics of a department: headcount, plus span of control, total reports and
+    // levels below its manager
+    @GetMapping("/{id}/stats")
+    public ResponseEntity<DepartmentStats> getDepartmentStats(@PathVariable Long id) {
+        return departmentService.getDepartmentStats(id).map(ResponseEntity::ok)
+                                .orElse(ResponseEntity.notFound().build());
+    }
+    
     // GET department by name
     @GetMapping("/name/{name}")
-    public ResponseEntity<Department> getDepartmentByName(@PathVariable String name) {
-        Optional<Department> department = departmentService.getDepartmentByName(name);
+    public ResponseEntity<DepartmentDto> getDepartmentByName(@PathVariable String name) {
+        Optional<DepartmentDto> department = departmentService.getDepartmentByName(name);
         return department.map(ResponseEntity::ok)
                          .orElse(ResponseEntity.notFound().build());
     }
     
-    // DELETE department
+    // DELETE department with its members (and everyone below them) as a background job
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteDepartment(@PathVariable Long id) {
-        departmentService.deleteDepartment(id);
-        return ResponseEntity.noContent().build();
+    public ResponseEntity<DeletionJob> deleteDepartment(@PathVariable Long id) {
+        if (!departmentService.getDepartmentById(id).isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        return JobController.accepted(deletionJobService.deleteDepartment(id));
     }
     
     // ==================== DEPARTMENT OPERATIONS ====================
@@ -85,10 +153,9 @@ public class DepartmentController {
         return ResponseEntity.ok(merged);
     }
     
-    // DELETE all employees from department
+    // DELETE all employees from department as a background job
     @DeleteMapping("/{deptNum}/employees")
-    public ResponseEntity<Void> removeAllEmployeesFromDepartment(@PathVariable Long deptNum) {
-        departmentService.removeAllEmployeesFromDepartment(deptNum);
-        return ResponseEntity.noContent().build();
+    public ResponseEntity<DeletionJob> removeAllEmployeesFromDepartment(@PathVariable Long deptNum) {
+        return JobController.accepted(deletionJobService.removeAllFromDepartment(deptNum));
     }
 }
\ No newline at end of file
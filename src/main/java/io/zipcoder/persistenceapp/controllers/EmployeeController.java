@@ -1,22 +1,60 @@
 package io.zipcoder.persistenceapp.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import io.zipcoder.persistenceapp.models.DeletionJob;
 import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeDto;
+import io.zipcoder.persistenceapp.models.EmployeeImportRecord;
+import io.zipcoder.persistenceapp.models.EmployeeImportResult;
+import io.zipcoder.persistenceapp.models.EmployeeStats;
+import io.zipcoder.persistenceapp.models.EmployeeSummary;
+import io.zipcoder.persistenceapp.models.KeysetPage;
+import io.zipcoder.persistenceapp.search.SearchQuery;
+import io.zipcoder.persistenceapp.serialization.FieldSelection;
+import io.zipcoder.persistenceapp.services.DeletionJobService;
+import io.zipcoder.persistenceapp.services.EmployeeImportService;
 import io.zipcoder.persistenceapp.services.EmployeeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
 @RequestMapping("/API/employees")
 public class EmployeeController {
     
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int DEFAULT_SEARCH_SIZE = 10;
+    
     @Autowired
     private EmployeeService employeeService;
     
+    @Autowired
+    private EmployeeImportService employeeImportService;
+    
+    @Autowired
+    private DeletionJobService deletionJobService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private ConditionalGet conditionalGet;
+    
     // ==================== BASIC CRUD ====================
     
     // CREATE employee
@@ -33,10 +71,40 @@ public class EmployeeController {
         return ResponseEntity.ok(employees);
     }
     
+    // GET all employees reduced to the listed fields, e.g. ?fields=employeeNumber,lastName,email (only those columns are read)
+    @GetMapping(params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getAllEmployeeFields(@RequestParam String fields) {
+        return ResponseEntity.ok(employeeService.getEmployeeFields(fieldSelection(fields, FieldSelection.EMPLOYEE_FIELDS), null));
+    }
+    
+    // GET one keyset page of employees (pass nextCursor back as cursor for the next page)
+    @GetMapping("/page")
+    public ResponseEntity<KeysetPage<Employee>> getEmployeesPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        return ResponseEntity.ok(employeeService.getEmployeesPage(null, afterKey(cursor), pageSize(size)));
+    }
+    
+    // GET one keyset page of employees reduced to the listed fields
+    @GetMapping(value = "/page", params = "fields")
+    public ResponseEntity<KeysetPage<Map<String, Object>>> getEmployeeFieldsPage(
+            @RequestParam String fields,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        return ResponseEntity.ok(employeeService.getEmployeeFieldsPage(
+            fieldSelection(fields, FieldSelection.EMPLOYEE_FIELDS), null, afterKey(cursor), pageSize(size)));
+    }
+    
+    // GET all employees as an NDJSON stream
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamAllEmployees() {
+        return NdjsonStreams.<Employee>stream(objectMapper, action -> employeeService.forEachEmployee(null, action));
+    }
+    
     // GET employee by ID
     @GetMapping("/{id}")
-    public ResponseEntity<Employee> getEmployeeById(@PathVariable Long id) {
-        Optional<Employee> employee = employeeService.getEmployeeById(id);
+    public ResponseEntity<EmployeeDto> getEmployeeById(@PathVariable Long id) {
+        Optional<EmployeeDto> employee = employeeService.getEmployeeById(id);
         return employee.map(ResponseEntity::ok)
                        .orElse(ResponseEntity.notFound().build());
     }
@@ -55,11 +123,24 @@ public class EmployeeController {
         return ResponseEntity.noContent().build();
     }
     
-    // DELETE multiple employees
+    // DELETE multiple employees (and everyone below them) as a background job
     @DeleteMapping("/batch")
-    public ResponseEntity<Void> deleteEmployees(@RequestBody List<Long> employeeIds) {
-        employeeService.deleteEmployees(employeeIds);
-        return ResponseEntity.noContent().build();
+    public ResponseEntity<DeletionJob> deleteEmployees(@RequestBody List<Long> employeeIds) {
+        return JobController.accepted(deletionJobService.deleteEmployees(employeeIds));
+    }
+    
+    // ==================== BULK IMPORT ====================
+    
+    // IMPORT employees from a JSON array or an NDJSON stream
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<EmployeeImportResult> importEmployeesJson(InputStream body) throws IOException {
+        return importEmployees(() -> ImportReaders.json(objectMapper, body));
+    }
+    
+    // IMPORT employees from CSV with a header row
+    @PostMapping(value = "/bulk", consumes = "text/csv")
+    public ResponseEntity<EmployeeImportResult> importEmployeesCsv(InputStream body) throws IOException {
+        return importEmployees(() -> ImportReaders.csv(body));
     }
     
     // ==================== MANAGER OPERATIONS ====================
@@ -78,18 +159,19 @@ public class EmployeeController {
         return ResponseEntity.ok(reports);
     }
     
-    // GET all reports (direct + indirect) under a manager
+    // GET all reports (direct + indirect) under a manager, optionally limited to maxDepth levels
     @GetMapping("/manager/{managerId}/all")
-    public ResponseEntity<List<Employee>> getAllReports(@PathVariable Long managerId) {
-        List<Employee> reports = employeeService.getAllReports(managerId);
+    public ResponseEntity<List<Employee>> getAllReports(
+            @PathVariable Long managerId,
+            @RequestParam(required = false) Integer maxDepth) {
+        List<Employee> reports = employeeService.getAllReports(managerId, maxDepth);
         return ResponseEntity.ok(reports);
     }
     
-    // DELETE all employees under a manager (including indirect)
+    // DELETE all employees under a manager (including indirect) as a background job
     @DeleteMapping("/manager/{managerId}/all")
-    public ResponseEntity<Void> removeAllUnderManager(@PathVariable Long managerId) {
-        employeeService.removeAllUnderManager(managerId);
-        return ResponseEntity.noContent().build();
+    public ResponseEntity<DeletionJob> removeAllUnderManager(@PathVariable Long managerId) {
+        return JobController.accepted(deletionJobService.removeAllUnderManager(managerId));
     }
     
     // DELETE direct reports only (reassign their reports up)
@@ -101,27 +183,110 @@ public class EmployeeController {
     
     // ==================== HIERARCHICAL QUERIES ====================
     
-    // GET reporting hierarchy for an employee (up the chain)
+    // GET reporting hierarchy for an employee (up the chain); 304 while the directory is unchanged
     @GetMapping("/{id}/hierarchy")
-    public ResponseEntity<List<Employee>> getReportingHierarchy(@PathVariable Long id) {
-        List<Employee> hierarchy = employeeService.getReportingHierarchy(id);
-        return ResponseEntity.ok(hierarchy);
+    public ResponseEntity<List<Employee>> getReportingHierarchy(@PathVariable Long id, NativeWebRequest request) {
+        return conditionalGet.respond(request, () -> employeeService.getReportingHierarchy(id));
+    }
+    
+    // GET whether an employee reports (directly or indirectly) to a manager
+    @GetMapping("/{id}/under/{managerId}")
+    public ResponseEntity<Boolean> isUnder(@PathVariable Long id, @PathVariable Long managerId) {
+        return ResponseEntity.ok(employeeService.isUnder(id, managerId));
+    }
+    
+    // GET span of control (number of direct reports) of a manager
+    @GetMapping("/{id}/span")
+    public ResponseEntity<Long> getSpanOfControl(@PathVariable Long id) {
+        return ResponseEntity.ok(employeeService.getSpanOfControl(id));
+    }
+    
+    // GET precomputed org statistics of an employee: span of control, total reports and levels below
+    @GetMapping("/{id}/stats")
+    public ResponseEntity<EmployeeStats> getEmployeeStats(@PathVariable Long id) {
+        return employeeService.getEmployeeStats(id).map(ResponseEntity::ok)
+                              .orElse(ResponseEntity.notFound().build());
+    }
+    
+    // ==================== SEARCH ====================
+    
+    // GET ranked search results. q is free text matched as word prefixes against every field (it may contain
+    // qualifiers such as title:engineer); name, email, title, phone and department pin their words to one field.
+    @GetMapping("/search")
+    public ResponseEntity<KeysetPage<EmployeeDto>> searchEmployees(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) String email,
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String phone,
+            @RequestParam(required = false) String department,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_SEARCH_SIZE) int size) {
+        SearchQuery query = SearchQuery.parse(q);
+        addField(query, "name", name);
+        addField(query, "email", email);
+        addField(query, "title", title);
+        addField(query, "phone", phone);
+        addField(query, "department", department);
+        try {
+            return ResponseEntity.ok(employeeService.searchEmployees(query, afterKey(cursor), pageSize(size)));
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
     }
     
     // ==================== DEPARTMENT QUERIES ====================
     
-    // GET employees by department
+    // GET employees by department; 304 while the directory is unchanged
     @GetMapping("/department/{deptNum}")
-    public ResponseEntity<List<Employee>> getEmployeesByDepartment(@PathVariable Long deptNum) {
-        List<Employee> employees = employeeService.getEmployeesByDepartment(deptNum);
-        return ResponseEntity.ok(employees);
+    public ResponseEntity<List<Employee>> getEmployeesByDepartment(@PathVariable Long deptNum, NativeWebRequest request) {
+        return conditionalGet.respond(request, () -> employeeService.getEmployeesByDepartment(deptNum));
+    }
+    
+    // GET a department's employees reduced to the listed fields
+    @GetMapping(value = "/department/{deptNum}", params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getEmployeeFieldsByDepartment(
+            @PathVariable Long deptNum,
+            @RequestParam String fields) {
+        return ResponseEntity.ok(employeeService.getEmployeeFields(fieldSelection(fields, FieldSelection.EMPLOYEE_FIELDS), deptNum));
+    }
+    
+    // GET a department's employees reduced to number, name, title and email (one SQL statement)
+    @GetMapping("/department/{deptNum}/summary")
+    public ResponseEntity<List<EmployeeSummary>> getEmployeeSummariesByDepartment(@PathVariable Long deptNum) {
+        return ResponseEntity.ok(employeeService.getEmployeeSummariesByDepartment(deptNum));
+    }
+    
+    // GET one keyset page of a department's employees
+    @GetMapping("/department/{deptNum}/page")
+    public ResponseEntity<KeysetPage<Employee>> getEmployeesByDepartmentPage(
+            @PathVariable Long deptNum,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        return ResponseEntity.ok(employeeService.getEmployeesPage(deptNum, afterKey(cursor), pageSize(size)));
+    }
+    
+    // GET one keyset page of a department's employees reduced to the listed fields
+    @GetMapping(value = "/department/{deptNum}/page", params = "fields")
+    public ResponseEntity<KeysetPage<Map<String, Object>>> getEmployeeFieldsByDepartmentPage(
+            @PathVariable Long deptNum,
+            @RequestParam String fields,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        return ResponseEntity.ok(employeeService.getEmployeeFieldsPage(
+            fieldSelection(fields, FieldSelection.EMPLOYEE_FIELDS), deptNum, afterKey(cursor), pageSize(size)));
     }
     
-    // DELETE all employees from a department
+    // GET a department's employees as an NDJSON stream
+    @GetMapping("/department/{deptNum}/stream")
+    public ResponseEntity<StreamingResponseBody> streamEmployeesByDepartment(@PathVariable Long deptNum) {
+        return NdjsonStreams.<Employee>stream(objectMapper, action -> employeeService.forEachEmployee(deptNum, action));
+    }
+    
+    // DELETE all employees from a department as a background job
     @DeleteMapping("/department/{deptNum}")
-    public ResponseEntity<Void> removeAllFromDepartment(@PathVariable Long deptNum) {
-        employeeService.removeAllFromDepartment(deptNum);
-        return ResponseEntity.noContent().build();
+    public ResponseEntity<DeletionJob> removeAllFromDepartment(@PathVariable Long deptNum) {
+        return JobController.accepted(deletionJobService.removeAllFromDepartment(deptNum));
     }
     
     // GET employees with no manager
@@ -130,4 +295,47 @@ public class EmployeeController {
         List<Employee> employees = employeeService.getEmployeesWithNoManager();
         return ResponseEntity.ok(employees);
     }
+    
+    // ==================== HELPERS ====================
+    
+    // Parse errors (up front or mid-stream) are the client's fault; the import transaction has rolled back
+    private ResponseEntity<EmployeeImportResult> importEmployees(ImportReaders.Source source) throws IOException {
+        try (MappingIterator<EmployeeImportRecord> records = source.open()) {
+            return new ResponseEntity<>(employeeImportService.importEmployees(records), HttpStatus.CREATED);
+        } catch (JsonProcessingException | RuntimeJsonMappingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed import record: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // MappingIterator reports mid-stream parse failures as a RuntimeException around the parser's exception
+            if (e.getCause() instanceof JsonProcessingException) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed import record: " + e.getMessage());
+            }
+            throw e;
+        }
+    }
+    
+    private static void addField(SearchQuery query, String field, String value) {
+        if (value != null) {
+            query.and(field, value);
+        }
+    }
+    
+    static Long afterKey(String cursor) {
+        try {
+            return KeysetPage.decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+    
+    static FieldSelection fieldSelection(String fields, Map<String, String> selectable) {
+        try {
+            return FieldSelection.parse(fields, selectable);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+    
+    static int pageSize(int requested) {
+        return Math.max(1, Math.min(requested, MAX_PAGE_SIZE));
+    }
 }
\ No newline at end of file
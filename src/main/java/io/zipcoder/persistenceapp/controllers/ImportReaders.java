@@ -0,0 +1,42 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.zipcoder.persistenceapp.models.EmployeeImportRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// Incremental readers for bulk import bodies: each yields one record at a time off the request stream,
+// so an import of any size never sits in memory as a whole.
+final class ImportReaders {
+    
+    private static final CsvMapper CSV_MAPPER = CsvMapper.builder()
+        .addModule(new JavaTimeModule())
+        .enable(CsvParser.Feature.EMPTY_STRING_AS_NULL)
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .build();
+    
+    private ImportReaders() {}
+    
+    interface Source {
+        MappingIterator<EmployeeImportRecord> open() throws IOException;
+    }
+    
+    // A JSON array of records or NDJSON (whitespace-separated records); a root-level array is unwrapped
+    static MappingIterator<EmployeeImportRecord> json(ObjectMapper objectMapper, InputStream body) throws IOException {
+        return objectMapper.readerFor(EmployeeImportRecord.class).readValues(body);
+    }
+    
+    // CSV with a header row naming the record properties (firstName,lastName,title,email,...)
+    static MappingIterator<EmployeeImportRecord> csv(InputStream body) throws IOException {
+        return CSV_MAPPER.readerFor(EmployeeImportRecord.class)
+            .with(CsvSchema.emptySchema().withHeader())
+            .readValues(body);
+    }
+}
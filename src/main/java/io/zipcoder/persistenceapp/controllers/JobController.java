@@ -0,0 +1,50 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.DeletionJob;
+import io.zipcoder.persistenceapp.services.DeletionJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.util.List;
+
+// Background bulk deletes: submitting one answers 202 Accepted with the job and its URL to poll
+@RestController
+@RequestMapping("/API/jobs")
+public class JobController {
+    
+    @Autowired
+    private DeletionJobService deletionJobService;
+    
+    // GET running, queued and recently finished jobs
+    @GetMapping
+    public ResponseEntity<List<DeletionJob>> getJobs() {
+        return ResponseEntity.ok(deletionJobService.getJobs());
+    }
+    
+    // GET a job's status and progress
+    @GetMapping("/{id}")
+    public ResponseEntity<DeletionJob> getJob(@PathVariable Long id) {
+        return deletionJobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    // DELETE (cancel) a job: it stops after the chunk in progress
+    @DeleteMapping("/{id}")
+    public ResponseEntity<DeletionJob> cancelJob(@PathVariable Long id) {
+        return deletionJobService.cancel(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    // 202 for a submitted job, pointing at its status
+    static ResponseEntity<DeletionJob> accepted(DeletionJob job) {
+        return ResponseEntity.accepted().location(URI.create("/API/jobs/" + job.getId())).body(job);
+    }
+}
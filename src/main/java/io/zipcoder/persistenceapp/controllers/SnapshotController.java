@@ -0,0 +1,51 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.SnapshotInfo;
+import io.zipcoder.persistenceapp.services.SnapshotService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.util.List;
+
+@RestController
+@RequestMapping("/API/snapshots")
+public class SnapshotController {
+    
+    @Autowired
+    private SnapshotService snapshotService;
+    
+    // POST take a snapshot of employees and departments
+    @PostMapping
+    public ResponseEntity<SnapshotInfo> createSnapshot() {
+        SnapshotInfo snapshot = snapshotService.export();
+        return ResponseEntity.created(URI.create("/API/snapshots/" + snapshot.getName())).body(snapshot);
+    }
+    
+    // GET snapshots available for download, newest first
+    @GetMapping
+    public ResponseEntity<List<SnapshotInfo>> getSnapshots() {
+        return ResponseEntity.ok(snapshotService.getSnapshots());
+    }
+    
+    // GET a snapshot file; Range requests are answered 206 with just those bytes (e.g. the footer first)
+    @GetMapping("/{name:.+}")
+    public ResponseEntity<Resource> downloadSnapshot(@PathVariable String name) {
+        return snapshotService.getSnapshotFile(name)
+                .map(file -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(name).build().toString())
+                        .<Resource>body(new FileSystemResource(file)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
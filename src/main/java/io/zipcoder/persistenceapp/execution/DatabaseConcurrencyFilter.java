@@ -0,0 +1,80 @@
+package io.zipcoder.persistenceapp.execution;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Bounds how many API requests run at once, and so how many hold or wait for a database connection (the default
+// is the connection pool size). Tomcat's worker pool used to be the only bound; with virtual threads there is
+// none, and a burst would pile up in the pool's own queue until its 30s connection timeout. Here a request waits
+// at most app.db.acquire-timeout for a permit and is otherwise answered 503 with Retry-After straight away.
+// The permit covers the request thread only: the async part of a streamed NDJSON export runs after release.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class DatabaseConcurrencyFilter extends OncePerRequestFilter {
+    
+    private final Semaphore permits;
+    private final long acquireTimeoutNanos;
+    private final Counter rejected;
+    
+    public DatabaseConcurrencyFilter(@Value("${app.db.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency,
+                                     @Value("${app.db.acquire-timeout:2s}") Duration acquireTimeout,
+                                     MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        Gauge.builder("directory.db.permits.available", permits, Semaphore::availablePermits)
+            .description("API requests that may still start using the database")
+            .register(meterRegistry);
+        Gauge.builder("directory.db.permits.waiting", permits, Semaphore::getQueueLength)
+            .description("API requests waiting for a database permit")
+            .register(meterRegistry);
+        this.rejected = Counter.builder("directory.db.permits.rejected")
+            .description("API requests turned away after waiting for a database permit")
+            .register(meterRegistry);
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/API/");
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!acquire()) {
+            rejected.increment();
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many concurrent requests");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+    
+    private boolean acquire() {
+        try {
+            return permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
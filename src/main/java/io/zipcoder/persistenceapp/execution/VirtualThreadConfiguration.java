@@ -0,0 +1,36 @@
+package io.zipcoder.persistenceapp.execution;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// app.execution.mode=virtual: Tomcat runs every request on its own virtual thread instead of a pooled platform
+// thread, so a request blocked on JDBC no longer holds one of server.tomcat.threads.max workers. The number of
+// requests using the database at once is still bounded, by DatabaseConcurrencyFilter.
+// Virtual threads need a Java 21+ runtime; on an older one the application refuses to start in this mode.
+@Configuration
+@ConditionalOnProperty(name = "app.execution.mode", havingValue = "virtual")
+public class VirtualThreadConfiguration {
+    
+    @Bean(destroyMethod = "shutdown")
+    ExecutorService virtualThreadExecutor() {
+        // Executors.newVirtualThreadPerTaskExecutor() only exists from Java 21 on; the build targets 17
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("app.execution.mode=virtual needs Java 21 or later, running on " + Runtime.version());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the virtual thread executor", e);
+        }
+    }
+    
+    @Bean
+    TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadRequests(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+}
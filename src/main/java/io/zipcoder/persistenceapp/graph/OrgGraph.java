@@ -0,0 +1,686 @@
+package io.zipcoder.persistenceapp.graph;
+
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-process copy of the org chart held in primitive arrays. Every employee gets a dense slot;
+// parent[] links a slot to its manager's slot and the manager -> reports adjacency is kept in
+// CSR form (childOffsets/children). A single move patches the report lists of the two managers
+// involved; the patched lists sit beside the CSR until enough pile up to fold them back in with
+// one rebuild, which bulk changes (loads, reconciles) go straight to. Traversals only touch
+// int/long arrays, so they neither hit the database nor allocate per node.
+// Loaded at startup from EmployeeRepository (or from an image, see OrgGraphWarmStart) and updated by the
+// services after each commit.
+@Component
+@ConditionalOnProperty(name = "app.org-graph.enabled", havingValue = "true", matchIfMissing = true)
+public class OrgGraph {
+    
+    private static final int NONE = -1;
+    private static final int REMOVED = -2;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // Slot storage
+    private long[] ids = new long[16];
+    private int[] parent = new int[16];
+    private long[] departments = new long[16];
+    private int size;
+    private int removed;
+    private LongIntHashMap slots = new LongIntHashMap(16);
+    
+    // CSR adjacency: the reports of slot s are children[childOffsets[s] .. childOffsets[s + 1]), unless
+    // patchedChildren[s] holds a newer list (slots past the CSR have none)
+    private int[] childOffsets = new int[1];
+    private int[] children = new int[0];
+    private int[][] patchedChildren = new int[16][];
+    private int patchedCount;
+    private boolean adjacencyStale;
+    
+    private volatile boolean loaded;
+    
+    // Updates applied while load() reads from the database, replayed onto what it read (null when not loading)
+    private List<Runnable> updatesDuringLoad;
+    
+    // ==================== LOADING ====================
+    
+    // Left alone when already warm-started from an image
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIfEmpty() {
+        if (!loaded) {
+            load();
+        }
+    }
+    
+    // The read runs without the lock, so traversals carry on meanwhile; an update committed during the read
+    // may or may not be in it, so the updates applied meanwhile are replayed onto the result (they are idempotent)
+    public synchronized void load() {
+        lock.writeLock().lock();
+        try {
+            updatesDuringLoad = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<Object[]> links;
+        try {
+            links = employeeRepository.findAllHierarchyLinks();
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                updatesDuringLoad = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            int capacity = Math.max(16, links.size());
+            ids = new long[capacity];
+            parent = new int[capacity];
+            departments = new long[capacity];
+            patchedChildren = new int[capacity][];
+            slots = new LongIntHashMap(capacity);
+            size = 0;
+            removed = 0;
+            for (Object[] link : links) {
+                slotFor(((Number) link[0]).longValue());
+            }
+            for (Object[] link : links) {
+                int slot = slots.get(((Number) link[0]).longValue(), NONE);
+                parent[slot] = link[1] == null ? NONE : slotFor(((Number) link[1]).longValue());
+                departments[slot] = link[2] == null ? 0 : ((Number) link[2]).longValue();
+            }
+            adjacencyStale = true;
+            List<Runnable> updates = updatesDuringLoad;
+            updatesDuringLoad = null;
+            updates.forEach(Runnable::run);
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Drop everything and load again from the database
+    public void reload() {
+        load();
+    }
+    
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    // Employees in the graph
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - removed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // ==================== SNAPSHOTS & IMAGES ====================
+    
+    // The live employees, compacted into a frozen copy
+    public OrgSnapshot snapshot() {
+        lock.readLock().lock();
+        try {
+            int live = size - removed;
+            long[] snapshotIds = new long[live];
+            long[] snapshotDepartments = new long[live];
+            int[] snapshotManagers = new int[live];
+            int[] remap = new int[size];
+            int next = 0;
+            for (int s = 0; s < size; s++) {
+                remap[s] = parent[s] == REMOVED ? NONE : next++;
+            }
+            for (int s = 0; s < size; s++) {
+                int target = remap[s];
+                if (target != NONE) {
+                    snapshotIds[target] = ids[s];
+                    snapshotDepartments[target] = departments[s];
+                    snapshotManagers[target] = parent[s] == NONE ? NONE : remap[parent[s]];
+                }
+            }
+            return new OrgSnapshot(snapshotIds, snapshotDepartments, snapshotManagers);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // The live employees, for writing out as an image
+    OrgGraphImage toImage(long mark) {
+        OrgSnapshot snapshot = snapshot();
+        return new OrgGraphImage(mark, snapshot.ids, snapshot.departments, snapshot.managers);
+    }
+    
+    // Replace the graph with an image's employees; it serves reads at once, as of the image's mark
+    void load(OrgGraphImage image) {
+        lock.writeLock().lock();
+        try {
+            int count = image.ids.length;
+            int capacity = Math.max(16, count);
+            ids = Arrays.copyOf(image.ids, capacity);
+            departments = Arrays.copyOf(image.departments, capacity);
+            parent = Arrays.copyOf(image.managers, capacity);
+            patchedChildren = new int[capacity][];
+            slots = new LongIntHashMap(capacity);
+            for (int s = 0; s < count; s++) {
+                slots.put(ids[s], s);
+            }
+            size = count;
+            removed = 0;
+            adjacencyStale = true;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Bring employees in line with the database: drop the ones it no longer has, then re-link the rest from
+    // their (employee, manager, department) rows. Reports of a dropped employee are detached until re-linked.
+    void reconcile(Collection<Long> goneIds, List<Object[]> links) {
+        lock.writeLock().lock();
+        try {
+            journal(() -> reconcile(goneIds, links));
+            boolean[] doomed = new boolean[size];
+            boolean any = false;
+            for (Long id : goneIds) {
+                int slot = slots.get(id, NONE);
+                if (slot != NONE) {
+                    doomed[slot] = true;
+                    any = true;
+                }
+            }
+            if (any) {
+                for (int s = 0; s < size; s++) {
+                    if (parent[s] >= 0 && doomed[parent[s]] && !doomed[s]) {
+                        parent[s] = NONE;
+                    }
+                }
+                removeMarked(doomed);
+            }
+            for (Object[] link : links) {
+                int slot = slotFor(((Number) link[0]).longValue());
+                parent[slot] = link[1] == null ? NONE : slotFor(((Number) link[1]).longValue());
+                departments[slot] = link[2] == null ? 0 : ((Number) link[2]).longValue();
+            }
+            adjacencyStale = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // ==================== READS ====================
+    
+    public boolean contains(long employeeId) {
+        lock.readLock().lock();
+        try {
+            return slots.containsKey(employeeId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Manager of an employee (null for the top of the org or unknown employees)
+    public Long managerOf(long employeeId) {
+        lock.readLock().lock();
+        try {
+            int slot = slots.get(employeeId, NONE);
+            return slot == NONE || parent[slot] == NONE ? null : ids[parent[slot]];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Department of an employee (null if none or unknown)
+    public Long departmentOf(long employeeId) {
+        lock.readLock().lock();
+        try {
+            int slot = slots.get(employeeId, NONE);
+            return slot == NONE || departments[slot] == 0 ? null : departments[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Employee numbers reporting directly to a manager
+    public long[] directReports(long managerId) {
+        lockForTraversal();
+        try {
+            int slot = slots.get(managerId, NONE);
+            if (slot == NONE) {
+                return new long[0];
+            }
+            long[] result = new long[childCount(slot)];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = ids[child(slot, i)];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Employee numbers of every report (direct + indirect) down to maxDepth levels, nearest levels first
+    public long[] subtree(long managerId, int maxDepth) {
+        lockForTraversal();
+        try {
+            int root = slots.get(managerId, NONE);
+            if (root == NONE || maxDepth < 1) {
+                return new long[0];
+            }
+            // Level-order walk over the CSR arrays. The queue grows with the subtree, never past every live slot.
+            int limit = size - removed;
+            int[] queue = new int[Math.min(limit, Math.max(16, childCount(root)))];
+            int tail = 0;
+            for (int c = 0, count = childCount(root); c < count && tail < limit; c++) {
+                queue = ensureCapacity(queue, tail, limit);
+                queue[tail++] = child(root, c);
+            }
+            int head = 0;
+            for (int depth = 1; depth < maxDepth && head < tail; depth++) {
+                int levelEnd = tail;
+                for (; head < levelEnd; head++) {
+                    int s = queue[head];
+                    for (int c = 0, count = childCount(s); c < count && tail < limit; c++) {
+                        queue = ensureCapacity(queue, tail, limit);
+                        queue[tail++] = child(s, c);
+                    }
+                }
+            }
+            long[] result = new long[tail];
+            for (int i = 0; i < tail; i++) {
+                result[i] = ids[queue[i]];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Number of managers above the employee (0 = top of the org, -1 if unknown), without copying the chain
+    public int depthOf(long employeeId) {
+        lock.readLock().lock();
+        try {
+            int slot = slots.get(employeeId, NONE);
+            if (slot == NONE) {
+                return -1;
+            }
+            int depth = 0;
+            for (int s = parent[slot]; s >= 0 && depth < size; s = parent[s]) {
+                depth++;
+            }
+            return depth;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Employee numbers from the employee up to the top of the org (empty if unknown)
+    public long[] chainOfCommand(long employeeId) {
+        lock.readLock().lock();
+        try {
+            int slot = slots.get(employeeId, NONE);
+            if (slot == NONE) {
+                return new long[0];
+            }
+            int length = 0;
+            for (int s = slot; s >= 0 && length <= size; s = parent[s]) {
+                length++;
+            }
+            long[] result = new long[Math.min(length, size)];
+            int s = slot;
+            for (int i = 0; i < result.length; i++, s = parent[s]) {
+                result[i] = ids[s];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // ==================== INCREMENTAL UPDATES ====================
+    
+    // New employee (or an existing one re-pointed) below a manager and in a department (either may be null)
+    public void put(long employeeId, Long managerId, Long departmentNumber) {
+        lock.writeLock().lock();
+        try {
+            journal(() -> put(employeeId, managerId, departmentNumber));
+            int slot = slotFor(employeeId);
+            link(slot, managerId == null ? NONE : slotFor(managerId));
+            departments[slot] = departmentNumber == null ? 0 : departmentNumber;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void setDepartment(long employeeId, Long departmentNumber) {
+        lock.writeLock().lock();
+        try {
+            journal(() -> setDepartment(employeeId, departmentNumber));
+            int slot = slots.get(employeeId, NONE);
+            if (slot != NONE) {
+                departments[slot] = departmentNumber == null ? 0 : departmentNumber;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Move every member of one department into another
+    public void mergeDepartments(long fromDepartment, long intoDepartment) {
+        lock.writeLock().lock();
+        try {
+            journal(() -> mergeDepartments(fromDepartment, intoDepartment));
+            for (int s = 0; s < size; s++) {
+                if (parent[s] != REMOVED && departments[s] == fromDepartment) {
+                    departments[s] = intoDepartment;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Remove everything under an employee, and the employee too if includeRoot
+    public void removeSubtree(long employeeId, boolean includeRoot) {
+        lock.writeLock().lock();
+        try {
+            journal(() -> removeSubtree(employeeId, includeRoot));
+            int root = slots.get(employeeId, NONE);
+            if (root == NONE) {
+                return;
+            }
+            boolean[] doomed = new boolean[size];
+            doomed[root] = true;
+            markDescendants(doomed);
+            if (!includeRoot) {
+                doomed[root] = false;
+            }
+            removeMarked(doomed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Remove several employees together with everyone under them, in a single pass over the graph
+    public void removeSubtrees(Collection<Long> employeeIds) {
+        lock.writeLock().lock();
+        try {
+            List<Long> copy = new ArrayList<>(employeeIds);
+            journal(() -> removeSubtrees(copy));
+            boolean[] doomed = new boolean[size];
+            for (Long id : employeeIds) {
+                int slot = slots.get(id, NONE);
+                if (slot != NONE) {
+                    doomed[slot] = true;
+                }
+            }
+            markDescendants(doomed);
+            removeMarked(doomed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Remove every member of a department together with everyone under them
+    public void removeDepartmentMembers(long departmentNumber) {
+        lock.writeLock().lock();
+        try {
+            journal(() -> removeDepartmentMembers(departmentNumber));
+            boolean[] doomed = new boolean[size];
+            for (int s = 0; s < size; s++) {
+                doomed[s] = parent[s] != REMOVED && departments[s] == departmentNumber;
+            }
+            markDescendants(doomed);
+            removeMarked(doomed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Remove an employee and hand its reports to the employee's own manager
+    public void removeAndLiftReports(long employeeId) {
+        lock.writeLock().lock();
+        try {
+            journal(() -> removeAndLiftReports(employeeId));
+            int slot = slots.get(employeeId, NONE);
+            if (slot == NONE) {
+                return;
+            }
+            for (int s = 0; s < size; s++) {
+                if (parent[s] == slot) {
+                    link(s, parent[slot]);
+                }
+            }
+            boolean[] doomed = new boolean[size];
+            doomed[slot] = true;
+            removeMarked(doomed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // ==================== INTERNALS ====================
+    
+    // Remember an update while load() is reading, to apply it again to what the load read
+    private void journal(Runnable update) {
+        if (updatesDuringLoad != null) {
+            updatesDuringLoad.add(update);
+        }
+    }
+    
+    // Take the read lock with an up-to-date CSR adjacency
+    private void lockForTraversal() {
+        lock.readLock().lock();
+        while (adjacencyStale) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                if (adjacencyStale) {
+                    rebuildAdjacency();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            lock.readLock().lock();
+        }
+    }
+    
+    // Counting sort of slots by parent slot into the CSR arrays
+    private void rebuildAdjacency() {
+        if (removed > size / 2) {
+            compact();
+        }
+        int[] offsets = new int[size + 1];
+        for (int s = 0; s < size; s++) {
+            if (parent[s] >= 0) {
+                offsets[parent[s] + 1]++;
+            }
+        }
+        for (int s = 0; s < size; s++) {
+            offsets[s + 1] += offsets[s];
+        }
+        int[] fill = Arrays.copyOf(offsets, size);
+        int[] adjacency = new int[offsets[size]];
+        for (int s = 0; s < size; s++) {
+            if (parent[s] >= 0) {
+                adjacency[fill[parent[s]]++] = s;
+            }
+        }
+        childOffsets = offsets;
+        children = adjacency;
+        Arrays.fill(patchedChildren, null);
+        patchedCount = 0;
+        adjacencyStale = false;
+    }
+    
+    // Reports of a slot: its patched list if it has one, else its CSR range
+    private int childCount(int slot) {
+        int[] patched = patchedChildren[slot];
+        if (patched != null) {
+            return patched.length;
+        }
+        return slot + 1 < childOffsets.length ? childOffsets[slot + 1] - childOffsets[slot] : 0;
+    }
+    
+    private int child(int slot, int index) {
+        int[] patched = patchedChildren[slot];
+        return patched != null ? patched[index] : children[childOffsets[slot] + index];
+    }
+    
+    // Point a slot at a new manager slot (or NONE), patching the two report lists instead of the whole CSR
+    private void link(int slot, int newParent) {
+        int oldParent = parent[slot];
+        if (oldParent == newParent) {
+            return;
+        }
+        if (oldParent >= 0) {
+            patchChildren(oldParent, slot, false);
+        }
+        parent[slot] = newParent;
+        if (newParent >= 0) {
+            patchChildren(newParent, slot, true);
+        }
+    }
+    
+    // Copy a report list with one slot added or taken out, kept in slot order as a rebuild would have it. Once
+    // patched lists cover an eighth of the graph the next traversal folds them into a fresh CSR instead.
+    private void patchChildren(int parentSlot, int childSlot, boolean add) {
+        if (adjacencyStale) {
+            return;
+        }
+        int count = childCount(parentSlot);
+        int[] current = new int[count];
+        for (int i = 0; i < count; i++) {
+            current[i] = child(parentSlot, i);
+        }
+        int at = Arrays.binarySearch(current, childSlot);
+        int[] patched;
+        if (add) {
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            patched = new int[count + 1];
+            System.arraycopy(current, 0, patched, 0, at);
+            patched[at] = childSlot;
+            System.arraycopy(current, at, patched, at + 1, count - at);
+        } else {
+            if (at < 0) {
+                return;
+            }
+            patched = new int[count - 1];
+            System.arraycopy(current, 0, patched, 0, at);
+            System.arraycopy(current, at + 1, patched, at, count - at - 1);
+        }
+        if (patchedChildren[parentSlot] == null) {
+            patchedCount++;
+        }
+        patchedChildren[parentSlot] = patched;
+        if (patchedCount > Math.max(64, size / 8)) {
+            adjacencyStale = true;
+        }
+    }
+    
+    // Squeeze removed slots out of the arrays
+    private void compact() {
+        int[] remap = new int[size];
+        int live = 0;
+        for (int s = 0; s < size; s++) {
+            remap[s] = parent[s] == REMOVED ? NONE : live++;
+        }
+        LongIntHashMap compacted = new LongIntHashMap(live);
+        for (int s = 0; s < size; s++) {
+            int target = remap[s];
+            if (target != NONE) {
+                ids[target] = ids[s];
+                parent[target] = parent[s] == NONE ? NONE : remap[parent[s]];
+                departments[target] = departments[s];
+                compacted.put(ids[target], target);
+            }
+        }
+        slots = compacted;
+        size = live;
+        removed = 0;
+    }
+    
+    // Extend the marks down to every descendant of a marked slot
+    private void markDescendants(boolean[] marked) {
+        for (int s = 0; s < size; s++) {
+            if (marked[s] || parent[s] == REMOVED) {
+                continue;
+            }
+            // Walk up until a marked ancestor or the top; the walk is bounded in case of a cycle
+            int steps = 0;
+            int p = parent[s];
+            while (p >= 0 && !marked[p] && steps++ < size) {
+                p = parent[p];
+            }
+            if (p >= 0 && marked[p]) {
+                for (int t = s; t >= 0 && !marked[t]; t = parent[t]) {
+                    marked[t] = true;
+                }
+            }
+        }
+    }
+    
+    // Only the top of each removed subtree has to leave a report list; the rest is never reached again
+    private void removeMarked(boolean[] marked) {
+        for (int s = 0; s < size; s++) {
+            if (marked[s] && parent[s] != REMOVED) {
+                if (parent[s] >= 0 && !marked[parent[s]]) {
+                    patchChildren(parent[s], s, false);
+                }
+                slots.remove(ids[s]);
+                parent[s] = REMOVED;
+                removed++;
+            }
+        }
+        // Past half the slots, the next traversal compacts them away with a rebuild
+        if (removed > size / 2) {
+            adjacencyStale = true;
+        }
+    }
+    
+    // Slot of an employee, allocating one (with no manager) if it is not in the graph yet
+    private int slotFor(long employeeId) {
+        int slot = slots.get(employeeId, NONE);
+        if (slot != NONE) {
+            return slot;
+        }
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            departments = Arrays.copyOf(departments, capacity);
+            patchedChildren = Arrays.copyOf(patchedChildren, capacity);
+        }
+        slot = size++;
+        ids[slot] = employeeId;
+        parent[slot] = NONE;
+        departments[slot] = 0;
+        patchedChildren[slot] = null;
+        slots.put(employeeId, slot);
+        return slot;
+    }
+    
+    // The queue, doubled (up to limit) if it has no room at index tail
+    private static int[] ensureCapacity(int[] queue, int tail, int limit) {
+        return tail < queue.length ? queue : Arrays.copyOf(queue, Math.min(limit, queue.length * 2));
+    }
+}
@@ -0,0 +1,141 @@
+package io.zipcoder.persistenceapp.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// The org graph as a file, written and read through a memory mapping: a fixed header, then the employees as
+// three arrays laid out as the graph holds them, so loading one is a bulk copy out of the page cache.
+// Big-endian; the arrays start 8-byte aligned.
+//
+//   header  = MAGIC mark:long createdAt:long count:int crc:int              32 bytes; crc = CRC-32 of the arrays
+//   arrays  = ids:long[count] departments:long[count] managers:int[count]   department 0 = none;
+//                                                                           manager = index into ids, -1 = none
+//
+// mark is the change log sequence number the image is complete up to: replaying the changes after it brings
+// the graph up to date.
+public final class OrgGraphImage {
+    
+    private static final byte[] MAGIC = "ORGIMG01".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 32;
+    private static final int BYTES_PER_EMPLOYEE = 8 + 8 + 4;
+    
+    final long mark;
+    final Instant createdAt;
+    final long[] ids;
+    final long[] departments;
+    final int[] managers;
+    
+    OrgGraphImage(long mark, long[] ids, long[] departments, int[] managers) {
+        this(mark, Instant.now(), ids, departments, managers);
+    }
+    
+    private OrgGraphImage(long mark, Instant createdAt, long[] ids, long[] departments, int[] managers) {
+        this.mark = mark;
+        this.createdAt = createdAt;
+        this.ids = ids;
+        this.departments = departments;
+        this.managers = managers;
+    }
+    
+    public long getMark() {
+        return mark;
+    }
+    
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+    
+    public int getEmployeeCount() {
+        return ids.length;
+    }
+    
+    // ==================== WRITING ====================
+    
+    // Write under a temporary name and move it over the previous image, so a reader never sees half a file
+    public void write(Path file) throws IOException {
+        long length = HEADER_SIZE + (long) BYTES_PER_EMPLOYEE * ids.length;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Org graph too large for an image: " + ids.length + " employees");
+        }
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            map.position(HEADER_SIZE);
+            map.asLongBuffer().put(ids);
+            map.position(HEADER_SIZE + 8 * ids.length);
+            map.asLongBuffer().put(departments);
+            map.position(HEADER_SIZE + 16 * ids.length);
+            map.asIntBuffer().put(managers);
+            
+            map.position(0);
+            map.put(MAGIC);
+            map.putLong(mark);
+            map.putLong(createdAt.toEpochMilli());
+            map.putInt(ids.length);
+            map.putInt(checksum(map, ids.length));
+            map.force();
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    // ==================== READING ====================
+    
+    // Map an image read-only and copy its arrays out; anything incomplete or inconsistent is an IOException
+    public static OrgGraphImage read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not an org graph image: " + file);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            byte[] magic = new byte[MAGIC.length];
+            map.get(magic);
+            long mark = map.getLong();
+            Instant createdAt = Instant.ofEpochMilli(map.getLong());
+            int count = map.getInt();
+            int crc = map.getInt();
+            if (!Arrays.equals(magic, MAGIC) || count < 0 || length != HEADER_SIZE + (long) BYTES_PER_EMPLOYEE * count) {
+                throw new IOException("Not an org graph image: " + file);
+            }
+            if (checksum(map, count) != crc) {
+                throw new IOException("Org graph image is corrupt: " + file);
+            }
+            
+            long[] ids = new long[count];
+            long[] departments = new long[count];
+            int[] managers = new int[count];
+            map.position(HEADER_SIZE);
+            map.asLongBuffer().get(ids);
+            map.position(HEADER_SIZE + 8 * count);
+            map.asLongBuffer().get(departments);
+            map.position(HEADER_SIZE + 16 * count);
+            map.asIntBuffer().get(managers);
+            for (int manager : managers) {
+                if (manager < -1 || manager >= count) {
+                    throw new IOException("Org graph image is corrupt: " + file);
+                }
+            }
+            return new OrgGraphImage(mark, createdAt, ids, departments, managers);
+        }
+    }
+    
+    private static int checksum(ByteBuffer map, int count) {
+        CRC32 crc = new CRC32();
+        ByteBuffer arrays = map.duplicate();
+        arrays.position(HEADER_SIZE).limit(HEADER_SIZE + BYTES_PER_EMPLOYEE * count);
+        crc.update(arrays);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,185 @@
+package io.zipcoder.persistenceapp.graph;
+
+import io.zipcoder.persistenceapp.models.ChangeEvent;
+import io.zipcoder.persistenceapp.models.ChangePage;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import io.zipcoder.persistenceapp.services.ChangeLogService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// app.org-graph.image.path: keeps an image of the org graph on disk (see OrgGraphImage), rewritten every
+// app.org-graph.image.interval and at shutdown, so a restarted node answers hierarchy reads from the image
+// as soon as the context is up instead of loading every employee first. The image carries the change log
+// sequence number it is complete up to; after startup the changes since are replayed in the background, by
+// re-reading the employees they touched. If the image is missing or unreadable, the log was reset under it, or
+// more than app.org-graph.image.max-replay changes have piled up, the graph loads from the database as before.
+@Component
+@ConditionalOnExpression("${app.org-graph.enabled:true} and '${app.org-graph.image.path:}' != ''")
+public class OrgGraphWarmStart {
+    
+    // Entries replayed per transaction
+    private static final int REPLAY_PAGE_SIZE = 1000;
+    
+    // How long an image write waits for commits in flight to finish their after-commit updates
+    private static final Duration SETTLE_TIMEOUT = Duration.ofSeconds(5);
+    
+    @Autowired
+    private OrgGraph orgGraph;
+    
+    @Autowired
+    private ChangeLogService changeLog;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Value("${app.org-graph.image.path}")
+    private Path imagePath;
+    
+    @Value("${app.org-graph.image.interval:10m}")
+    private Duration interval;
+    
+    @Value("${app.org-graph.image.max-replay:100000}")
+    private int maxReplay;
+    
+    // Mark of the image the graph was started from, until the changes since have been replayed
+    private volatile OptionalLong replayFrom = OptionalLong.empty();
+    
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "org-graph-image");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // ==================== STARTUP ====================
+    
+    // Before the web server takes requests; the database is not touched
+    @PostConstruct
+    void mapImage() {
+        if (!Files.isRegularFile(imagePath)) {
+            return;
+        }
+        try {
+            OrgGraphImage image = OrgGraphImage.read(imagePath);
+            orgGraph.load(image);
+            replayFrom = OptionalLong.of(image.getMark());
+        } catch (IOException e) {
+            // Unusable image: the graph loads from the database at startup and the next write replaces it
+        }
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        worker.execute(this::catchUp);
+        long period = interval.toMillis();
+        worker.scheduleWithFixedDelay(this::writeQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    void shutdown() {
+        worker.shutdownNow();
+        try {
+            worker.awaitTermination(SETTLE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeQuietly();
+    }
+    
+    // ==================== REPLAY ====================
+    
+    private void catchUp() {
+        if (!replayFrom.isPresent()) {
+            return;
+        }
+        if (!replay(replayFrom.getAsLong()) || orgGraph.size() != employeeRepository.count()) {
+            orgGraph.reload();
+        }
+        replayFrom = OptionalLong.empty();
+    }
+    
+    // Apply the employee changes after a mark, a page at a time, until a page comes back empty: a commit that
+    // races a page is picked up again by the next one. False if the graph should be loaded afresh instead.
+    boolean replay(long mark) {
+        if (changeLog.headSequence() < mark) {
+            return false;
+        }
+        long since = mark;
+        int replayed = 0;
+        while (true) {
+            long from = since;
+            ChangePage page = transactionTemplate.execute(status -> replayPage(from));
+            if (page.getChanges().isEmpty()) {
+                return true;
+            }
+            replayed += page.getChanges().size();
+            if (replayed > maxReplay) {
+                return false;
+            }
+            since = page.getNext();
+        }
+    }
+    
+    private ChangePage replayPage(long since) {
+        ChangePage page = changeLog.changesAfter(since, REPLAY_PAGE_SIZE);
+        Set<Long> touched = new HashSet<>();
+        for (ChangeEvent change : page.getChanges()) {
+            if (change.getEntityType() == ChangeEvent.EntityType.EMPLOYEE) {
+                touched.add(change.getEntityId());
+            }
+        }
+        if (!touched.isEmpty()) {
+            List<Object[]> links = employeeRepository.findHierarchyLinksById(touched);
+            Set<Long> gone = new HashSet<>(touched);
+            for (Object[] link : links) {
+                gone.remove(((Number) link[0]).longValue());
+            }
+            orgGraph.reconcile(gone, links);
+        }
+        return page;
+    }
+    
+    // ==================== WRITING ====================
+    
+    // Write the image unless the graph is still loading or catching up; true if it was written
+    boolean write() throws IOException {
+        if (!orgGraph.isLoaded() || replayFrom.isPresent()) {
+            return false;
+        }
+        OptionalLong mark = changeLog.settledSequence(SETTLE_TIMEOUT);
+        if (!mark.isPresent()) {
+            return false;
+        }
+        orgGraph.toImage(mark.getAsLong()).write(imagePath);
+        return true;
+    }
+    
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            // The previous image stays; its older mark only means a longer replay
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package io.zipcoder.persistenceapp.graph;
+
+import io.zipcoder.persistenceapp.models.ReorgPreview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Proposed changes to the org chart, held on top of an OrgSnapshot without touching it or the database. The
+// snapshot's arrays are shared until the first change to each (copy-on-write), so an overlay that only reads
+// costs nothing and the snapshot stays the "before" side of the diff. Not thread-safe: one per preview.
+public final class OrgOverlay {
+    
+    private final OrgSnapshot base;
+    private int[] managers;
+    private long[] departments;
+    // Employees deleted by the changes, or null until the first delete
+    private boolean[] removed;
+    
+    public OrgOverlay(OrgSnapshot base) {
+        this.base = base;
+        this.managers = base.managers;
+        this.departments = base.departments;
+    }
+    
+    // ==================== READS ====================
+    
+    public boolean contains(long employeeId) {
+        int slot = base.slotOf(employeeId);
+        return slot != OrgSnapshot.NONE && !isRemoved(slot);
+    }
+    
+    // The employee's department, or null if none (or the employee is not there)
+    public Long departmentOf(long employeeId) {
+        int slot = liveSlot(employeeId);
+        return slot == OrgSnapshot.NONE || departments[slot] == 0 ? null : departments[slot];
+    }
+    
+    // ==================== CHANGES ====================
+    
+    // As EmployeeService.setManager: rejected if the manager is the employee or reports to it
+    public void setManager(long employeeId, long managerId) {
+        int slot = liveSlot(employeeId);
+        int manager = liveSlot(managerId);
+        if (slot == OrgSnapshot.NONE) {
+            throw new RuntimeException("Employee not found");
+        }
+        if (manager == OrgSnapshot.NONE) {
+            throw new RuntimeException("Manager not found");
+        }
+        // Bounded like OrgGraph's walks, in case the snapshot itself holds a cycle
+        int steps = 0;
+        for (int t = manager; t != OrgSnapshot.NONE && steps++ <= managers.length; t = managers[t]) {
+            if (t == slot) {
+                throw new RuntimeException("Cannot set manager: it would create a reporting cycle");
+            }
+        }
+        if (managers == base.managers) {
+            managers = base.managers.clone();
+        }
+        managers[slot] = manager;
+    }
+    
+    public void setDepartment(long employeeId, Long departmentNumber) {
+        int slot = liveSlot(employeeId);
+        if (slot == OrgSnapshot.NONE) {
+            throw new RuntimeException("Employee not found");
+        }
+        writableDepartments()[slot] = departmentNumber == null ? 0 : departmentNumber;
+    }
+    
+    // Move every member of one department into another
+    public void mergeDepartments(long fromDepartment, long intoDepartment) {
+        long[] writable = null;
+        for (int s = 0; s < departments.length; s++) {
+            if (departments[s] == fromDepartment && !isRemoved(s)) {
+                if (writable == null) {
+                    writable = writableDepartments();
+                }
+                writable[s] = intoDepartment;
+            }
+        }
+    }
+    
+    // Delete an employee and everyone under it; returns the employees deleted
+    public List<Long> removeSubtree(long employeeId) {
+        int root = liveSlot(employeeId);
+        if (root == OrgSnapshot.NONE) {
+            throw new RuntimeException("Employee not found");
+        }
+        if (removed == null) {
+            removed = new boolean[managers.length];
+        }
+        boolean[] doomed = new boolean[managers.length];
+        doomed[root] = true;
+        for (int s = 0; s < managers.length; s++) {
+            if (doomed[s] || removed[s]) {
+                continue;
+            }
+            int steps = 0;
+            int p = managers[s];
+            while (p != OrgSnapshot.NONE && !doomed[p] && steps++ < managers.length) {
+                p = managers[p];
+            }
+            if (p != OrgSnapshot.NONE && doomed[p]) {
+                for (int t = s; t != OrgSnapshot.NONE && !doomed[t]; t = managers[t]) {
+                    doomed[t] = true;
+                }
+            }
+        }
+        List<Long> gone = new ArrayList<>();
+        for (int s = 0; s < doomed.length; s++) {
+            if (doomed[s]) {
+                removed[s] = true;
+                gone.add(base.ids[s]);
+            }
+        }
+        return gone;
+    }
+    
+    // ==================== DIFF ====================
+    
+    // Compare the overlay with its snapshot: who changes manager or department, at what depth, and whose span changes
+    public ReorgPreview diff() {
+        int count = managers.length;
+        int[] depthBefore = depths(base.managers, null);
+        int[] depthAfter = managers == base.managers && removed == null ? depthBefore : depths(managers, removed);
+        int[] spanBefore = spans(base.managers, null);
+        int[] spanAfter = managers == base.managers && removed == null ? spanBefore : spans(managers, removed);
+        
+        List<ReorgPreview.Move> moves = new ArrayList<>();
+        List<ReorgPreview.SpanChange> spanChanges = new ArrayList<>();
+        List<Long> removedEmployees = new ArrayList<>();
+        int remaining = 0;
+        int depthChanges = 0;
+        for (int s = 0; s < count; s++) {
+            if (isRemoved(s)) {
+                removedEmployees.add(base.ids[s]);
+                continue;
+            }
+            remaining++;
+            if (depthBefore[s] != depthAfter[s]) {
+                depthChanges++;
+            }
+            if (spanBefore[s] != spanAfter[s]) {
+                spanChanges.add(new ReorgPreview.SpanChange(base.ids[s], spanBefore[s], spanAfter[s]));
+            }
+            if (managers[s] != base.managers[s] || departments[s] != base.departments[s]) {
+                moves.add(new ReorgPreview.Move(base.ids[s], idOf(base.managers[s]), idOf(managers[s]),
+                    departmentOrNull(base.departments[s]), departmentOrNull(departments[s]), depthBefore[s], depthAfter[s]));
+            }
+        }
+        return new ReorgPreview(remaining, moves, depthChanges, spanChanges, removedEmployees);
+    }
+    
+    // Depth of every employee (0 = no manager), each chain walked once: a walk stops at the first employee
+    // whose depth is already known and fills in the ones it passed on the way back down
+    private static int[] depths(int[] managers, boolean[] removed) {
+        int count = managers.length;
+        int[] depth = new int[count];
+        Arrays.fill(depth, -1);
+        int[] chain = new int[count];
+        for (int s = 0; s < count; s++) {
+            if (depth[s] >= 0 || (removed != null && removed[s])) {
+                continue;
+            }
+            int length = 0;
+            int t = s;
+            while (t != OrgSnapshot.NONE && depth[t] < 0 && length < count) {
+                chain[length++] = t;
+                t = managers[t];
+            }
+            int d = t == OrgSnapshot.NONE || length == count ? -1 : depth[t];
+            while (length > 0) {
+                depth[chain[--length]] = ++d;
+            }
+        }
+        return depth;
+    }
+    
+    private static int[] spans(int[] managers, boolean[] removed) {
+        int[] span = new int[managers.length];
+        for (int s = 0; s < managers.length; s++) {
+            if (managers[s] != OrgSnapshot.NONE && (removed == null || !removed[s])) {
+                span[managers[s]]++;
+            }
+        }
+        return span;
+    }
+    
+    // ==================== HELPERS ====================
+    
+    private int liveSlot(long employeeId) {
+        int slot = base.slotOf(employeeId);
+        return slot == OrgSnapshot.NONE || isRemoved(slot) ? OrgSnapshot.NONE : slot;
+    }
+    
+    private boolean isRemoved(int slot) {
+        return removed != null && removed[slot];
+    }
+    
+    private long[] writableDepartments() {
+        if (departments == base.departments) {
+            departments = base.departments.clone();
+        }
+        return departments;
+    }
+    
+    private Long idOf(int slot) {
+        return slot == OrgSnapshot.NONE ? null : base.ids[slot];
+    }
+    
+    private static Long departmentOrNull(long department) {
+        return department == 0 ? null : department;
+    }
+}
@@ -0,0 +1,54 @@
+package io.zipcoder.persistenceapp.graph;
+
+import java.util.List;
+
+// A frozen copy of the org chart: every employee in a dense slot with its department (0 = none) and the slot of
+// its manager (-1 = none). Taken from the live OrgGraph, or built from EmployeeRepository.findAllHierarchyLinks
+// when the graph is off. Never written after construction, so any number of OrgOverlays can share one.
+public final class OrgSnapshot {
+    
+    static final int NONE = -1;
+    
+    final long[] ids;
+    final long[] departments;
+    final int[] managers;
+    private final LongIntHashMap slots;
+    
+    OrgSnapshot(long[] ids, long[] departments, int[] managers) {
+        this.ids = ids;
+        this.departments = departments;
+        this.managers = managers;
+        this.slots = new LongIntHashMap(Math.max(16, ids.length));
+        for (int s = 0; s < ids.length; s++) {
+            slots.put(ids[s], s);
+        }
+    }
+    
+    // From (employee, manager, department) rows; a manager missing from the rows counts as none
+    public static OrgSnapshot of(List<Object[]> links) {
+        int count = links.size();
+        long[] ids = new long[count];
+        long[] departments = new long[count];
+        int[] managers = new int[count];
+        for (int s = 0; s < count; s++) {
+            Object[] link = links.get(s);
+            ids[s] = ((Number) link[0]).longValue();
+            departments[s] = link[2] == null ? 0 : ((Number) link[2]).longValue();
+        }
+        OrgSnapshot snapshot = new OrgSnapshot(ids, departments, managers);
+        for (int s = 0; s < count; s++) {
+            Object[] link = links.get(s);
+            managers[s] = link[1] == null ? NONE : snapshot.slotOf(((Number) link[1]).longValue());
+        }
+        return snapshot;
+    }
+    
+    public int size() {
+        return ids.length;
+    }
+    
+    // Slot of an employee, or -1 if the snapshot does not have it
+    int slotOf(long employeeId) {
+        return slots.get(employeeId, NONE);
+    }
+}
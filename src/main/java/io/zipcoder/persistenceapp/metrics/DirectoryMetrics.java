@@ -0,0 +1,32 @@
+package io.zipcoder.persistenceapp.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// Shape of the hierarchy traversals the services run: how many levels a walk covered and how many
+// employees it returned. Tagged by traversal (subtree, chain) and by where it ran (graph = in-memory
+// org chart, index = materialized path queries).
+@Component
+public class DirectoryMetrics {
+    
+    static final String TRAVERSAL_DEPTH = "directory.hierarchy.depth";
+    static final String TRAVERSAL_NODES = "directory.hierarchy.nodes";
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    public void recordTraversal(String traversal, String source, int depth, int nodes) {
+        DistributionSummary.builder(TRAVERSAL_DEPTH)
+            .description("Levels covered by a hierarchy traversal")
+            .tags("traversal", traversal, "source", source)
+            .register(meterRegistry)
+            .record(depth);
+        DistributionSummary.builder(TRAVERSAL_NODES)
+            .description("Employees returned by a hierarchy traversal")
+            .tags("traversal", traversal, "source", source)
+            .register(meterRegistry)
+            .record(nodes);
+    }
+}
@@ -0,0 +1,28 @@
+package io.zipcoder.persistenceapp.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.stereotype.Component;
+
+// Counts the SQL statements Hibernate prepares on the current thread. Plugged into the session factory as
+// its statement inspector, so every statement - queries, lazy loads, flushes - passes through here.
+// JdbcTemplate statements (bulk import) do not go through Hibernate and are not counted.
+@Component
+public class SqlStatementCounter implements StatementInspector {
+    
+    private final ThreadLocal<long[]> statements = ThreadLocal.withInitial(() -> new long[1]);
+    
+    @Override
+    public String inspect(String sql) {
+        statements.get()[0]++;
+        return sql;
+    }
+    
+    // Statements prepared on this thread since the last reset
+    public long count() {
+        return statements.get()[0];
+    }
+    
+    public void reset() {
+        statements.get()[0] = 0;
+    }
+}
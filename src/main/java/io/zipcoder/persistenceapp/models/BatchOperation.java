@@ -0,0 +1,82 @@
+package io.zipcoder.persistenceapp.models;
+
+// One step of a batch (POST /API/batch). What each type needs:
+//   SET_MANAGER            employeeNumber, managerEmployeeNumber
+//   UPDATE_EMPLOYEE        employeeNumber, employee (the new field values, as for PUT /API/employees/{id})
+//   SET_DEPARTMENT         employeeNumber, departmentNumber (null = no department)
+//   SET_DEPARTMENT_MANAGER departmentNumber, employeeNumber
+//   DELETE_EMPLOYEE        employeeNumber (everyone below goes with it)
+//   MERGE_DEPARTMENTS      departmentNumber (the one that stays), mergedDepartmentNumber (absorbed, then deleted)
+public class BatchOperation {
+    
+    public enum Type {
+        SET_MANAGER,
+        UPDATE_EMPLOYEE,
+        SET_DEPARTMENT,
+        SET_DEPARTMENT_MANAGER,
+        DELETE_EMPLOYEE,
+        MERGE_DEPARTMENTS
+    }
+    
+    private Type type;
+    private Long employeeNumber;
+    private Long managerEmployeeNumber;
+    private Long departmentNumber;
+    private Long mergedDepartmentNumber;
+    private Employee employee;
+    
+    public BatchOperation() {}
+    
+    public BatchOperation(Type type, Long employeeNumber) {
+        this.type = type;
+        this.employeeNumber = employeeNumber;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public void setType(Type type) {
+        this.type = type;
+    }
+    
+    public Long getEmployeeNumber() {
+        return employeeNumber;
+    }
+    
+    public void setEmployeeNumber(Long employeeNumber) {
+        this.employeeNumber = employeeNumber;
+    }
+    
+    public Long getManagerEmployeeNumber() {
+        return managerEmployeeNumber;
+    }
+    
+    public void setManagerEmployeeNumber(Long managerEmployeeNumber) {
+        this.managerEmployeeNumber = managerEmployeeNumber;
+    }
+    
+    public Long getDepartmentNumber() {
+        return departmentNumber;
+    }
+    
+    public void setDepartmentNumber(Long departmentNumber) {
+        this.departmentNumber = departmentNumber;
+    }
+    
+    public Long getMergedDepartmentNumber() {
+        return mergedDepartmentNumber;
+    }
+    
+    public void setMergedDepartmentNumber(Long mergedDepartmentNumber) {
+        this.mergedDepartmentNumber = mergedDepartmentNumber;
+    }
+    
+    public Employee getEmployee() {
+        return employee;
+    }
+    
+    public void setEmployee(Employee employee) {
+        this.employee = employee;
+    }
+}
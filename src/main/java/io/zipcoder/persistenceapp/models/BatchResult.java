@@ -0,0 +1,70 @@
+package io.zipcoder.persistenceapp.models;
+
+import java.util.List;
+
+// Outcome of a batch. Either every operation was applied and committed, or none was: the failed
+// operation carries the error, the ones before it were rolled back and the ones after it never ran.
+public class BatchResult {
+    
+    public enum Status {
+        APPLIED,
+        ROLLED_BACK,
+        FAILED,
+        NOT_RUN
+    }
+    
+    private final boolean committed;
+    private final String error;
+    private final List<Outcome> operations;
+    
+    public BatchResult(boolean committed, String error, List<Outcome> operations) {
+        this.committed = committed;
+        this.error = error;
+        this.operations = operations;
+    }
+    
+    public boolean isCommitted() {
+        return committed;
+    }
+    
+    // Why the batch was rolled back (null when committed)
+    public String getError() {
+        return error;
+    }
+    
+    public List<Outcome> getOperations() {
+        return operations;
+    }
+    
+    // What happened to one operation, in request order
+    public static class Outcome {
+        
+        private final int index;
+        private final BatchOperation.Type type;
+        private final Status status;
+        private final String error;
+        
+        public Outcome(int index, BatchOperation.Type type, Status status, String error) {
+            this.index = index;
+            this.type = type;
+            this.status = status;
+            this.error = error;
+        }
+        
+        public int getIndex() {
+            return index;
+        }
+        
+        public BatchOperation.Type getType() {
+            return type;
+        }
+        
+        public Status getStatus() {
+            return status;
+        }
+        
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.zipcoder.persistenceapp.models;
+
+// Counters of one Hibernate second-level cache region (an entity, a collection or the query results):
+// puts are entries written after a miss or a change
+public class CacheRegionStatistics {
+    
+    private final String name;
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    
+    public CacheRegionStatistics(String name, long hitCount, long missCount, long putCount) {
+        this.name = name;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public long getHitCount() {
+        return hitCount;
+    }
+    
+    public long getMissCount() {
+        return missCount;
+    }
+    
+    public long getPutCount() {
+        return putCount;
+    }
+    
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+}
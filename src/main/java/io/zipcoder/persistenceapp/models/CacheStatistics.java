@@ -0,0 +1,59 @@
+package io.zipcoder.persistenceapp.models;
+
+// Counters of one lookup cache, for sizing it: evictions are entries dropped for size or age,
+// invalidations are entries removed because the data behind them changed
+public class CacheStatistics {
+    
+    private final String name;
+    private final long size;
+    private final long maximumSize;
+    private final long hitCount;
+    private final long missCount;
+    private final double hitRate;
+    private final long evictionCount;
+    private final long invalidationCount;
+    
+    public CacheStatistics(String name, long size, long maximumSize, long hitCount, long missCount, double hitRate,
+                           long evictionCount, long invalidationCount) {
+        this.name = name;
+        this.size = size;
+        this.maximumSize = maximumSize;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.hitRate = hitRate;
+        this.evictionCount = evictionCount;
+        this.invalidationCount = invalidationCount;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+    
+    public long getHitCount() {
+        return hitCount;
+    }
+    
+    public long getMissCount() {
+        return missCount;
+    }
+    
+    public double getHitRate() {
+        return hitRate;
+    }
+    
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+}
@@ -0,0 +1,59 @@
+package io.zipcoder.persistenceapp.models;
+
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+// One entry of the change log: an employee or department was created or changed (UPSERT) or is gone (DELETE).
+// Sequence numbers follow commit order, so a consumer that has read everything up to N only ever needs the
+// entries after N. An UPSERT carries no data: the consumer reads the employee or department again.
+@Entity
+@Immutable
+@Table(name = "change_log")
+public class ChangeEvent {
+    
+    public enum EntityType { EMPLOYEE, DEPARTMENT }
+    
+    public enum Operation { UPSERT, DELETE }
+    
+    @Id
+    @Column(name = "seq")
+    private Long sequence;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type", nullable = false, length = 16)
+    private EntityType entityType;
+    
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "operation", nullable = false, length = 8)
+    private Operation operation;
+    
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+    
+    public ChangeEvent() {}
+    
+    public Long getSequence() {
+        return sequence;
+    }
+    
+    public EntityType getEntityType() {
+        return entityType;
+    }
+    
+    public Long getEntityId() {
+        return entityId;
+    }
+    
+    public Operation getOperation() {
+        return operation;
+    }
+    
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
@@ -0,0 +1,32 @@
+package io.zipcoder.persistenceapp.models;
+
+import javax.persistence.*;
+
+// The one row holding the last change log sequence number handed out. A committing transaction updates it
+// (and so holds its row lock until it commits) to take its sequence numbers: see ChangeLogService.
+@Entity
+@Table(name = "change_log_head")
+public class ChangeLogHead {
+    
+    @Id
+    @Column(name = "id")
+    private Integer id;
+    
+    @Column(name = "last_seq", nullable = false)
+    private Long lastSequence;
+    
+    public ChangeLogHead() {}
+    
+    public ChangeLogHead(Integer id, Long lastSequence) {
+        this.id = id;
+        this.lastSequence = lastSequence;
+    }
+    
+    public Integer getId() {
+        return id;
+    }
+    
+    public Long getLastSequence() {
+        return lastSequence;
+    }
+}
@@ -0,0 +1,30 @@
+package io.zipcoder.persistenceapp.models;
+
+import java.util.List;
+
+// A run of change log entries. next is the sequence number to ask for changes since next time (the last entry's,
+// or the requested one when nothing changed); more says another page is already waiting.
+public class ChangePage {
+    
+    private final List<ChangeEvent> changes;
+    private final long next;
+    private final boolean more;
+    
+    public ChangePage(List<ChangeEvent> changes, long since, int requestedSize) {
+        this.changes = changes;
+        this.next = changes.isEmpty() ? since : changes.get(changes.size() - 1).getSequence();
+        this.more = changes.size() == requestedSize;
+    }
+    
+    public List<ChangeEvent> getChanges() {
+        return changes;
+    }
+    
+    public long getNext() {
+        return next;
+    }
+    
+    public boolean isMore() {
+        return more;
+    }
+}
@@ -0,0 +1,117 @@
+package io.zipcoder.persistenceapp.models;
+
+import java.time.Instant;
+
+// A bulk delete running in the background (see DeletionJobService). The employees to delete are counted when
+// the job is submitted; every chunk commits on its own, so a failed or cancelled job keeps what it already
+// deleted. Only the job's worker thread updates it, status readers may see it mid-chunk.
+public class DeletionJob {
+    
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+    
+    private final long id;
+    private final String operation;
+    private final int totalEmployees;
+    private final Instant submittedAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile int deletedEmployees;
+    private volatile int chunks;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    
+    public DeletionJob(long id, String operation, int totalEmployees) {
+        this.id = id;
+        this.operation = operation;
+        this.totalEmployees = totalEmployees;
+        this.submittedAt = Instant.now();
+    }
+    
+    // ==================== LIFECYCLE (worker thread) ====================
+    
+    public void started() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+    
+    public void chunkDeleted(int employees) {
+        deletedEmployees += employees;
+        chunks++;
+    }
+    
+    public void finished(Status outcome, String error) {
+        this.error = error;
+        finishedAt = Instant.now();
+        status = outcome;
+    }
+    
+    // Stop before the next chunk; a queued job stops before its first
+    public void requestCancel() {
+        cancelRequested = true;
+    }
+    
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+    
+    public boolean isFinished() {
+        return status != Status.QUEUED && status != Status.RUNNING;
+    }
+    
+    // ==================== STATUS ====================
+    
+    public long getId() {
+        return id;
+    }
+    
+    // What was asked for, e.g. "removeAllFromDepartment 3"
+    public String getOperation() {
+        return operation;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    // Employees in the subtrees to delete when the job was submitted
+    public int getTotalEmployees() {
+        return totalEmployees;
+    }
+    
+    // Employees deleted by committed chunks (may end above the total if employees were added meanwhile)
+    public int getDeletedEmployees() {
+        return deletedEmployees;
+    }
+    
+    public int getChunks() {
+        return chunks;
+    }
+    
+    public double getProgress() {
+        return totalEmployees == 0 ? 1.0 : Math.min(1.0, (double) deletedEmployees / totalEmployees);
+    }
+    
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+    
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+    
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+    
+    // Why the job failed (null otherwise)
+    public String getError() {
+        return error;
+    }
+}
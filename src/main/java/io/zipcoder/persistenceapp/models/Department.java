@@ -1,18 +1,26 @@
 package io.zipcoder.persistenceapp.models;
 
 import javax.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @Table(name = "departments")
+// Second-level cached like Employee; the headcount is maintained in the database and may be stale here
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "department-entities")
 public class Department {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "departments_seq")
+    @SequenceGenerator(name = "departments_seq", sequenceName = "departments_seq", allocationSize = 50)
     @Column(name = "dept_num")
     private Long departmentNumber;
     
@@ -20,16 +28,27 @@ public class Department {
     private String departmentName;
     
     // One department has one manager (who is an Employee)
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "manager_id")
     @JsonIgnoreProperties({"department", "manager", "directReports"}) 
     private Employee manager;
     
-    // One department has many employees
-    @OneToMany(mappedBy = "department", cascade = CascadeType.ALL)
+    // One department has many employees (not cascaded: members are deleted set-based, see EmployeeService)
+    @OneToMany(mappedBy = "department")
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "department-members")
     @JsonIgnoreProperties({"department", "manager", "directReports"}) 
     private List<Employee> employees = new ArrayList<>();
     
+    // Number of employees in the department, maintained in the database by OrgStatisticsService
+    @JsonIgnore
+    @Column(name = "headcount", insertable = false, updatable = false, columnDefinition = "INTEGER DEFAULT 0 NOT NULL")
+    private int headcount;
+    
+    // Optimistic lock, as on Employee
+    @Version
+    @Column(name = "version", columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private Long version;
+    
     // Constructors
     public Department() {}
     
@@ -69,4 +88,16 @@ public class Department {
     public void setEmployees(List<Employee> employees) {
         this.employees = employees;
     }
-}
\ No newline at end of file
+    
+    public int getHeadcount() {
+        return headcount;
+    }
+    
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,39 @@
+package io.zipcoder.persistenceapp.models;
+
+// Immutable copy of a department and its manager, as held by the lookup cache. Members are not included;
+// they are listed through /API/employees/department/{deptNum} (or its page / stream variants).
+public class DepartmentDto {
+    
+    private final Long departmentNumber;
+    private final String departmentName;
+    private final EmployeeDto.ManagerRef manager;
+    private final Long version;
+    
+    public DepartmentDto(Long departmentNumber, String departmentName, EmployeeDto.ManagerRef manager, Long version) {
+        this.departmentNumber = departmentNumber;
+        this.departmentName = departmentName;
+        this.manager = manager;
+        this.version = version;
+    }
+    
+    public static DepartmentDto from(Department department) {
+        return new DepartmentDto(department.getDepartmentNumber(), department.getDepartmentName(),
+            EmployeeDto.ManagerRef.of(department.getManager()), department.getVersion());
+    }
+    
+    public Long getDepartmentNumber() {
+        return departmentNumber;
+    }
+    
+    public String getDepartmentName() {
+        return departmentName;
+    }
+    
+    public EmployeeDto.ManagerRef getManager() {
+        return manager;
+    }
+    
+    public Long getVersion() {
+        return version;
+    }
+}
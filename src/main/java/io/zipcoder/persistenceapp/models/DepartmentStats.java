@@ -0,0 +1,20 @@
+package io.zipcoder.persistenceapp.models;
+
+// Precomputed statistics of one department and the org under its manager, read in one primary-key lookup
+public interface DepartmentStats {
+    
+    Long getDepartmentNumber();
+    
+    String getDepartmentName();
+    
+    Integer getHeadcount();
+    
+    Long getManagerEmployeeNumber();
+    
+    // Span of control, total reports and reporting levels below the manager (null without a manager)
+    Integer getManagerDirectReports();
+    
+    Integer getManagerTotalReports();
+    
+    Integer getManagerLevelsBelow();
+}
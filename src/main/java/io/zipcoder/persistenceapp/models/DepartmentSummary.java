@@ -0,0 +1,13 @@
+package io.zipcoder.persistenceapp.models;
+
+// Projection of a department row with its manager's number and headcount, read in one statement
+public interface DepartmentSummary {
+    
+    Long getDepartmentNumber();
+    
+    String getDepartmentName();
+    
+    Long getManagerEmployeeNumber();
+    
+    Long getHeadcount();
+}
@@ -1,17 +1,31 @@
 package io.zipcoder.persistenceapp.models;
 
 import javax.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @Entity
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+// Schema and indexes come from the Flyway migrations (db/migration); RequiredIndexes checks the indexes at startup
 @Table(name = "employees")
+// In the second-level cache along with its direct reports. Non-strict: bulk statements clear the regions as
+// they run (read-write would keep handing the old entries to the very transaction that ran them until it
+// ends), and entries are dropped again once it finishes. The columns maintained in the database (hierarchy
+// path, org statistics) can be stale on a cached copy: read them with a query, never from a loaded entity.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "employee-entities")
 public class Employee {
     
+    // Sequence ids (not IDENTITY) so Hibernate can batch inserts; the pooled optimizer hands out
+    // blocks of 50 numbers per sequence call
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employees_seq")
+    @SequenceGenerator(name = "employees_seq", sequenceName = "employees_seq", allocationSize = 50)
     @Column(name = "emp_number")
     private Long employeeNumber;
     
@@ -34,22 +48,54 @@ public class Employee {
     private LocalDate hireDate;
     
     // Self-referential: Employee reports to another Employee (manager)
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "manager_id")
     @JsonIgnoreProperties({"directReports", "manager"})
     private Employee manager;
     
-    // Inverse: One manager has many direct reports
-    @OneToMany(mappedBy = "manager", cascade = CascadeType.ALL)
+    // Inverse: One manager has many direct reports (not cascaded: subtrees are deleted set-based)
+    @OneToMany(mappedBy = "manager")
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "employee-reports")
     @JsonIgnoreProperties({"directReports", "manager"}) 
     private List<Employee> directReports = new ArrayList<>();
     
     // Many employees belong to one department
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "dept_num")
     @JsonIgnoreProperties({"employees", "manager"})
     private Department department;
     
+    // Hierarchy index: employee numbers from the top of the org down to this employee, e.g. "/1/5/12/".
+    // Maintained in the database by HierarchyIndexService, never written through the entity.
+    @JsonIgnore
+    @Column(name = "org_path", length = 2048, insertable = false, updatable = false)
+    private String orgPath;
+    
+    // Number of managers above this employee (0 = top of the org)
+    @JsonIgnore
+    @Column(name = "org_depth", insertable = false, updatable = false)
+    private Integer orgDepth;
+    
+    // Precomputed org statistics, maintained in the database by OrgStatisticsService: span of control,
+    // everyone below the employee (direct and indirect) and the number of reporting levels below it
+    @JsonIgnore
+    @Column(name = "direct_reports", insertable = false, updatable = false, columnDefinition = "INTEGER DEFAULT 0 NOT NULL")
+    private int directReportCount;
+    
+    @JsonIgnore
+    @Column(name = "total_reports", insertable = false, updatable = false, columnDefinition = "INTEGER DEFAULT 0 NOT NULL")
+    private int totalReportCount;
+    
+    @JsonIgnore
+    @Column(name = "levels_below", insertable = false, updatable = false, columnDefinition = "INTEGER DEFAULT 0 NOT NULL")
+    private int levelsBelow;
+    
+    // Optimistic lock: bumped on every change written through the entity (and by the set-based updates that
+    // change a manager or department). A client sends back the version it read; a stale one is a 409.
+    @Version
+    @Column(name = "version", columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private Long version;
+    
     // Constructors
     public Employee() {}
     
@@ -140,4 +186,32 @@ public class Employee {
     public void setDepartment(Department department) {
         this.department = department;
     }
-}
\ No newline at end of file
+    
+    public String getOrgPath() {
+        return orgPath;
+    }
+    
+    public Integer getOrgDepth() {
+        return orgDepth;
+    }
+    
+    public int getDirectReportCount() {
+        return directReportCount;
+    }
+    
+    public int getTotalReportCount() {
+        return totalReportCount;
+    }
+    
+    public int getLevelsBelow() {
+        return levelsBelow;
+    }
+    
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
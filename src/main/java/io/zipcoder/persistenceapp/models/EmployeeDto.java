@@ -0,0 +1,147 @@
+package io.zipcoder.persistenceapp.models;
+
+import java.time.LocalDate;
+
+// Immutable copy of an employee with its manager and department reduced to references. This is what the
+// lookup cache holds: it is safe to share across threads and never lazy-loads after the session is gone.
+public class EmployeeDto {
+    
+    private final Long employeeNumber;
+    private final String firstName;
+    private final String lastName;
+    private final String title;
+    private final String phoneNumber;
+    private final String email;
+    private final LocalDate hireDate;
+    private final ManagerRef manager;
+    private final DepartmentRef department;
+    private final Long version;
+    
+    public EmployeeDto(Long employeeNumber, String firstName, String lastName, String title, String phoneNumber,
+                       String email, LocalDate hireDate, ManagerRef manager, DepartmentRef department, Long version) {
+        this.employeeNumber = employeeNumber;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.title = title;
+        this.phoneNumber = phoneNumber;
+        this.email = email;
+        this.hireDate = hireDate;
+        this.manager = manager;
+        this.department = department;
+        this.version = version;
+    }
+    
+    // Copy an employee (its manager and department must be loadable, i.e. inside a transaction)
+    public static EmployeeDto from(Employee employee) {
+        return new EmployeeDto(employee.getEmployeeNumber(), employee.getFirstName(), employee.getLastName(),
+            employee.getTitle(), employee.getPhoneNumber(), employee.getEmail(), employee.getHireDate(),
+            ManagerRef.of(employee.getManager()), DepartmentRef.of(employee.getDepartment()), employee.getVersion());
+    }
+    
+    public Long getEmployeeNumber() {
+        return employeeNumber;
+    }
+    
+    public String getFirstName() {
+        return firstName;
+    }
+    
+    public String getLastName() {
+        return lastName;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public LocalDate getHireDate() {
+        return hireDate;
+    }
+    
+    public ManagerRef getManager() {
+        return manager;
+    }
+    
+    public DepartmentRef getDepartment() {
+        return department;
+    }
+    
+    // What a client sends back with an update
+    public Long getVersion() {
+        return version;
+    }
+    
+    // Who an employee reports to (or who runs a department)
+    public static class ManagerRef {
+        
+        private final Long employeeNumber;
+        private final String firstName;
+        private final String lastName;
+        private final String title;
+        private final String email;
+        
+        public ManagerRef(Long employeeNumber, String firstName, String lastName, String title, String email) {
+            this.employeeNumber = employeeNumber;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.title = title;
+            this.email = email;
+        }
+        
+        public static ManagerRef of(Employee manager) {
+            return manager == null ? null : new ManagerRef(manager.getEmployeeNumber(), manager.getFirstName(),
+                manager.getLastName(), manager.getTitle(), manager.getEmail());
+        }
+        
+        public Long getEmployeeNumber() {
+            return employeeNumber;
+        }
+        
+        public String getFirstName() {
+            return firstName;
+        }
+        
+        public String getLastName() {
+            return lastName;
+        }
+        
+        public String getTitle() {
+            return title;
+        }
+        
+        public String getEmail() {
+            return email;
+        }
+    }
+    
+    public static class DepartmentRef {
+        
+        private final Long departmentNumber;
+        private final String departmentName;
+        
+        public DepartmentRef(Long departmentNumber, String departmentName) {
+            this.departmentNumber = departmentNumber;
+            this.departmentName = departmentName;
+        }
+        
+        public static DepartmentRef of(Department department) {
+            return department == null ? null : new DepartmentRef(department.getDepartmentNumber(), department.getDepartmentName());
+        }
+        
+        public Long getDepartmentNumber() {
+            return departmentNumber;
+        }
+        
+        public String getDepartmentName() {
+            return departmentName;
+        }
+    }
+}
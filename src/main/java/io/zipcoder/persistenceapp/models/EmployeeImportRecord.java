@@ -0,0 +1,91 @@
+package io.zipcoder.persistenceapp.models;
+
+import java.time.LocalDate;
+
+// One row of a bulk import (JSON, NDJSON or CSV). sourceId is the employee's key in the source system;
+// managerSourceId points at another row of the same import. The department is matched by name and
+// created if it does not exist yet.
+public class EmployeeImportRecord {
+    
+    private String sourceId;
+    private String firstName;
+    private String lastName;
+    private String title;
+    private String phoneNumber;
+    private String email;
+    private LocalDate hireDate;
+    private String managerSourceId;
+    private String departmentName;
+    
+    public String getSourceId() {
+        return sourceId;
+    }
+    
+    public void setSourceId(String sourceId) {
+        this.sourceId = sourceId;
+    }
+    
+    public String getFirstName() {
+        return firstName;
+    }
+    
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+    
+    public String getLastName() {
+        return lastName;
+    }
+    
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public void setTitle(String title) {
+        this.title = title;
+    }
+    
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+    
+    public void setPhoneNumber(String phoneNumber) {
+        this.phoneNumber = phoneNumber;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public void setEmail(String email) {
+        this.email = email;
+    }
+    
+    public LocalDate getHireDate() {
+        return hireDate;
+    }
+    
+    public void setHireDate(LocalDate hireDate) {
+        this.hireDate = hireDate;
+    }
+    
+    public String getManagerSourceId() {
+        return managerSourceId;
+    }
+    
+    public void setManagerSourceId(String managerSourceId) {
+        this.managerSourceId = managerSourceId;
+    }
+    
+    public String getDepartmentName() {
+        return departmentName;
+    }
+    
+    public void setDepartmentName(String departmentName) {
+        this.departmentName = departmentName;
+    }
+}
@@ -0,0 +1,37 @@
+package io.zipcoder.persistenceapp.models;
+
+// Outcome of a bulk import
+public class EmployeeImportResult {
+    
+    private final long employeesImported;
+    private final long departmentsCreated;
+    private final long managersLinked;
+    private final long elapsedMillis;
+    
+    public EmployeeImportResult(long employeesImported, long departmentsCreated, long managersLinked, long elapsedMillis) {
+        this.employeesImported = employeesImported;
+        this.departmentsCreated = departmentsCreated;
+        this.managersLinked = managersLinked;
+        this.elapsedMillis = elapsedMillis;
+    }
+    
+    public long getEmployeesImported() {
+        return employeesImported;
+    }
+    
+    public long getDepartmentsCreated() {
+        return departmentsCreated;
+    }
+    
+    public long getManagersLinked() {
+        return managersLinked;
+    }
+    
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+    
+    public long getRowsPerSecond() {
+        return elapsedMillis == 0 ? employeesImported : employeesImported * 1000 / elapsedMillis;
+    }
+}
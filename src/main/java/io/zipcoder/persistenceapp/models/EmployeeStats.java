@@ -0,0 +1,19 @@
+package io.zipcoder.persistenceapp.models;
+
+// Precomputed org statistics of one employee, read from its own row
+public interface EmployeeStats {
+    
+    Long getEmployeeNumber();
+    
+    // Span of control
+    Integer getDirectReports();
+    
+    // Everyone below the employee, direct and indirect
+    Integer getTotalReports();
+    
+    // Reporting levels below the employee (0 = no reports)
+    Integer getLevelsBelow();
+    
+    // Managers above the employee (0 = top of the org)
+    Integer getOrgDepth();
+}
@@ -0,0 +1,15 @@
+package io.zipcoder.persistenceapp.models;
+
+// Closed projection of Employee for list endpoints that only need a few columns
+public interface EmployeeSummary {
+    
+    Long getEmployeeNumber();
+    
+    String getFirstName();
+    
+    String getLastName();
+    
+    String getTitle();
+    
+    String getEmail();
+}
@@ -0,0 +1,45 @@
+package io.zipcoder.persistenceapp.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+// One page of a keyset (seek) paginated listing. nextCursor is an opaque token for the key of the
+// last item on the page; pass it back as ?cursor= to continue, it is null on the last page.
+public class KeysetPage<T> {
+    
+    private static final String CURSOR_PREFIX = "k:";
+    
+    private final List<T> items;
+    private final String nextCursor;
+    
+    public KeysetPage(List<T> items, Long lastKey, int requestedSize) {
+        this.items = items;
+        this.nextCursor = items.size() < requestedSize || lastKey == null ? null : encodeCursor(lastKey);
+    }
+    
+    public List<T> getItems() {
+        return items;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public static String encodeCursor(long key) {
+        byte[] raw = (CURSOR_PREFIX + key).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+    
+    // Key encoded in a cursor (null cursor = start of the listing); throws IllegalArgumentException if malformed
+    public static Long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!raw.startsWith(CURSOR_PREFIX)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return Long.parseLong(raw.substring(CURSOR_PREFIX.length()));
+    }
+}
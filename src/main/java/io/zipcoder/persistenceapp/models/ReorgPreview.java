@@ -0,0 +1,170 @@
+package io.zipcoder.persistenceapp.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// What a list of proposed changes (POST /API/batch/preview) would do to the org chart. Nothing was written:
+// employees that would change manager or department with their depth before and after, how many employees
+// end up at another depth (the movers and everyone below them), managers whose span of control changes,
+// what would be deleted, and the departments that would be left without a manager of their own.
+public class ReorgPreview {
+    
+    private final int employees;
+    private final List<Move> moves;
+    private final int depthChanges;
+    private final List<SpanChange> spanChanges;
+    private final List<Long> removedEmployees;
+    private List<Long> removedDepartments = new ArrayList<>();
+    private List<UnmanagedDepartment> unmanagedDepartments = new ArrayList<>();
+    
+    public ReorgPreview(int employees, List<Move> moves, int depthChanges, List<SpanChange> spanChanges,
+                        List<Long> removedEmployees) {
+        this.employees = employees;
+        this.moves = moves;
+        this.depthChanges = depthChanges;
+        this.spanChanges = spanChanges;
+        this.removedEmployees = removedEmployees;
+    }
+    
+    // Employees after the changes
+    public int getEmployees() {
+        return employees;
+    }
+    
+    public List<Move> getMoves() {
+        return moves;
+    }
+    
+    public int getDepthChanges() {
+        return depthChanges;
+    }
+    
+    public List<SpanChange> getSpanChanges() {
+        return spanChanges;
+    }
+    
+    public List<Long> getRemovedEmployees() {
+        return removedEmployees;
+    }
+    
+    public List<Long> getRemovedDepartments() {
+        return removedDepartments;
+    }
+    
+    public void setRemovedDepartments(List<Long> removedDepartments) {
+        this.removedDepartments = removedDepartments;
+    }
+    
+    // Only those that had a manager before the changes
+    public List<UnmanagedDepartment> getUnmanagedDepartments() {
+        return unmanagedDepartments;
+    }
+    
+    public void setUnmanagedDepartments(List<UnmanagedDepartment> unmanagedDepartments) {
+        this.unmanagedDepartments = unmanagedDepartments;
+    }
+    
+    // An employee whose manager or department would change (null = none); depth 0 is the top of the org
+    public static class Move {
+        
+        private final long employeeNumber;
+        private final Long managerBefore;
+        private final Long managerAfter;
+        private final Long departmentBefore;
+        private final Long departmentAfter;
+        private final int depthBefore;
+        private final int depthAfter;
+        
+        public Move(long employeeNumber, Long managerBefore, Long managerAfter, Long departmentBefore,
+                    Long departmentAfter, int depthBefore, int depthAfter) {
+            this.employeeNumber = employeeNumber;
+            this.managerBefore = managerBefore;
+            this.managerAfter = managerAfter;
+            this.departmentBefore = departmentBefore;
+            this.departmentAfter = departmentAfter;
+            this.depthBefore = depthBefore;
+            this.depthAfter = depthAfter;
+        }
+        
+        public long getEmployeeNumber() {
+            return employeeNumber;
+        }
+        
+        public Long getManagerBefore() {
+            return managerBefore;
+        }
+        
+        public Long getManagerAfter() {
+            return managerAfter;
+        }
+        
+        public Long getDepartmentBefore() {
+            return departmentBefore;
+        }
+        
+        public Long getDepartmentAfter() {
+            return departmentAfter;
+        }
+        
+        public int getDepthBefore() {
+            return depthBefore;
+        }
+        
+        public int getDepthAfter() {
+            return depthAfter;
+        }
+    }
+    
+    // A remaining employee whose number of direct reports would change
+    public static class SpanChange {
+        
+        private final long employeeNumber;
+        private final int before;
+        private final int after;
+        
+        public SpanChange(long employeeNumber, int before, int after) {
+            this.employeeNumber = employeeNumber;
+            this.before = before;
+            this.after = after;
+        }
+        
+        public long getEmployeeNumber() {
+            return employeeNumber;
+        }
+        
+        public int getBefore() {
+            return before;
+        }
+        
+        public int getAfter() {
+            return after;
+        }
+    }
+    
+    // A department left with no manager, or whose manager would be deleted or belong to another department
+    public static class UnmanagedDepartment {
+        
+        private final long departmentNumber;
+        private final String departmentName;
+        private final Long managerEmployeeNumber;
+        
+        public UnmanagedDepartment(long departmentNumber, String departmentName, Long managerEmployeeNumber) {
+            this.departmentNumber = departmentNumber;
+            this.departmentName = departmentName;
+            this.managerEmployeeNumber = managerEmployeeNumber;
+        }
+        
+        public long getDepartmentNumber() {
+            return departmentNumber;
+        }
+        
+        public String getDepartmentName() {
+            return departmentName;
+        }
+        
+        // The manager it would still name (in another department), or null
+        public Long getManagerEmployeeNumber() {
+            return managerEmployeeNumber;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.zipcoder.persistenceapp.models;
+
+import java.time.Instant;
+
+// A snapshot file available for download: when its transaction read the tables, and what it holds
+public class SnapshotInfo {
+    
+    private final String name;
+    private final Instant createdAt;
+    private final long sizeBytes;
+    private final long departments;
+    private final long employees;
+    
+    public SnapshotInfo(String name, Instant createdAt, long sizeBytes, long departments, long employees) {
+        this.name = name;
+        this.createdAt = createdAt;
+        this.sizeBytes = sizeBytes;
+        this.departments = departments;
+        this.employees = employees;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+    
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+    
+    public long getDepartments() {
+        return departments;
+    }
+    
+    public long getEmployees() {
+        return employees;
+    }
+}
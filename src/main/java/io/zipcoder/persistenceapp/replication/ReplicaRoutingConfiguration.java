@@ -0,0 +1,81 @@
+package io.zipcoder.persistenceapp.replication;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// app.datasource.replica-urls: read-only transactions (@ReadOnlyTransactional service methods) run on the
+// read replicas, everything else on the primary (spring.datasource.*). Replicas share the primary's
+// credentials and driver unless app.datasource.replica-username/-password say otherwise.
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replica-urls")
+public class ReplicaRoutingConfiguration {
+    
+    // Seconds a PostgreSQL standby is behind: 0 once it has replayed everything it received, so an idle
+    // primary does not make its replicas look stale
+    static final String POSTGRESQL_LAG_QUERY = "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+        + " ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+    
+    // The primary pool, configured as Boot would (spring.datasource.hikari.* applies)
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+    
+    @Bean
+    ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource, DataSourceProperties properties,
+                                                      @Value("${app.datasource.replica-urls}") List<String> replicaUrls,
+                                                      @Value("${app.datasource.replica-username:${spring.datasource.username:}}") String username,
+                                                      @Value("${app.datasource.replica-password:${spring.datasource.password:}}") String password,
+                                                      @Value("${app.datasource.replica-lag-query:" + POSTGRESQL_LAG_QUERY + "}") String lagQuery,
+                                                      @Value("${app.datasource.replica-max-lag:5s}") Duration maxLag,
+                                                      @Value("${app.datasource.replica-check-interval:2s}") Duration checkInterval) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            HikariDataSource replica = DataSourceBuilder.create().type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(url.trim())
+                .username(username)
+                .password(password)
+                .build();
+            replica.setPoolName("replica-" + (replicas.size() + 1));
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, lagQuery, maxLag, checkInterval);
+    }
+    
+    // What JPA, Flyway and JdbcTemplate use. Connections are fetched on the first statement, once the
+    // transaction (and whether it is read-only) has started
+    @Bean
+    @Primary
+    DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+    
+    // Open-in-view keeps one session for the whole request; holding its connection until the end would pin
+    // every later transaction of the request to wherever the first one ran
+    @Bean
+    HibernatePropertiesCustomizer connectionPerTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+            PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+}
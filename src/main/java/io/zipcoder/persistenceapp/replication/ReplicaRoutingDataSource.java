@@ -0,0 +1,160 @@
+package io.zipcoder.persistenceapp.replication;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hands out replica connections inside read-only transactions (round robin over the replicas in use) and
+// primary connections everywhere else. A background check runs the lag query on every replica; one that is
+// more than maxLag behind, or cannot be reached, is skipped until a later check finds it caught up, and with
+// none left reads go to the primary. Needs a LazyConnectionDataSourceProxy in front: the transaction's
+// read-only flag is only set after the transaction manager first asks for a connection.
+public class ReplicaRoutingDataSource extends AbstractDataSource implements MeterBinder, AutoCloseable {
+    
+    private final HikariDataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final String lagQuery;
+    private final double maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder routedToPrimary = new LongAdder();
+    private final ScheduledExecutorService checker;
+    
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicaPools, String lagQuery,
+                                    Duration maxLag, Duration checkInterval) {
+        this.primary = primary;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+        for (HikariDataSource pool : replicaPools) {
+            replicas.add(new Replica(pool));
+        }
+        // First check before any traffic, so replicas that are up are used from the start
+        checkReplicas();
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkReplicas, checkInterval.toMillis(), checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        routedCounter(registry, "primary", routedToPrimary);
+        for (Replica replica : replicas) {
+            routedCounter(registry, replica.pool.getPoolName(), replica.routed);
+            Gauge.builder("directory.db.replica.lag", replica, r -> r.lagSeconds)
+                .description("Replication lag of a read replica as last measured (NaN when unreachable)")
+                .tag("replica", replica.pool.getPoolName())
+                .baseUnit("seconds")
+                .register(registry);
+        }
+    }
+    
+    private static void routedCounter(MeterRegistry registry, String target, LongAdder count) {
+        FunctionCounter.builder("directory.db.routed", count, LongAdder::sum)
+            .description("Connections handed out, by database node")
+            .tag("target", target)
+            .register(registry);
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            Connection connection = replicaConnection();
+            if (connection != null) {
+                return connection;
+            }
+        }
+        routedToPrimary.increment();
+        return primary.getConnection();
+    }
+    
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+    
+    // A connection from the next replica in use, or null when none can serve
+    private Connection replicaConnection() {
+        int start = next.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (!replica.inUse) {
+                continue;
+            }
+            try {
+                Connection connection = replica.pool.getConnection();
+                replica.routed.increment();
+                return connection;
+            } catch (SQLException e) {
+                // Out until the next check reaches it again
+                replica.inUse = false;
+            }
+        }
+        return null;
+    }
+    
+    // Measure every replica's lag and take the ones too far behind (or down) out of rotation
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(lagQuery)) {
+                double lag = rs.next() ? rs.getDouble(1) : Double.NaN;
+                replica.lagSeconds = lag;
+                replica.inUse = lag <= maxLagSeconds;
+            } catch (SQLException e) {
+                replica.lagSeconds = Double.NaN;
+                replica.inUse = false;
+            }
+        }
+    }
+    
+    // Names of the replicas reads currently go to
+    public List<String> replicasInUse() {
+        List<String> names = new ArrayList<>();
+        for (Replica replica : replicas) {
+            if (replica.inUse) {
+                names.add(replica.pool.getPoolName());
+            }
+        }
+        return names;
+    }
+    
+    @Override
+    public void close() {
+        checker.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+    
+    private static final class Replica {
+        
+        final HikariDataSource pool;
+        final LongAdder routed = new LongAdder();
+        volatile boolean inUse;
+        volatile double lagSeconds = Double.NaN;
+        
+        Replica(HikariDataSource pool) {
+            this.pool = pool;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.zipcoder.persistenceapp.repositories;
+
+import io.zipcoder.persistenceapp.models.ChangeEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+@Repository
+public interface ChangeEventRepository extends JpaRepository<ChangeEvent, Long> {
+    
+    // Entries after a sequence number, oldest first (a primary key range scan)
+    @Query("SELECT c FROM ChangeEvent c WHERE c.sequence > :since ORDER BY c.sequence")
+    @QueryHints(@QueryHint(name = HINT_READONLY, value = "true"))
+    List<ChangeEvent> findAfter(@Param("since") long since, Pageable page);
+}
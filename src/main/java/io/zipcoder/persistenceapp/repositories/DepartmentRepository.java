@@ -1,17 +1,84 @@
 package io.zipcoder.persistenceapp.repositories;
 
 import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.DepartmentStats;
+import io.zipcoder.persistenceapp.models.DepartmentSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface DepartmentRepository extends JpaRepository<Department, Long> {
     
-    // Find department by name
-    Optional<Department> findByDepartmentName(String name);
+    // Every department with its manager and employees joined in, in one statement
+    @Override
+    @Query("SELECT DISTINCT d FROM Department d LEFT JOIN FETCH d.manager LEFT JOIN FETCH d.employees"
+            + " ORDER BY d.departmentNumber")
+    List<Department> findAll();
+    
+    // Department listing reduced to a few columns plus the precomputed headcount, in one statement
+    @Query("SELECT d.departmentNumber AS departmentNumber, d.departmentName AS departmentName,"
+            + " m.employeeNumber AS managerEmployeeNumber, d.headcount AS headcount"
+            + " FROM Department d LEFT JOIN d.manager m ORDER BY d.departmentNumber")
+    List<DepartmentSummary> findAllSummaries();
+    
+    // Precomputed statistics of a department and of the org under its manager
+    @Query("SELECT d.departmentNumber AS departmentNumber, d.departmentName AS departmentName, d.headcount AS headcount,"
+            + " m.employeeNumber AS managerEmployeeNumber, m.directReportCount AS managerDirectReports,"
+            + " m.totalReportCount AS managerTotalReports, m.levelsBelow AS managerLevelsBelow"
+            + " FROM Department d LEFT JOIN d.manager m WHERE d.departmentNumber = :id")
+    Optional<DepartmentStats> findStatsById(@Param("id") Long id);
+    
+    // Find department by name (query cache: answered from the cached id and the second-level cache until
+    // the departments table changes)
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("SELECT d FROM Department d LEFT JOIN FETCH d.manager WHERE d.departmentName = :name")
+    Optional<Department> findByDepartmentName(@Param("name") String name);
     
     // Check if department exists by name
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     boolean existsByDepartmentName(String name);
-}
\ No newline at end of file
+    
+    // Next page of departments after a given department number, with the manager joined in (a fetch join
+    // rather than an entity graph, which would make Hibernate compile the query again on every call)
+    @Query(value = "SELECT d FROM Department d LEFT JOIN FETCH d.manager WHERE d.departmentNumber > :after"
+            + " ORDER BY d.departmentNumber",
+            countQuery = "SELECT COUNT(d) FROM Department d WHERE d.departmentNumber > :after")
+    List<Department> findPageAfter(@Param("after") Long after, Pageable pageable);
+    
+    // Every department through a read-only cursor (caller must hold a transaction and close the stream)
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("SELECT d FROM Department d LEFT JOIN FETCH d.manager ORDER BY d.departmentNumber")
+    Stream<Department> streamAll();
+    
+    // Numbers of the departments managed by any of the employees
+    @Query("SELECT d.departmentNumber FROM Department d WHERE d.manager.employeeNumber IN :employeeIds")
+    List<Long> findNumbersManagedBy(@Param("employeeIds") List<Long> employeeIds);
+    
+    // Numbers of the departments managed by someone below a hierarchy path
+    @Query("SELECT d.departmentNumber FROM Department d WHERE d.manager.orgPath LIKE CONCAT(:path, '%')"
+            + " AND d.manager.orgPath <> :path")
+    List<Long> findNumbersManagedUnder(@Param("path") String path);
+    
+    // Same, counting the path owner in
+    @Query("SELECT d.departmentNumber FROM Department d WHERE d.manager.orgPath LIKE CONCAT(:path, '%')")
+    List<Long> findNumbersManagedWithin(@Param("path") String path);
+    
+    // Delete a department row on its own, without walking its members; they must be gone or moved already
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Department d WHERE d.departmentNumber = :deptNum")
+    int deleteByDepartmentNumber(@Param("deptNum") Long deptNum);
+}
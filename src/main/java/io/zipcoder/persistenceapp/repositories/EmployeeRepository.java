@@ -2,29 +2,269 @@ package io.zipcoder.persistenceapp.repositories;
 
 import io.zipcoder.persistenceapp.models.Employee;
 import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.EmployeeStats;
+import io.zipcoder.persistenceapp.models.EmployeeSummary;
+import io.zipcoder.persistenceapp.search.EmployeeDocument;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_FLUSH_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_NATIVE_SPACES;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface EmployeeRepository extends JpaRepository<Employee, Long> {
     
+    // Fetch plan for anything serialized as a list: the manager (with its department) and the department are
+    // joined in; direct reports are batch-fetched (hibernate.default_batch_fetch_size). Spelled out as joins
+    // rather than an entity graph, which makes Hibernate compile the query again on every call.
+    String SELECT_FOR_LIST = "SELECT e FROM Employee e LEFT JOIN FETCH e.manager m LEFT JOIN FETCH m.department"
+            + " LEFT JOIN FETCH e.department d";
+    
+    // CRUD lookups with the list fetch plan, so serializing the result does not fire a select per row
+    @Override
+    @Query(SELECT_FOR_LIST)
+    List<Employee> findAll();
+    
+    // findById stays a plain EntityManager.find so it is answered from the second-level cache; the manager
+    // and department come from there too
+    @Override
+    @Query(SELECT_FOR_LIST + " WHERE e.employeeNumber IN :ids")
+    List<Employee> findAllById(@Param("ids") Iterable<Long> ids);
+    
     // Find all employees who report directly to a manager
-    List<Employee> findByManager(Employee manager);
+    @Query(SELECT_FOR_LIST + " WHERE e.manager = :manager")
+    List<Employee> findByManager(@Param("manager") Employee manager);
     
-    // Find all employees with no manager
+    // Find all employees with no manager (query cache: the top of the org rarely changes; any write to the
+    // employees table invalidates it)
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("SELECT e FROM Employee e LEFT JOIN FETCH e.department WHERE e.manager IS NULL")
     List<Employee> findByManagerIsNull();
     
     // Find all employees in a department
     List<Employee> findByDepartment(Department department);
     
     // Find by department number
-    List<Employee> findByDepartment_DepartmentNumber(Long deptNum);
+    @Query(SELECT_FOR_LIST + " WHERE d.departmentNumber = :deptNum")
+    List<Employee> findByDepartment_DepartmentNumber(@Param("deptNum") Long deptNum);
+    
+    // Department listing reduced to a few columns (one select, no associations)
+    List<EmployeeSummary> findSummaryByDepartment_DepartmentNumberOrderByEmployeeNumber(Long deptNum);
+    
+    // (employee, manager, department) numbers for every employee, without loading entities
+    @Query("SELECT e.employeeNumber, m.employeeNumber, d.departmentNumber FROM Employee e"
+            + " LEFT JOIN e.manager m LEFT JOIN e.department d")
+    List<Object[]> findAllHierarchyLinks();
+    
+    // The same for the given employees (those that no longer exist are left out)
+    @Query("SELECT e.employeeNumber, m.employeeNumber, d.departmentNumber FROM Employee e"
+            + " LEFT JOIN e.manager m LEFT JOIN e.department d WHERE e.employeeNumber IN :ids")
+    List<Object[]> findHierarchyLinksById(@Param("ids") Collection<Long> ids);
+    
+    // Searchable fields of every employee, for building the search index
+    @Query("SELECT new io.zipcoder.persistenceapp.search.EmployeeDocument(e.employeeNumber, e.firstName, e.lastName,"
+            + " e.email, e.title, e.phoneNumber, d.departmentNumber, d.departmentName)"
+            + " FROM Employee e LEFT JOIN e.department d ORDER BY e.employeeNumber")
+    List<EmployeeDocument> findAllSearchDocuments();
+    
+    // ==================== KEYSET PAGINATION & STREAMING ====================
+    
+    // Next page of employees after a given employee number (seek on the primary key, limit from the Pageable;
+    // only to-one associations are fetched, so the limit goes into the SQL)
+    @Query(value = SELECT_FOR_LIST + " WHERE e.employeeNumber > :after ORDER BY e.employeeNumber",
+            countQuery = "SELECT COUNT(e) FROM Employee e WHERE e.employeeNumber > :after")
+    List<Employee> findPageAfter(@Param("after") Long after, Pageable pageable);
+    
+    // Next page of a department's employees after a given employee number
+    @Query(value = SELECT_FOR_LIST + " WHERE d.departmentNumber = :deptNum AND e.employeeNumber > :after"
+            + " ORDER BY e.employeeNumber",
+            countQuery = "SELECT COUNT(e) FROM Employee e WHERE e.department.departmentNumber = :deptNum"
+            + " AND e.employeeNumber > :after")
+    List<Employee> findDepartmentPageAfter(@Param("deptNum") Long deptNum, @Param("after") Long after, Pageable pageable);
+    
+    // Every employee through a read-only, fetch-size-tuned cursor (caller must hold a transaction and close the stream)
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query(SELECT_FOR_LIST + " ORDER BY e.employeeNumber")
+    Stream<Employee> streamAll();
+    
+    // A department's employees through a read-only cursor
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query(SELECT_FOR_LIST + " WHERE d.departmentNumber = :deptNum ORDER BY e.employeeNumber")
+    Stream<Employee> streamByDepartmentNumber(@Param("deptNum") Long deptNum);
+    
+    // ==================== HIERARCHY INDEX (materialized path) ====================
+    
+    // Materialized path of a single employee, read straight from the table. Paths are only ever written by the
+    // statements below, never through the entity, so pending entity changes need not be flushed first.
+    @QueryHints(@QueryHint(name = HINT_FLUSH_MODE, value = "COMMIT"))
+    @Query("SELECT e.orgPath FROM Employee e WHERE e.employeeNumber = :id")
+    String findOrgPathById(@Param("id") Long id);
+    
+    // Numbers and paths of several employees at once, under the same rule as findOrgPathById
+    @QueryHints(@QueryHint(name = HINT_FLUSH_MODE, value = "COMMIT"))
+    @Query("SELECT e.employeeNumber, e.orgPath FROM Employee e WHERE e.employeeNumber IN :ids")
+    List<Object[]> findOrgPathsById(@Param("ids") Collection<Long> ids);
+    
+    // Row-lock employees until the transaction ends, in key order so two lockers cannot deadlock on each
+    // other; returns the numbers that exist. Used to serialize changes to overlapping chains of command.
+    @QueryHints(@QueryHint(name = HINT_FLUSH_MODE, value = "COMMIT"))
+    @Query(value = "SELECT emp_number FROM employees WHERE emp_number IN (:ids) ORDER BY emp_number FOR UPDATE",
+            nativeQuery = true)
+    List<Long> lockAllById(@Param("ids") List<Long> ids);
+    
+    // Precomputed org statistics of an employee (see OrgStatisticsService)
+    @Query("SELECT e.employeeNumber AS employeeNumber, e.directReportCount AS directReports,"
+            + " e.totalReportCount AS totalReports, e.levelsBelow AS levelsBelow, e.orgDepth AS orgDepth"
+            + " FROM Employee e WHERE e.employeeNumber = :id")
+    Optional<EmployeeStats> findStatsById(@Param("id") Long id);
+    
+    @Query("SELECT e.directReportCount FROM Employee e WHERE e.employeeNumber = :id")
+    Optional<Integer> findDirectReportCountById(@Param("id") Long id);
+    
+    // Everyone below a path (excluding the path owner) down to an absolute org depth, nearest levels first
+    @Query(SELECT_FOR_LIST + " WHERE e.orgPath LIKE CONCAT(:path, '%') AND e.orgPath <> :path"
+            + " AND e.orgDepth <= :maxOrgDepth ORDER BY e.orgDepth, e.employeeNumber")
+    List<Employee> findSubtreeByOrgPath(@Param("path") String path, @Param("maxOrgDepth") int maxOrgDepth);
+    
+    // Any employee not yet indexed
+    boolean existsByOrgPathIsNull();
+    
+    // Paths for every employee reachable from the top of the org, computed with a recursive CTE (PostgreSQL + H2)
+    @Query(value = "WITH RECURSIVE paths (emp_number, org_path, org_depth) AS ("
+            + " SELECT emp_number, CONCAT('/', emp_number, '/'), 0 FROM employees WHERE manager_id IS NULL"
+            + " UNION ALL"
+            + " SELECT e.emp_number, CONCAT(p.org_path, e.emp_number, '/'), p.org_depth + 1"
+            + " FROM employees e JOIN paths p ON e.manager_id = p.emp_number)"
+            + " SELECT emp_number, org_path, org_depth FROM paths", nativeQuery = true)
+    List<Object[]> computeOrgPaths();
+    
+    // Set the path of a single employee
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Employee e SET e.orgPath = :path, e.orgDepth = :depth WHERE e.employeeNumber = :id")
+    int updateOrgPath(@Param("id") Long id, @Param("path") String path, @Param("depth") int depth);
+    
+    // Re-root every path starting with oldPath onto newPath (moves a whole subtree in one statement); only
+    // rows already flushed have a path, so this needs no flush either
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_FLUSH_MODE, value = "COMMIT"))
+    @Query("UPDATE Employee e SET e.orgPath = CONCAT(:newPath, SUBSTRING(e.orgPath, :oldPathLength + 1,"
+            + " LENGTH(e.orgPath) - :oldPathLength)),"
+            + " e.orgDepth = e.orgDepth + :depthDelta WHERE e.orgPath LIKE CONCAT(:oldPath, '%')")
+    int rewriteOrgPaths(@Param("oldPath") String oldPath, @Param("oldPathLength") int oldPathLength,
+                        @Param("newPath") String newPath, @Param("depthDelta") int depthDelta);
+    
+    // ==================== SET-BASED SUBTREE DELETION ====================
+    
+    // Native statements name the table they write (HINT_NATIVE_SPACES): Hibernate then drops only that table's
+    // second-level cache regions and cached queries instead of all of them
+    
+    // Unassign any department whose manager sits below a path (set-based changes bump the version as well)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "departments"))
+    @Query(value = "UPDATE departments SET manager_id = NULL, version = version + 1 WHERE manager_id IN"
+            + " (SELECT emp_number FROM employees WHERE org_path LIKE CONCAT(:path, '%') AND org_path <> :path)",
+            nativeQuery = true)
+    int clearDepartmentManagersUnder(@Param("path") String path);
+    
+    // Same, counting the path owner in
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "departments"))
+    @Query(value = "UPDATE departments SET manager_id = NULL, version = version + 1 WHERE manager_id IN"
+            + " (SELECT emp_number FROM employees WHERE org_path LIKE CONCAT(:path, '%'))", nativeQuery = true)
+    int clearDepartmentManagersWithin(@Param("path") String path);
+    
+    // Point everyone below a path straight at its owner so the subtree can be deleted in one statement
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "employees"))
+    @Query(value = "UPDATE employees SET manager_id = :managerId"
+            + " WHERE org_path LIKE CONCAT(:path, '%') AND org_path <> :path", nativeQuery = true)
+    int flattenSubtree(@Param("path") String path, @Param("managerId") Long managerId);
+    
+    // Delete an employee and everything under it with two path-prefix statements: the rows are unlinked from
+    // their managers first, so the delete does not depend on the order the database visits them in
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "employees"))
+    @Query(value = "UPDATE employees SET manager_id = NULL WHERE org_path LIKE CONCAT(:path, '%')", nativeQuery = true)
+    int unlinkSubtree(@Param("path") String path);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "employees"))
+    @Query(value = "DELETE FROM employees WHERE org_path LIKE CONCAT(:path, '%')", nativeQuery = true)
+    int deleteSubtree(@Param("path") String path);
+    
+    // Up to limit employees of a subtree, deepest levels first: everyone below a returned employee is returned
+    // as well, so deleting them all leaves whole subtrees behind (the path owner only comes last)
+    @Query(value = "SELECT emp_number FROM employees WHERE org_path LIKE CONCAT(:path, '%')"
+            + " ORDER BY org_depth DESC, emp_number LIMIT :limit", nativeQuery = true)
+    List<Long> findDeepestInSubtree(@Param("path") String path, @Param("limit") int limit);
+    
+    // Delete every employee reporting directly to a manager
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "employees"))
+    @Query(value = "DELETE FROM employees WHERE manager_id = :managerId", nativeQuery = true)
+    int deleteByManagerId(@Param("managerId") Long managerId);
+    
+    // ==================== BULK REASSIGNMENT ====================
+    
+    // Employee numbers of a manager's direct reports
+    @Query("SELECT e.employeeNumber FROM Employee e WHERE e.manager.employeeNumber = :managerId")
+    List<Long> findDirectReportIds(@Param("managerId") Long managerId);
+    
+    // Move every employee of one department into another
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Employee e SET e.department = :target, e.version = e.version + 1 WHERE e.department = :source")
+    int moveDepartment(@Param("source") Department source, @Param("target") Department target);
+    
+    // Hand the reports of several managers to a single new manager
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "employees"))
+    @Query(value = "UPDATE employees SET manager_id = :newManagerId, version = version + 1"
+            + " WHERE manager_id IN (:managerIds)", nativeQuery = true)
+    int reassignReports(@Param("managerIds") List<Long> managerIds, @Param("newManagerId") Long newManagerId);
+    
+    // Unassign any department managed by one of these employees
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "departments"))
+    @Query(value = "UPDATE departments SET manager_id = NULL, version = version + 1"
+            + " WHERE manager_id IN (:employeeIds)", nativeQuery = true)
+    int clearDepartmentManagers(@Param("employeeIds") List<Long> employeeIds);
+    
+    // Delete employees by number without loading them (callers must reassign their reports first)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Employee e WHERE e.employeeNumber IN :ids")
+    int deleteAllByEmployeeNumberIn(@Param("ids") List<Long> ids);
+    
+    // ==================== AFFECTED ROWS (cache eviction) ====================
+    
+    // Employee numbers of a department's members
+    @Query("SELECT e.employeeNumber FROM Employee e WHERE e.department.departmentNumber = :deptNum")
+    List<Long> findIdsByDepartmentNumber(@Param("deptNum") Long deptNum);
+    
+    // Employee numbers reporting directly to any of the managers
+    @Query("SELECT e.employeeNumber FROM Employee e WHERE e.manager.employeeNumber IN :managerIds")
+    List<Long> findDirectReportIdsOf(@Param("managerIds") List<Long> managerIds);
+    
+    // Employee numbers of the given employees and everyone below them, from the hierarchy index
+    @Query("SELECT e.employeeNumber FROM Employee e WHERE EXISTS (SELECT r FROM Employee r"
+            + " WHERE r.employeeNumber IN :rootIds AND e.orgPath LIKE CONCAT(r.orgPath, '%'))")
+    List<Long> findSubtreeIds(@Param("rootIds") List<Long> rootIds);
     
-    // Custom query to find all employees under a manager (we'll use this for recursive queries)
-    @Query("SELECT e FROM Employee e WHERE e.manager.employeeNumber = :managerId")
-    List<Employee> findDirectReportsByManagerId(@Param("managerId") Long managerId);
-}
\ No newline at end of file
+    // Employee numbers of a department's members and everyone below them
+    @Query("SELECT e.employeeNumber FROM Employee e WHERE EXISTS (SELECT r FROM Employee r"
+            + " WHERE r.department.departmentNumber = :deptNum AND e.orgPath LIKE CONCAT(r.orgPath, '%'))")
+    List<Long> findSubtreeIdsOfDepartment(@Param("deptNum") Long deptNum);
+}
@@ -0,0 +1,113 @@
+package io.zipcoder.persistenceapp.schema;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// The indexes the repository queries are written against. The migrations create them; this stops the
+// application from starting on a database that lacks one (a hand-made schema, a failed or skipped
+// migration), where the queries would still answer, only with full table scans. Any index whose leading
+// columns match counts, whatever its name; the PostgreSQL ones carry emp_number after them.
+@Component
+public class RequiredIndexes implements SmartInitializingSingleton {
+    
+    static final List<RequiredIndex> INDEXES = Collections.unmodifiableList(Arrays.asList(
+        new RequiredIndex("idx_employees_manager", "employees", "manager_id"),
+        new RequiredIndex("idx_employees_department", "employees", "dept_num"),
+        new RequiredIndex("idx_employees_org_path", "employees", "org_path"),
+        new RequiredIndex("idx_departments_manager", "departments", "manager_id")));
+    
+    @Autowired
+    private DataSource dataSource;
+    
+    // Runs once every singleton exists (Flyway has migrated, Hibernate has validated) and before the web
+    // server starts, so a missing index fails the startup
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<RequiredIndex> missing = missing();
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Missing database indexes: " + missing);
+        }
+    }
+    
+    // The required indexes the database does not have
+    public List<RequiredIndex> missing() {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, List<List<String>>> indexesByTable = new HashMap<>();
+            List<RequiredIndex> missing = new ArrayList<>();
+            for (RequiredIndex required : INDEXES) {
+                List<List<String>> indexes = indexesByTable.get(required.table);
+                if (indexes == null) {
+                    indexes = indexColumns(connection, metaData, required.table);
+                    indexesByTable.put(required.table, indexes);
+                }
+                if (indexes.stream().noneMatch(required::isCoveredBy)) {
+                    missing.add(required);
+                }
+            }
+            return missing;
+        } catch (SQLException e) {
+            throw new CannotGetJdbcConnectionException("Could not read the index metadata", e);
+        }
+    }
+    
+    // Columns of every index on a table, in index order
+    private static List<List<String>> indexColumns(Connection connection, DatabaseMetaData metaData, String table) throws SQLException {
+        String storedName = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        Map<String, Map<Integer, String>> columnsByIndex = new TreeMap<>();
+        try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), storedName, false, true)) {
+            while (rs.next()) {
+                String index = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (index != null && column != null) {
+                    columnsByIndex.computeIfAbsent(index, name -> new TreeMap<>())
+                        .put((int) rs.getShort("ORDINAL_POSITION"), column.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        List<List<String>> indexes = new ArrayList<>();
+        for (Map<Integer, String> columns : columnsByIndex.values()) {
+            indexes.add(new ArrayList<>(columns.values()));
+        }
+        return indexes;
+    }
+    
+    public static final class RequiredIndex {
+        
+        final String name;
+        final String table;
+        final List<String> columns;
+        
+        RequiredIndex(String name, String table, String... columns) {
+            this.name = name;
+            this.table = table;
+            this.columns = Arrays.asList(columns);
+        }
+        
+        // True if an index with these columns leads with the required ones
+        boolean isCoveredBy(List<String> indexColumns) {
+            return indexColumns.size() >= columns.size() && indexColumns.subList(0, columns.size()).equals(columns);
+        }
+        
+        @Override
+        public String toString() {
+            return name + " on " + table + " (" + String.join(", ", columns) + ")";
+        }
+    }
+}
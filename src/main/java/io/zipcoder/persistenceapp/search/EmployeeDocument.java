@@ -0,0 +1,70 @@
+package io.zipcoder.persistenceapp.search;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+
+// The searchable fields of one employee, copied out of the entity (or selected directly by
+// EmployeeRepository) so the index can be updated after the transaction has finished.
+public class EmployeeDocument {
+    
+    private final Long employeeNumber;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final String title;
+    private final String phoneNumber;
+    private final Long departmentNumber;
+    private final String departmentName;
+    
+    public EmployeeDocument(Long employeeNumber, String firstName, String lastName, String email, String title,
+                            String phoneNumber, Long departmentNumber, String departmentName) {
+        this.employeeNumber = employeeNumber;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.title = title;
+        this.phoneNumber = phoneNumber;
+        this.departmentNumber = departmentNumber;
+        this.departmentName = departmentName;
+    }
+    
+    public static EmployeeDocument from(Employee employee) {
+        Department department = employee.getDepartment();
+        return new EmployeeDocument(employee.getEmployeeNumber(), employee.getFirstName(), employee.getLastName(),
+            employee.getEmail(), employee.getTitle(), employee.getPhoneNumber(),
+            department == null ? null : department.getDepartmentNumber(),
+            department == null ? null : department.getDepartmentName());
+    }
+    
+    public Long getEmployeeNumber() {
+        return employeeNumber;
+    }
+    
+    public String getFirstName() {
+        return firstName;
+    }
+    
+    public String getLastName() {
+        return lastName;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+    
+    public Long getDepartmentNumber() {
+        return departmentNumber;
+    }
+    
+    public String getDepartmentName() {
+        return departmentName;
+    }
+}
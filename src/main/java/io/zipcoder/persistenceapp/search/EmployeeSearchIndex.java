@@ -0,0 +1,554 @@
+package io.zipcoder.persistenceapp.search;
+
+import io.zipcoder.persistenceapp.graph.LongIntHashMap;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-process inverted index over employee names, email, title, phone number and department name.
+// Every employee version is a document with a dense number; the dictionary maps field code + term to the
+// term's posting list (delta-encoded document numbers). The dictionary is sorted, so the terms starting
+// with a typed prefix are one contiguous run. A changed employee gets a new document and the old one is
+// tombstoned; tombstones are squeezed out once they make up a quarter of the index.
+// Loaded at startup from EmployeeRepository and updated by the services after each commit.
+@Component
+@ConditionalOnProperty(name = "app.search.enabled", havingValue = "true", matchIfMissing = true)
+public class EmployeeSearchIndex {
+    
+    private static final int NONE = -1;
+    private static final int MIN_DELETED_TO_COMPACT = 1024;
+    private static final int MAX_COUNTED_TERMS = 1024;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // Terms by field code + term text, and by id (the ids the documents refer to)
+    private TreeMap<String, Term> dictionary = new TreeMap<>();
+    private List<Term> terms = new ArrayList<>();
+    
+    // Document storage: employee number, department number (0 = none) and term ids of each document
+    private long[] employees = new long[16];
+    private long[] departments = new long[16];
+    private int[][] documentTerms = new int[16][];
+    private int documentCount;
+    private BitSet deleted = new BitSet();
+    private int deletedCount;
+    private LongIntHashMap documentsByEmployee = new LongIntHashMap(16);
+    
+    private volatile boolean loaded;
+    
+    // ==================== LOADING ====================
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        rebuild(employeeRepository.findAllSearchDocuments());
+    }
+    
+    public void reload() {
+        load();
+    }
+    
+    // Replace the whole index with these employees
+    public void rebuild(Collection<EmployeeDocument> documents) {
+        lock.writeLock().lock();
+        try {
+            clear(documents.size());
+            for (EmployeeDocument document : documents) {
+                addDocument(document.getEmployeeNumber(), departmentOf(document), termIds(document));
+            }
+            for (Term term : terms) {
+                term.postings.trim();
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    // Employees currently searchable
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // ==================== SEARCH ====================
+    
+    // Employee numbers of the matches ranked offset .. offset + limit - 1. Best match first: the sum over the
+    // query words of the best field each word matched (exact term beats prefix). Ties go alphabetically by
+    // the term matched by the word that drives the search (the only word, or the most selective one).
+    public long[] search(SearchQuery query, int offset, int limit) {
+        List<SearchQuery.Clause> clauses = query.clauses();
+        if (clauses.isEmpty() || limit < 1 || offset < 0) {
+            return new long[0];
+        }
+        lock.readLock().lock();
+        try {
+            int[] docs = clauses.size() == 1
+                ? rankedMatches(clauses.get(0), offset, limit)
+                : scoredMatches(clauses, offset, limit);
+            long[] result = new long[docs.length];
+            for (int i = 0; i < docs.length; i++) {
+                result[i] = employees[docs[i]];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // One word (typeahead): walk the matching terms from the best-scoring field/exactness tier down, in term
+    // order within a tier, and stop as soon as the page is full. Nothing past the page is ever decoded.
+    private int[] rankedMatches(SearchQuery.Clause clause, int offset, int limit) {
+        int[] page = new int[limit];
+        int filled = 0;
+        int seen = 0;
+        LongIntHashMap emitted = new LongIntHashMap((int) Math.min(1024, (long) offset + limit));
+        for (Tier tier : tiers(clause)) {
+            for (Term term : tierTerms(tier, clause.word)) {
+                PostingList.Cursor cursor = term.postings.cursor();
+                for (int doc = cursor.next(); doc >= 0; doc = cursor.next()) {
+                    if (deleted.get(doc) || emitted.containsKey(doc)) {
+                        continue;
+                    }
+                    emitted.put(doc, 1);
+                    if (seen++ >= offset) {
+                        page[filled++] = doc;
+                        if (filled == limit) {
+                            return page;
+                        }
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(page, filled);
+    }
+    
+    // Several words: walk the tiers of the most selective word as for a single word and score the other words
+    // against each candidate's own terms. A candidate can score at most its tier plus the best the other words
+    // can reach, so once enough matches score that much no later candidate can enter the page.
+    private int[] scoredMatches(List<SearchQuery.Clause> clauses, int offset, int limit) {
+        int othersBest = 0;
+        for (SearchQuery.Clause clause : clauses) {
+            if (bestPossible(clause) == 0) {
+                return new int[0];
+            }
+        }
+        SearchQuery.Clause driver = mostSelective(clauses);
+        List<SearchQuery.Clause> others = new ArrayList<>(clauses);
+        others.remove(driver);
+        for (SearchQuery.Clause clause : others) {
+            othersBest += bestPossible(clause);
+        }
+        
+        List<Tier> tiers = tiers(driver);
+        int wanted = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        int[] countByScore = new int[tiers.get(0).score() + othersBest + 1];
+        // Rank key: inverted score in the high half, discovery order in the low half, so an ascending sort ranks
+        long[] ranked = new long[16];
+        int[] found = new int[16];
+        int matches = 0;
+        LongIntHashMap emitted = new LongIntHashMap(1024);
+        search:
+        for (Tier tier : tiers) {
+            int reachable = tier.score() + othersBest;
+            int atLeastReachable = 0;
+            for (int score = reachable; score < countByScore.length; score++) {
+                atLeastReachable += countByScore[score];
+            }
+            if (atLeastReachable >= wanted) {
+                break;
+            }
+            for (Term term : tierTerms(tier, driver.word)) {
+                PostingList.Cursor cursor = term.postings.cursor();
+                for (int doc = cursor.next(); doc >= 0; doc = cursor.next()) {
+                    if (deleted.get(doc) || emitted.containsKey(doc)) {
+                        continue;
+                    }
+                    emitted.put(doc, 1);
+                    int score = tier.score();
+                    for (SearchQuery.Clause clause : others) {
+                        int wordScore = bestScore(doc, clause);
+                        if (wordScore == 0) {
+                            score = 0;
+                            break;
+                        }
+                        score += wordScore;
+                    }
+                    if (score == 0) {
+                        continue;
+                    }
+                    if (matches == ranked.length) {
+                        ranked = Arrays.copyOf(ranked, matches * 2);
+                        found = Arrays.copyOf(found, matches * 2);
+                    }
+                    ranked[matches] = ((long) (Integer.MAX_VALUE - score) << 32) | matches;
+                    found[matches++] = doc;
+                    countByScore[score]++;
+                    if (score == reachable && ++atLeastReachable >= wanted) {
+                        break search;
+                    }
+                }
+            }
+        }
+        Arrays.sort(ranked, 0, matches);
+        
+        int from = Math.min(offset, matches);
+        int to = (int) Math.min((long) from + limit, matches);
+        int[] page = new int[to - from];
+        for (int i = from; i < to; i++) {
+            page[i - from] = found[(int) ranked[i]];
+        }
+        return page;
+    }
+    
+    // The word with the fewest postings. Each word's terms are only counted until it passes the best so far,
+    // and a word matching more than MAX_COUNTED_TERMS terms counts as a broad prefix that drives the search
+    // only when every word is one (then the longest does).
+    private SearchQuery.Clause mostSelective(List<SearchQuery.Clause> clauses) {
+        SearchQuery.Clause driver = null;
+        long fewest = Long.MAX_VALUE;
+        for (SearchQuery.Clause clause : clauses) {
+            long postings = 0;
+            int counted = 0;
+            counting:
+            for (SearchField field : clause.fields) {
+                for (Term term : termRange(field, clause.word, true)) {
+                    postings += term.postings.size();
+                    if (++counted > MAX_COUNTED_TERMS) {
+                        postings = Long.MAX_VALUE - clause.word.length();
+                        break counting;
+                    }
+                    if (postings >= fewest) {
+                        break counting;
+                    }
+                }
+            }
+            if (postings < fewest) {
+                fewest = postings;
+                driver = clause;
+            }
+        }
+        return driver == null ? clauses.get(0) : driver;
+    }
+    
+    // Best score the word can reach in the index as it is: an exact term in its best field, else a prefix
+    private int bestPossible(SearchQuery.Clause clause) {
+        int best = 0;
+        for (SearchField field : clause.fields) {
+            String key = field.key(clause.word);
+            if (dictionary.containsKey(key)) {
+                best = Math.max(best, field.score(true));
+            } else {
+                String next = dictionary.higherKey(key);
+                if (next != null && next.startsWith(key)) {
+                    best = Math.max(best, field.score(false));
+                }
+            }
+        }
+        return best;
+    }
+    
+    // Best score any of the document's terms gives the word (0 = the word does not match the document)
+    private int bestScore(int doc, SearchQuery.Clause clause) {
+        int best = 0;
+        for (int id : documentTerms[doc]) {
+            Term term = terms.get(id);
+            if (clause.fields.contains(term.field) && term.text.startsWith(clause.word)) {
+                best = Math.max(best, term.field.score(term.text.length() == clause.word.length()));
+            }
+        }
+        return best;
+    }
+    
+    // Field / exactness combinations a word can match, best score first
+    private static List<Tier> tiers(SearchQuery.Clause clause) {
+        List<Tier> tiers = new ArrayList<>(clause.fields.size() * 2);
+        for (SearchField field : clause.fields) {
+            tiers.add(new Tier(field, true));
+            tiers.add(new Tier(field, false));
+        }
+        // Stable sort: equal scores keep exact before prefix and the field declaration order
+        tiers.sort((a, b) -> Integer.compare(b.score(), a.score()));
+        return tiers;
+    }
+    
+    private Iterable<Term> tierTerms(Tier tier, String word) {
+        if (tier.exact) {
+            Term term = dictionary.get(tier.field.key(word));
+            return term == null ? Collections.emptyList() : Collections.singletonList(term);
+        }
+        return termRange(tier.field, word, false);
+    }
+    
+    // Terms of the field starting with the word (including the word itself or not), in term order. Lazy: a
+    // walk that stops early never touches the rest of the run.
+    private Iterable<Term> termRange(SearchField field, String word, boolean inclusive) {
+        String prefix = field.key(word);
+        return () -> new Iterator<Term>() {
+            
+            private final Iterator<Map.Entry<String, Term>> entries = dictionary.tailMap(prefix, inclusive).entrySet().iterator();
+            private Term next = advance();
+            
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+            
+            @Override
+            public Term next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Term term = next;
+                next = advance();
+                return term;
+            }
+            
+            private Term advance() {
+                if (entries.hasNext()) {
+                    Map.Entry<String, Term> entry = entries.next();
+                    if (entry.getKey().startsWith(prefix)) {
+                        return entry.getValue();
+                    }
+                }
+                return null;
+            }
+        };
+    }
+    
+    // ==================== INCREMENTAL UPDATES ====================
+    
+    // New or changed employee
+    public void put(EmployeeDocument document) {
+        lock.writeLock().lock();
+        try {
+            int[] ids = termIds(document);
+            long department = departmentOf(document);
+            int current = documentsByEmployee.get(document.getEmployeeNumber(), NONE);
+            if (current != NONE) {
+                if (departments[current] == department && Arrays.equals(documentTerms[current], ids)) {
+                    return;
+                }
+                delete(current);
+            }
+            addDocument(document.getEmployeeNumber(), department, ids);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(Collection<Long> employeeNumbers) {
+        lock.writeLock().lock();
+        try {
+            for (Long employeeNumber : employeeNumbers) {
+                int doc = documentsByEmployee.get(employeeNumber, NONE);
+                if (doc != NONE) {
+                    delete(doc);
+                    documentsByEmployee.remove(employeeNumber);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Members of one department now belong to another one, or to the same one under a new name
+    public void moveDepartment(long fromDepartment, long toDepartment, String toName) {
+        lock.writeLock().lock();
+        try {
+            List<Term> nameTerms = new ArrayList<>();
+            addTerms(nameTerms, SearchField.DEPARTMENT, Tokenizer.words(toName));
+            int end = documentCount;
+            for (int doc = 0; doc < end; doc++) {
+                if (departments[doc] != fromDepartment || deleted.get(doc)) {
+                    continue;
+                }
+                List<Term> moved = new ArrayList<>(documentTerms[doc].length + nameTerms.size());
+                for (int id : documentTerms[doc]) {
+                    if (terms.get(id).field != SearchField.DEPARTMENT) {
+                        moved.add(terms.get(id));
+                    }
+                }
+                for (Term term : nameTerms) {
+                    if (!moved.contains(term)) {
+                        moved.add(term);
+                    }
+                }
+                long employee = employees[doc];
+                delete(doc);
+                addDocument(employee, toDepartment, idsOf(moved));
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // ==================== INTERNALS ====================
+    
+    private void clear(int expectedDocuments) {
+        int capacity = Math.max(16, expectedDocuments);
+        dictionary = new TreeMap<>();
+        terms = new ArrayList<>();
+        employees = new long[capacity];
+        departments = new long[capacity];
+        documentTerms = new int[capacity][];
+        documentCount = 0;
+        deleted = new BitSet();
+        deletedCount = 0;
+        documentsByEmployee = new LongIntHashMap(capacity);
+    }
+    
+    private void addDocument(long employee, long department, int[] ids) {
+        if (documentCount == employees.length) {
+            int capacity = documentCount + (documentCount >> 1);
+            employees = Arrays.copyOf(employees, capacity);
+            departments = Arrays.copyOf(departments, capacity);
+            documentTerms = Arrays.copyOf(documentTerms, capacity);
+        }
+        int doc = documentCount++;
+        employees[doc] = employee;
+        departments[doc] = department;
+        documentTerms[doc] = ids;
+        for (int id : ids) {
+            terms.get(id).postings.add(doc);
+        }
+        documentsByEmployee.put(employee, doc);
+    }
+    
+    private void delete(int doc) {
+        deleted.set(doc);
+        deletedCount++;
+    }
+    
+    // Renumber the live documents densely and rebuild the posting lists without the tombstones
+    private void compactIfNeeded() {
+        if (deletedCount < MIN_DELETED_TO_COMPACT || deletedCount * 4L < documentCount) {
+            return;
+        }
+        List<Term> oldTerms = terms;
+        long[] oldEmployees = employees;
+        long[] oldDepartments = departments;
+        int[][] oldDocumentTerms = documentTerms;
+        int oldCount = documentCount;
+        BitSet oldDeleted = deleted;
+        
+        clear(oldCount - deletedCount);
+        int[] newIds = new int[oldTerms.size()];
+        Arrays.fill(newIds, NONE);
+        for (int doc = 0; doc < oldCount; doc++) {
+            if (oldDeleted.get(doc)) {
+                continue;
+            }
+            int[] ids = oldDocumentTerms[doc];
+            int[] remapped = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                if (newIds[ids[i]] == NONE) {
+                    Term old = oldTerms.get(ids[i]);
+                    newIds[ids[i]] = termFor(old.field, old.text).id;
+                }
+                remapped[i] = newIds[ids[i]];
+            }
+            addDocument(oldEmployees[doc], oldDepartments[doc], remapped);
+        }
+    }
+    
+    private int[] termIds(EmployeeDocument document) {
+        List<Term> documentTerms = new ArrayList<>(12);
+        addTerms(documentTerms, SearchField.FIRST_NAME, Tokenizer.words(document.getFirstName()));
+        addTerms(documentTerms, SearchField.LAST_NAME, Tokenizer.words(document.getLastName()));
+        addTerms(documentTerms, SearchField.EMAIL, Tokenizer.words(document.getEmail()));
+        addTerms(documentTerms, SearchField.TITLE, Tokenizer.words(document.getTitle()));
+        String phone = Tokenizer.digits(document.getPhoneNumber());
+        if (phone != null) {
+            addTerms(documentTerms, SearchField.PHONE, Collections.singletonList(phone));
+        }
+        addTerms(documentTerms, SearchField.DEPARTMENT, Tokenizer.words(document.getDepartmentName()));
+        return idsOf(documentTerms);
+    }
+    
+    private void addTerms(List<Term> target, SearchField field, List<String> words) {
+        for (String word : words) {
+            Term term = termFor(field, word);
+            if (!target.contains(term)) {
+                target.add(term);
+            }
+        }
+    }
+    
+    private Term termFor(SearchField field, String text) {
+        return dictionary.computeIfAbsent(field.key(text), key -> {
+            Term term = new Term(terms.size(), field, text);
+            terms.add(term);
+            return term;
+        });
+    }
+    
+    private static int[] idsOf(List<Term> documentTerms) {
+        int[] ids = new int[documentTerms.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = documentTerms.get(i).id;
+        }
+        return ids;
+    }
+    
+    private static long departmentOf(EmployeeDocument document) {
+        return document.getDepartmentNumber() == null ? 0 : document.getDepartmentNumber();
+    }
+    
+    private static final class Term {
+        
+        final int id;
+        final SearchField field;
+        final String text;
+        final PostingList postings = new PostingList();
+        
+        Term(int id, SearchField field, String text) {
+            this.id = id;
+            this.field = field;
+            this.text = text;
+        }
+    }
+    
+    private static final class Tier {
+        
+        final SearchField field;
+        final boolean exact;
+        
+        Tier(SearchField field, boolean exact) {
+            this.field = field;
+            this.exact = exact;
+        }
+        
+        int score() {
+            return field.score(exact);
+        }
+    }
+}
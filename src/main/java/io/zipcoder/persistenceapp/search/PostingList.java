@@ -0,0 +1,72 @@
+package io.zipcoder.persistenceapp.search;
+
+import java.util.Arrays;
+
+// The documents containing one term: ascending document numbers stored as variable-length deltas
+// (7 bits per byte), so runs of nearby documents cost a byte each. Documents are only ever appended
+// with a number above the last one; removals are tombstones kept by the index.
+final class PostingList {
+    
+    private static final byte[] EMPTY = new byte[0];
+    
+    private byte[] bytes = EMPTY;
+    private int length;
+    private int size;
+    private int last = -1;
+    
+    void add(int doc) {
+        if (doc <= last) {
+            throw new IllegalArgumentException("Documents must be added in increasing order");
+        }
+        if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(8, bytes.length + (bytes.length >> 1) + 5));
+        }
+        int delta = doc - last;
+        while ((delta & ~0x7F) != 0) {
+            bytes[length++] = (byte) (delta | 0x80);
+            delta >>>= 7;
+        }
+        bytes[length++] = (byte) delta;
+        last = doc;
+        size++;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    // Drop the spare capacity left by growing (after a bulk load)
+    void trim() {
+        if (bytes.length != length) {
+            bytes = Arrays.copyOf(bytes, length);
+        }
+    }
+    
+    Cursor cursor() {
+        return new Cursor();
+    }
+    
+    // Forward-only reader over the document numbers
+    final class Cursor {
+        
+        private int position;
+        private int doc = -1;
+        
+        // Next document number, or -1 when the list is exhausted
+        int next() {
+            if (position >= length) {
+                return -1;
+            }
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            doc += delta;
+            return doc;
+        }
+    }
+}
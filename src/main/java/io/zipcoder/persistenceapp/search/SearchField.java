@@ -0,0 +1,30 @@
+package io.zipcoder.persistenceapp.search;
+
+// Indexed employee fields. Terms are stored under a one-character field code ("l" + "smith"), so each
+// field has its own sorted run in the dictionary. The weight ranks a match on the field; an exact
+// term match counts double a prefix match.
+enum SearchField {
+    
+    FIRST_NAME('f', 4),
+    LAST_NAME('l', 4),
+    EMAIL('e', 2),
+    TITLE('t', 2),
+    PHONE('p', 2),
+    DEPARTMENT('d', 1);
+    
+    final char code;
+    final int weight;
+    
+    SearchField(char code, int weight) {
+        this.code = code;
+        this.weight = weight;
+    }
+    
+    int score(boolean exact) {
+        return exact ? weight * 2 : weight;
+    }
+    
+    String key(String term) {
+        return code + term;
+    }
+}
@@ -0,0 +1,104 @@
+package io.zipcoder.persistenceapp.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A parsed search: every word must match (AND), each word as a prefix of a term in the fields it is
+// allowed to match. Free text matches any field; "title:engineer" or "name:jo" pins a word to a field.
+// Something typed like a phone number ("555-0100") is searched as one run of digits.
+public final class SearchQuery {
+    
+    private static final Map<String, EnumSet<SearchField>> QUALIFIERS = new HashMap<>();
+    
+    static {
+        QUALIFIERS.put("name", EnumSet.of(SearchField.FIRST_NAME, SearchField.LAST_NAME));
+        QUALIFIERS.put("first", EnumSet.of(SearchField.FIRST_NAME));
+        QUALIFIERS.put("last", EnumSet.of(SearchField.LAST_NAME));
+        QUALIFIERS.put("email", EnumSet.of(SearchField.EMAIL));
+        QUALIFIERS.put("title", EnumSet.of(SearchField.TITLE));
+        QUALIFIERS.put("phone", EnumSet.of(SearchField.PHONE));
+        QUALIFIERS.put("department", EnumSet.of(SearchField.DEPARTMENT));
+        QUALIFIERS.put("dept", EnumSet.of(SearchField.DEPARTMENT));
+    }
+    
+    private final List<Clause> clauses = new ArrayList<>();
+    
+    private SearchQuery() {
+    }
+    
+    // Free text, optionally with qualifier:value words
+    public static SearchQuery parse(String text) {
+        SearchQuery query = new SearchQuery();
+        if (text == null) {
+            return query;
+        }
+        for (String chunk : text.trim().split("\\s+")) {
+            int colon = chunk.indexOf(':');
+            String qualifier = colon > 0 ? chunk.substring(0, colon).toLowerCase() : null;
+            if (qualifier != null && QUALIFIERS.containsKey(qualifier)) {
+                query.and(qualifier, chunk.substring(colon + 1));
+            } else if (Tokenizer.isPhoneNumber(chunk) && Tokenizer.digits(chunk).length() < chunk.length()) {
+                query.add(Tokenizer.digits(chunk), EnumSet.of(SearchField.PHONE));
+            } else {
+                for (String word : Tokenizer.words(chunk)) {
+                    query.add(word, EnumSet.allOf(SearchField.class));
+                }
+            }
+        }
+        return query;
+    }
+    
+    // Also require the value's words in one field (name, first, last, email, title, phone, department)
+    public SearchQuery and(String qualifier, String value) {
+        EnumSet<SearchField> fields = QUALIFIERS.get(qualifier.toLowerCase());
+        if (fields == null) {
+            throw new IllegalArgumentException("Unknown search field: " + qualifier);
+        }
+        if (fields.contains(SearchField.PHONE)) {
+            String digits = Tokenizer.digits(value);
+            if (digits != null) {
+                add(digits, fields);
+            }
+        } else {
+            for (String word : Tokenizer.words(value)) {
+                add(word, fields);
+            }
+        }
+        return this;
+    }
+    
+    public boolean isEmpty() {
+        return clauses.isEmpty();
+    }
+    
+    List<Clause> clauses() {
+        return Collections.unmodifiableList(clauses);
+    }
+    
+    private void add(String word, EnumSet<SearchField> fields) {
+        // Only digits can match a phone number
+        if (fields.contains(SearchField.PHONE) && !word.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            fields = EnumSet.copyOf(fields);
+            fields.remove(SearchField.PHONE);
+        }
+        if (!fields.isEmpty()) {
+            clauses.add(new Clause(word, fields));
+        }
+    }
+    
+    // One word of the query and the fields it may match
+    static final class Clause {
+        
+        final String word;
+        final EnumSet<SearchField> fields;
+        
+        Clause(String word, EnumSet<SearchField> fields) {
+            this.word = word;
+            this.fields = fields;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.zipcoder.persistenceapp.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Turns field values and query text into index terms: lower case, accents stripped, split on anything
+// that is not a letter or digit ("O'Brien-Smith" -> "o", "brien", "smith"). Phone numbers
+// are reduced to their digits so "(555) 010-0100" and "5550100100" are the same term.
+final class Tokenizer {
+    
+    private Tokenizer() {
+    }
+    
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>(4);
+        if (text == null) {
+            return words;
+        }
+        String normalized = normalize(text);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+    
+    // Digits of a phone number, or null if it has none
+    static String digits(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.length() == 0 ? null : digits.toString();
+    }
+    
+    // Looks like a phone number as typed: digits with the usual separators and nothing else
+    static boolean isPhoneNumber(String text) {
+        boolean digit = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if ("+-(). ".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return digit;
+    }
+    
+    private static String normalize(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                // Decompose and drop the combining marks: "José" -> "jose"
+                String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+                return decomposed.replaceAll("\\p{M}+", "").toLowerCase(Locale.ROOT);
+            }
+        }
+        return text.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,119 @@
+package io.zipcoder.persistenceapp.serialization;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// A fields= projection ("employeeNumber,lastName,email") checked against what a listing may select. The
+// fields become the JPQL select list, so only those columns are read, and every row comes back as a map in
+// the requested order, ready for whichever encoder the client asked for. Related entities are selectable
+// by key only (managerEmployeeNumber reads the foreign key column, no join).
+public final class FieldSelection {
+    
+    // Selectable fields of an employee (alias e) and a department (alias d); the first one is the listing's key
+    public static final Map<String, String> EMPLOYEE_FIELDS = fields(
+        "employeeNumber", "e.employeeNumber",
+        "firstName", "e.firstName",
+        "lastName", "e.lastName",
+        "title", "e.title",
+        "phoneNumber", "e.phoneNumber",
+        "email", "e.email",
+        "hireDate", "e.hireDate",
+        "managerEmployeeNumber", "e.manager.employeeNumber",
+        "departmentNumber", "e.department.departmentNumber");
+    
+    public static final Map<String, String> DEPARTMENT_FIELDS = fields(
+        "departmentNumber", "d.departmentNumber",
+        "departmentName", "d.departmentName",
+        "managerEmployeeNumber", "d.manager.employeeNumber",
+        "headcount", "d.headcount");
+    
+    private final List<String> names;
+    private final List<String> columns;
+    private final int keyIndex;
+    
+    private FieldSelection(List<String> names, List<String> columns, int keyIndex) {
+        this.names = names;
+        this.columns = columns;
+        this.keyIndex = keyIndex;
+    }
+    
+    // Comma-separated field names; throws IllegalArgumentException for an empty list or an unknown field
+    public static FieldSelection parse(String fields, Map<String, String> selectable) {
+        Set<String> requested = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            if (!field.trim().isEmpty()) {
+                requested.add(field.trim());
+            }
+        }
+        if (requested.isEmpty()) {
+            throw new IllegalArgumentException("No fields selected");
+        }
+        List<String> names = new ArrayList<>(requested);
+        List<String> columns = new ArrayList<>(names.size() + 1);
+        for (String field : names) {
+            String column = selectable.get(field);
+            if (column == null) {
+                throw new IllegalArgumentException("Unknown field: " + field
+                    + " (selectable: " + String.join(", ", selectable.keySet()) + ")");
+            }
+            columns.add(column);
+        }
+        
+        // The key is always read (it is the paging cursor), after the requested fields if not one of them
+        String key = selectable.keySet().iterator().next();
+        int keyIndex = names.indexOf(key);
+        if (keyIndex < 0) {
+            keyIndex = columns.size();
+            columns.add(selectable.get(key));
+        }
+        return new FieldSelection(names, columns, keyIndex);
+    }
+    
+    // Run "SELECT <fields> <fromAndWhere>" with the parameters (maxResults 0 = no limit)
+    public List<Object[]> select(EntityManager entityManager, String fromAndWhere, Map<String, Object> parameters, int maxResults) {
+        Query query = entityManager.createQuery("SELECT " + String.join(", ", columns) + " " + fromAndWhere);
+        parameters.forEach(query::setParameter);
+        if (maxResults > 0) {
+            query.setMaxResults(maxResults);
+        }
+        List<?> results = query.getResultList();
+        List<Object[]> rows = new ArrayList<>(results.size());
+        for (Object result : results) {
+            rows.add(result instanceof Object[] ? (Object[]) result : new Object[] {result});
+        }
+        return rows;
+    }
+    
+    // The requested fields of each selected row, keyed by field name in the requested order
+    public List<Map<String, Object>> toMaps(List<Object[]> rows) {
+        List<Map<String, Object>> maps = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                values.put(names.get(i), row[i]);
+            }
+            maps.add(values);
+        }
+        return maps;
+    }
+    
+    // The listing key of a selected row
+    public long key(Object[] row) {
+        return ((Number) row[keyIndex]).longValue();
+    }
+    
+    private static Map<String, String> fields(String... namesAndColumns) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndColumns.length; i += 2) {
+            fields.put(namesAndColumns[i], namesAndColumns[i + 1]);
+        }
+        return Collections.unmodifiableMap(fields);
+    }
+}
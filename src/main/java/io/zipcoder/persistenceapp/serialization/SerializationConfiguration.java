@@ -0,0 +1,24 @@
+package io.zipcoder.persistenceapp.serialization;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+// Binary encodings of the same Jackson model, picked by the Accept header: Smile (application/x-jackson-smile)
+// and CBOR (application/cbor). Both are built from Boot's configured mapper builder, so they carry exactly what
+// the JSON endpoints write, with numbers in binary and (Smile) repeated field names sent once per response.
+@Configuration
+public class SerializationConfiguration {
+    
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.smile().build());
+    }
+    
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.cbor().build());
+    }
+}
@@ -0,0 +1,39 @@
+package io.zipcoder.persistenceapp.services;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Defers in-memory side effects (caches, indexes) until the surrounding transaction has committed,
+// so a rollback never leaves them ahead of the database. Runs immediately outside a transaction.
+final class AfterCommit {
+    
+    private AfterCommit() {}
+    
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+    
+    // Like run, but also after a rollback: for evicting cache entries that may have been loaded
+    // from the transaction's own uncommitted changes
+    static void runAfterCompletion(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,189 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.micrometer.core.annotation.Timed;
+import io.zipcoder.persistenceapp.models.BatchOperation;
+import io.zipcoder.persistenceapp.models.BatchResult;
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.repositories.DepartmentRepository;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Runs an ordered list of employee and department changes in one transaction. Every employee and department
+// the operations name is loaded up front with one query each, so the operations do not re-read their rows,
+// and the row updates they leave in the persistence context are written together, in JDBC batches, at flush.
+@Service
+@Transactional
+@Timed("directory.service")
+public class BatchService {
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Autowired
+    private DepartmentRepository departmentRepository;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    // Apply the operations in order; the first one that fails rolls the whole batch back (thrown as Failed)
+    public BatchResult apply(List<BatchOperation> operations) {
+        Map<Long, Employee> employees = new HashMap<>();
+        Map<Long, Department> departments = new HashMap<>();
+        load(operations, 0, employees, departments);
+        
+        for (int i = 0; i < operations.size(); i++) {
+            BatchOperation operation = operations.get(i);
+            try {
+                perform(operation, employees, departments);
+            } catch (RuntimeException e) {
+                throw new Failed(result(operations, i, e.getMessage()), e);
+            }
+            // Deletes and merges run set-based and clear the persistence context: reload what the rest of the batch names
+            if ((operation.getType() == BatchOperation.Type.DELETE_EMPLOYEE
+                    || operation.getType() == BatchOperation.Type.MERGE_DEPARTMENTS) && i + 1 < operations.size()) {
+                load(operations, i + 1, employees, departments);
+            }
+        }
+        
+        try {
+            entityManager.flush();
+        } catch (RuntimeException e) {
+            throw new Failed(result(operations, operations.size(), e.getMessage()), e);
+        }
+        return result(operations, -1, null);
+    }
+    
+    private void perform(BatchOperation operation, Map<Long, Employee> employees, Map<Long, Department> departments) {
+        if (operation.getType() == null) {
+            throw new IllegalArgumentException("Operation type is required");
+        }
+        if (operation.getType() == BatchOperation.Type.MERGE_DEPARTMENTS) {
+            departmentService.mergeDepartments(department(departments, operation.getDepartmentNumber()),
+                department(departments, operation.getMergedDepartmentNumber()));
+            return;
+        }
+        Employee employee = employee(employees, operation.getEmployeeNumber(), "Employee");
+        switch (operation.getType()) {
+            case SET_MANAGER:
+                employeeService.setManager(employee, employee(employees, operation.getManagerEmployeeNumber(), "Manager"));
+                break;
+            case UPDATE_EMPLOYEE:
+                if (operation.getEmployee() == null) {
+                    throw new IllegalArgumentException("employee is required");
+                }
+                employeeService.updateEmployee(employee, operation.getEmployee());
+                break;
+            case SET_DEPARTMENT:
+                Department department = operation.getDepartmentNumber() == null ? null
+                    : department(departments, operation.getDepartmentNumber());
+                employeeService.setDepartment(employee, department);
+                break;
+            case SET_DEPARTMENT_MANAGER:
+                departmentService.setDepartmentManager(department(departments, operation.getDepartmentNumber()), employee);
+                break;
+            case DELETE_EMPLOYEE:
+                employeeService.deleteEmployee(employee.getEmployeeNumber());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported operation type");
+        }
+    }
+    
+    // Load every employee and department named from the given operation on, one query each
+    private void load(List<BatchOperation> operations, int from, Map<Long, Employee> employees, Map<Long, Department> departments) {
+        Set<Long> employeeIds = new HashSet<>();
+        Set<Long> deptNums = new HashSet<>();
+        for (BatchOperation operation : operations.subList(from, operations.size())) {
+            addIfPresent(employeeIds, operation.getEmployeeNumber());
+            addIfPresent(employeeIds, operation.getManagerEmployeeNumber());
+            addIfPresent(deptNums, operation.getDepartmentNumber());
+            addIfPresent(deptNums, operation.getMergedDepartmentNumber());
+        }
+        employees.clear();
+        departments.clear();
+        if (!employeeIds.isEmpty()) {
+            employeeRepository.findAllById(employeeIds).forEach(e -> employees.put(e.getEmployeeNumber(), e));
+        }
+        if (!deptNums.isEmpty()) {
+            departmentRepository.findAllById(deptNums).forEach(d -> departments.put(d.getDepartmentNumber(), d));
+        }
+    }
+    
+    private static void addIfPresent(Set<Long> ids, Long id) {
+        if (id != null) {
+            ids.add(id);
+        }
+    }
+    
+    private static Employee employee(Map<Long, Employee> employees, Long id, String role) {
+        if (id == null) {
+            throw new IllegalArgumentException(role + " number is required");
+        }
+        Employee employee = employees.get(id);
+        if (employee == null) {
+            throw new RuntimeException(role + " not found");
+        }
+        return employee;
+    }
+    
+    private static Department department(Map<Long, Department> departments, Long deptNum) {
+        if (deptNum == null) {
+            throw new IllegalArgumentException("Department number is required");
+        }
+        Department department = departments.get(deptNum);
+        if (department == null) {
+            throw new RuntimeException("Department not found");
+        }
+        return department;
+    }
+    
+    // Outcome of every operation given the index of the failed one (-1 = none, size = the final flush)
+    private static BatchResult result(List<BatchOperation> operations, int failed, String error) {
+        List<BatchResult.Outcome> outcomes = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            BatchResult.Status status = failed < 0 ? BatchResult.Status.APPLIED
+                : i < failed ? BatchResult.Status.ROLLED_BACK
+                : i == failed ? BatchResult.Status.FAILED
+                : BatchResult.Status.NOT_RUN;
+            outcomes.add(new BatchResult.Outcome(i, operations.get(i).getType(), status,
+                status == BatchResult.Status.FAILED ? error : null));
+        }
+        String summary = failed < 0 ? null
+            : failed < operations.size() ? "Operation " + failed + " failed: " + error
+            : "Writing the changes failed: " + error;
+        return new BatchResult(failed < 0, summary, outcomes);
+    }
+    
+    // A batch that was rolled back, with the outcome of each operation
+    public static class Failed extends RuntimeException {
+        
+        private final BatchResult result;
+        
+        Failed(BatchResult result, Throwable cause) {
+            super(result.getError(), cause);
+            this.result = result;
+        }
+        
+        public BatchResult getResult() {
+            return result;
+        }
+    }
+}
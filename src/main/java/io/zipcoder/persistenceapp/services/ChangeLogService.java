@@ -0,0 +1,216 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.models.ChangeEvent;
+import io.zipcoder.persistenceapp.models.ChangeLogHead;
+import io.zipcoder.persistenceapp.models.ChangePage;
+import io.zipcoder.persistenceapp.repositories.ChangeEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Append-only change log, written in the transaction of the change it records. The services record changes as
+// they go; the entries are written just before commit, after everything else has been flushed: the transaction
+// bumps the head row, which it then holds locked until it commits, and numbers its entries from there. So
+// sequence numbers are taken in commit order and a consumer that has read up to N never sees a smaller number
+// turn up later. The head lock is held only for the commit itself, and a rollback writes nothing.
+@Service
+@Transactional
+public class ChangeLogService {
+    
+    private static final int HEAD = 1;
+    private static final int BATCH_SIZE = 1000;
+    private static final String INSERT_CHANGE = "INSERT INTO change_log (seq, entity_type, entity_id, operation, changed_at)"
+        + " VALUES (?, ?, ?, ?, ?)";
+    private static final int[] INSERT_CHANGE_TYPES = {Types.BIGINT, Types.VARCHAR, Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP};
+    
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    // Highest sequence number known to be committed, and the readers waiting for one above theirs
+    private final AtomicLong lastCommitted = new AtomicLong();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    // Transactions between writing their entries and the end of their after-commit work
+    private final Set<PendingChanges> committing = ConcurrentHashMap.newKeySet();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void createHead() {
+        if (entityManager.find(ChangeLogHead.class, HEAD) == null) {
+            entityManager.persist(new ChangeLogHead(HEAD, 0L));
+        }
+    }
+    
+    // ==================== RECORDING ====================
+    
+    public void record(ChangeEvent.EntityType entityType, Long entityId, ChangeEvent.Operation operation) {
+        pendingChanges().add(entityType, entityId, operation);
+    }
+    
+    public void record(ChangeEvent.EntityType entityType, Collection<Long> entityIds, ChangeEvent.Operation operation) {
+        if (entityIds.isEmpty()) {
+            return;
+        }
+        PendingChanges pending = pendingChanges();
+        for (Long entityId : entityIds) {
+            pending.add(entityType, entityId, operation);
+        }
+    }
+    
+    // ==================== READING ====================
+    
+    // Up to limit entries after a sequence number, oldest first
+    public ChangePage changesAfter(long since, int limit) {
+        return new ChangePage(changeEventRepository.findAfter(since, PageRequest.of(0, limit)), since, limit);
+    }
+    
+    // Completes once a change after the sequence number has committed. It is completed on the committing
+    // thread: run follow-up work (reading the changes, writing a response) asynchronously.
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public CompletableFuture<Void> awaitChangesAfter(long since) {
+        Waiter waiter = new Waiter(since);
+        waiters.add(waiter);
+        // A commit between the caller's last read and the add above has already gone by
+        if (lastCommitted.get() > since) {
+            waiter.future.complete(null);
+        }
+        waiters.removeIf(w -> w.future.isDone());
+        return waiter.future;
+    }
+    
+    // Sequence number of the last committed change, as seen by the caller's transaction if there is one: every
+    // change that transaction can see is numbered at or below it
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public long headSequence() {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(MAX(last_seq), 0) FROM change_log_head WHERE id = ?", Long.class, HEAD);
+    }
+    
+    // A sequence number up to which every change made on this node has committed and been through its
+    // after-commit updates (org graph, search index): the head, once the transactions committing when it
+    // was read have completed. Empty if they take longer than the timeout.
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public OptionalLong settledSequence(Duration timeout) {
+        long head = headSequence();
+        CompletableFuture<?>[] finishing = committing.stream().map(pending -> pending.completed).toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(finishing).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return OptionalLong.of(head);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return OptionalLong.empty();
+        } catch (TimeoutException | ExecutionException e) {
+            return OptionalLong.empty();
+        }
+    }
+    
+    private void committed(long lastSequence) {
+        long last = lastCommitted.accumulateAndGet(lastSequence, Math::max);
+        for (Waiter waiter : waiters) {
+            if (waiter.since < last) {
+                waiter.future.complete(null);
+            }
+        }
+        waiters.removeIf(w -> w.future.isDone());
+    }
+    
+    // ==================== INTERNALS ====================
+    
+    // The changes recorded so far in the current transaction
+    private PendingChanges pendingChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Changes can only be recorded inside a transaction");
+        }
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingChanges();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        return pending;
+    }
+    
+    private final class PendingChanges implements TransactionSynchronization {
+        
+        private final List<Object[]> rows = new ArrayList<>();
+        private long lastSequence;
+        private final CompletableFuture<Void> completed = new CompletableFuture<>();
+        
+        void add(ChangeEvent.EntityType entityType, Long entityId, ChangeEvent.Operation operation) {
+            rows.add(new Object[] {null, entityType.name(), entityId, operation.name(), null});
+        }
+        
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            // Before the head moves, so settledSequence sees this transaction once its numbers can be read
+            committing.add(this);
+            // Flush first, so no other row lock is taken while the head is held
+            entityManager.flush();
+            int count = rows.size();
+            if (jdbcTemplate.update("UPDATE change_log_head SET last_seq = last_seq + ? WHERE id = ?", count, HEAD) == 0) {
+                jdbcTemplate.update("INSERT INTO change_log_head (id, last_seq) VALUES (?, ?)", HEAD, count);
+            }
+            lastSequence = jdbcTemplate.queryForObject("SELECT last_seq FROM change_log_head WHERE id = ?", Long.class, HEAD);
+            long sequence = lastSequence - count;
+            Timestamp now = Timestamp.from(Instant.now());
+            for (Object[] row : rows) {
+                row[0] = ++sequence;
+                row[4] = now;
+            }
+            for (int from = 0; from < count; from += BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(INSERT_CHANGE, rows.subList(from, Math.min(count, from + BATCH_SIZE)), INSERT_CHANGE_TYPES);
+            }
+        }
+        
+        @Override
+        public void afterCommit() {
+            committed(lastSequence);
+        }
+        
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(ChangeLogService.this);
+            committing.remove(this);
+            completed.complete(null);
+        }
+    }
+    
+    private static final class Waiter {
+        
+        final long since;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        
+        Waiter(long since) {
+            this.since = since;
+        }
+    }
+}
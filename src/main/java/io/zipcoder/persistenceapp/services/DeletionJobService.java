@@ -0,0 +1,209 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.models.DeletionJob;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.zipcoder.persistenceapp.models.DeletionJob.Status.CANCELLED;
+import static io.zipcoder.persistenceapp.models.DeletionJob.Status.FAILED;
+import static io.zipcoder.persistenceapp.models.DeletionJob.Status.SUCCEEDED;
+
+// Bulk deletes as background jobs. A job deletes the subtrees it was submitted for (a department's members,
+// a manager's direct reports, a list of employees; taken at submission) in chunks of about
+// app.deletes.chunk-size employees, each its own transaction through EmployeeService.deleteEmployees: row
+// locks last one chunk, and online requests run between chunks. Whole subtrees go together while they fit;
+// one too large on its own is taken apart from its deepest levels up. A department delete removes the
+// department row last, in a transaction of its own once its members are gone. Jobs run one at a time and
+// can be cancelled between chunks.
+@Service
+public class DeletionJobService {
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Autowired
+    private OrgStatisticsService orgStatistics;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Value("${app.deletes.chunk-size:500}")
+    private int chunkSize;
+    
+    @Value("${app.deletes.chunk-pause:20ms}")
+    private Duration chunkPause;
+    
+    @Value("${app.deletes.retained-jobs:100}")
+    private int retainedJobs;
+    
+    private final AtomicLong lastJobId = new AtomicLong();
+    
+    // By id, so oldest first
+    private final Map<Long, DeletionJob> jobs = new ConcurrentSkipListMap<>();
+    
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "deletion-jobs");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // ==================== SUBMISSION ====================
+    
+    // The employees and everyone below them
+    public DeletionJob deleteEmployees(List<Long> employeeIds) {
+        return submit("deleteEmployees", orgStatistics.outermostSubtrees(employeeIds));
+    }
+    
+    // Everyone below the manager (but not the manager)
+    public DeletionJob removeAllUnderManager(Long managerId) {
+        return submit("removeAllUnderManager " + managerId, orgStatistics.subtreesOfReports(managerId));
+    }
+    
+    // The department's members and everyone below them
+    public DeletionJob removeAllFromDepartment(Long deptNum) {
+        return submit("removeAllFromDepartment " + deptNum, orgStatistics.subtreesOfMembers(deptNum));
+    }
+    
+    // The department's members and everyone below them, then the department itself
+    public DeletionJob deleteDepartment(Long deptNum) {
+        return submit("deleteDepartment " + deptNum, orgStatistics.subtreesOfMembers(deptNum),
+            () -> departmentService.deleteDepartment(deptNum));
+    }
+    
+    // ==================== STATUS & CANCELLATION ====================
+    
+    public Optional<DeletionJob> getJob(long id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+    
+    // Running, queued and recently finished jobs, oldest first
+    public List<DeletionJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+    
+    // The chunk in progress still commits; a finished job is left as it is
+    public Optional<DeletionJob> cancel(long id) {
+        Optional<DeletionJob> job = getJob(id);
+        job.ifPresent(DeletionJob::requestCancel);
+        return job;
+    }
+    
+    @PreDestroy
+    void shutdown() {
+        jobs.values().forEach(DeletionJob::requestCancel);
+        worker.shutdownNow();
+    }
+    
+    // ==================== EXECUTION ====================
+    
+    private DeletionJob submit(String operation, List<OrgStatisticsService.Subtree> subtrees) {
+        return submit(operation, subtrees, null);
+    }
+    
+    // The last step (if any) runs after every chunk, unless the job was cancelled or failed
+    private DeletionJob submit(String operation, List<OrgStatisticsService.Subtree> subtrees, Runnable lastStep) {
+        Deque<Long> roots = new ArrayDeque<>();
+        int total = 0;
+        for (OrgStatisticsService.Subtree subtree : subtrees) {
+            roots.add(subtree.employeeNumber);
+            total += subtree.size;
+        }
+        DeletionJob job = new DeletionJob(lastJobId.incrementAndGet(), operation, total);
+        jobs.put(job.getId(), job);
+        forgetOldJobs();
+        worker.execute(() -> run(job, roots, lastStep));
+        return job;
+    }
+    
+    private void run(DeletionJob job, Deque<Long> roots, Runnable lastStep) {
+        job.started();
+        try {
+            while (!roots.isEmpty()) {
+                if (job.isCancelRequested()) {
+                    job.finished(CANCELLED, null);
+                    return;
+                }
+                job.chunkDeleted(transactionTemplate.execute(status -> deleteChunk(roots)));
+                if (!roots.isEmpty()) {
+                    Thread.sleep(chunkPause.toMillis());
+                }
+            }
+            if (lastStep != null) {
+                transactionTemplate.executeWithoutResult(status -> lastStep.run());
+            }
+            job.finished(SUCCEEDED, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.finished(CANCELLED, null);
+        } catch (RuntimeException e) {
+            job.finished(FAILED, e.getMessage());
+        }
+    }
+    
+    // One chunk (in the caller's transaction): whole subtrees off the front of the queue while they fit, or
+    // the deepest part of the first one if it does not fit on its own. Subtrees already gone are dropped.
+    // Returns the number of employees deleted.
+    private int deleteChunk(Deque<Long> roots) {
+        List<Long> next = new ArrayList<>();
+        for (Iterator<Long> it = roots.iterator(); it.hasNext() && next.size() < chunkSize; ) {
+            next.add(it.next());
+        }
+        Map<Long, OrgStatisticsService.Subtree> found = new HashMap<>();
+        for (OrgStatisticsService.Subtree subtree : orgStatistics.outermostSubtrees(next)) {
+            found.put(subtree.employeeNumber, subtree);
+        }
+        
+        List<Long> chunk = new ArrayList<>();
+        int budget = chunkSize;
+        for (Long root : next) {
+            OrgStatisticsService.Subtree subtree = found.get(root);
+            if (subtree != null && subtree.size > budget) {
+                if (chunk.isEmpty()) {
+                    chunk.addAll(employeeRepository.findDeepestInSubtree(subtree.path, budget));
+                }
+                break;
+            }
+            roots.pop();
+            if (subtree != null) {
+                chunk.add(root);
+                budget -= subtree.size;
+            }
+        }
+        return chunk.isEmpty() ? 0 : employeeService.deleteEmployees(chunk);
+    }
+    
+    // Keep the newest finished jobs only
+    private void forgetOldJobs() {
+        long finished = jobs.values().stream().filter(DeletionJob::isFinished).count();
+        for (Iterator<DeletionJob> it = jobs.values().iterator(); it.hasNext() && finished > retainedJobs; ) {
+            if (it.next().isFinished()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+}
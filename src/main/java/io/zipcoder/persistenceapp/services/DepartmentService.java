@@ -1,46 +1,169 @@
 package io.zipcoder.persistenceapp.services;
 
+import io.micrometer.core.annotation.Timed;
+import io.zipcoder.persistenceapp.cache.DirectoryCache;
+import io.zipcoder.persistenceapp.graph.OrgGraph;
 import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.DepartmentDto;
+import io.zipcoder.persistenceapp.models.DepartmentStats;
+import io.zipcoder.persistenceapp.models.DepartmentSummary;
 import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.KeysetPage;
 import io.zipcoder.persistenceapp.repositories.DepartmentRepository;
 import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import io.zipcoder.persistenceapp.search.EmployeeDocument;
+import io.zipcoder.persistenceapp.search.EmployeeSearchIndex;
+import io.zipcoder.persistenceapp.serialization.FieldSelection;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static io.zipcoder.persistenceapp.models.ChangeEvent.EntityType.DEPARTMENT;
+import static io.zipcoder.persistenceapp.models.ChangeEvent.EntityType.EMPLOYEE;
+import static io.zipcoder.persistenceapp.models.ChangeEvent.Operation.DELETE;
+import static io.zipcoder.persistenceapp.models.ChangeEvent.Operation.UPSERT;
 
 @Service
 @Transactional
+@Timed("directory.service")
 public class DepartmentService {
     
+    // Rows streamed between persistence context clears
+    private static final int STREAM_BATCH_SIZE = 500;
+    
     @Autowired
     private DepartmentRepository departmentRepository;
     
     @Autowired
     private EmployeeRepository employeeRepository;
     
+    @Autowired
+    private HierarchyIndexService hierarchyIndex;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DirectoryCache directoryCache;
+    
+    @Autowired
+    private ChangeLogService changeLog;
+    
+    @Autowired
+    private OrgStatisticsService orgStatistics;
+    
+    @Autowired(required = false)
+    private OrgGraph orgGraph;
+    
+    @Autowired(required = false)
+    private EmployeeSearchIndex searchIndex;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
     // ==================== BASIC CRUD ====================
     
     public Department createDepartment(Department department) {
-        return departmentRepository.save(department);
+        // As for employees: a manager named by number is a reference to the stored row
+        if (department.getManager() != null && !entityManager.contains(department.getManager())) {
+            department.setManager(entityManager.getReference(Employee.class, department.getManager().getEmployeeNumber()));
+        }
+        Department created = departmentRepository.save(department);
+        changeLog.record(DEPARTMENT, created.getDepartmentNumber(), UPSERT);
+        return created;
     }
     
+    @ReadOnlyTransactional
     public List<Department> getAllDepartments() {
         return departmentRepository.findAll();
     }
     
-    public Optional<Department> getDepartmentById(Long id) {
-        return departmentRepository.findById(id);
+    @ReadOnlyTransactional
+    public List<DepartmentSummary> getDepartmentSummaries() {
+        return departmentRepository.findAllSummaries();
+    }
+    
+    // Served from the lookup cache; misses load from the primary, as a lagging replica would cache a stale copy
+    public Optional<DepartmentDto> getDepartmentById(Long id) {
+        return directoryCache.department(id, key -> departmentRepository.findById(key).map(DepartmentDto::from).orElse(null));
+    }
+    
+    // Name -> number is cached separately, then the department comes from the same cache as by-id lookups
+    public Optional<DepartmentDto> getDepartmentByName(String name) {
+        return directoryCache.departmentNumber(name, key -> departmentRepository.findByDepartmentName(key)
+                .map(Department::getDepartmentNumber).orElse(null))
+            .flatMap(this::getDepartmentById);
     }
     
-    public Optional<Department> getDepartmentByName(String name) {
-        return departmentRepository.findByDepartmentName(name);
+    // Precomputed headcount, plus span of control, total reports and levels below the department's manager
+    @ReadOnlyTransactional
+    public Optional<DepartmentStats> getDepartmentStats(Long id) {
+        return orgStatistics.departmentStats(id);
     }
     
     public void deleteDepartment(Long id) {
-        departmentRepository.deleteById(id);
+        // Set-based: the members go with everyone below them, then the department row on its own
+        String name = departmentRepository.findById(id).map(Department::getDepartmentName)
+            .orElseThrow(() -> new RuntimeException("Department not found"));
+        employeeService.removeAllFromDepartment(id);
+        evictCached(cache -> cache.evictDepartment(id, name));
+        departmentRepository.deleteByDepartmentNumber(id);
+        changeLog.record(DEPARTMENT, id, DELETE);
+    }
+    
+    // ==================== PAGINATION & STREAMING ====================
+    
+    // Keyset page of departments after a department number (null = first page)
+    @ReadOnlyTransactional
+    public KeysetPage<Department> getDepartmentsPage(Long afterDeptNum, int size) {
+        long after = afterDeptNum == null ? 0L : afterDeptNum;
+        List<Department> items = departmentRepository.findPageAfter(after, PageRequest.of(0, size));
+        Long lastKey = items.isEmpty() ? null : items.get(items.size() - 1).getDepartmentNumber();
+        return new KeysetPage<>(items, lastKey, size);
+    }
+    
+    // Only the selected fields of one keyset page of departments
+    @ReadOnlyTransactional
+    public KeysetPage<Map<String, Object>> getDepartmentFieldsPage(FieldSelection fields, Long afterDeptNum, int size) {
+        List<Object[]> rows = selectDepartmentFields(fields, afterDeptNum == null ? 0L : afterDeptNum, size);
+        return new KeysetPage<>(fields.toMaps(rows), rows.isEmpty() ? null : fields.key(rows.get(rows.size() - 1)), size);
+    }
+    
+    // Only the selected fields of every department
+    @ReadOnlyTransactional
+    public List<Map<String, Object>> getDepartmentFields(FieldSelection fields) {
+        return fields.toMaps(selectDepartmentFields(fields, 0L, 0));
+    }
+    
+    private List<Object[]> selectDepartmentFields(FieldSelection fields, long after, int limit) {
+        return fields.select(entityManager, "FROM Department d WHERE d.departmentNumber > :after ORDER BY d.departmentNumber",
+            Collections.singletonMap("after", after), limit);
+    }
+    
+    // Hand every department to the action through a read-only cursor, clearing the persistence context as it goes
+    @ReadOnlyTransactional
+    public void forEachDepartment(Consumer<Department> action) {
+        try (Stream<Department> departments = departmentRepository.streamAll()) {
+            Iterator<Department> it = departments.iterator();
+            for (int count = 1; it.hasNext(); count++) {
+                action.accept(it.next());
+                if (count % STREAM_BATCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
     }
     
     // ==================== DEPARTMENT OPERATIONS ====================
@@ -51,12 +174,29 @@ public class DepartmentService {
             .orElseThrow(() -> new RuntimeException("Department not found"));
         Employee manager = employeeRepository.findById(empNum)
             .orElseThrow(() -> new RuntimeException("Employee not found"));
-        
+        return setDepartmentManager(department, manager);
+    }
+    
+    // Set the manager of a department, both already loaded in this transaction
+    public Department setDepartmentManager(Department department, Employee manager) {
+        Long deptNum = department.getDepartmentNumber();
+        Long empNum = manager.getEmployeeNumber();
         department.setManager(manager);
         
         // Also set this employee's department
+        Long previousDeptNum = manager.getDepartment() != null ? manager.getDepartment().getDepartmentNumber() : null;
         manager.setDepartment(department);
+        orgStatistics.departmentChanged(previousDeptNum, deptNum);
         employeeRepository.save(manager);
+        updateGraph(graph -> graph.setDepartment(empNum, deptNum));
+        EmployeeDocument document = EmployeeDocument.from(manager);
+        updateSearchIndex(index -> index.put(document));
+        evictCached(cache -> {
+            cache.evictDepartments(Collections.singletonList(deptNum));
+            cache.evictEmployees(Collections.singletonList(empNum));
+        });
+        changeLog.record(DEPARTMENT, deptNum, UPSERT);
+        changeLog.record(EMPLOYEE, empNum, UPSERT);
         
         return departmentRepository.save(department);
     }
@@ -66,7 +206,18 @@ public class DepartmentService {
         Department department = departmentRepository.findById(deptNum)
             .orElseThrow(() -> new RuntimeException("Department not found"));
         
+        // Members carry the department name in their cached copies
+        String oldName = department.getDepartmentName();
+        List<Long> members = employeeRepository.findIdsByDepartmentNumber(deptNum);
+        evictCached(cache -> {
+            cache.evictDepartment(deptNum, oldName);
+            cache.evictEmployees(members);
+        });
+        
         department.setDepartmentName(newName);
+        updateSearchIndex(index -> index.moveDepartment(deptNum, deptNum, newName));
+        changeLog.record(DEPARTMENT, deptNum, UPSERT);
+        changeLog.record(EMPLOYEE, members, UPSERT);
         return departmentRepository.save(department);
     }
     
@@ -76,31 +227,82 @@ public class DepartmentService {
             .orElseThrow(() -> new RuntimeException("Department A not found"));
         Department deptB = departmentRepository.findByDepartmentName(deptBName)
             .orElseThrow(() -> new RuntimeException("Department B not found"));
+        return mergeDepartments(deptA, deptB);
+    }
+    
+    // Merge department B into department A, both already loaded
+    public Department mergeDepartments(Department deptA, Department deptB) {
+        if (deptA.getDepartmentNumber().equals(deptB.getDepartmentNumber())) {
+            throw new RuntimeException("Cannot merge a department into itself");
+        }
+        String deptAName = deptA.getDepartmentName();
+        String deptBName = deptB.getDepartmentName();
+        Long deptANum = deptA.getDepartmentNumber();
+        Long deptBNum = deptB.getDepartmentNumber();
         
-        // Get all employees from department B
-        List<Employee> deptBEmployees = employeeRepository.findByDepartment(deptB);
-        
-        // Move them all to department A
-        for (Employee emp : deptBEmployees) {
-            emp.setDepartment(deptA);
-            employeeRepository.save(emp);
+        // B disappears and its members (and B's manager) change department; A itself is unchanged
+        List<Long> movedEmployees = new ArrayList<>(employeeRepository.findIdsByDepartmentNumber(deptBNum));
+        if (deptB.getManager() != null) {
+            movedEmployees.add(deptB.getManager().getEmployeeNumber());
         }
+        evictCached(cache -> {
+            cache.evictDepartment(deptBNum, deptBName);
+            cache.evictEmployees(movedEmployees);
+        });
         
         // Make B's manager report to A's manager
+        OrgStatisticsService.Subtree managerB = null;
         if (deptB.getManager() != null && deptA.getManager() != null) {
+            Long managerBNum = deptB.getManager().getEmployeeNumber();
+            Long managerANum = deptA.getManager().getEmployeeNumber();
+            hierarchyIndex.lockChains(managerBNum, managerANum);
+            managerB = orgStatistics.subtree(managerBNum);
+            hierarchyIndex.move(managerBNum, managerANum);
             deptB.getManager().setManager(deptA.getManager());
-            employeeRepository.save(deptB.getManager());
+            updateGraph(graph -> graph.put(managerBNum, managerANum, deptANum));
+        }
+        
+        // Move every employee of B to A in one statement (flushes the change above, then clears the persistence context)
+        employeeRepository.moveDepartment(deptB, deptA);
+        if (managerB != null) {
+            // B's whole headcount is handed over below, B's manager included
+            orgStatistics.moved(managerB, managerB.departmentNumber);
         }
+        orgStatistics.departmentsMerged(deptBNum, deptANum);
+        updateGraph(graph -> graph.mergeDepartments(deptBNum, deptANum));
+        updateSearchIndex(index -> index.moveDepartment(deptBNum, deptANum, deptAName));
         
         // Delete department B
-        departmentRepository.delete(deptB);
+        departmentRepository.deleteById(deptBNum);
+        changeLog.record(DEPARTMENT, deptBNum, DELETE);
+        changeLog.record(DEPARTMENT, deptANum, UPSERT);
+        changeLog.record(EMPLOYEE, movedEmployees, UPSERT);
         
-        return deptA;
+        return departmentRepository.findById(deptANum)
+            .orElseThrow(() -> new RuntimeException("Department A not found"));
     }
     
     // Remove all employees from a department
     public void removeAllEmployeesFromDepartment(Long deptNum) {
-        List<Employee> employees = employeeRepository.findByDepartment_DepartmentNumber(deptNum);
-        employeeRepository.deleteAll(employees);
+        employeeService.removeAllFromDepartment(deptNum);
+    }
+    
+    // Apply a change to the in-memory org graph once the transaction commits
+    private void updateGraph(Consumer<OrgGraph> change) {
+        if (orgGraph != null) {
+            AfterCommit.run(() -> change.accept(orgGraph));
+        }
+    }
+    
+    // Apply a change to the search index once the transaction commits
+    private void updateSearchIndex(Consumer<EmployeeSearchIndex> change) {
+        if (searchIndex != null) {
+            AfterCommit.run(() -> change.accept(searchIndex));
+        }
+    }
+    
+    // Drop cached lookups once the transaction has finished, committed or rolled back
+    private void evictCached(Consumer<DirectoryCache> eviction) {
+        AfterCommit.runAfterCompletion(() -> eviction.accept(directoryCache));
     }
 }
\ No newline at end of file
@@ -0,0 +1,256 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.cache.SecondLevelCache;
+import io.zipcoder.persistenceapp.graph.OrgGraph;
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeImportRecord;
+import io.zipcoder.persistenceapp.models.EmployeeImportResult;
+import io.zipcoder.persistenceapp.repositories.DepartmentRepository;
+import io.zipcoder.persistenceapp.search.EmployeeSearchIndex;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import java.sql.Date;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static io.zipcoder.persistenceapp.models.ChangeEvent.EntityType.DEPARTMENT;
+import static io.zipcoder.persistenceapp.models.ChangeEvent.EntityType.EMPLOYEE;
+import static io.zipcoder.persistenceapp.models.ChangeEvent.Operation.UPSERT;
+
+// Loads large HR snapshots. Rows are consumed one at a time from the parser and written with JDBC batch
+// inserts, bypassing the persistence context. Ids come from the entity's own pooled sequence generator
+// (one sequence call per 50 rows), so they never collide with ids Hibernate hands out. Snapshots usually
+// list managers before their reports: those rows are inserted with manager and hierarchy path already
+// set; rows whose manager only appears later are fixed up in a second pass.
+@Service
+public class EmployeeImportService {
+    
+    static final int BATCH_SIZE = 1000;
+    
+    private static final String INSERT_EMPLOYEE = "INSERT INTO employees"
+        + " (emp_number, first_name, last_name, title, phone_number, email, hire_date, manager_id, dept_num, org_path, org_depth)"
+        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final int[] INSERT_EMPLOYEE_TYPES = {
+        Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.DATE,
+        Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.INTEGER
+    };
+    
+    // Parent markers: top of the org, or a manager that has not been read yet
+    private static final int TOP = -1;
+    private static final int UNRESOLVED = -2;
+    
+    @Autowired
+    private DepartmentRepository departmentRepository;
+    
+    @Autowired(required = false)
+    private OrgGraph orgGraph;
+    
+    @Autowired(required = false)
+    private EmployeeSearchIndex searchIndex;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private ChangeLogService changeLog;
+    
+    @Autowired
+    private OrgStatisticsService orgStatistics;
+    
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    // Import every record in one transaction: a bad row rolls back the whole snapshot
+    @Transactional
+    public EmployeeImportResult importEmployees(Iterator<EmployeeImportRecord> records) {
+        long start = System.nanoTime();
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        IdentifierGenerator ids = session.getFactory().getMetamodel().entityPersister(Employee.class).getIdentifierGenerator();
+        
+        ImportedRows rows = new ImportedRows();
+        Map<String, Integer> rowsBySourceId = new HashMap<>();
+        Map<String, Long> departmentIds = new HashMap<>();
+        List<Integer> forwardRows = new ArrayList<>();
+        List<String> forwardManagers = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        List<Long> departmentsCreated = new ArrayList<>();
+        Map<Long, Integer> departmentGains = new HashMap<>();
+        
+        // Pass 1: insert employees in batches, creating departments on first sight
+        while (records.hasNext()) {
+            EmployeeImportRecord record = records.next();
+            long id = ((Number) ids.generate(session, null)).longValue();
+            
+            Long departmentId = null;
+            if (hasText(record.getDepartmentName())) {
+                departmentId = departmentIds.get(record.getDepartmentName());
+                if (departmentId == null) {
+                    Department department = departmentRepository.findByDepartmentName(record.getDepartmentName()).orElse(null);
+                    if (department == null) {
+                        department = new Department(record.getDepartmentName());
+                        entityManager.persist(department);
+                        // The JDBC inserts reference it, so it has to reach the database first
+                        entityManager.flush();
+                        departmentsCreated.add(department.getDepartmentNumber());
+                    }
+                    departmentId = department.getDepartmentNumber();
+                    departmentIds.put(record.getDepartmentName(), departmentId);
+                }
+                departmentGains.merge(departmentId, 1, Integer::sum);
+            }
+            
+            int parent = TOP;
+            if (hasText(record.getManagerSourceId())) {
+                Integer managerRow = rowsBySourceId.get(record.getManagerSourceId());
+                parent = managerRow == null ? UNRESOLVED : managerRow;
+            }
+            int row = rows.add(id, parent);
+            if (parent == UNRESOLVED) {
+                forwardRows.add(row);
+                forwardManagers.add(record.getManagerSourceId());
+            }
+            if (hasText(record.getSourceId()) && rowsBySourceId.put(record.getSourceId(), row) != null) {
+                throw new RuntimeException("Duplicate sourceId in import: " + record.getSourceId());
+            }
+            
+            // The path is known now unless something above this row is still waiting for its manager
+            String path = rows.pathOf(row);
+            if (path == null) {
+                rows.deferred.set(row);
+            }
+            batch.add(new Object[] {
+                id, record.getFirstName(), record.getLastName(), record.getTitle(), record.getPhoneNumber(), record.getEmail(),
+                record.getHireDate() == null ? null : Date.valueOf(record.getHireDate()),
+                parent >= 0 ? rows.ids[parent] : null, departmentId,
+                path, path == null ? null : HierarchyIndexService.depthOf(path)
+            });
+            if (batch.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(INSERT_EMPLOYEE, batch, INSERT_EMPLOYEE_TYPES);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_EMPLOYEE, batch, INSERT_EMPLOYEE_TYPES);
+        }
+        
+        // Pass 2: link reports whose manager came later in the input, then index the rows that waited on them
+        List<Object[]> managerLinks = new ArrayList<>(forwardRows.size());
+        for (int i = 0; i < forwardRows.size(); i++) {
+            Integer managerRow = rowsBySourceId.get(forwardManagers.get(i));
+            if (managerRow == null) {
+                throw new RuntimeException("Manager not found in import: " + forwardManagers.get(i));
+            }
+            int row = forwardRows.get(i);
+            rows.parents[row] = managerRow;
+            managerLinks.add(new Object[] {rows.ids[managerRow], rows.ids[row]});
+        }
+        jdbcTemplate.batchUpdate("UPDATE employees SET manager_id = ? WHERE emp_number = ?", managerLinks);
+        
+        List<Object[]> deferredPaths = new ArrayList<>(rows.deferred.cardinality());
+        for (int row = rows.deferred.nextSetBit(0); row >= 0; row = rows.deferred.nextSetBit(row + 1)) {
+            String path = rows.pathOf(row);
+            if (path == null) {
+                throw new RuntimeException("Cannot import: reporting cycle through input row " + (row + 1));
+            }
+            deferredPaths.add(new Object[] {path, HierarchyIndexService.depthOf(path), rows.ids[row]});
+        }
+        jdbcTemplate.batchUpdate("UPDATE employees SET org_path = ?, org_depth = ? WHERE emp_number = ?", deferredPaths);
+        
+        // Imported rows only report to each other, so their counters are computed here in one pass
+        orgStatistics.imported(rows.ids, rows.parents, rows.size, departmentGains);
+        
+        changeLog.record(DEPARTMENT, departmentsCreated, UPSERT);
+        changeLog.record(EMPLOYEE, rows.employeeNumbers(), UPSERT);
+        // The inserts bypassed Hibernate, so it cannot tell which cached lists they change
+        AfterCommit.runAfterCompletion(secondLevelCache::evictEmployeeCollectionsAndQueries);
+        if (orgGraph != null) {
+            AfterCommit.run(orgGraph::reload);
+        }
+        if (searchIndex != null) {
+            AfterCommit.run(searchIndex::reload);
+        }
+        
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new EmployeeImportResult(rows.size, departmentsCreated.size(), rows.linked(), elapsedMillis);
+    }
+    
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+    
+    // Imported employees by input position: employee number and the position of the manager (or TOP / UNRESOLVED).
+    // Paths are rebuilt by walking up the parents instead of being kept, so memory stays at a few bytes per row.
+    private static final class ImportedRows {
+        
+        long[] ids = new long[1024];
+        int[] parents = new int[1024];
+        int size;
+        final BitSet deferred = new BitSet();
+        
+        int add(long id, int parent) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+            }
+            ids[size] = id;
+            parents[size] = parent;
+            return size++;
+        }
+        
+        // "/top/.../row/", or null if an unresolved manager (or a cycle) sits above the row
+        String pathOf(int row) {
+            long[] chain = new long[8];
+            int length = 0;
+            for (int current = row; current != TOP; current = parents[current]) {
+                if (current == UNRESOLVED || length > size) {
+                    return null;
+                }
+                if (length == chain.length) {
+                    chain = Arrays.copyOf(chain, length * 2);
+                }
+                chain[length++] = ids[current];
+            }
+            StringBuilder path = new StringBuilder(length * 8).append('/');
+            for (int i = length - 1; i >= 0; i--) {
+                path.append(chain[i]).append('/');
+            }
+            return path.toString();
+        }
+        
+        List<Long> employeeNumbers() {
+            List<Long> numbers = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                numbers.add(ids[i]);
+            }
+            return numbers;
+        }
+        
+        long linked() {
+            long linked = 0;
+            for (int i = 0; i < size; i++) {
+                if (parents[i] >= 0) {
+                    linked++;
+                }
+            }
+            return linked;
+        }
+    }
+}
@@ -1,40 +1,153 @@
 package io.zipcoder.persistenceapp.services;
 
+import io.micrometer.core.annotation.Timed;
+import io.zipcoder.persistenceapp.cache.DirectoryCache;
+import io.zipcoder.persistenceapp.graph.OrgGraph;
+import io.zipcoder.persistenceapp.metrics.DirectoryMetrics;
 import io.zipcoder.persistenceapp.models.Employee;
 import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.EmployeeDto;
+import io.zipcoder.persistenceapp.models.EmployeeStats;
+import io.zipcoder.persistenceapp.models.EmployeeSummary;
+import io.zipcoder.persistenceapp.models.KeysetPage;
+import io.zipcoder.persistenceapp.repositories.DepartmentRepository;
 import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import io.zipcoder.persistenceapp.search.EmployeeDocument;
+import io.zipcoder.persistenceapp.search.EmployeeSearchIndex;
+import io.zipcoder.persistenceapp.search.SearchQuery;
+import io.zipcoder.persistenceapp.serialization.FieldSelection;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static io.zipcoder.persistenceapp.models.ChangeEvent.EntityType.DEPARTMENT;
+import static io.zipcoder.persistenceapp.models.ChangeEvent.EntityType.EMPLOYEE;
+import static io.zipcoder.persistenceapp.models.ChangeEvent.Operation.DELETE;
+import static io.zipcoder.persistenceapp.models.ChangeEvent.Operation.UPSERT;
 
 @Service
 @Transactional
+@Timed("directory.service")
 public class EmployeeService {
     
+    // Rows streamed between persistence context clears
+    private static final int STREAM_BATCH_SIZE = 500;
+    
+    // Ids per primary-key query when loading employees found in the org graph
+    private static final int LOAD_CHUNK_SIZE = 1000;
+    
     @Autowired
     private EmployeeRepository employeeRepository;
     
+    @Autowired
+    private DepartmentRepository departmentRepository;
+    
+    @Autowired
+    private HierarchyIndexService hierarchyIndex;
+    
+    @Autowired
+    private DirectoryCache directoryCache;
+    
+    @Autowired
+    private DirectoryMetrics directoryMetrics;
+    
+    @Autowired
+    private ChangeLogService changeLog;
+    
+    @Autowired
+    private OrgStatisticsService orgStatistics;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    // Optional in-memory org chart (app.org-graph.enabled); traversals fall back to the database without it
+    @Autowired(required = false)
+    private OrgGraph orgGraph;
+    
+    // Optional search index (app.search.enabled)
+    @Autowired(required = false)
+    private EmployeeSearchIndex searchIndex;
+    
     // ==================== BASIC CRUD ====================
     
     public Employee createEmployee(Employee employee) {
-        return employeeRepository.save(employee);
+        // A body names its manager and department by number only; without a version Hibernate would take
+        // them for new entities, so point at the stored rows instead
+        if (employee.getManager() != null && !entityManager.contains(employee.getManager())) {
+            employee.setManager(entityManager.getReference(Employee.class, employee.getManager().getEmployeeNumber()));
+        }
+        if (employee.getDepartment() != null && !entityManager.contains(employee.getDepartment())) {
+            employee.setDepartment(entityManager.getReference(Department.class, employee.getDepartment().getDepartmentNumber()));
+        }
+        Employee created = employeeRepository.save(employee);
+        Long managerId = created.getManager() != null ? created.getManager().getEmployeeNumber() : null;
+        hierarchyIndex.indexNewEmployee(created.getEmployeeNumber(), managerId);
+        Long deptNum = created.getDepartment() != null ? created.getDepartment().getDepartmentNumber() : null;
+        orgStatistics.employeeAdded(created.getEmployeeNumber(), deptNum);
+        updateGraph(graph -> graph.put(created.getEmployeeNumber(), managerId, deptNum));
+        EmployeeDocument document = searchDocument(created);
+        updateSearchIndex(index -> index.put(document));
+        changeLog.record(EMPLOYEE, created.getEmployeeNumber(), UPSERT);
+        return created;
     }
     
+    @ReadOnlyTransactional
     public List<Employee> getAllEmployees() {
         return employeeRepository.findAll();
     }
     
-    public Optional<Employee> getEmployeeById(Long id) {
-        return employeeRepository.findById(id);
+    // Served from the lookup cache; a miss loads the employee with its manager and department in one query
+    // (on the primary, not a replica: a lagging one would leave a stale copy in the cache)
+    public Optional<EmployeeDto> getEmployeeById(Long id) {
+        return directoryCache.employee(id, key -> employeeRepository.findById(key).map(EmployeeDto::from).orElse(null));
     }
     
     public Employee updateEmployee(Long id, Employee updatedEmployee) {
         Employee existing = employeeRepository.findById(id)
             .orElseThrow(() -> new RuntimeException("Employee not found"));
+        return updateEmployee(existing, updatedEmployee);
+    }
+    
+    // Update an employee already loaded in this transaction
+    public Employee updateEmployee(Employee existing, Employee updatedEmployee) {
+        Long id = existing.getEmployeeNumber();
+        
+        // An update that carries the version it was based on must not overwrite a newer change (409)
+        if (updatedEmployee.getVersion() != null && !updatedEmployee.getVersion().equals(existing.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Employee.class, id);
+        }
+        
+        // Reports and managed departments show the employee's name, title and email as their manager
+        List<Long> touchedEmployees = new ArrayList<>(Collections.singletonList(id));
+        List<Long> touchedDepartments = new ArrayList<>();
+        if (!Objects.equals(existing.getFirstName(), updatedEmployee.getFirstName())
+                || !Objects.equals(existing.getLastName(), updatedEmployee.getLastName())
+                || !Objects.equals(existing.getTitle(), updatedEmployee.getTitle())
+                || !Objects.equals(existing.getEmail(), updatedEmployee.getEmail())) {
+            touchedEmployees.addAll(employeeRepository.findDirectReportIds(id));
+            touchedDepartments.addAll(departmentRepository.findNumbersManagedBy(Collections.singletonList(id)));
+        }
+        evictCached(cache -> {
+            cache.evictEmployees(touchedEmployees);
+            cache.evictDepartments(touchedDepartments);
+        });
         
         existing.setFirstName(updatedEmployee.getFirstName());
         existing.setLastName(updatedEmployee.getLastName());
@@ -43,21 +156,108 @@ public class EmployeeService {
         existing.setEmail(updatedEmployee.getEmail());
         existing.setHireDate(updatedEmployee.getHireDate());
         
-        return employeeRepository.save(existing);
+        Employee saved = employeeRepository.save(existing);
+        EmployeeDocument document = searchDocument(saved);
+        updateSearchIndex(index -> index.put(document));
+        // The reports and departments that show the employee as their manager changed with it
+        changeLog.record(EMPLOYEE, touchedEmployees, UPSERT);
+        changeLog.record(DEPARTMENT, touchedDepartments, UPSERT);
+        return saved;
     }
     
     public void deleteEmployee(Long id) {
-        employeeRepository.deleteById(id);
+        // Deleting takes everyone below the employee with it, so nobody may move in or out meanwhile
+        hierarchyIndex.lockChains(id);
+        Set<Long> removed = subtreeIds(Collections.singletonList(id));
+        OrgStatisticsService.Removal removal = orgStatistics.beforeRemoving(Collections.singletonList(id));
+        List<Long> unmanagedDepartments = deleteSubtrees(removal);
+        orgStatistics.removed(removal);
+        evictCached(cache -> {
+            cache.evictEmployees(removed);
+            cache.evictDepartments(unmanagedDepartments);
+        });
+        updateGraph(graph -> graph.removeSubtree(id, true));
+        updateSearchIndex(index -> index.remove(removed));
+        changeLog.record(EMPLOYEE, removed, DELETE);
+        changeLog.record(DEPARTMENT, unmanagedDepartments, UPSERT);
+    }
+    
+    // ==================== PAGINATION & STREAMING ====================
+    
+    // Keyset page of employees after an employee number (null = first page), optionally within one department
+    @ReadOnlyTransactional
+    public KeysetPage<Employee> getEmployeesPage(Long deptNum, Long afterEmployeeNumber, int size) {
+        long after = afterEmployeeNumber == null ? 0L : afterEmployeeNumber;
+        List<Employee> items = deptNum == null
+            ? employeeRepository.findPageAfter(after, PageRequest.of(0, size))
+            : employeeRepository.findDepartmentPageAfter(deptNum, after, PageRequest.of(0, size));
+        Long lastKey = items.isEmpty() ? null : items.get(items.size() - 1).getEmployeeNumber();
+        return new KeysetPage<>(items, lastKey, size);
+    }
+    
+    // Only the selected fields of one keyset page of employees, optionally within one department
+    @ReadOnlyTransactional
+    public KeysetPage<Map<String, Object>> getEmployeeFieldsPage(FieldSelection fields, Long deptNum, Long afterEmployeeNumber, int size) {
+        List<Object[]> rows = selectEmployeeFields(fields, deptNum, afterEmployeeNumber == null ? 0L : afterEmployeeNumber, size);
+        return new KeysetPage<>(fields.toMaps(rows), rows.isEmpty() ? null : fields.key(rows.get(rows.size() - 1)), size);
+    }
+    
+    // Only the selected fields of every employee, optionally of one department
+    @ReadOnlyTransactional
+    public List<Map<String, Object>> getEmployeeFields(FieldSelection fields, Long deptNum) {
+        return fields.toMaps(selectEmployeeFields(fields, deptNum, 0L, 0));
+    }
+    
+    // Hand every employee (optionally of one department) to the action through a read-only cursor,
+    // clearing the persistence context as it goes so memory stays flat whatever the table size
+    @ReadOnlyTransactional
+    public void forEachEmployee(Long deptNum, Consumer<Employee> action) {
+        try (Stream<Employee> employees = deptNum == null
+                ? employeeRepository.streamAll()
+                : employeeRepository.streamByDepartmentNumber(deptNum)) {
+            Iterator<Employee> it = employees.iterator();
+            for (int count = 1; it.hasNext(); count++) {
+                action.accept(it.next());
+                if (count % STREAM_BATCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+    }
+    
+    private List<Object[]> selectEmployeeFields(FieldSelection fields, Long deptNum, long after, int limit) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("after", after);
+        String where = "WHERE e.employeeNumber > :after";
+        if (deptNum != null) {
+            where += " AND e.department.departmentNumber = :deptNum";
+            parameters.put("deptNum", deptNum);
+        }
+        return fields.select(entityManager, "FROM Employee e " + where + " ORDER BY e.employeeNumber", parameters, limit);
     }
     
     // ==================== MANAGER OPERATIONS ====================
     
     public Employee setManager(Long employeeId, Long managerId) {
+        // Locked before loading, so concurrent changes to the same employee queue up instead of failing the version check
+        hierarchyIndex.lockChains(employeeId, managerId);
         Employee employee = employeeRepository.findById(employeeId)
             .orElseThrow(() -> new RuntimeException("Employee not found"));
         Employee manager = employeeRepository.findById(managerId)
             .orElseThrow(() -> new RuntimeException("Manager not found"));
+        return setManager(employee, manager);
+    }
+    
+    // Set the manager of an employee already loaded in this transaction
+    public Employee setManager(Employee employee, Employee manager) {
+        Long employeeId = employee.getEmployeeNumber();
+        Long managerId = manager.getEmployeeNumber();
         
+        // Lock both chains of command before the snapshot, then re-root the employee's subtree in the
+        // hierarchy index (rejects moves that would create a cycle)
+        hierarchyIndex.lockChains(employeeId, managerId);
+        OrgStatisticsService.Subtree before = orgStatistics.subtree(employeeId);
+        hierarchyIndex.move(employeeId, managerId);
         employee.setManager(manager);
         
         // When setting a manager, also update department to match manager's department
@@ -65,10 +265,41 @@ public class EmployeeService {
             employee.setDepartment(manager.getDepartment());
         }
         
-        return employeeRepository.save(employee);
+        Long deptNum = employee.getDepartment() != null ? employee.getDepartment().getDepartmentNumber() : null;
+        updateGraph(graph -> graph.put(employeeId, managerId, deptNum));
+        evictCached(cache -> cache.evictEmployees(Collections.singletonList(employeeId)));
+        EmployeeDocument document = searchDocument(employee);
+        updateSearchIndex(index -> index.put(document));
+        changeLog.record(EMPLOYEE, employeeId, UPSERT);
+        // Managed already, so no save: the change is flushed with the transaction
+        orgStatistics.moved(before, deptNum);
+        return employee;
     }
     
+    // Move an employee (without its reports) into a department, or out of any with null
+    public Employee setDepartment(Employee employee, Department department) {
+        Long employeeId = employee.getEmployeeNumber();
+        Long previousDeptNum = employee.getDepartment() != null ? employee.getDepartment().getDepartmentNumber() : null;
+        Long deptNum = department != null ? department.getDepartmentNumber() : null;
+        employee.setDepartment(department);
+        orgStatistics.departmentChanged(previousDeptNum, deptNum);
+        
+        updateGraph(graph -> graph.setDepartment(employeeId, deptNum));
+        evictCached(cache -> cache.evictEmployees(Collections.singletonList(employeeId)));
+        EmployeeDocument document = searchDocument(employee);
+        updateSearchIndex(index -> index.put(document));
+        changeLog.record(EMPLOYEE, employeeId, UPSERT);
+        return employee;
+    }
+    
+    @ReadOnlyTransactional
     public List<Employee> getDirectReports(Long managerId) {
+        if (graphReady()) {
+            if (!orgGraph.contains(managerId)) {
+                throw new RuntimeException("Manager not found");
+            }
+            return loadInOrder(orgGraph.directReports(managerId));
+        }
         Employee manager = employeeRepository.findById(managerId)
             .orElseThrow(() -> new RuntimeException("Manager not found"));
         return employeeRepository.findByManager(manager);
@@ -76,45 +307,87 @@ public class EmployeeService {
     
     // ==================== HIERARCHICAL QUERIES ====================
     
-    // Get reporting hierarchy (employee -> manager -> manager's manager -> etc.)
+    // Get reporting hierarchy (employee -> manager -> manager's manager -> etc.) from the hierarchy index
+    @ReadOnlyTransactional
     public List<Employee> getReportingHierarchy(Long employeeId) {
-        List<Employee> hierarchy = new ArrayList<>();
-        Employee current = employeeRepository.findById(employeeId)
-            .orElseThrow(() -> new RuntimeException("Employee not found"));
+        if (graphReady() && orgGraph.contains(employeeId)) {
+            long[] chain = orgGraph.chainOfCommand(employeeId);
+            directoryMetrics.recordTraversal("chain", "graph", chain.length - 1, chain.length);
+            return loadInOrder(chain);
+        }
         
-        // Walk up the chain
-        while (current != null) {
-            hierarchy.add(current);
-            current = current.getManager();
+        List<Long> chain = hierarchyIndex.getChainOfCommand(employeeId);
+        if (chain.isEmpty()) {
+            throw new RuntimeException("Employee not found");
         }
+        directoryMetrics.recordTraversal("chain", "index", chain.size() - 1, chain.size());
         
-        return hierarchy;
+        // One primary-key lookup for the whole chain, then put it back in chain order
+        return loadInOrder(chain.stream().mapToLong(Long::longValue).toArray());
     }
     
     // Get all reports (direct + indirect) under a manager
+    @ReadOnlyTransactional
     public List<Employee> getAllReports(Long managerId) {
-        List<Employee> allReports = new ArrayList<>();
-        collectAllReports(managerId, allReports);
-        return allReports;
+        return getAllReports(managerId, null);
     }
     
-    // Recursive helper to collect all reports
-    private void collectAllReports(Long managerId, List<Employee> accumulator) {
-        List<Employee> directReports = employeeRepository.findDirectReportsByManagerId(managerId);
+    // Get all reports down to maxDepth levels below the manager (null = no limit) with one path-prefix query
+    @ReadOnlyTransactional
+    public List<Employee> getAllReports(Long managerId, Integer maxDepth) {
+        if (graphReady()) {
+            long[] reports = orgGraph.subtree(managerId, maxDepth == null ? Integer.MAX_VALUE : maxDepth);
+            // Nearest levels come first, so the last report is one of the deepest
+            int depth = reports.length == 0 ? 0
+                : orgGraph.depthOf(reports[reports.length - 1]) - orgGraph.depthOf(managerId);
+            directoryMetrics.recordTraversal("subtree", "graph", depth, reports.length);
+            return loadInOrder(reports);
+        }
         
-        for (Employee report : directReports) {
-            accumulator.add(report);
-            // Recursively get their reports
-            collectAllReports(report.getEmployeeNumber(), accumulator);
+        String path = hierarchyIndex.pathOf(managerId);
+        int depthLimit = maxDepth == null ? Integer.MAX_VALUE : maxDepth;
+        if (path == null || depthLimit < 1) {
+            return new ArrayList<>();
         }
+        int managerDepth = HierarchyIndexService.depthOf(path);
+        int maxOrgDepth = (int) Math.min(Integer.MAX_VALUE, (long) managerDepth + depthLimit);
+        List<Employee> reports = employeeRepository.findSubtreeByOrgPath(path, maxOrgDepth);
+        int depth = reports.isEmpty() ? 0 : reports.get(reports.size() - 1).getOrgDepth() - managerDepth;
+        directoryMetrics.recordTraversal("subtree", "index", depth, reports.size());
+        return reports;
+    }
+    
+    // Is the employee somewhere under the manager?
+    @ReadOnlyTransactional
+    public boolean isUnder(Long employeeId, Long managerId) {
+        return hierarchyIndex.isUnder(employeeId, managerId);
+    }
+    
+    // Span of control: number of direct reports, precomputed on the manager's row
+    @ReadOnlyTransactional
+    public long getSpanOfControl(Long managerId) {
+        return orgStatistics.spanOfControl(managerId);
+    }
+    
+    // Precomputed span of control, total reports and levels below an employee
+    @ReadOnlyTransactional
+    public Optional<EmployeeStats> getEmployeeStats(Long employeeId) {
+        return orgStatistics.employeeStats(employeeId);
     }
     
     // ==================== DEPARTMENT OPERATIONS ====================
     
+    @ReadOnlyTransactional
     public List<Employee> getEmployeesByDepartment(Long deptNum) {
         return employeeRepository.findByDepartment_DepartmentNumber(deptNum);
     }
     
+    @ReadOnlyTransactional
+    public List<EmployeeSummary> getEmployeeSummariesByDepartment(Long deptNum) {
+        return employeeRepository.findSummaryByDepartment_DepartmentNumberOrderByEmployeeNumber(deptNum);
+    }
+    
+    @ReadOnlyTransactional
     public List<Employee> getEmployeesWithNoManager() {
         return employeeRepository.findByManagerIsNull();
     }
@@ -123,40 +396,219 @@ public class EmployeeService {
     
     // Remove all employees under a manager (including indirect reports)
     public void removeAllUnderManager(Long managerId) {
-        List<Employee> allReports = getAllReports(managerId);
-        employeeRepository.deleteAll(allReports);
+        // As for deleteEmployee: nobody may move in or out of the subtree while it goes
+        String path = hierarchyIndex.lockChains(managerId).get(managerId);
+        if (path == null) {
+            return;
+        }
+        
+        Set<Long> removed = subtreeIds(Collections.singletonList(managerId));
+        removed.remove(managerId);
+        List<Long> unmanagedDepartments = departmentRepository.findNumbersManagedUnder(path);
+        OrgStatisticsService.Removal removal = orgStatistics.beforeRemovingReportsOf(managerId);
+        evictCached(cache -> {
+            cache.evictEmployees(removed);
+            cache.evictDepartments(unmanagedDepartments);
+        });
+        
+        // Set-based: free up department managers in the subtree, flatten it onto the manager, then delete it in one go
+        employeeRepository.clearDepartmentManagersUnder(path);
+        employeeRepository.flattenSubtree(path, managerId);
+        employeeRepository.deleteByManagerId(managerId);
+        orgStatistics.removed(removal);
+        updateGraph(graph -> graph.removeSubtree(managerId, false));
+        updateSearchIndex(index -> index.remove(removed));
+        changeLog.record(EMPLOYEE, removed, DELETE);
+        changeLog.record(DEPARTMENT, unmanagedDepartments, UPSERT);
     }
     
     // Remove direct reports only, reassign their reports to next manager up
     public void removeDirectReportsOnly(Long managerId) {
-        Employee manager = employeeRepository.findById(managerId)
-            .orElseThrow(() -> new RuntimeException("Manager not found"));
+        if (!employeeRepository.existsById(managerId)) {
+            throw new RuntimeException("Manager not found");
+        }
+        
+        hierarchyIndex.lockChains(managerId);
+        List<Long> middleManagers = employeeRepository.findDirectReportIds(managerId);
+        if (middleManagers.isEmpty()) {
+            return;
+        }
         
-        List<Employee> directReports = employeeRepository.findByManager(manager);
+        // Their reports get a new manager; departments they ran lose theirs
+        List<Long> touchedEmployees = new ArrayList<>(middleManagers);
+        touchedEmployees.addAll(employeeRepository.findDirectReportIdsOf(middleManagers));
+        List<Long> unmanagedDepartments = departmentRepository.findNumbersManagedBy(middleManagers);
+        evictCached(cache -> {
+            cache.evictEmployees(touchedEmployees);
+            cache.evictDepartments(unmanagedDepartments);
+        });
         
-        for (Employee report : directReports) {
-            // Get this employee's direct reports
-            List<Employee> theirReports = employeeRepository.findByManager(report);
-            
-            // Reassign them to the next manager up (the original manager)
-            for (Employee subReport : theirReports) {
-                subReport.setManager(manager);
-                employeeRepository.save(subReport);
-            }
-            
-            // Now delete the middle manager
-            employeeRepository.delete(report);
+        // Lift each middle manager's subtree one level up in the hierarchy index
+        List<OrgStatisticsService.Subtree> collapsing = orgStatistics.beforeCollapsing(middleManagers);
+        for (Long id : middleManagers) {
+            hierarchyIndex.collapse(id);
         }
+        
+        // Set-based: hand their reports to the manager, free their departments, then delete them together
+        employeeRepository.reassignReports(middleManagers, managerId);
+        employeeRepository.clearDepartmentManagers(middleManagers);
+        employeeRepository.deleteAllByEmployeeNumberIn(middleManagers);
+        orgStatistics.collapsed(collapsing);
+        updateGraph(graph -> middleManagers.forEach(graph::removeAndLiftReports));
+        updateSearchIndex(index -> index.remove(middleManagers));
+        changeLog.record(EMPLOYEE, middleManagers, DELETE);
+        changeLog.record(EMPLOYEE, touchedEmployees.subList(middleManagers.size(), touchedEmployees.size()), UPSERT);
+        changeLog.record(DEPARTMENT, unmanagedDepartments, UPSERT);
     }
     
     // Remove all employees from a department
     public void removeAllFromDepartment(Long deptNum) {
-        List<Employee> employees = employeeRepository.findByDepartment_DepartmentNumber(deptNum);
-        employeeRepository.deleteAll(employees);
+        // Deleting takes everyone below the members with them, whatever their department
+        List<Long> removed = employeeRepository.findSubtreeIdsOfDepartment(deptNum);
+        OrgStatisticsService.Removal removal = orgStatistics.beforeRemovingMembersOf(deptNum);
+        List<Long> unmanagedDepartments = deleteSubtrees(removal);
+        orgStatistics.removed(removal);
+        evictCached(cache -> {
+            cache.evictEmployees(removed);
+            cache.evictDepartments(unmanagedDepartments);
+        });
+        updateGraph(graph -> graph.removeDepartmentMembers(deptNum));
+        updateSearchIndex(index -> index.remove(removed));
+        changeLog.record(EMPLOYEE, removed, DELETE);
+        changeLog.record(DEPARTMENT, unmanagedDepartments, UPSERT);
+    }
+    
+    // Delete a list of employees by IDs, with everyone below them; returns how many employees were deleted
+    public int deleteEmployees(List<Long> employeeIds) {
+        hierarchyIndex.lockChains(employeeIds.toArray(new Long[0]));
+        Set<Long> removed = subtreeIds(employeeIds);
+        OrgStatisticsService.Removal removal = orgStatistics.beforeRemoving(employeeIds);
+        List<Long> unmanagedDepartments = deleteSubtrees(removal);
+        orgStatistics.removed(removal);
+        evictCached(cache -> {
+            cache.evictEmployees(removed);
+            cache.evictDepartments(unmanagedDepartments);
+        });
+        updateGraph(graph -> graph.removeSubtrees(employeeIds));
+        updateSearchIndex(index -> index.remove(removed));
+        changeLog.record(EMPLOYEE, removed, DELETE);
+        changeLog.record(DEPARTMENT, unmanagedDepartments, UPSERT);
+        return removed.size();
+    }
+    
+    // Delete each subtree set-based, unassigning the departments managed from inside it first; returns those
+    // departments. Removing the entities instead goes row by row, and Hibernate silently un-schedules the
+    // delete of an employee whose manager's report list was batch-fetched alongside. Employees with nobody
+    // below them all go in one statement.
+    private List<Long> deleteSubtrees(OrgStatisticsService.Removal removal) {
+        List<Long> unmanagedDepartments = new ArrayList<>();
+        List<Long> singles = removal.singleEmployees();
+        if (!singles.isEmpty()) {
+            List<Long> managed = departmentRepository.findNumbersManagedBy(singles);
+            if (!managed.isEmpty()) {
+                employeeRepository.clearDepartmentManagers(singles);
+                unmanagedDepartments.addAll(managed);
+            }
+            employeeRepository.deleteAllByEmployeeNumberIn(singles);
+        }
+        for (String path : removal.subtreePaths()) {
+            List<Long> managed = departmentRepository.findNumbersManagedWithin(path);
+            if (!managed.isEmpty()) {
+                employeeRepository.clearDepartmentManagersWithin(path);
+                unmanagedDepartments.addAll(managed);
+            }
+            employeeRepository.unlinkSubtree(path);
+            employeeRepository.deleteSubtree(path);
+        }
+        return unmanagedDepartments;
+    }
+    
+    // ==================== SEARCH ====================
+    
+    // One page of ranked search results; the page key is the number of matches already returned
+    @ReadOnlyTransactional
+    public KeysetPage<EmployeeDto> searchEmployees(SearchQuery query, Long afterRank, int size) {
+        if (searchIndex == null || !searchIndex.isLoaded()) {
+            throw new IllegalStateException("Search index is not available");
+        }
+        int offset = afterRank == null ? 0 : (int) Math.min(Integer.MAX_VALUE, afterRank);
+        List<EmployeeDto> items = new ArrayList<>();
+        for (Employee employee : loadInOrder(searchIndex.search(query, offset, size))) {
+            items.add(EmployeeDto.from(employee));
+        }
+        return new KeysetPage<>(items, (long) offset + items.size(), size);
+    }
+    
+    // Apply a change to the search index once the transaction commits
+    private void updateSearchIndex(Consumer<EmployeeSearchIndex> change) {
+        if (searchIndex != null) {
+            AfterCommit.run(() -> change.accept(searchIndex));
+        }
+    }
+    
+    // Searchable copy of an employee, taken inside the transaction (a new employee may only carry its department's number)
+    private EmployeeDocument searchDocument(Employee employee) {
+        Department department = employee.getDepartment();
+        if (department != null && department.getDepartmentName() == null && department.getDepartmentNumber() != null) {
+            department = departmentRepository.findById(department.getDepartmentNumber()).orElse(null);
+        }
+        return new EmployeeDocument(employee.getEmployeeNumber(), employee.getFirstName(), employee.getLastName(),
+            employee.getEmail(), employee.getTitle(), employee.getPhoneNumber(),
+            department == null ? null : department.getDepartmentNumber(),
+            department == null ? null : department.getDepartmentName());
+    }
+    
+    // ==================== ORG GRAPH ====================
+    
+    // True when traversals can be answered from the in-memory org graph
+    private boolean graphReady() {
+        return orgGraph != null && orgGraph.isLoaded();
+    }
+    
+    // Apply a change to the in-memory org graph once the transaction commits
+    private void updateGraph(Consumer<OrgGraph> change) {
+        if (orgGraph != null) {
+            AfterCommit.run(() -> change.accept(orgGraph));
+        }
     }
     
-    // Delete a list of employees by IDs
-    public void deleteEmployees(List<Long> employeeIds) {
-        employeeRepository.deleteAllById(employeeIds);
+    // Load employees by number with one primary-key query per LOAD_CHUNK_SIZE ids (a whole subtree in a single
+    // IN list can pass the database's bind parameter limit), keeping the given order
+    private List<Employee> loadInOrder(long[] employeeNumbers) {
+        List<Long> ids = new ArrayList<>(employeeNumbers.length);
+        for (long id : employeeNumbers) {
+            ids.add(id);
+        }
+        Map<Long, Employee> byId = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += LOAD_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + LOAD_CHUNK_SIZE, ids.size()));
+            for (Employee e : employeeRepository.findAllById(chunk)) {
+                byId.put(e.getEmployeeNumber(), e);
+            }
+        }
+        List<Employee> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Employee e = byId.get(id);
+            if (e != null) {
+                ordered.add(e);
+            }
+        }
+        return ordered;
+    }
+    
+    // ==================== LOOKUP CACHE ====================
+    
+    // Drop cached lookups once the transaction has finished, committed or rolled back
+    private void evictCached(Consumer<DirectoryCache> eviction) {
+        AfterCommit.runAfterCompletion(() -> eviction.accept(directoryCache));
+    }
+    
+    // The employees and everyone below them (the employees themselves even if not indexed yet)
+    private Set<Long> subtreeIds(List<Long> rootIds) {
+        Set<Long> ids = new HashSet<>(rootIds);
+        if (!rootIds.isEmpty()) {
+            ids.addAll(employeeRepository.findSubtreeIds(rootIds));
+        }
+        return ids;
     }
 }
\ No newline at end of file
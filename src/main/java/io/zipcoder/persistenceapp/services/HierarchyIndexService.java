@@ -0,0 +1,201 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Maintains the materialized path index on employees: org_path holds the employee numbers from the
+// top of the org down to the employee ("/1/5/12/") and org_depth the number of managers above it.
+// Ancestors, subtrees and "is X under Y" then become a single indexed lookup instead of a tree walk.
+// Changes lock the chains of command they touch first, so concurrent moves can never close a cycle.
+@Service
+@Transactional
+public class HierarchyIndexService {
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    // ==================== LOOKUPS ====================
+    
+    // Path of an employee, or null if the employee does not exist
+    public String pathOf(Long employeeId) {
+        return employeeRepository.findOrgPathById(employeeId);
+    }
+    
+    // Chain of command from the employee up to the top of the org (empty if the employee does not exist)
+    public List<Long> getChainOfCommand(Long employeeId) {
+        List<Long> chain = idsOf(pathOf(employeeId));
+        Collections.reverse(chain);
+        return chain;
+    }
+    
+    // True if the employee reports (directly or indirectly) to the manager
+    public boolean isUnder(Long employeeId, Long managerId) {
+        String path = pathOf(employeeId);
+        return path != null && !employeeId.equals(managerId) && path.contains("/" + managerId + "/");
+    }
+    
+    // ==================== LOCKING ====================
+    
+    // Row-lock everyone on the chains of command of the employees (the employees included) until the
+    // transaction ends, and return their paths as read under the lock (null for an unknown employee).
+    // Changes whose chains overlap then run one after the other: moving A under B while B moves under A
+    // needs both rows both times, so the second move sees the first one's paths and rejects the cycle.
+    // A path read before its rows were locked may have changed meanwhile, hence the loop.
+    public Map<Long, String> lockChains(Long... employeeIds) {
+        Set<Long> locked = lockedRows();
+        while (true) {
+            Map<Long, String> paths = pathsOf(employeeIds);
+            Set<Long> unlocked = new TreeSet<>();
+            for (Long id : employeeIds) {
+                String path = paths.get(id);
+                for (Long onChain : path == null ? Collections.singletonList(id) : idsOf(path)) {
+                    if (!locked.contains(onChain)) {
+                        unlocked.add(onChain);
+                    }
+                }
+            }
+            if (unlocked.isEmpty()) {
+                return paths;
+            }
+            employeeRepository.lockAllById(new ArrayList<>(unlocked));
+            locked.addAll(unlocked);
+        }
+    }
+    
+    // Paths of the employees in one query (null for an unknown employee)
+    private Map<Long, String> pathsOf(Long... employeeIds) {
+        if (employeeIds.length == 0) {
+            return Collections.emptyMap();
+        } else if (employeeIds.length == 1) {
+            return Collections.singletonMap(employeeIds[0], pathOf(employeeIds[0]));
+        }
+        Map<Long, String> paths = new HashMap<>();
+        for (Long id : employeeIds) {
+            paths.put(id, null);
+        }
+        for (Object[] row : employeeRepository.findOrgPathsById(paths.keySet())) {
+            paths.put((Long) row[0], (String) row[1]);
+        }
+        return paths;
+    }
+    
+    // Employees this transaction holds row locks on
+    @SuppressWarnings("unchecked")
+    private Set<Long> lockedRows() {
+        Set<Long> locked = (Set<Long>) TransactionSynchronizationManager.getResource(this);
+        if (locked == null) {
+            locked = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, locked);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(HierarchyIndexService.this);
+                }
+            });
+        }
+        return locked;
+    }
+    
+    // ==================== MAINTENANCE ====================
+    
+    // Index a freshly inserted employee below its manager (or at the top of the org)
+    public void indexNewEmployee(Long employeeId, Long managerId) {
+        String parentPath = managerId == null ? "/" : lockChains(managerId).get(managerId);
+        if (parentPath == null) {
+            throw new RuntimeException("Manager not found");
+        }
+        String path = parentPath + employeeId + "/";
+        employeeRepository.updateOrgPath(employeeId, path, depthOf(path));
+    }
+    
+    // Move an employee and everything under it below a new manager (null = top of the org)
+    public void move(Long employeeId, Long newManagerId) {
+        Map<Long, String> paths = newManagerId == null ? lockChains(employeeId) : lockChains(employeeId, newManagerId);
+        String oldPath = paths.get(employeeId);
+        String newParentPath = newManagerId == null ? "/" : paths.get(newManagerId);
+        if (oldPath == null || newParentPath == null) {
+            throw new RuntimeException("Employee not found in hierarchy index");
+        }
+        if (newParentPath.contains("/" + employeeId + "/")) {
+            throw new RuntimeException("Cannot set manager: it would create a reporting cycle");
+        }
+        String newPath = newParentPath + employeeId + "/";
+        if (!newPath.equals(oldPath)) {
+            employeeRepository.rewriteOrgPaths(oldPath, oldPath.length(), newPath, depthOf(newPath) - depthOf(oldPath));
+        }
+    }
+    
+    // Lift everything under a (soon to be removed) employee one level up to the employee's own manager
+    public void collapse(Long employeeId) {
+        String path = lockChains(employeeId).get(employeeId);
+        if (path == null) {
+            return;
+        }
+        String parentPath = path.substring(0, path.lastIndexOf('/', path.length() - 2) + 1);
+        employeeRepository.rewriteOrgPaths(path, path.length(), parentPath, -1);
+    }
+    
+    // Recompute every path from scratch with a recursive CTE (used to backfill rows written before the index existed)
+    public void rebuild() {
+        List<Object[]> rows = new ArrayList<>();
+        for (Object[] row : employeeRepository.computeOrgPaths()) {
+            rows.add(new Object[] {row[1], ((Number) row[2]).intValue(), ((Number) row[0]).longValue()});
+        }
+        jdbcTemplate.batchUpdate("UPDATE employees SET org_path = ?, org_depth = ? WHERE emp_number = ?", rows);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfIncomplete() {
+        if (employeeRepository.existsByOrgPathIsNull()) {
+            rebuild();
+        }
+    }
+    
+    // ==================== PATH HELPERS ====================
+    
+    // Number of managers above the path owner ("/7/" -> 0, "/1/5/7/" -> 2)
+    static int depthOf(String path) {
+        int slashes = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                slashes++;
+            }
+        }
+        return slashes - 2;
+    }
+    
+    // Employee numbers on a path, top of the org first
+    static List<Long> idsOf(String path) {
+        List<Long> ids = new ArrayList<>();
+        if (path == null) {
+            return ids;
+        }
+        int start = 1;
+        for (int i = 1; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                ids.add(Long.parseLong(path.substring(start, i)));
+                start = i + 1;
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,458 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.models.DepartmentStats;
+import io.zipcoder.persistenceapp.models.EmployeeStats;
+import io.zipcoder.persistenceapp.repositories.DepartmentRepository;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Precomputed org statistics kept on the rows themselves: every employee's span of control (direct_reports),
+// everyone below it (total_reports) and the number of reporting levels below it (levels_below), and every
+// department's headcount. Reads are one primary-key lookup. A write only touches what it can change: the
+// managers above the subtree that was added, moved or removed (read off its org_path) and the departments
+// involved. Levels below can shrink when a subtree leaves, so they are recomputed from the old manager
+// upwards out of each manager's direct reports, stopping at the first manager whose value holds.
+// Callers take a snapshot before a change (subtree, beforeRemoving..., beforeCollapsing) and apply it after.
+@Service
+@Transactional
+public class OrgStatisticsService {
+    
+    private static final String SELECT_SUBTREE =
+        "SELECT emp_number, org_path, direct_reports, total_reports, levels_below, dept_num FROM employees";
+    
+    private static final RowMapper<Subtree> SUBTREE_ROW = (rs, rowNum) -> {
+        long department = rs.getLong(6);
+        return new Subtree(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getInt(4) + 1, rs.getInt(5),
+            rs.wasNull() ? null : department);
+    };
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Autowired
+    private DepartmentRepository departmentRepository;
+    
+    @Autowired
+    private HierarchyIndexService hierarchyIndex;
+    
+    @Autowired
+    private NamedParameterJdbcTemplate jdbc;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    // ==================== READS ====================
+    
+    public Optional<EmployeeStats> employeeStats(Long employeeId) {
+        return employeeRepository.findStatsById(employeeId);
+    }
+    
+    public Optional<DepartmentStats> departmentStats(Long deptNum) {
+        return departmentRepository.findStatsById(deptNum);
+    }
+    
+    // Number of direct reports (0 for an unknown employee)
+    public long spanOfControl(Long managerId) {
+        return employeeRepository.findDirectReportCountById(managerId).orElse(0);
+    }
+    
+    // ==================== SNAPSHOTS ====================
+    
+    // An employee's place in the org and the counters of its subtree, or null if the employee does not exist
+    public Subtree subtree(Long employeeId) {
+        List<Subtree> found = select(" WHERE emp_number = :id", "id", employeeId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+    
+    // The subtrees of the employees, leaving out any that sits inside another one of them
+    public List<Subtree> outermostSubtrees(Collection<Long> employeeIds) {
+        return employeeIds.isEmpty() ? Collections.emptyList()
+            : outermost(select(" WHERE emp_number IN (:ids)", "ids", employeeIds));
+    }
+    
+    // The subtrees of a manager's direct reports
+    public List<Subtree> subtreesOfReports(Long managerId) {
+        return requireIndexed(select(" WHERE manager_id = :id", "id", managerId));
+    }
+    
+    // The subtrees of a department's members, leaving out any that sits inside another one of them
+    public List<Subtree> subtreesOfMembers(Long deptNum) {
+        return outermost(select(" WHERE dept_num = :dept", "dept", deptNum));
+    }
+    
+    // The employees are about to be deleted together with everything below them
+    public Removal beforeRemoving(Collection<Long> employeeIds) {
+        return removal(outermostSubtrees(employeeIds));
+    }
+    
+    // Everything below the manager (but not the manager) is about to be deleted
+    public Removal beforeRemovingReportsOf(Long managerId) {
+        return removal(subtreesOfReports(managerId));
+    }
+    
+    // The department's members are about to be deleted together with everything below them
+    public Removal beforeRemovingMembersOf(Long deptNum) {
+        return removal(subtreesOfMembers(deptNum));
+    }
+    
+    // The employees are about to be deleted with their own reports lifted to the manager above them
+    public List<Subtree> beforeCollapsing(Collection<Long> employeeIds) {
+        return employeeIds.isEmpty() ? Collections.emptyList() : select(" WHERE emp_number IN (:ids)", "ids", employeeIds);
+    }
+    
+    // ==================== MAINTENANCE ====================
+    
+    // A new employee, already placed in the hierarchy index
+    public void employeeAdded(Long employeeId, Long deptNum) {
+        entityManager.flush();
+        attach(hierarchyIndex.pathOf(employeeId), 1, 0);
+        adjustHeadcount(deptNum, 1);
+    }
+    
+    // The snapshot's subtree now hangs under another manager (its paths already rewritten) and its top
+    // employee belongs to deptNum
+    public void moved(Subtree before, Long deptNum) {
+        entityManager.flush();
+        detach(before.path, before.size);
+        attach(hierarchyIndex.pathOf(before.employeeNumber), before.size, before.levelsBelow);
+        departmentChanged(before.departmentNumber, deptNum);
+    }
+    
+    // One employee left a department for another
+    public void departmentChanged(Long fromDeptNum, Long toDeptNum) {
+        if (Objects.equals(fromDeptNum, toDeptNum)) {
+            return;
+        }
+        // Lower department number first, so two opposite moves cannot deadlock on the pair of rows
+        if (toDeptNum != null && (fromDeptNum == null || toDeptNum < fromDeptNum)) {
+            adjustHeadcount(toDeptNum, 1);
+            adjustHeadcount(fromDeptNum, -1);
+        } else {
+            adjustHeadcount(fromDeptNum, -1);
+            adjustHeadcount(toDeptNum, 1);
+        }
+    }
+    
+    // Every member of one department moved to another (call before the emptied department is deleted)
+    public void departmentsMerged(Long fromDeptNum, Long intoDeptNum) {
+        jdbc.update("UPDATE departments SET headcount = headcount"
+                + " + (SELECT d.headcount FROM departments d WHERE d.dept_num = :from) WHERE dept_num = :into",
+            new MapSqlParameterSource("from", fromDeptNum).addValue("into", intoDeptNum));
+    }
+    
+    // The snapshot's subtrees are gone. What each manager lost is summed up first, so removing many siblings
+    // at once (a chunk of a background delete) costs a few statements rather than a few per subtree.
+    public void removed(Removal removal) {
+        entityManager.flush();
+        Map<Long, Integer> lostBelow = new HashMap<>();
+        Map<Long, Integer> lostDirect = new HashMap<>();
+        Map<Long, List<Long>> chains = new HashMap<>();
+        for (Subtree subtree : removal.subtrees) {
+            List<Long> above = managersOf(subtree.path);
+            if (above.isEmpty()) {
+                continue;
+            }
+            for (Long manager : above) {
+                lostBelow.merge(manager, subtree.size, Integer::sum);
+            }
+            Long manager = above.get(above.size() - 1);
+            lostDirect.merge(manager, 1, Integer::sum);
+            Collections.reverse(above);
+            chains.putIfAbsent(manager, above);
+        }
+        subtract("total_reports", lostBelow);
+        subtract("direct_reports", lostDirect);
+        // Deepest managers first, so a walk up from a shallower one already sees the levels below it
+        chains.values().stream()
+            .sorted(Comparator.comparingInt(List<Long>::size).reversed())
+            .forEach(this::refreshLevels);
+        removal.departmentLosses.forEach((deptNum, lost) -> adjustHeadcount(deptNum, -lost));
+    }
+    
+    // The snapshot's employees are gone and their reports now report to the manager above them
+    public void collapsed(List<Subtree> removed) {
+        entityManager.flush();
+        Set<Long> managers = new LinkedHashSet<>();
+        for (Subtree employee : removed) {
+            adjustHeadcount(employee.departmentNumber, -1);
+            List<Long> above = managersOf(employee.path);
+            if (above.isEmpty()) {
+                continue;
+            }
+            Long manager = above.get(above.size() - 1);
+            jdbc.update("UPDATE employees SET total_reports = total_reports - 1 WHERE emp_number IN (:ids)",
+                new MapSqlParameterSource("ids", above));
+            jdbc.update("UPDATE employees SET direct_reports = direct_reports + :lifted - 1 WHERE emp_number = :id",
+                new MapSqlParameterSource("lifted", employee.directReports).addValue("id", manager));
+            managers.add(manager);
+        }
+        // Everything under the removed employees moved up a level
+        for (Long manager : managers) {
+            refreshLevels(hierarchyIndex.getChainOfCommand(manager));
+        }
+    }
+    
+    // Counters of freshly imported rows, given as a forest of input positions (parents[row] < 0 = no manager),
+    // plus the headcount each department gained
+    void imported(long[] ids, int[] parents, int size, Map<Long, Integer> departmentGains) {
+        writeCounters(ids, parents, size);
+        departmentGains.forEach(this::adjustHeadcount);
+    }
+    
+    // ==================== COUNTER UPDATES ====================
+    
+    // A subtree of size employees now hangs at path: count it in every manager above
+    private void attach(String path, int size, int levelsBelow) {
+        List<Long> above = managersOf(path);
+        if (above.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", above).addValue("size", size)
+            .addValue("id", above.get(above.size() - 1))
+            .addValue("bottom", HierarchyIndexService.depthOf(path) + levelsBelow);
+        jdbc.update("UPDATE employees SET total_reports = total_reports + :size WHERE emp_number IN (:ids)", params);
+        jdbc.update("UPDATE employees SET direct_reports = direct_reports + 1 WHERE emp_number = :id", params);
+        jdbc.update("UPDATE employees SET levels_below = GREATEST(levels_below, :bottom - org_depth)"
+            + " WHERE emp_number IN (:ids)", params);
+    }
+    
+    // Take each employee's amount off a counter, one statement per distinct amount
+    private void subtract(String column, Map<Long, Integer> amounts) {
+        Map<Integer, List<Long>> byAmount = new TreeMap<>();
+        amounts.forEach((id, amount) -> byAmount.computeIfAbsent(amount, a -> new ArrayList<>()).add(id));
+        byAmount.forEach((amount, ids) -> jdbc.update("UPDATE employees SET " + column + " = " + column
+            + " - :amount WHERE emp_number IN (:ids)", new MapSqlParameterSource("amount", amount).addValue("ids", ids)));
+    }
+    
+    // A subtree of size employees no longer hangs at path: take it off every manager above
+    private void detach(String path, int size) {
+        List<Long> above = managersOf(path);
+        if (above.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", above).addValue("size", size)
+            .addValue("id", above.get(above.size() - 1));
+        jdbc.update("UPDATE employees SET total_reports = total_reports - :size WHERE emp_number IN (:ids)", params);
+        jdbc.update("UPDATE employees SET direct_reports = direct_reports - 1 WHERE emp_number = :id", params);
+        Collections.reverse(above);
+        refreshLevels(above);
+    }
+    
+    // Recompute levels below from each manager's direct reports, nearest manager first, until one holds
+    private void refreshLevels(List<Long> managersBottomUp) {
+        for (Long manager : managersBottomUp) {
+            MapSqlParameterSource params = new MapSqlParameterSource("id", manager);
+            List<Integer> stored = jdbc.queryForList("SELECT levels_below FROM employees WHERE emp_number = :id", params, Integer.class);
+            Integer computed = jdbc.queryForObject("SELECT COALESCE(MAX(levels_below) + 1, 0) FROM employees"
+                + " WHERE manager_id = :id", params, Integer.class);
+            if (stored.isEmpty() || stored.get(0).equals(computed)) {
+                return;
+            }
+            jdbc.update("UPDATE employees SET levels_below = :levels WHERE emp_number = :id", params.addValue("levels", computed));
+        }
+    }
+    
+    private void adjustHeadcount(Long deptNum, int delta) {
+        if (deptNum != null && delta != 0) {
+            jdbc.update("UPDATE departments SET headcount = headcount + :delta WHERE dept_num = :dept",
+                new MapSqlParameterSource("delta", delta).addValue("dept", deptNum));
+        }
+    }
+    
+    // Counters of a whole forest at once: rows are added to their managers deepest first, so each row is
+    // complete by the time it is counted; only managers are written (everyone else keeps the zero defaults)
+    private void writeCounters(long[] ids, int[] parents, int size) {
+        int[] depths = new int[size];
+        Arrays.fill(depths, -1);
+        int[] chain = new int[16];
+        int maxDepth = 0;
+        for (int row = 0; row < size; row++) {
+            int length = 0;
+            int current = row;
+            while (current >= 0 && depths[current] < 0) {
+                if (length == chain.length) {
+                    chain = Arrays.copyOf(chain, length * 2);
+                }
+                chain[length++] = current;
+                current = parents[current];
+            }
+            int depth = current < 0 ? -1 : depths[current];
+            while (length > 0) {
+                depths[chain[--length]] = ++depth;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        
+        // Counting sort by depth, deepest first
+        int[] starts = new int[maxDepth + 2];
+        for (int row = 0; row < size; row++) {
+            starts[maxDepth - depths[row] + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] order = new int[size];
+        for (int row = 0; row < size; row++) {
+            order[starts[maxDepth - depths[row]]++] = row;
+        }
+        
+        int[] direct = new int[size];
+        int[] total = new int[size];
+        int[] levels = new int[size];
+        List<Object[]> managers = new ArrayList<>();
+        for (int row : order) {
+            int parent = parents[row];
+            if (parent >= 0) {
+                direct[parent]++;
+                total[parent] += total[row] + 1;
+                levels[parent] = Math.max(levels[parent], levels[row] + 1);
+            }
+            if (direct[row] > 0) {
+                managers.add(new Object[] {direct[row], total[row], levels[row], ids[row]});
+            }
+        }
+        jdbc.getJdbcOperations().batchUpdate(
+            "UPDATE employees SET direct_reports = ?, total_reports = ?, levels_below = ? WHERE emp_number = ?", managers);
+    }
+    
+    // ==================== HELPERS ====================
+    
+    private List<Subtree> select(String where, String name, Object value) {
+        entityManager.flush();
+        return jdbc.query(SELECT_SUBTREE + where, new MapSqlParameterSource(name, value), SUBTREE_ROW);
+    }
+    
+    // Drop employees that sit under another one of the set (they go with it)
+    private static List<Subtree> outermost(List<Subtree> candidates) {
+        Set<Long> ids = new HashSet<>();
+        for (Subtree candidate : requireIndexed(candidates)) {
+            ids.add(candidate.employeeNumber);
+        }
+        List<Subtree> roots = new ArrayList<>();
+        for (Subtree candidate : candidates) {
+            if (Collections.disjoint(managersOf(candidate.path), ids)) {
+                roots.add(candidate);
+            }
+        }
+        return roots;
+    }
+    
+    // Without a path an employee's subtree cannot be found, so it cannot go with it. Such a row is only there
+    // before rebuildIfIncomplete has run (or was written from outside the application): fail rather than
+    // delete less than the change log, org graph and search index will be told.
+    private static List<Subtree> requireIndexed(List<Subtree> subtrees) {
+        for (Subtree subtree : subtrees) {
+            if (subtree.path == null) {
+                throw new IllegalStateException("Employee " + subtree.employeeNumber + " is not in the hierarchy index yet");
+            }
+        }
+        return subtrees;
+    }
+    
+    // Count what each department loses with the subtrees
+    private Removal removal(List<Subtree> roots) {
+        Map<Long, Integer> losses = new HashMap<>();
+        for (Subtree root : roots) {
+            if (root.size == 1) {
+                if (root.departmentNumber != null) {
+                    losses.merge(root.departmentNumber, 1, Integer::sum);
+                }
+                continue;
+            }
+            jdbc.query("SELECT dept_num, COUNT(*) FROM employees WHERE org_path LIKE :prefix GROUP BY dept_num",
+                new MapSqlParameterSource("prefix", root.path + "%"), rs -> {
+                    long deptNum = rs.getLong(1);
+                    if (!rs.wasNull()) {
+                        losses.merge(deptNum, rs.getInt(2), Integer::sum);
+                    }
+                });
+        }
+        return new Removal(roots, losses);
+    }
+    
+    // Managers above the owner of a path, top of the org first
+    private static List<Long> managersOf(String path) {
+        List<Long> ids = HierarchyIndexService.idsOf(path);
+        if (!ids.isEmpty()) {
+            ids.remove(ids.size() - 1);
+        }
+        return ids;
+    }
+    
+    // An employee's place in the org and the counters of its subtree, taken before a change
+    public static final class Subtree {
+        
+        final long employeeNumber;
+        final String path;
+        final int directReports;
+        // The employee and everyone below it
+        final int size;
+        final int levelsBelow;
+        final Long departmentNumber;
+        
+        Subtree(long employeeNumber, String path, int directReports, int size, int levelsBelow, Long departmentNumber) {
+            this.employeeNumber = employeeNumber;
+            this.path = path;
+            this.directReports = directReports;
+            this.size = size;
+            this.levelsBelow = levelsBelow;
+            this.departmentNumber = departmentNumber;
+        }
+    }
+    
+    // The subtrees about to be deleted (none inside another) and how many employees each department loses
+    public static final class Removal {
+        
+        final List<Subtree> subtrees;
+        final Map<Long, Integer> departmentLosses;
+        
+        Removal(List<Subtree> subtrees, Map<Long, Integer> departmentLosses) {
+            this.subtrees = subtrees;
+            this.departmentLosses = departmentLosses;
+        }
+        
+        // Top employees of the subtrees that have nobody below them
+        public List<Long> singleEmployees() {
+            List<Long> ids = new ArrayList<>();
+            for (Subtree subtree : subtrees) {
+                if (subtree.size == 1) {
+                    ids.add(subtree.employeeNumber);
+                }
+            }
+            return ids;
+        }
+        
+        // Paths of the top employees of the other subtrees
+        public List<String> subtreePaths() {
+            List<String> paths = new ArrayList<>();
+            for (Subtree subtree : subtrees) {
+                if (subtree.size > 1) {
+                    paths.add(subtree.path);
+                }
+            }
+            return paths;
+        }
+    }
+}
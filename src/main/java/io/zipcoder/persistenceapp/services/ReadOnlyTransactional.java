@@ -0,0 +1,19 @@
+package io.zipcoder.persistenceapp.services;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// A query method's own transaction is read-only: Hibernate skips dirty checking and flushing, the
+// connection is marked read-only, and with read replicas configured it runs on one of them. Called
+// from inside a read-write transaction, the method simply joins it.
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Transactional(readOnly = true)
+public @interface ReadOnlyTransactional {
+}
@@ -0,0 +1,161 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.micrometer.core.annotation.Timed;
+import io.zipcoder.persistenceapp.graph.OrgGraph;
+import io.zipcoder.persistenceapp.graph.OrgOverlay;
+import io.zipcoder.persistenceapp.graph.OrgSnapshot;
+import io.zipcoder.persistenceapp.models.BatchOperation;
+import io.zipcoder.persistenceapp.models.DepartmentSummary;
+import io.zipcoder.persistenceapp.models.ReorgPreview;
+import io.zipcoder.persistenceapp.repositories.DepartmentRepository;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// What-if reorganizations: runs the operations of a batch (the POST /API/batch payload) against an OrgOverlay
+// of the current org chart instead of the database, and returns what would change. The chart comes from the
+// in-memory org graph when it is loaded, else from one query; the departments from one more. Nothing is written.
+@Service
+@Timed("directory.service")
+public class ReorgPreviewService {
+    
+    @Autowired(required = false)
+    private OrgGraph orgGraph;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Autowired
+    private DepartmentRepository departmentRepository;
+    
+    // Preview the operations in order; the first one that would fail is thrown as an IllegalArgumentException
+    @ReadOnlyTransactional
+    public ReorgPreview preview(List<BatchOperation> operations) {
+        OrgSnapshot snapshot = orgGraph != null && orgGraph.isLoaded() ? orgGraph.snapshot()
+            : OrgSnapshot.of(employeeRepository.findAllHierarchyLinks());
+        Map<Long, DepartmentSummary> departmentsBefore = new LinkedHashMap<>();
+        for (DepartmentSummary summary : departmentRepository.findAllSummaries()) {
+            departmentsBefore.put(summary.getDepartmentNumber(), summary);
+        }
+        
+        // Department number -> its manager after the changes (null = none)
+        Map<Long, Long> departmentManagers = new LinkedHashMap<>();
+        departmentsBefore.forEach((deptNum, summary) -> departmentManagers.put(deptNum, summary.getManagerEmployeeNumber()));
+        OrgOverlay overlay = new OrgOverlay(snapshot);
+        for (int i = 0; i < operations.size(); i++) {
+            try {
+                apply(operations.get(i), overlay, departmentManagers);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Operation " + i + " failed: " + e.getMessage(), e);
+            }
+        }
+        
+        ReorgPreview preview = overlay.diff();
+        List<Long> removedDepartments = new ArrayList<>();
+        List<ReorgPreview.UnmanagedDepartment> unmanaged = new ArrayList<>();
+        OrgOverlay before = new OrgOverlay(snapshot);
+        for (DepartmentSummary summary : departmentsBefore.values()) {
+            Long deptNum = summary.getDepartmentNumber();
+            if (!departmentManagers.containsKey(deptNum)) {
+                removedDepartments.add(deptNum);
+            } else if (isManaged(deptNum, summary.getManagerEmployeeNumber(), before)) {
+                Long manager = departmentManagers.get(deptNum);
+                if (!isManaged(deptNum, manager, overlay)) {
+                    unmanaged.add(new ReorgPreview.UnmanagedDepartment(deptNum, summary.getDepartmentName(),
+                        manager != null && overlay.contains(manager) ? manager : null));
+                }
+            }
+        }
+        preview.setRemovedDepartments(removedDepartments);
+        preview.setUnmanagedDepartments(unmanaged);
+        return preview;
+    }
+    
+    // Mirrors what BatchService and the services it calls would do, with the same error messages
+    private void apply(BatchOperation operation, OrgOverlay overlay, Map<Long, Long> departmentManagers) {
+        if (operation.getType() == null) {
+            throw new IllegalArgumentException("Operation type is required");
+        }
+        if (operation.getType() == BatchOperation.Type.MERGE_DEPARTMENTS) {
+            long deptA = department(departmentManagers, operation.getDepartmentNumber());
+            long deptB = department(departmentManagers, operation.getMergedDepartmentNumber());
+            if (deptA == deptB) {
+                throw new RuntimeException("Cannot merge a department into itself");
+            }
+            Long managerA = departmentManagers.get(deptA);
+            Long managerB = departmentManagers.get(deptB);
+            if (managerA != null && managerB != null) {
+                overlay.setManager(managerB, managerA);
+                overlay.setDepartment(managerB, deptA);
+            }
+            overlay.mergeDepartments(deptB, deptA);
+            departmentManagers.remove(deptB);
+            return;
+        }
+        long employee = employee(overlay, operation.getEmployeeNumber(), "Employee");
+        switch (operation.getType()) {
+            case SET_MANAGER:
+                long manager = employee(overlay, operation.getManagerEmployeeNumber(), "Manager");
+                overlay.setManager(employee, manager);
+                // The employee joins the manager's department, if it has one
+                Long managerDepartment = overlay.departmentOf(manager);
+                if (managerDepartment != null) {
+                    overlay.setDepartment(employee, managerDepartment);
+                }
+                break;
+            case UPDATE_EMPLOYEE:
+                // Field changes do not move anyone in the chart
+                if (operation.getEmployee() == null) {
+                    throw new IllegalArgumentException("employee is required");
+                }
+                break;
+            case SET_DEPARTMENT:
+                Long department = operation.getDepartmentNumber() == null ? null
+                    : department(departmentManagers, operation.getDepartmentNumber());
+                overlay.setDepartment(employee, department);
+                break;
+            case SET_DEPARTMENT_MANAGER:
+                long deptNum = department(departmentManagers, operation.getDepartmentNumber());
+                departmentManagers.put(deptNum, employee);
+                overlay.setDepartment(employee, deptNum);
+                break;
+            default:
+                // Departments managed from inside the deleted subtree are left without a manager
+                Set<Long> gone = new HashSet<>(overlay.removeSubtree(employee));
+                departmentManagers.replaceAll((dept, deptManager) ->
+                    deptManager != null && gone.contains(deptManager) ? null : deptManager);
+        }
+    }
+    
+    // A department is managed when its manager still exists and belongs to it
+    private static boolean isManaged(long deptNum, Long manager, OrgOverlay overlay) {
+        return manager != null && overlay.contains(manager) && Long.valueOf(deptNum).equals(overlay.departmentOf(manager));
+    }
+    
+    private static long employee(OrgOverlay overlay, Long id, String role) {
+        if (id == null) {
+            throw new IllegalArgumentException(role + " number is required");
+        }
+        if (!overlay.contains(id)) {
+            throw new RuntimeException(role + " not found");
+        }
+        return id;
+    }
+    
+    private static long department(Map<Long, Long> departmentManagers, Long deptNum) {
+        if (deptNum == null) {
+            throw new IllegalArgumentException("Department number is required");
+        }
+        if (!departmentManagers.containsKey(deptNum)) {
+            throw new RuntimeException("Department not found");
+        }
+        return deptNum;
+    }
+}
@@ -0,0 +1,138 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.models.SnapshotInfo;
+import io.zipcoder.persistenceapp.snapshot.SnapshotFormat;
+import io.zipcoder.persistenceapp.snapshot.SnapshotReader;
+import io.zipcoder.persistenceapp.snapshot.SnapshotWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Point-in-time exports of the whole directory for analytics, instead of paging through GET /API/employees:
+// both tables are read in one read-only, repeatable-read transaction (on a read replica when configured) and
+// streamed into a snapshot file (see SnapshotFormat) a row group at a time. A file is written under a
+// temporary name and only appears in app.snapshots.directory once complete.
+@Service
+public class SnapshotService {
+    
+    // Rows the driver fetches per round trip while streaming a table
+    private static final int FETCH_SIZE = 1000;
+    
+    private static final DateTimeFormatter NAME_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS'Z'")
+        .withZone(ZoneOffset.UTC);
+    
+    private static final Pattern NAME = Pattern.compile("directory-\\d{8}T\\d{9}Z" + Pattern.quote(SnapshotFormat.FILE_EXTENSION));
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Value("${app.snapshots.directory:${java.io.tmpdir}/directory-snapshots}")
+    private Path directory;
+    
+    // ==================== EXPORT ====================
+    
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public SnapshotInfo export() {
+        Instant createdAt = Instant.now();
+        Path file = directory.resolve("directory-" + NAME_TIME.format(createdAt) + SnapshotFormat.FILE_EXTENSION);
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                SnapshotWriter writer = new SnapshotWriter(channel, createdAt);
+                for (SnapshotFormat.Table table : SnapshotFormat.TABLES) {
+                    writer.beginTable(table);
+                    jdbcTemplate.query(connection -> {
+                        PreparedStatement statement = connection.prepareStatement(table.selectAll());
+                        statement.setFetchSize(FETCH_SIZE);
+                        return statement;
+                    }, rs -> {
+                        try {
+                            writer.addRow(rs);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    writer.endTable();
+                }
+                writer.finish();
+                channel.force(true);
+            }
+            Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+            return info(file);
+        } catch (IOException e) {
+            deletePartial(partial);
+            throw new UncheckedIOException("Could not write snapshot " + file.getFileName(), e);
+        } catch (RuntimeException e) {
+            deletePartial(partial);
+            throw e;
+        }
+    }
+    
+    // ==================== DOWNLOADS ====================
+    
+    // Complete snapshots, newest first
+    public List<SnapshotInfo> getSnapshots() {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        List<SnapshotInfo> snapshots = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files.filter(this::isSnapshot)::iterator) {
+                snapshots.add(info(file));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        snapshots.sort(Comparator.comparing(SnapshotInfo::getCreatedAt).reversed());
+        return snapshots;
+    }
+    
+    // The file of a snapshot listed by getSnapshots (any other name is not found)
+    public Optional<Path> getSnapshotFile(String name) {
+        Path file = directory.resolve(name);
+        return NAME.matcher(name).matches() && Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+    
+    private boolean isSnapshot(Path file) {
+        return NAME.matcher(file.getFileName().toString()).matches();
+    }
+    
+    // What the snapshot's footer says it holds
+    private static SnapshotInfo info(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            SnapshotReader reader = new SnapshotReader(channel);
+            return new SnapshotInfo(file.getFileName().toString(), reader.getCreatedAt(), channel.size(),
+                reader.getRowCount(SnapshotFormat.DEPARTMENTS.getName()), reader.getRowCount(SnapshotFormat.EMPLOYEES.getName()));
+        }
+    }
+    
+    private static void deletePartial(Path partial) {
+        try {
+            Files.deleteIfExists(partial);
+        } catch (IOException ignored) {
+            // A stray partial file is never listed or served
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.zipcoder.persistenceapp.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+// A growable byte buffer with the snapshot format's primitives (see SnapshotFormat)
+final class ByteSink {
+    
+    private ByteBuffer buffer;
+    
+    ByteSink(int initialCapacity) {
+        buffer = ByteBuffer.allocate(initialCapacity);
+    }
+    
+    int size() {
+        return buffer.position();
+    }
+    
+    void clear() {
+        buffer.clear();
+    }
+    
+    void putByte(int value) {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+    
+    void putInt(int value) {
+        ensure(4);
+        buffer.putInt(value);
+    }
+    
+    void putLong(long value) {
+        ensure(8);
+        buffer.putLong(value);
+    }
+    
+    void putVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+    
+    void putZigZag(long value) {
+        putVarLong((value << 1) ^ (value >> 63));
+    }
+    
+    void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarLong(bytes.length);
+        putBytes(bytes, bytes.length);
+    }
+    
+    void putBytes(byte[] bytes, int length) {
+        ensure(length);
+        buffer.put(bytes, 0, length);
+    }
+    
+    void putAll(ByteSink other) {
+        ensure(other.size());
+        buffer.put(other.buffer.array(), 0, other.size());
+    }
+    
+    // Write everything out and start over
+    void drainTo(WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
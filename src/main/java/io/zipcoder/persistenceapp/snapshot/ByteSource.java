@@ -0,0 +1,101 @@
+package io.zipcoder.persistenceapp.snapshot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+// Reads the snapshot format's primitives from a channel through a fixed window, or from bytes already in memory
+final class ByteSource {
+    
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    
+    ByteSource(ReadableByteChannel channel, int windowSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(windowSize);
+        buffer.flip();
+    }
+    
+    ByteSource(byte[] bytes) {
+        this.channel = null;
+        this.buffer = ByteBuffer.wrap(bytes);
+    }
+    
+    int readByte() throws IOException {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+    
+    int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+    
+    long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+    
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in snapshot");
+    }
+    
+    int readVarInt() throws IOException {
+        long value = readVarLong();
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot length out of range: " + value);
+        }
+        return (int) value;
+    }
+    
+    long readZigZag() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    String readString() throws IOException {
+        return new String(readBytes(readVarInt()), StandardCharsets.UTF_8);
+    }
+    
+    byte[] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            if (!buffer.hasRemaining()) {
+                fill();
+            }
+            int n = Math.min(buffer.remaining(), length - copied);
+            buffer.get(bytes, copied, n);
+            copied += n;
+        }
+        return bytes;
+    }
+    
+    private void require(int bytes) throws IOException {
+        while (buffer.remaining() < bytes) {
+            fill();
+        }
+    }
+    
+    private void fill() throws IOException {
+        if (channel == null) {
+            throw new EOFException("Truncated snapshot");
+        }
+        buffer.compact();
+        int read = channel.read(buffer);
+        buffer.flip();
+        if (read < 0) {
+            throw new EOFException("Truncated snapshot");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.zipcoder.persistenceapp.snapshot;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+
+// Value types of snapshot columns, with their code in the file and how they come off and go back into JDBC.
+// Integers of every type are stored as zigzag deltas, so they share one encoding (see SnapshotFormat).
+public enum ColumnType {
+    
+    LONG(1, Types.BIGINT),
+    INT(2, Types.INTEGER),
+    STRING(3, Types.VARCHAR),
+    // Stored as epoch day
+    DATE(4, Types.DATE);
+    
+    final int code;
+    final int sqlType;
+    
+    ColumnType(int code, int sqlType) {
+        this.code = code;
+        this.sqlType = sqlType;
+    }
+    
+    static ColumnType ofCode(int code) {
+        for (ColumnType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown snapshot column type " + code);
+    }
+    
+    // The column's value in the current row (null for SQL NULL)
+    Object read(ResultSet rs, int index) throws SQLException {
+        switch (this) {
+            case LONG:
+                long longValue = rs.getLong(index);
+                return rs.wasNull() ? null : longValue;
+            case INT:
+                int intValue = rs.getInt(index);
+                return rs.wasNull() ? null : intValue;
+            case STRING:
+                return rs.getString(index);
+            default:
+                return rs.getObject(index, LocalDate.class);
+        }
+    }
+    
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, sqlType);
+        } else {
+            ps.setObject(index, value, sqlType);
+        }
+    }
+    
+    // Integer columns as the long that gets delta-encoded, and back
+    long toLong(Object value) {
+        return this == DATE ? ((LocalDate) value).toEpochDay() : ((Number) value).longValue();
+    }
+    
+    Object fromLong(long value) {
+        switch (this) {
+            case INT:
+                return (int) value;
+            case DATE:
+                return LocalDate.ofEpochDay(value);
+            default:
+                return value;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.zipcoder.persistenceapp.snapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static io.zipcoder.persistenceapp.snapshot.ColumnType.DATE;
+import static io.zipcoder.persistenceapp.snapshot.ColumnType.INT;
+import static io.zipcoder.persistenceapp.snapshot.ColumnType.LONG;
+import static io.zipcoder.persistenceapp.snapshot.ColumnType.STRING;
+
+// The snapshot file format (.edsnap): the employees and departments tables as of one transaction, stored column
+// by column in row groups, so a writer never holds more than one row group and a reader can skip the columns
+// it does not need. Multi-byte numbers are big-endian; varint = unsigned LEB128; zigzag = a signed value folded
+// onto a varint; string = varint byte length + UTF-8.
+//
+//   file      = MAGIC createdAt:long table* footer footerLength:int MAGIC
+//   table     = name:string columnCount:varint (name:string type:u8)* rowGroup* 0:varint
+//   rowGroup  = rowCount:varint (chunkLength:varint chunk)*          one chunk per column, in column order
+//   chunk     = encoding:u8 nullCount:varint [nullBitmap] value*     bitmap: ceil(rowCount / 8) bytes, bit = null
+//   footer    = createdAt:long tableCount:varint (name:string offset:long rowCount:long)*
+//
+// Only non-null values are stored. PLAIN integers (LONG, INT, DATE as epoch day) are zigzag deltas from the
+// previous value of the chunk (the first from 0); PLAIN strings are strings. DICTIONARY strings, used when at
+// most half of a chunk's values are distinct, are entryCount:varint string* followed by one entry index
+// (varint) per value. The footer ends a fixed distance before the end of the file, so a client downloading
+// with range requests can fetch the last 12 bytes, then the footer, then just the tables it wants.
+public final class SnapshotFormat {
+    
+    public static final String FILE_EXTENSION = ".edsnap";
+    
+    static final byte[] MAGIC = "EDSNAP01".getBytes(StandardCharsets.US_ASCII);
+    
+    static final int PLAIN = 0;
+    static final int DICTIONARY = 1;
+    
+    // Rows buffered per row group
+    static final int ROW_GROUP_SIZE = 4096;
+    
+    // Departments come first: employees reference them
+    public static final Table DEPARTMENTS = new Table("departments",
+        new Column("dept_num", LONG),
+        new Column("dept_name", STRING),
+        new Column("manager_id", LONG),
+        new Column("headcount", INT),
+        new Column("version", LONG));
+    
+    public static final Table EMPLOYEES = new Table("employees",
+        new Column("emp_number", LONG),
+        new Column("first_name", STRING),
+        new Column("last_name", STRING),
+        new Column("title", STRING),
+        new Column("phone_number", STRING),
+        new Column("email", STRING),
+        new Column("hire_date", DATE),
+        new Column("manager_id", LONG),
+        new Column("dept_num", LONG),
+        new Column("org_path", STRING),
+        new Column("org_depth", INT),
+        new Column("direct_reports", INT),
+        new Column("total_reports", INT),
+        new Column("levels_below", INT),
+        new Column("version", LONG));
+    
+    public static final List<Table> TABLES = Collections.unmodifiableList(Arrays.asList(DEPARTMENTS, EMPLOYEES));
+    
+    private SnapshotFormat() {
+    }
+    
+    public static final class Column {
+        
+        final String name;
+        final ColumnType type;
+        
+        Column(String name, ColumnType type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+    
+    // A table's columns, the first being its primary key
+    public static final class Table {
+        
+        final String name;
+        final List<Column> columns;
+        
+        Table(String name, Column... columns) {
+            this(name, Arrays.asList(columns));
+        }
+        
+        Table(String name, List<Column> columns) {
+            this.name = name;
+            this.columns = Collections.unmodifiableList(columns);
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        // Every row in primary key order
+        public String selectAll() {
+            return "SELECT " + columnList() + " FROM " + name + " ORDER BY " + columns.get(0).name;
+        }
+        
+        String insert() {
+            return "INSERT INTO " + name + " (" + columnList() + ") VALUES ("
+                + columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+        }
+        
+        private String columnList() {
+            return columns.stream().map(column -> column.name).collect(Collectors.joining(", "));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.zipcoder.persistenceapp.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.zipcoder.persistenceapp.snapshot.SnapshotFormat.DICTIONARY;
+import static io.zipcoder.persistenceapp.snapshot.SnapshotFormat.MAGIC;
+
+// Reads a snapshot file (see SnapshotFormat): the footer when opened, then any table a row group at a time
+public final class SnapshotReader {
+    
+    private static final int WINDOW_SIZE = 1 << 16;
+    
+    private final FileChannel channel;
+    private final Instant createdAt;
+    // Table name -> offset and row count
+    private final Map<String, long[]> tables = new LinkedHashMap<>();
+    
+    public SnapshotReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        int trailer = 4 + MAGIC.length;
+        if (size < MAGIC.length + 8 + trailer || !Arrays.equals(readAt(0, MAGIC.length), MAGIC)
+                || !Arrays.equals(readAt(size - MAGIC.length, MAGIC.length), MAGIC)) {
+            throw new IOException("Not a complete snapshot file");
+        }
+        int footerLength = ByteBuffer.wrap(readAt(size - trailer, 4)).getInt();
+        ByteSource footer = new ByteSource(readAt(size - trailer - footerLength, footerLength));
+        createdAt = Instant.ofEpochMilli(footer.readLong());
+        for (int t = footer.readVarInt(); t > 0; t--) {
+            tables.put(footer.readString(), new long[] {footer.readLong(), footer.readLong()});
+        }
+    }
+    
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+    
+    public List<String> getTableNames() {
+        return new ArrayList<>(tables.keySet());
+    }
+    
+    // Rows of a table (0 if the snapshot does not have it)
+    public long getRowCount(String table) {
+        long[] entry = tables.get(table);
+        return entry == null ? 0 : entry[1];
+    }
+    
+    // Hand every row group of a table to the handler, in file order
+    public void readTable(String name, RowGroupHandler handler) throws IOException {
+        long[] entry = tables.get(name);
+        if (entry == null) {
+            throw new IOException("Snapshot has no table " + name);
+        }
+        channel.position(entry[0]);
+        ByteSource source = new ByteSource(channel, WINDOW_SIZE);
+        String storedName = source.readString();
+        List<SnapshotFormat.Column> columns = new ArrayList<>();
+        for (int c = source.readVarInt(); c > 0; c--) {
+            columns.add(new SnapshotFormat.Column(source.readString(), ColumnType.ofCode(source.readByte())));
+        }
+        SnapshotFormat.Table table = new SnapshotFormat.Table(storedName, columns);
+        
+        for (int rows = source.readVarInt(); rows > 0; rows = source.readVarInt()) {
+            Object[][] values = new Object[columns.size()][];
+            for (int c = 0; c < columns.size(); c++) {
+                byte[] chunk = source.readBytes(source.readVarInt());
+                values[c] = decodeChunk(columns.get(c).type, new ByteSource(chunk), rows);
+            }
+            handler.rowGroup(table, values, rows);
+        }
+    }
+    
+    // Receives one row group: the table as stored in the file, and its values column by column
+    public interface RowGroupHandler {
+        
+        void rowGroup(SnapshotFormat.Table table, Object[][] columns, int rows) throws IOException;
+    }
+    
+    // ==================== DECODING ====================
+    
+    private static Object[] decodeChunk(ColumnType type, ByteSource chunk, int rows) throws IOException {
+        Object[] values = new Object[rows];
+        int encoding = chunk.readByte();
+        boolean[] nulls = new boolean[rows];
+        if (chunk.readVarInt() > 0) {
+            byte[] bitmap = chunk.readBytes((rows + 7) / 8);
+            for (int r = 0; r < rows; r++) {
+                nulls[r] = (bitmap[r >>> 3] & (1 << (r & 7))) != 0;
+            }
+        }
+        
+        if (encoding == DICTIONARY) {
+            String[] dictionary = new String[chunk.readVarInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = chunk.readString();
+            }
+            for (int r = 0; r < rows; r++) {
+                values[r] = nulls[r] ? null : dictionary[chunk.readVarInt()];
+            }
+        } else if (type == ColumnType.STRING) {
+            for (int r = 0; r < rows; r++) {
+                values[r] = nulls[r] ? null : chunk.readString();
+            }
+        } else {
+            long previous = 0;
+            for (int r = 0; r < rows; r++) {
+                if (!nulls[r]) {
+                    previous += chunk.readZigZag();
+                    values[r] = type.fromLong(previous);
+                }
+            }
+        }
+        return values;
+    }
+    
+    private byte[] readAt(long position, int length) throws IOException {
+        if (position < 0 || length < 0) {
+            throw new IOException("Not a complete snapshot file");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated snapshot");
+            }
+        }
+        return buffer.array();
+    }
+}
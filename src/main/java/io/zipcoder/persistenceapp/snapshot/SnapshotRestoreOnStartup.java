@@ -0,0 +1,38 @@
+package io.zipcoder.persistenceapp.snapshot;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+// app.snapshots.restore-from (H2 profile): fill the fresh in-memory database from a snapshot file at startup.
+// Runs ahead of the other startup listeners, so the org graph and search index load the restored rows.
+@Component
+@ConditionalOnProperty(name = "app.snapshots.restore-from")
+public class SnapshotRestoreOnStartup {
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Value("${app.snapshots.restore-from}")
+    private Path snapshot;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void restore() {
+        try {
+            new SnapshotRestorer(jdbcTemplate).restore(snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not restore snapshot " + snapshot, e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.zipcoder.persistenceapp.snapshot;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Loads a snapshot into empty directory tables of an H2 database, to seed test environments quickly: rows go
+// in with plain JDBC batches, one per row group, with the foreign keys off so file order does not matter, and
+// are checked against the keys once all are in. The id sequences then restart past the restored ids. Not
+// atomic (H2 commits on ALTER TABLE): a failed restore leaves a partly filled database to throw away.
+public class SnapshotRestorer {
+    
+    // allocationSize of the Employee and Department id generators
+    private static final int ID_ALLOCATION_SIZE = 50;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public SnapshotRestorer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    // Rows restored per table
+    public Map<String, Long> restore(Path file) throws IOException {
+        String database = jdbcTemplate.execute(
+            (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if (!"H2".equals(database)) {
+            throw new IllegalStateException("Snapshots can only be restored into H2, not " + database);
+        }
+        for (SnapshotFormat.Table table : SnapshotFormat.TABLES) {
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + table.name + ")", Boolean.class))) {
+                throw new IllegalStateException("Cannot restore a snapshot: table " + table.name + " is not empty");
+            }
+        }
+        
+        Map<String, Long> restored = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            SnapshotReader reader = new SnapshotReader(channel);
+            boolean complete = false;
+            setReferentialIntegrity("FALSE");
+            try {
+                for (SnapshotFormat.Table table : SnapshotFormat.TABLES) {
+                    reader.readTable(table.name, this::insert);
+                    restored.put(table.name, reader.getRowCount(table.name));
+                }
+                complete = true;
+            } finally {
+                setReferentialIntegrity(complete ? "TRUE CHECK" : "TRUE NOCHECK");
+            }
+        }
+        restartSequence("departments_seq", "departments", "dept_num");
+        restartSequence("employees_seq", "employees", "emp_number");
+        return restored;
+    }
+    
+    private void insert(SnapshotFormat.Table table, Object[][] columns, int rows) {
+        jdbcTemplate.batchUpdate(table.insert(), new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int row) throws SQLException {
+                for (int c = 0; c < columns.length; c++) {
+                    table.columns.get(c).type.bind(ps, c + 1, columns[c][row]);
+                }
+            }
+            
+            @Override
+            public int getBatchSize() {
+                return rows;
+            }
+        });
+    }
+    
+    private void setReferentialIntegrity(String setting) {
+        for (SnapshotFormat.Table table : SnapshotFormat.TABLES) {
+            jdbcTemplate.execute("ALTER TABLE " + table.name + " SET REFERENTIAL_INTEGRITY " + setting);
+        }
+    }
+    
+    // The pooled generators hand out the allocationSize ids up to each value they fetch, so the next value has
+    // to sit a whole block above the highest restored id
+    private void restartSequence(String sequence, String table, String idColumn) {
+        Long highest = jdbcTemplate.queryForObject("SELECT MAX(" + idColumn + ") FROM " + table, Long.class);
+        if (highest != null) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (highest + ID_ALLOCATION_SIZE));
+        }
+    }
+}
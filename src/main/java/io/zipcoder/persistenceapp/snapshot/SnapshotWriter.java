@@ -0,0 +1,186 @@
+package io.zipcoder.persistenceapp.snapshot;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.zipcoder.persistenceapp.snapshot.SnapshotFormat.DICTIONARY;
+import static io.zipcoder.persistenceapp.snapshot.SnapshotFormat.MAGIC;
+import static io.zipcoder.persistenceapp.snapshot.SnapshotFormat.PLAIN;
+import static io.zipcoder.persistenceapp.snapshot.SnapshotFormat.ROW_GROUP_SIZE;
+
+// Writes a snapshot file front to back through a channel (see SnapshotFormat). Rows are added one at a time
+// and encoded a row group at a time, so memory stays at one row group whatever the size of the tables.
+// Nothing marks the file complete until finish() has written the footer.
+public final class SnapshotWriter {
+    
+    // Encoded bytes are handed to the channel in blocks of about this size
+    private static final int BLOCK_SIZE = 1 << 16;
+    
+    private final WritableByteChannel channel;
+    private final long createdAt;
+    private final ByteSink out = new ByteSink(BLOCK_SIZE * 2);
+    private final ByteSink chunk = new ByteSink(BLOCK_SIZE);
+    private final List<Object[]> footer = new ArrayList<>();
+    private long drained;
+    
+    // Table being written, its current row group (column by column) and its rows so far
+    private SnapshotFormat.Table table;
+    private Object[][] rowGroup;
+    private int rowGroupSize;
+    private long tableOffset;
+    private long tableRows;
+    
+    public SnapshotWriter(WritableByteChannel channel, Instant createdAt) {
+        this.channel = channel;
+        this.createdAt = createdAt.toEpochMilli();
+        out.putBytes(MAGIC, MAGIC.length);
+        out.putLong(this.createdAt);
+    }
+    
+    public void beginTable(SnapshotFormat.Table table) {
+        if (this.table != null) {
+            throw new IllegalStateException("Table " + this.table.name + " is not finished");
+        }
+        this.table = table;
+        rowGroup = new Object[table.columns.size()][ROW_GROUP_SIZE];
+        rowGroupSize = 0;
+        tableOffset = position();
+        tableRows = 0;
+        out.putString(table.name);
+        out.putVarLong(table.columns.size());
+        for (SnapshotFormat.Column column : table.columns) {
+            out.putString(column.name);
+            out.putByte(column.type.code);
+        }
+    }
+    
+    // The current row of a result set selecting the table's columns in order (Table.selectAll)
+    public void addRow(ResultSet rs) throws SQLException, IOException {
+        for (int c = 0; c < rowGroup.length; c++) {
+            rowGroup[c][rowGroupSize] = table.columns.get(c).type.read(rs, c + 1);
+        }
+        if (++rowGroupSize == ROW_GROUP_SIZE) {
+            writeRowGroup();
+        }
+    }
+    
+    public void endTable() throws IOException {
+        if (rowGroupSize > 0) {
+            writeRowGroup();
+        }
+        out.putVarLong(0);
+        footer.add(new Object[] {table.name, tableOffset, tableRows});
+        table = null;
+        rowGroup = null;
+    }
+    
+    public void finish() throws IOException {
+        if (table != null) {
+            throw new IllegalStateException("Table " + table.name + " is not finished");
+        }
+        long footerOffset = position();
+        out.putLong(createdAt);
+        out.putVarLong(footer.size());
+        for (Object[] entry : footer) {
+            out.putString((String) entry[0]);
+            out.putLong((Long) entry[1]);
+            out.putLong((Long) entry[2]);
+        }
+        out.putInt((int) (position() - footerOffset));
+        out.putBytes(MAGIC, MAGIC.length);
+        drain();
+    }
+    
+    // ==================== ENCODING ====================
+    
+    private void writeRowGroup() throws IOException {
+        out.putVarLong(rowGroupSize);
+        for (int c = 0; c < rowGroup.length; c++) {
+            encodeChunk(table.columns.get(c).type, rowGroup[c], rowGroupSize);
+            out.putVarLong(chunk.size());
+            out.putAll(chunk);
+            Arrays.fill(rowGroup[c], 0, rowGroupSize, null);
+        }
+        tableRows += rowGroupSize;
+        rowGroupSize = 0;
+        if (out.size() >= BLOCK_SIZE) {
+            drain();
+        }
+    }
+    
+    private void encodeChunk(ColumnType type, Object[] values, int rows) {
+        chunk.clear();
+        int nulls = 0;
+        for (int r = 0; r < rows; r++) {
+            if (values[r] == null) {
+                nulls++;
+            }
+        }
+        Map<String, Integer> dictionary = type == ColumnType.STRING ? dictionary(values, rows, (rows - nulls) / 2) : null;
+        chunk.putByte(dictionary != null ? DICTIONARY : PLAIN);
+        chunk.putVarLong(nulls);
+        if (nulls > 0) {
+            byte[] bitmap = new byte[(rows + 7) / 8];
+            for (int r = 0; r < rows; r++) {
+                if (values[r] == null) {
+                    bitmap[r >>> 3] |= 1 << (r & 7);
+                }
+            }
+            chunk.putBytes(bitmap, bitmap.length);
+        }
+        
+        if (dictionary != null) {
+            chunk.putVarLong(dictionary.size());
+            dictionary.keySet().forEach(chunk::putString);
+            for (int r = 0; r < rows; r++) {
+                if (values[r] != null) {
+                    chunk.putVarLong(dictionary.get(values[r]));
+                }
+            }
+        } else if (type == ColumnType.STRING) {
+            for (int r = 0; r < rows; r++) {
+                if (values[r] != null) {
+                    chunk.putString((String) values[r]);
+                }
+            }
+        } else {
+            long previous = 0;
+            for (int r = 0; r < rows; r++) {
+                if (values[r] != null) {
+                    long value = type.toLong(values[r]);
+                    chunk.putZigZag(value - previous);
+                    previous = value;
+                }
+            }
+        }
+    }
+    
+    // Entry index per distinct string in first-seen order, or null once there are more than maxEntries
+    private static Map<String, Integer> dictionary(Object[] values, int rows, int maxEntries) {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (int r = 0; r < rows; r++) {
+            if (values[r] != null && dictionary.putIfAbsent((String) values[r], dictionary.size()) == null
+                    && dictionary.size() > maxEntries) {
+                return null;
+            }
+        }
+        return dictionary.isEmpty() ? null : dictionary;
+    }
+    
+    private long position() {
+        return drained + out.size();
+    }
+    
+    private void drain() throws IOException {
+        drained += out.size();
+        out.drainTo(channel);
+    }
+}
@@ -0,0 +1,70 @@
+-- Employee directory schema (H2). Keep in step with db/migration/postgresql; Hibernate only validates it.
+
+CREATE SEQUENCE departments_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE employees_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE departments (
+    dept_num   BIGINT       NOT NULL,
+    dept_name  VARCHAR(255) NOT NULL,
+    manager_id BIGINT,
+    headcount  INTEGER      DEFAULT 0 NOT NULL,
+    version    BIGINT       DEFAULT 0 NOT NULL,
+    CONSTRAINT pk_departments PRIMARY KEY (dept_num),
+    CONSTRAINT uk_departments_name UNIQUE (dept_name)
+);
+
+CREATE TABLE employees (
+    emp_number     BIGINT        NOT NULL,
+    first_name     VARCHAR(255)  NOT NULL,
+    last_name      VARCHAR(255)  NOT NULL,
+    title          VARCHAR(255)  NOT NULL,
+    phone_number   VARCHAR(255),
+    email          VARCHAR(255)  NOT NULL,
+    hire_date      DATE,
+    manager_id     BIGINT,
+    dept_num       BIGINT,
+    org_path       VARCHAR(2048),
+    org_depth      INTEGER,
+    direct_reports INTEGER       DEFAULT 0 NOT NULL,
+    total_reports  INTEGER       DEFAULT 0 NOT NULL,
+    levels_below   INTEGER       DEFAULT 0 NOT NULL,
+    version        BIGINT        DEFAULT 0 NOT NULL,
+    CONSTRAINT pk_employees PRIMARY KEY (emp_number)
+);
+
+-- H2 appends the primary key to every secondary index entry, so single-column indexes already hold
+-- (column, emp_number) and serve the same lookups as the composite PostgreSQL ones. They also have to match
+-- the foreign keys' columns exactly for H2 to use them for the constraints instead of adding its own.
+
+-- Direct reports (findByManager, findDirectReportIds, reassignReports, findByManagerIsNull)
+CREATE INDEX idx_employees_manager ON employees (manager_id);
+
+-- Department members in key order (department pages, streams and summaries, findIdsByDepartmentNumber)
+CREATE INDEX idx_employees_department ON employees (dept_num);
+
+-- Subtrees by path prefix (LIKE '/1/5/%') and the unindexed-row check at startup (org_path IS NULL)
+CREATE INDEX idx_employees_org_path ON employees (org_path);
+
+-- Departments run by given employees (findNumbersManagedBy, clearDepartmentManagers)
+CREATE INDEX idx_departments_manager ON departments (manager_id);
+
+-- Foreign keys after the indexes, so their referencing columns are already indexed (H2 would otherwise
+-- add an index of its own for each)
+ALTER TABLE employees ADD CONSTRAINT fk_employees_manager FOREIGN KEY (manager_id) REFERENCES employees (emp_number);
+ALTER TABLE employees ADD CONSTRAINT fk_employees_department FOREIGN KEY (dept_num) REFERENCES departments (dept_num);
+ALTER TABLE departments ADD CONSTRAINT fk_departments_manager FOREIGN KEY (manager_id) REFERENCES employees (emp_number);
+
+CREATE TABLE change_log (
+    seq         BIGINT      NOT NULL,
+    entity_type VARCHAR(16) NOT NULL,
+    entity_id   BIGINT      NOT NULL,
+    operation   VARCHAR(8)  NOT NULL,
+    changed_at  TIMESTAMP   NOT NULL,
+    CONSTRAINT pk_change_log PRIMARY KEY (seq)
+);
+
+CREATE TABLE change_log_head (
+    id       INTEGER NOT NULL,
+    last_seq BIGINT  NOT NULL,
+    CONSTRAINT pk_change_log_head PRIMARY KEY (id)
+);
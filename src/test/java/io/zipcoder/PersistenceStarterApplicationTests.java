@@ -1,13 +1,18 @@
 package io.zipcoder;
 
+import io.zipcoder.persistenceapp.PersistenceStarterApplication;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 
-@SpringBootTest
+// Boots the whole application on the h2 profile: Flyway migrates, Hibernate validates the schema and the
+// required indexes are checked
+@SpringBootTest(classes = PersistenceStarterApplication.class)
+@ActiveProfiles("h2")
 class PersistenceStarterApplicationTests {
 
     @Test
     void contextLoads() {
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeDto;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:batch-endpoint;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+class BatchEndpointTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Test
+    void appliesEveryOperationInOrder() throws Exception {
+        Department sales = departmentService.createDepartment(new Department("Batch Sales"));
+        Department support = departmentService.createDepartment(new Department("Batch Support"));
+        Employee boss = employee("Bea", "Boss");
+        Employee lead = employee("Lee", "Lead");
+        Employee worker = employee("Wil", "Worker");
+        Employee leaver = employee("Lea", "Leaver");
+        Employee leaversReport = employee("Rob", "Report");
+        employeeService.setManager(leaversReport.getEmployeeNumber(), leaver.getEmployeeNumber());
+        
+        String body = "["
+            + "{\"type\":\"SET_DEPARTMENT_MANAGER\",\"departmentNumber\":" + sales.getDepartmentNumber() + ",\"employeeNumber\":" + boss.getEmployeeNumber() + "},"
+            + "{\"type\":\"SET_MANAGER\",\"employeeNumber\":" + lead.getEmployeeNumber() + ",\"managerEmployeeNumber\":" + boss.getEmployeeNumber() + "},"
+            + "{\"type\":\"SET_MANAGER\",\"employeeNumber\":" + worker.getEmployeeNumber() + ",\"managerEmployeeNumber\":" + lead.getEmployeeNumber() + "},"
+            + "{\"type\":\"DELETE_EMPLOYEE\",\"employeeNumber\":" + leaver.getEmployeeNumber() + "},"
+            + "{\"type\":\"SET_DEPARTMENT\",\"employeeNumber\":" + worker.getEmployeeNumber() + ",\"departmentNumber\":" + support.getDepartmentNumber() + "},"
+            + "{\"type\":\"UPDATE_EMPLOYEE\",\"employeeNumber\":" + worker.getEmployeeNumber()
+            + ",\"employee\":{\"firstName\":\"Wil\",\"lastName\":\"Worker\",\"title\":\"Senior Engineer\",\"email\":\"wil@example.com\"}}"
+            + "]";
+        mockMvc.perform(post("/API/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.committed").value(true))
+            .andExpect(jsonPath("$.operations[5].status").value("APPLIED"));
+        
+        EmployeeDto updated = employeeService.getEmployeeById(worker.getEmployeeNumber()).get();
+        assertEquals("Senior Engineer", updated.getTitle());
+        assertEquals(lead.getEmployeeNumber(), updated.getManager().getEmployeeNumber());
+        assertEquals(support.getDepartmentNumber(), updated.getDepartment().getDepartmentNumber());
+        assertEquals(sales.getDepartmentNumber(), employeeService.getEmployeeById(lead.getEmployeeNumber()).get()
+            .getDepartment().getDepartmentNumber());
+        assertFalse(employeeService.getEmployeeById(leaversReport.getEmployeeNumber()).isPresent());
+        assertEquals(2, employeeService.getAllReports(boss.getEmployeeNumber()).size());
+        mockMvc.perform(get("/API/departments/{id}/stats", support.getDepartmentNumber()))
+            .andExpect(jsonPath("$.headcount").value(1));
+        mockMvc.perform(get("/API/employees/{id}/stats", boss.getEmployeeNumber()))
+            .andExpect(jsonPath("$.totalReports").value(2))
+            .andExpect(jsonPath("$.levelsBelow").value(2));
+    }
+    
+    @Test
+    void failedOperationRollsBackTheWholeBatch() throws Exception {
+        Employee top = employee("Tia", "Top");
+        Employee middle = employee("Max", "Middle");
+        employeeService.setManager(middle.getEmployeeNumber(), top.getEmployeeNumber());
+        
+        // The second move would make the top report to its own report
+        String body = "["
+            + "{\"type\":\"UPDATE_EMPLOYEE\",\"employeeNumber\":" + middle.getEmployeeNumber()
+            + ",\"employee\":{\"firstName\":\"Max\",\"lastName\":\"Renamed\",\"title\":\"Lead\",\"email\":\"max@example.com\"}},"
+            + "{\"type\":\"SET_MANAGER\",\"employeeNumber\":" + top.getEmployeeNumber() + ",\"managerEmployeeNumber\":" + middle.getEmployeeNumber() + "},"
+            + "{\"type\":\"DELETE_EMPLOYEE\",\"employeeNumber\":" + middle.getEmployeeNumber() + "}"
+            + "]";
+        mockMvc.perform(post("/API/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.committed").value(false))
+            .andExpect(jsonPath("$.operations[0].status").value("ROLLED_BACK"))
+            .andExpect(jsonPath("$.operations[1].status").value("FAILED"))
+            .andExpect(jsonPath("$.operations[1].error").value("Cannot set manager: it would create a reporting cycle"))
+            .andExpect(jsonPath("$.operations[2].status").value("NOT_RUN"));
+        
+        assertEquals("Middle", employeeService.getEmployeeById(middle.getEmployeeNumber()).get().getLastName());
+        assertNull(employeeService.getEmployeeById(top.getEmployeeNumber()).get().getManager());
+        
+        mockMvc.perform(post("/API/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"type\":\"SET_MANAGER\",\"employeeNumber\":" + middle.getEmployeeNumber() + ",\"managerEmployeeNumber\":" + Long.MAX_VALUE + "}]"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.operations[0].error").value("Manager not found"));
+    }
+    
+    private Employee employee(String first, String last) {
+        return employeeService.createEmployee(new Employee(first, last, "Engineer", first.toLowerCase() + "@example.com"));
+    }
+}
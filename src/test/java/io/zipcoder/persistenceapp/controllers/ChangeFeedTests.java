@@ -0,0 +1,94 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:change-feed;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+class ChangeFeedTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Test
+    void changesComeBackInCommitOrder() throws Exception {
+        long since = head();
+        Department sales = departmentService.createDepartment(new Department("Feed Sales"));
+        Department support = departmentService.createDepartment(new Department("Feed Support"));
+        Employee boss = employeeService.createEmployee(new Employee("Fay", "Feed", "Director", "fay@example.com"));
+        Employee report = employeeService.createEmployee(new Employee("Rex", "Feed", "Engineer", "rex@example.com"));
+        employeeService.setManager(report.getEmployeeNumber(), boss.getEmployeeNumber());
+        departmentService.mergeDepartments("Feed Sales", "Feed Support");
+        employeeService.deleteEmployee(boss.getEmployeeNumber());
+        
+        mockMvc.perform(asyncDispatch(changes(since, 0)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.changes", hasSize(9)))
+            .andExpect(jsonPath("$.changes[0].entityType").value("DEPARTMENT"))
+            .andExpect(jsonPath("$.changes[0].entityId").value(sales.getDepartmentNumber()))
+            .andExpect(jsonPath("$.changes[4].entityId").value(report.getEmployeeNumber()))
+            .andExpect(jsonPath("$.changes[5].operation").value("DELETE"))
+            .andExpect(jsonPath("$.changes[5].entityId").value(support.getDepartmentNumber()))
+            .andExpect(jsonPath("$.changes[6].entityId").value(sales.getDepartmentNumber()))
+            .andExpect(jsonPath("$.changes[7].operation").value("DELETE"))
+            .andExpect(jsonPath("$.changes[8].operation").value("DELETE"))
+            .andExpect(jsonPath("$.next").value(since + 9))
+            .andExpect(jsonPath("$.more").value(false));
+    }
+    
+    @Test
+    void longPollAnswersOnceSomethingCommits() throws Exception {
+        long since = head();
+        MvcResult waiting = changes(since, 10);
+        
+        Employee created = employeeService.createEmployee(new Employee("Lou", "Poll", "Analyst", "lou@example.com"));
+        
+        mockMvc.perform(asyncDispatch(waiting))
+            .andExpect(jsonPath("$.changes", hasSize(1)))
+            .andExpect(jsonPath("$.changes[0].entityId").value(created.getEmployeeNumber()))
+            .andExpect(jsonPath("$.changes[0].operation").value("UPSERT"));
+    }
+    
+    private MvcResult changes(long since, int wait) throws Exception {
+        MvcResult result = mockMvc.perform(get("/API/changes")
+                .param("since", String.valueOf(since))
+                .param("wait", String.valueOf(wait)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        return result;
+    }
+    
+    // Sequence number of the newest change so far
+    private long head() throws Exception {
+        MvcResult result = mockMvc.perform(asyncDispatch(changes(0, 0))).andReturn();
+        String body = result.getResponse().getContentAsString();
+        return Long.parseLong(body.replaceAll(".*\"next\":(\\d+).*", "$1"));
+    }
+}
@@ -0,0 +1,190 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:conditional-get;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "app.http.proxy-max-age=7s"
+})
+@AutoConfigureMockMvc
+class ConditionalGetTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private StatementCounter statementCounter;
+    
+    @Test
+    void unchangedDirectoryIsNotModifiedUntilSomethingChanges() throws Exception {
+        Department department = departmentService.createDepartment(new Department("Conditional"));
+        Employee boss = employee("Boss", null, department);
+        Employee report = employee("Report", boss, department);
+        String[] urls = {
+            "/API/departments",
+            "/API/employees/department/" + department.getDepartmentNumber(),
+            "/API/employees/" + report.getEmployeeNumber() + "/hierarchy"
+        };
+        
+        for (String url : urls) {
+            String etag = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=0, must-revalidate, s-maxage=7"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+            
+            // Answered from the change log head alone, without running the query
+            long statements = statementCounter.count.get();
+            mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andExpect(content().string(""));
+            assertEquals(statements + 1, statementCounter.count.get());
+        }
+        
+        String before = mockMvc.perform(get(urls[1])).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        employee("Joiner", boss, department);
+        String after = mockMvc.perform(get(urls[1]).header(HttpHeaders.IF_NONE_MATCH, before))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(3))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(before, after);
+    }
+    
+    @Test
+    void eachEncodingHasItsOwnEtag() throws Exception {
+        Department department = departmentService.createDepartment(new Department("Encoded"));
+        employee("Encoded", null, department);
+        String url = "/API/employees/department/" + department.getDepartmentNumber();
+        
+        String json = mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String cbor = mockMvc.perform(get(url).accept(MediaType.APPLICATION_CBOR))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(json, cbor);
+        
+        // A JSON copy does not revalidate a CBOR one
+        mockMvc.perform(get(url).accept(MediaType.APPLICATION_CBOR).header(HttpHeaders.IF_NONE_MATCH, json))
+            .andExpect(status().isOk());
+        mockMvc.perform(get(url).accept(MediaType.APPLICATION_CBOR).header(HttpHeaders.IF_NONE_MATCH, cbor))
+            .andExpect(status().isNotModified());
+    }
+    
+    @Test
+    void reportsMovingUnderAMemberChangeTheResponse() throws Exception {
+        Department department = departmentService.createDepartment(new Department("Receiving"));
+        Employee boss = employee("Receiver", null, department);
+        Employee outsider = employee("Transfer", null, null);
+        String members = "/API/employees/department/" + department.getDepartmentNumber();
+        String chain = "/API/employees/" + boss.getEmployeeNumber() + "/hierarchy";
+        String membersEtag = mockMvc.perform(get(members)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String chainEtag = mockMvc.perform(get(chain)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        
+        // Only the moved employee changes, but both responses list the member's direct reports
+        employeeService.setManager(outsider.getEmployeeNumber(), boss.getEmployeeNumber());
+        mockMvc.perform(get(members).header(HttpHeaders.IF_NONE_MATCH, membersEtag))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[?(@.lastName == 'Receiver')].directReports[0].lastName").value("Transfer"));
+        mockMvc.perform(get(chain).header(HttpHeaders.IF_NONE_MATCH, chainEtag))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].directReports[0].lastName").value("Transfer"));
+    }
+    
+    private Employee employee(String lastName, Employee manager, Department department) {
+        Employee employee = new Employee("Cond", lastName, "Engineer", lastName.toLowerCase() + "@example.com");
+        employee.setDepartment(department);
+        Employee created = employeeService.createEmployee(employee);
+        if (manager != null) {
+            employeeService.setManager(created.getEmployeeNumber(), manager.getEmployeeNumber());
+        }
+        return created;
+    }
+    
+    // Counts the statements prepared on every connection of the application's data source
+    @TestConfiguration
+    static class StatementCounter {
+        
+        final AtomicLong count = new AtomicLong();
+        
+        @Bean
+        static BeanPostProcessor countingDataSource(StatementCounter counter) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String name) {
+                    return bean instanceof DataSource && name.equals("dataSource") ? counter.wrap((DataSource) bean) : bean;
+                }
+            };
+        }
+        
+        DataSource wrap(DataSource dataSource) {
+            return new DelegatingDataSource(dataSource) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    return counting(super.getConnection());
+                }
+                
+                @Override
+                public Connection getConnection(String username, String password) throws SQLException {
+                    return counting(super.getConnection(username, password));
+                }
+            };
+        }
+        
+        private Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("prepareStatement") || method.getName().equals("prepareCall")
+                            || method.getName().equals("createStatement")) {
+                        count.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.DeletionJob;
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeStats;
+import io.zipcoder.persistenceapp.services.DeletionJobService;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:deletion-jobs;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "app.deletes.chunk-size=3",
+    "app.deletes.chunk-pause=100ms"
+})
+@AutoConfigureMockMvc
+class DeletionJobEndpointTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private DeletionJobService deletionJobService;
+    
+    @Test
+    void departmentWipeRunsInChunksAndKeepsCountersRight() throws Exception {
+        // top -> head (department manager) -> 3 leads -> 2 engineers each: 10 to delete, more than a chunk
+        Department department = departmentService.createDepartment(new Department("Wiped Out"));
+        Employee top = employee("Top", null, null);
+        Employee head = employee("Head", top, department);
+        departmentService.setDepartmentManager(department.getDepartmentNumber(), head.getEmployeeNumber());
+        for (int lead = 0; lead < 3; lead++) {
+            Employee manager = employee("Lead" + lead, head, department);
+            employee("Engineer" + lead + "a", manager, department);
+            employee("Engineer" + lead + "b", manager, null);
+        }
+        
+        MvcResult submitted = mockMvc.perform(delete("/API/departments/" + department.getDepartmentNumber() + "/employees"))
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.totalEmployees").value(10))
+            .andReturn();
+        String location = submitted.getResponse().getHeader("Location");
+        
+        DeletionJob job = awaitFinished(location);
+        assertEquals(DeletionJob.Status.SUCCEEDED, job.getStatus());
+        assertEquals(10, job.getDeletedEmployees());
+        assertTrue(job.getChunks() >= 4);
+        mockMvc.perform(get(location))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("SUCCEEDED"))
+            .andExpect(jsonPath("$.progress").value(1.0));
+        
+        EmployeeStats stats = employeeService.getEmployeeStats(top.getEmployeeNumber()).get();
+        assertEquals(0, stats.getDirectReports());
+        assertEquals(0, stats.getTotalReports());
+        assertEquals(0, stats.getLevelsBelow());
+        assertNull(departmentService.getDepartmentById(department.getDepartmentNumber()).get().getManager());
+        assertEquals(0, departmentService.getDepartmentStats(department.getDepartmentNumber()).get().getHeadcount());
+        assertTrue(employeeService.getEmployeeById(top.getEmployeeNumber()).isPresent());
+    }
+    
+    @Test
+    void departmentDeleteRemovesMembersInChunksThenTheDepartment() throws Exception {
+        // top -> head (department manager) -> 2 leads -> an engineer each, one of them in another department
+        Department department = departmentService.createDepartment(new Department("Closing Down"));
+        Department other = departmentService.createDepartment(new Department("Staying Open"));
+        Employee top = employee("Chief", null, null);
+        Employee head = employee("Director", top, department);
+        departmentService.setDepartmentManager(department.getDepartmentNumber(), head.getEmployeeNumber());
+        List<Long> removed = new ArrayList<>();
+        removed.add(head.getEmployeeNumber());
+        for (int lead = 0; lead < 2; lead++) {
+            Employee manager = employee("Supervisor" + lead, head, department);
+            removed.add(manager.getEmployeeNumber());
+            removed.add(employee("Developer" + lead, manager, lead == 0 ? department : other).getEmployeeNumber());
+        }
+        
+        String location = mockMvc.perform(delete("/API/departments/" + department.getDepartmentNumber()))
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.totalEmployees").value(5))
+            .andReturn().getResponse().getHeader("Location");
+        
+        DeletionJob job = awaitFinished(location);
+        assertEquals(DeletionJob.Status.SUCCEEDED, job.getStatus());
+        assertEquals(5, job.getDeletedEmployees());
+        assertTrue(job.getChunks() >= 2);
+        assertFalse(departmentService.getDepartmentById(department.getDepartmentNumber()).isPresent());
+        assertTrue(departmentService.getDepartmentById(other.getDepartmentNumber()).isPresent());
+        assertTrue(removed.stream().noneMatch(id -> employeeService.getEmployeeById(id).isPresent()));
+        assertEquals(0, employeeService.getEmployeeStats(top.getEmployeeNumber()).get().getTotalReports());
+        mockMvc.perform(delete("/API/departments/" + department.getDepartmentNumber()))
+            .andExpect(status().isNotFound());
+    }
+    
+    @Test
+    void cancelledJobStopsBetweenChunks() throws Exception {
+        Employee manager = employee("Manager", null, null);
+        List<Long> reports = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            reports.add(employee("Report" + i, manager, null).getEmployeeNumber());
+        }
+        
+        String location = mockMvc.perform(delete("/API/employees/manager/" + manager.getEmployeeNumber() + "/all"))
+            .andExpect(status().isAccepted())
+            .andExpect(header().exists("Location"))
+            .andReturn().getResponse().getHeader("Location");
+        mockMvc.perform(delete(location)).andExpect(status().isOk());
+        
+        DeletionJob job = awaitFinished(location);
+        assertEquals(DeletionJob.Status.CANCELLED, job.getStatus());
+        assertTrue(job.getDeletedEmployees() < 12);
+        long left = reports.stream().filter(id -> employeeService.getEmployeeById(id).isPresent()).count();
+        assertEquals(12 - job.getDeletedEmployees(), left);
+        assertEquals((int) left, employeeService.getEmployeeStats(manager.getEmployeeNumber()).get().getDirectReports());
+    }
+    
+    @Test
+    void batchDeleteAcceptsIdsAndUnknownJobsAreNotFound() throws Exception {
+        Employee first = employee("First", null, null);
+        Employee second = employee("Second", first, null);
+        Employee other = employee("Other", null, null);
+        
+        String location = mockMvc.perform(delete("/API/employees/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("[" + first.getEmployeeNumber() + "," + second.getEmployeeNumber() + "]"))
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.totalEmployees").value(2))
+            .andReturn().getResponse().getHeader("Location");
+        
+        assertEquals(DeletionJob.Status.SUCCEEDED, awaitFinished(location).getStatus());
+        assertFalse(employeeService.getEmployeeById(first.getEmployeeNumber()).isPresent());
+        assertFalse(employeeService.getEmployeeById(second.getEmployeeNumber()).isPresent());
+        assertTrue(employeeService.getEmployeeById(other.getEmployeeNumber()).isPresent());
+        mockMvc.perform(get("/API/jobs/999999")).andExpect(status().isNotFound());
+    }
+    
+    private Employee employee(String lastName, Employee manager, Department department) {
+        Employee employee = new Employee("Job", lastName, "Engineer", lastName.toLowerCase() + "@example.com");
+        employee.setDepartment(department);
+        Employee created = employeeService.createEmployee(employee);
+        if (manager != null) {
+            employeeService.setManager(created.getEmployeeNumber(), manager.getEmployeeNumber());
+        }
+        return created;
+    }
+    
+    private DeletionJob awaitFinished(String location) throws InterruptedException {
+        long id = Long.parseLong(location.substring(location.lastIndexOf('/') + 1));
+        for (int i = 0; i < 200; i++) {
+            DeletionJob job = deletionJobService.getJob(id).get();
+            if (job.isFinished()) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Job " + id + " did not finish");
+    }
+}
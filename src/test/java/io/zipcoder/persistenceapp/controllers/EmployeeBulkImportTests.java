@@ -0,0 +1,142 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeImportRecord;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import io.zipcoder.persistenceapp.services.EmployeeImportService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:bulk-import;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+class EmployeeBulkImportTests {
+    
+    private static final int LARGE_IMPORT_SIZE = 100_000;
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private EmployeeImportService employeeImportService;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Test
+    void importsJsonArrayWithManagersListedAfterTheirReports() throws Exception {
+        String body = "["
+            + "{\"sourceId\":\"j2\",\"firstName\":\"Ada\",\"lastName\":\"Report\",\"title\":\"Engineer\",\"email\":\"ada@example.com\","
+            + "\"managerSourceId\":\"j1\",\"departmentName\":\"JSON Eng\",\"hireDate\":\"2020-01-15\"},"
+            + "{\"sourceId\":\"j1\",\"firstName\":\"Bo\",\"lastName\":\"Boss\",\"title\":\"Director\",\"email\":\"bo@example.com\","
+            + "\"departmentName\":\"JSON Eng\"}"
+            + "]";
+        
+        mockMvc.perform(post("/API/employees/bulk").contentType(MediaType.APPLICATION_JSON).content(body))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.employeesImported").value(2))
+            .andExpect(jsonPath("$.departmentsCreated").value(1))
+            .andExpect(jsonPath("$.managersLinked").value(1))
+            .andExpect(jsonPath("$.elapsedMillis").value(greaterThanOrEqualTo(0)))
+            .andExpect(jsonPath("$.rowsPerSecond").value(greaterThan(0)));
+        
+        Employee boss = employeeRepository.findAll().stream()
+            .filter(e -> "bo@example.com".equals(e.getEmail())).findFirst().orElseThrow(AssertionError::new);
+        List<Employee> reports = employeeService.getDirectReports(boss.getEmployeeNumber());
+        assertEquals(1, reports.size());
+        assertEquals("ada@example.com", reports.get(0).getEmail());
+        assertEquals("JSON Eng", reports.get(0).getDepartment().getDepartmentName());
+        assertEquals(Arrays.asList(reports.get(0).getEmployeeNumber(), boss.getEmployeeNumber()),
+            employeeService.getReportingHierarchy(reports.get(0).getEmployeeNumber()).stream().map(Employee::getEmployeeNumber).collect(Collectors.toList()));
+    }
+    
+    @Test
+    void importsCsvWithHeaderRow() throws Exception {
+        String body = "sourceId,firstName,lastName,title,email,phoneNumber,managerSourceId,departmentName\n"
+            + "c1,Cy,Chief,CEO,cy@example.com,,,CSV Exec\n"
+            + "c2,Di,Deputy,VP,di@example.com,555-0100,c1,CSV Exec\n";
+        
+        mockMvc.perform(post("/API/employees/bulk").contentType("text/csv").content(body))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.employeesImported").value(2))
+            .andExpect(jsonPath("$.managersLinked").value(1));
+    }
+    
+    @Test
+    void rejectsMalformedRecordsWithBadRequest() throws Exception {
+        mockMvc.perform(post("/API/employees/bulk").contentType(MediaType.APPLICATION_NDJSON).content("{\"firstName\": }\n"))
+            .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void unknownManagerRollsBackTheWholeImport() {
+        long before = employeeRepository.count();
+        EmployeeImportRecord orphan = record("o1", "missing", null);
+        
+        assertThrows(RuntimeException.class, () -> employeeImportService.importEmployees(Arrays.asList(orphan).iterator()));
+        assertEquals(before, employeeRepository.count());
+    }
+    
+    @Test
+    void importsLargeNdjsonStream() throws Exception {
+        long before = employeeRepository.count();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < LARGE_IMPORT_SIZE; i++) {
+            String manager = i == 0 ? "" : ",\"managerSourceId\":\"n" + ((i - 1) / 10) + "\"";
+            body.append("{\"sourceId\":\"n").append(i).append("\",\"firstName\":\"F").append(i)
+                .append("\",\"lastName\":\"L\",\"title\":\"Engineer\",\"email\":\"n").append(i).append("@example.com\"")
+                .append(manager).append(",\"departmentName\":\"NDJSON ").append(i % 20).append("\"}\n");
+        }
+        
+        mockMvc.perform(post("/API/employees/bulk").contentType(MediaType.APPLICATION_NDJSON)
+                .content(body.toString().getBytes(StandardCharsets.UTF_8)))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.employeesImported").value(LARGE_IMPORT_SIZE))
+            .andExpect(jsonPath("$.departmentsCreated").value(20))
+            .andExpect(jsonPath("$.managersLinked").value(LARGE_IMPORT_SIZE - 1))
+            .andExpect(jsonPath("$.rowsPerSecond").value(greaterThan(0)));
+        
+        assertEquals(before + LARGE_IMPORT_SIZE, employeeRepository.count());
+        Employee last = employeeRepository.findAll().stream()
+            .filter(e -> ("n" + (LARGE_IMPORT_SIZE - 1) + "@example.com").equals(e.getEmail())).findFirst().orElseThrow(AssertionError::new);
+        assertEquals("n" + ((LARGE_IMPORT_SIZE - 2) / 10) + "@example.com", last.getManager().getEmail());
+    }
+    
+    private static EmployeeImportRecord record(String sourceId, String managerSourceId, String departmentName) {
+        EmployeeImportRecord record = new EmployeeImportRecord();
+        record.setSourceId(sourceId);
+        record.setFirstName("First " + sourceId);
+        record.setLastName("Last");
+        record.setTitle("Engineer");
+        record.setEmail(sourceId + "@example.com");
+        record.setManagerSourceId(managerSourceId);
+        record.setDepartmentName(departmentName);
+        return record;
+    }
+}
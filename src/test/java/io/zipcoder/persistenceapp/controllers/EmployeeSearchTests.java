@@ -0,0 +1,142 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.search.EmployeeDocument;
+import io.zipcoder.persistenceapp.search.EmployeeSearchIndex;
+import io.zipcoder.persistenceapp.search.SearchQuery;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:employee-search;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+class EmployeeSearchTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Test
+    void rankedTypeaheadWithPaging() throws Exception {
+        // Exact name terms first (first name before surname), then name prefixes, then the title prefix
+        employee("Quill", "Marsh", "Quillwright", "quill.marsh@example.com");
+        employee("Ann", "Quillon", "Engineer", "ann.q@example.com");
+        employee("Bo", "Quill", "Engineer", "bo.q@example.com");
+        
+        String next = mockMvc.perform(get("/API/employees/search").param("q", "quill").param("size", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items", hasSize(2)))
+            .andExpect(jsonPath("$.items[0].firstName").value("Quill"))
+            .andExpect(jsonPath("$.items[1].lastName").value("Quill"))
+            .andReturn().getResponse().getContentAsString().replaceAll(".*\"nextCursor\":\"([^\"]+)\".*", "$1");
+        
+        mockMvc.perform(get("/API/employees/search").param("q", "quill").param("size", "2").param("cursor", next))
+            .andExpect(jsonPath("$.items", hasSize(1)))
+            .andExpect(jsonPath("$.items[0].lastName").value("Quillon"))
+            .andExpect(jsonPath("$.nextCursor").value(nullValue()));
+    }
+    
+    @Test
+    void fieldParametersAndPhoneNumbers() throws Exception {
+        Department department = departmentService.createDepartment(new Department("Zephyr Labs"));
+        Employee inLabs = employee("Zed", "Labman", "Zephyr Researcher", "zed@example.com");
+        inLabs.setPhoneNumber("(555) 010-7788");
+        employeeService.updateEmployee(inLabs.getEmployeeNumber(), inLabs);
+        departmentService.setDepartmentManager(department.getDepartmentNumber(), inLabs.getEmployeeNumber());
+        employee("Zephyr", "Other", "Analyst", "zephyr@example.com");
+        
+        mockMvc.perform(get("/API/employees/search").param("q", "zephyr"))
+            .andExpect(jsonPath("$.items", hasSize(2)));
+        mockMvc.perform(get("/API/employees/search").param("department", "zephyr"))
+            .andExpect(jsonPath("$.items", hasSize(1)))
+            .andExpect(jsonPath("$.items[0].firstName").value("Zed"));
+        mockMvc.perform(get("/API/employees/search").param("q", "title:research zed"))
+            .andExpect(jsonPath("$.items", hasSize(1)));
+        mockMvc.perform(get("/API/employees/search").param("q", "555-010-77"))
+            .andExpect(jsonPath("$.items", hasSize(1)))
+            .andExpect(jsonPath("$.items[0].firstName").value("Zed"));
+    }
+    
+    @Test
+    void indexFollowsEmployeeAndDepartmentChanges() throws Exception {
+        Department department = departmentService.createDepartment(new Department("Vortex Ops"));
+        Employee member = new Employee("Vera", "Vortexson", "Operator", "vera@example.com");
+        member.setDepartment(department);
+        Employee employee = employeeService.createEmployee(member);
+        
+        Employee renamed = new Employee("Vera", "Whirlwind", "Operator", "vera@example.com");
+        employeeService.updateEmployee(employee.getEmployeeNumber(), renamed);
+        mockMvc.perform(get("/API/employees/search").param("name", "vortexson"))
+            .andExpect(jsonPath("$.items", hasSize(0)));
+        mockMvc.perform(get("/API/employees/search").param("name", "whirl"))
+            .andExpect(jsonPath("$.items", hasSize(1)));
+        
+        departmentService.changeDepartmentName(department.getDepartmentNumber(), "Cyclone Ops");
+        mockMvc.perform(get("/API/employees/search").param("department", "vortex"))
+            .andExpect(jsonPath("$.items", hasSize(0)));
+        mockMvc.perform(get("/API/employees/search").param("department", "cyclone"))
+            .andExpect(jsonPath("$.items[0].lastName").value("Whirlwind"));
+        
+        employeeService.deleteEmployee(employee.getEmployeeNumber());
+        mockMvc.perform(get("/API/employees/search").param("q", "whirlwind"))
+            .andExpect(jsonPath("$.items", hasSize(0)));
+    }
+    
+    @Test
+    void compactionKeepsLiveDocumentsSearchable() {
+        EmployeeSearchIndex index = new EmployeeSearchIndex();
+        List<EmployeeDocument> documents = new ArrayList<>();
+        for (long i = 1; i <= 3000; i++) {
+            documents.add(document(i, "Name" + i, i % 2 == 0 ? "Even" : "Odd"));
+        }
+        index.rebuild(documents);
+        
+        // Every even employee changes its surname: 1500 tombstones trigger a compaction
+        for (long i = 2; i <= 3000; i += 2) {
+            index.put(document(i, "Name" + i, "Renamed"));
+        }
+        index.remove(Collections.singletonList(3L));
+        
+        assertEquals(2999, index.size());
+        assertEquals(0, index.search(SearchQuery.parse("even"), 0, 10).length);
+        assertEquals(1500, index.search(SearchQuery.parse("renamed"), 0, 5000).length);
+        assertEquals(1499, index.search(SearchQuery.parse("odd"), 0, 5000).length);
+        assertArrayEquals(new long[] {2998}, index.search(SearchQuery.parse("name2998 renamed"), 0, 10));
+    }
+    
+    private Employee employee(String first, String last, String title, String email) {
+        return employeeService.createEmployee(new Employee(first, last, title, email));
+    }
+    
+    private static EmployeeDocument document(long number, String first, String last) {
+        return new EmployeeDocument(number, first, last, first.toLowerCase() + "@example.com", "Engineer", null, null, null);
+    }
+}
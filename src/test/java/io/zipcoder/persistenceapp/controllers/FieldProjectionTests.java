@@ -0,0 +1,101 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.KeysetPage;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:field-projection;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+class FieldProjectionTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Test
+    void projectedListingsKeepEmployeesWithoutManagerOrDepartment() throws Exception {
+        Department department = departmentService.createDepartment(new Department("Projection Labs"));
+        Employee boss = employeeService.createEmployee(new Employee("Pia", "Boss", "Director", "pia@example.com"));
+        Employee report = new Employee("Ray", "Report", "Engineer", "ray@example.com");
+        report.setManager(boss);
+        report.setDepartment(department);
+        employeeService.createEmployee(report);
+        
+        mockMvc.perform(get("/API/employees").param("fields", "lastName,managerEmployeeNumber"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[?(@.lastName == 'Boss')].managerEmployeeNumber").value(contains(nullValue())))
+            .andExpect(jsonPath("$[?(@.lastName == 'Report')].managerEmployeeNumber").value(contains(boss.getEmployeeNumber().intValue())))
+            .andExpect(jsonPath("$[0].employeeNumber").doesNotExist())
+            .andExpect(jsonPath("$[0].email").doesNotExist());
+        
+        mockMvc.perform(get("/API/employees/department/{deptNum}", department.getDepartmentNumber()).param("fields", "email"))
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].email").value("ray@example.com"));
+        
+        // The cursor still comes from the key column when the key was not requested
+        mockMvc.perform(get("/API/employees/page").param("fields", "firstName").param("size", "1")
+                .param("cursor", KeysetPage.encodeCursor(boss.getEmployeeNumber() - 1)))
+            .andExpect(jsonPath("$.items[0].firstName").value("Pia"))
+            .andExpect(jsonPath("$.nextCursor").value(KeysetPage.encodeCursor(boss.getEmployeeNumber())));
+        
+        mockMvc.perform(get("/API/departments").param("fields", "departmentName,headcount"))
+            .andExpect(jsonPath("$[?(@.departmentName == 'Projection Labs')].headcount").value(contains(1)));
+        
+        mockMvc.perform(get("/API/employees").param("fields", "lastName,salary"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/API/departments").param("fields", " , "))
+            .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void binaryFormatsByAcceptHeader() throws Exception {
+        employeeService.createEmployee(new Employee("Cy", "Binary", "Encoder", "cy@example.com"));
+        
+        byte[] smile = mockMvc.perform(get("/API/employees").param("fields", "lastName").accept("application/x-jackson-smile"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith("application/x-jackson-smile"))
+            .andReturn().getResponse().getContentAsByteArray();
+        byte[] cbor = mockMvc.perform(get("/API/employees").accept("application/cbor"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith("application/cbor"))
+            .andReturn().getResponse().getContentAsByteArray();
+        
+        JsonNode fromSmile = new ObjectMapper(new SmileFactory()).readTree(smile);
+        JsonNode fromCbor = new ObjectMapper(new CBORFactory()).readTree(cbor);
+        assertTrue(fromSmile.findValuesAsText("lastName").contains("Binary"));
+        assertTrue(fromCbor.findValuesAsText("lastName").contains("Binary"));
+        assertEquals(fromSmile.size(), fromCbor.size());
+    }
+}
@@ -0,0 +1,127 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeDto;
+import io.zipcoder.persistenceapp.repositories.DepartmentRepository;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:reorg-preview;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+class ReorgPreviewTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private DepartmentRepository departmentRepository;
+    
+    @Test
+    void previewsTheDiffWithoutWritingAndMatchesTheAppliedBatch() throws Exception {
+        Department north = departmentService.createDepartment(new Department("Preview North"));
+        Department south = departmentService.createDepartment(new Department("Preview South"));
+        Department east = departmentService.createDepartment(new Department("Preview East"));
+        Employee alice = employee("Alice", "North");
+        Employee bob = employee("Bob", "South");
+        Employee carl = employee("Carl", "South");
+        Employee dana = employee("Dana", "East");
+        Employee erin = employee("Erin", "East");
+        departmentService.setDepartmentManager(north.getDepartmentNumber(), alice.getEmployeeNumber());
+        departmentService.setDepartmentManager(south.getDepartmentNumber(), bob.getEmployeeNumber());
+        departmentService.setDepartmentManager(east.getDepartmentNumber(), dana.getEmployeeNumber());
+        employeeService.setManager(carl.getEmployeeNumber(), bob.getEmployeeNumber());
+        employeeService.setManager(erin.getEmployeeNumber(), dana.getEmployeeNumber());
+        
+        // North absorbs South, Erin moves under Carl, then East's manager leaves
+        String body = "["
+            + "{\"type\":\"MERGE_DEPARTMENTS\",\"departmentNumber\":" + north.getDepartmentNumber()
+            + ",\"mergedDepartmentNumber\":" + south.getDepartmentNumber() + "},"
+            + "{\"type\":\"SET_MANAGER\",\"employeeNumber\":" + erin.getEmployeeNumber() + ",\"managerEmployeeNumber\":" + carl.getEmployeeNumber() + "},"
+            + "{\"type\":\"DELETE_EMPLOYEE\",\"employeeNumber\":" + dana.getEmployeeNumber() + "}"
+            + "]";
+        String move = "$.moves[?(@.employeeNumber == %d)].";
+        mockMvc.perform(post("/API/batch/preview").contentType(MediaType.APPLICATION_JSON).content(body))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.moves", hasSize(3)))
+            .andExpect(jsonPath(move + "managerAfter", bob.getEmployeeNumber()).value(contains(alice.getEmployeeNumber().intValue())))
+            .andExpect(jsonPath(move + "departmentAfter", bob.getEmployeeNumber()).value(contains(north.getDepartmentNumber().intValue())))
+            .andExpect(jsonPath(move + "depthAfter", bob.getEmployeeNumber()).value(contains(1)))
+            .andExpect(jsonPath(move + "depthAfter", carl.getEmployeeNumber()).value(contains(2)))
+            .andExpect(jsonPath(move + "managerBefore", erin.getEmployeeNumber()).value(contains(dana.getEmployeeNumber().intValue())))
+            .andExpect(jsonPath(move + "departmentAfter", erin.getEmployeeNumber()).value(contains(north.getDepartmentNumber().intValue())))
+            .andExpect(jsonPath(move + "depthAfter", erin.getEmployeeNumber()).value(contains(3)))
+            .andExpect(jsonPath("$.depthChanges").value(3))
+            .andExpect(jsonPath("$.spanChanges[?(@.employeeNumber == %d)].after", alice.getEmployeeNumber()).value(contains(1)))
+            .andExpect(jsonPath("$.spanChanges[?(@.employeeNumber == %d)].after", carl.getEmployeeNumber()).value(contains(1)))
+            .andExpect(jsonPath("$.removedEmployees", contains(dana.getEmployeeNumber().intValue())))
+            .andExpect(jsonPath("$.removedDepartments", contains(south.getDepartmentNumber().intValue())))
+            .andExpect(jsonPath("$.unmanagedDepartments", hasSize(1)))
+            .andExpect(jsonPath("$.unmanagedDepartments[0].departmentNumber").value(east.getDepartmentNumber()))
+            .andExpect(jsonPath("$.unmanagedDepartments[0].managerEmployeeNumber").doesNotExist());
+        
+        // Nothing was written
+        assertTrue(departmentRepository.existsById(south.getDepartmentNumber()));
+        assertTrue(employeeService.getEmployeeById(dana.getEmployeeNumber()).isPresent());
+        assertNull(employeeService.getEmployeeById(bob.getEmployeeNumber()).get().getManager());
+        assertEquals(dana.getEmployeeNumber(), employeeService.getEmployeeById(erin.getEmployeeNumber()).get()
+            .getManager().getEmployeeNumber());
+        
+        // Applying the same batch lands where the preview said
+        mockMvc.perform(post("/API/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.committed").value(true));
+        assertFalse(departmentRepository.existsById(south.getDepartmentNumber()));
+        assertFalse(employeeService.getEmployeeById(dana.getEmployeeNumber()).isPresent());
+        assertEquals(alice.getEmployeeNumber(), employeeService.getEmployeeById(bob.getEmployeeNumber()).get()
+            .getManager().getEmployeeNumber());
+        EmployeeDto movedErin = employeeService.getEmployeeById(erin.getEmployeeNumber()).get();
+        assertEquals(carl.getEmployeeNumber(), movedErin.getManager().getEmployeeNumber());
+        assertEquals(north.getDepartmentNumber(), movedErin.getDepartment().getDepartmentNumber());
+        assertNull(departmentRepository.findById(east.getDepartmentNumber()).get().getManager());
+    }
+    
+    @Test
+    void operationThatWouldFailIsRejected() throws Exception {
+        Employee top = employee("Tom", "Top");
+        Employee below = employee("Bo", "Below");
+        employeeService.setManager(below.getEmployeeNumber(), top.getEmployeeNumber());
+        
+        String body = "[{\"type\":\"SET_MANAGER\",\"employeeNumber\":" + top.getEmployeeNumber()
+            + ",\"managerEmployeeNumber\":" + below.getEmployeeNumber() + "}]";
+        mockMvc.perform(post("/API/batch/preview").contentType(MediaType.APPLICATION_JSON).content(body))
+            .andExpect(status().isBadRequest());
+    }
+    
+    private Employee employee(String first, String last) {
+        return employeeService.createEmployee(new Employee(first, last, "Engineer", first.toLowerCase() + "@example.com"));
+    }
+}
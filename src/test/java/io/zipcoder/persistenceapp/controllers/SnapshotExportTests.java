@@ -0,0 +1,107 @@
+package io.zipcoder.persistenceapp.controllers;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import io.zipcoder.persistenceapp.services.SnapshotService;
+import io.zipcoder.persistenceapp.snapshot.SnapshotFormat;
+import io.zipcoder.persistenceapp.snapshot.SnapshotRestorer;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:snapshot-source;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "app.snapshots.directory=target/test-snapshots"
+})
+@AutoConfigureMockMvc
+class SnapshotExportTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private SnapshotService snapshotService;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void exportDownloadsByRangeAndRestoresIntoAnEmptyDatabase() throws Exception {
+        // Repeated titles end up dictionary encoded; missing phone numbers and hire dates are nulls
+        Department department = departmentService.createDepartment(new Department("Snapshotted"));
+        Employee head = employee("Head", null, department, LocalDate.of(2015, 3, 1));
+        departmentService.setDepartmentManager(department.getDepartmentNumber(), head.getEmployeeNumber());
+        for (int i = 0; i < 20; i++) {
+            employee("Member" + i, head, i % 2 == 0 ? department : null, i % 3 == 0 ? null : LocalDate.of(2020, 1, 1 + i));
+        }
+        
+        String location = mockMvc.perform(post("/API/snapshots"))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.employees").value(count("employees")))
+            .andExpect(jsonPath("$.departments").value(count("departments")))
+            .andReturn().getResponse().getHeader("Location");
+        mockMvc.perform(get(location).header(HttpHeaders.RANGE, "bytes=0-7"))
+            .andExpect(status().isPartialContent())
+            .andExpect(content().bytes("EDSNAP01".getBytes(StandardCharsets.US_ASCII)));
+        mockMvc.perform(get("/API/snapshots/directory-20000101T000000000Z.edsnap")).andExpect(status().isNotFound());
+        
+        DriverManagerDataSource restored = new DriverManagerDataSource("jdbc:h2:mem:snapshot-restored;DB_CLOSE_DELAY=-1", "sa", "");
+        Flyway.configure().dataSource(restored).locations("classpath:db/migration/h2").load().migrate();
+        JdbcTemplate target = new JdbcTemplate(restored);
+        String name = location.substring(location.lastIndexOf('/') + 1);
+        Map<String, Long> rows = new SnapshotRestorer(target).restore(snapshotService.getSnapshotFile(name).get());
+        
+        for (SnapshotFormat.Table table : SnapshotFormat.TABLES) {
+            assertEquals(count(table.getName()), (long) rows.get(table.getName()));
+            assertEquals(jdbcTemplate.queryForList(table.selectAll()), target.queryForList(table.selectAll()));
+        }
+        // Only into empty tables
+        assertThrows(IllegalStateException.class, () -> new SnapshotRestorer(target).restore(snapshotService.getSnapshotFile(name).get()));
+    }
+    
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+    
+    private Employee employee(String lastName, Employee manager, Department department, LocalDate hireDate) {
+        Employee employee = new Employee("Snap", lastName, "Engineer", lastName.toLowerCase() + "@example.com");
+        employee.setDepartment(department);
+        employee.setHireDate(hireDate);
+        Employee created = employeeService.createEmployee(employee);
+        if (manager != null) {
+            employeeService.setManager(created.getEmployeeNumber(), manager.getEmployeeNumber());
+        }
+        return created;
+    }
+}
@@ -0,0 +1,63 @@
+package io.zipcoder.persistenceapp.execution;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseConcurrencyFilterTests {
+    
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final DatabaseConcurrencyFilter filter = new DatabaseConcurrencyFilter(1, Duration.ofMillis(50), registry);
+    
+    @Test
+    void requestOverTheLimitIsTurnedAway() throws Exception {
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<MockHttpServletResponse> first = CompletableFuture.supplyAsync(() -> perform(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) {
+                inside.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+        assertTrue(inside.await(5, TimeUnit.SECONDS));
+        
+        MockHttpServletResponse rejected = perform(new HttpServlet() {
+        });
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertEquals(1, registry.counter("directory.db.permits.rejected").count());
+        
+        release.countDown();
+        assertEquals(200, first.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(1, registry.get("directory.db.permits.available").gauge().value());
+    }
+    
+    private MockHttpServletResponse perform(HttpServlet servlet) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/API/employees/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            filter.doFilter(request, response, new MockFilterChain(servlet));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return response;
+    }
+}
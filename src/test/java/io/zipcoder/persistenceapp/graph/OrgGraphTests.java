@@ -0,0 +1,109 @@
+package io.zipcoder.persistenceapp.graph;
+
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class OrgGraphTests {
+    
+    @Test
+    void patchedReportListsMatchAFreshRebuild() {
+        OrgGraph graph = new OrgGraph();
+        Random random = new Random(42);
+        List<Long> live = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            graph.put(id, live.isEmpty() ? null : live.get(random.nextInt(live.size())), null);
+            live.add(id);
+        }
+        graph.subtree(1, Integer.MAX_VALUE);
+        
+        long nextId = 501;
+        for (int step = 0; step < 2000; step++) {
+            int action = random.nextInt(10);
+            if (action < 6) {
+                // Move someone under a manager that is not below them
+                long employee = live.get(random.nextInt(live.size()));
+                long manager = live.get(random.nextInt(live.size()));
+                if (manager != employee && !contains(graph.subtree(employee, Integer.MAX_VALUE), manager)) {
+                    graph.put(employee, manager, null);
+                }
+            } else if (action < 8) {
+                graph.put(nextId, live.get(random.nextInt(live.size())), null);
+                live.add(nextId++);
+            } else if (live.size() > 50) {
+                long leaver = live.get(random.nextInt(live.size()));
+                if (action == 8) {
+                    graph.removeAndLiftReports(leaver);
+                } else {
+                    graph.removeSubtree(leaver, true);
+                }
+                live.removeIf(id -> !graph.contains(id));
+            }
+            // Traverse between writes, so reads run on the patched lists rather than after a rebuild
+            if (step % 7 == 0) {
+                assertMatchesRebuild(graph, live);
+            }
+        }
+        assertMatchesRebuild(graph, live);
+        assertEquals(-1, graph.depthOf(nextId));
+    }
+    
+    @Test
+    void updateAppliedDuringTheDatabaseReadSurvivesTheLoad() {
+        OrgGraph graph = new OrgGraph();
+        EmployeeRepository repository = Mockito.mock(EmployeeRepository.class);
+        ReflectionTestUtils.setField(graph, "employeeRepository", repository);
+        List<Object[]> links = Arrays.asList(new Object[] {1L, null, 10L}, new Object[] {2L, 1L, 10L},
+            new Object[] {3L, 2L, 10L});
+        
+        // While the links are being read, a commit that the read missed moves 3 up and deletes 2
+        Mockito.when(repository.findAllHierarchyLinks()).thenAnswer(invocation -> {
+            graph.put(3L, 1L, 20L);
+            graph.removeAndLiftReports(2L);
+            return links;
+        });
+        graph.load();
+        
+        assertEquals(Long.valueOf(1L), graph.managerOf(3L));
+        assertEquals(Long.valueOf(20L), graph.departmentOf(3L));
+        assertFalse(graph.contains(2L));
+        assertArrayEquals(new long[] {3L}, graph.directReports(1L));
+    }
+    
+    // Every employee's reports match a graph built from scratch out of the same links
+    private static void assertMatchesRebuild(OrgGraph graph, List<Long> live) {
+        OrgGraph rebuilt = new OrgGraph();
+        rebuilt.load(graph.toImage(0));
+        for (long id : live) {
+            assertArrayEquals(sorted(rebuilt.directReports(id)), sorted(graph.directReports(id)), "reports of " + id);
+            assertArrayEquals(sorted(rebuilt.subtree(id, Integer.MAX_VALUE)), sorted(graph.subtree(id, Integer.MAX_VALUE)),
+                "subtree of " + id);
+            assertEquals(rebuilt.chainOfCommand(id).length - 1, graph.depthOf(id), "depth of " + id);
+        }
+    }
+    
+    private static long[] sorted(long[] ids) {
+        long[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+    
+    private static boolean contains(long[] ids, long id) {
+        for (long candidate : ids) {
+            if (candidate == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
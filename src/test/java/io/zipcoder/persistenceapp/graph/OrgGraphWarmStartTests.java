@@ -0,0 +1,100 @@
+package io.zipcoder.persistenceapp.graph;
+
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:org-graph-image;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "app.org-graph.image.path=target/org-graph-image-tests/org-graph.img"
+})
+class OrgGraphWarmStartTests {
+    
+    @Autowired
+    private OrgGraph orgGraph;
+    
+    @Autowired
+    private OrgGraphWarmStart warmStart;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Value("${app.org-graph.image.path}")
+    private Path imagePath;
+    
+    @Test
+    void imageServesAtOnceAndReplayCatchesUpWithTheDatabase() throws Exception {
+        Employee top = employee("Top", null);
+        Employee lead = employee("Lead", top);
+        Employee mover = employee("Mover", lead);
+        Employee leaver = employee("Leaver", lead);
+        assertTrue(warmStart.write());
+        
+        // Changes after the image was written
+        Employee joiner = employee("Joiner", lead);
+        employeeService.setManager(mover.getEmployeeNumber(), top.getEmployeeNumber());
+        employeeService.deleteEmployees(Collections.singletonList(leaver.getEmployeeNumber()));
+        
+        // As a restarted node would: the graph from the image, as of when it was written
+        OrgGraphImage image = OrgGraphImage.read(imagePath);
+        orgGraph.load(image);
+        assertFalse(orgGraph.contains(joiner.getEmployeeNumber()));
+        assertTrue(orgGraph.contains(leaver.getEmployeeNumber()));
+        assertEquals(lead.getEmployeeNumber(), orgGraph.managerOf(mover.getEmployeeNumber()));
+        assertArrayEquals(new long[] {mover.getEmployeeNumber(), lead.getEmployeeNumber(), top.getEmployeeNumber()},
+            orgGraph.chainOfCommand(mover.getEmployeeNumber()));
+        
+        assertTrue(warmStart.replay(image.getMark()));
+        assertTrue(orgGraph.contains(joiner.getEmployeeNumber()));
+        assertFalse(orgGraph.contains(leaver.getEmployeeNumber()));
+        assertEquals(top.getEmployeeNumber(), orgGraph.managerOf(mover.getEmployeeNumber()));
+        assertEquals(lead.getEmployeeNumber(), orgGraph.managerOf(joiner.getEmployeeNumber()));
+        assertEquals(employeeRepository.count(), orgGraph.size());
+    }
+    
+    @Test
+    void corruptImageIsRejected() throws Exception {
+        employee("Someone", null);
+        assertTrue(warmStart.write());
+        // Flip the last byte of the arrays
+        try (FileChannel channel = FileChannel.open(imagePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) ~last.get(0));
+            channel.write(last.rewind(), channel.size() - 1);
+        }
+        assertThrows(IOException.class, () -> OrgGraphImage.read(imagePath));
+    }
+    
+    private Employee employee(String lastName, Employee manager) {
+        Employee created = employeeService.createEmployee(new Employee("Warm", lastName, "Engineer", lastName.toLowerCase() + "@example.com"));
+        if (manager != null) {
+            employeeService.setManager(created.getEmployeeNumber(), manager.getEmployeeNumber());
+        }
+        return created;
+    }
+}
@@ -0,0 +1,56 @@
+package io.zipcoder.persistenceapp.metrics;
+
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:metrics;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class MetricsEndpointTests {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Test
+    void prometheusEndpointExposesRequestServiceSqlTraversalAndPoolMetrics() throws Exception {
+        Employee manager = employeeService.createEmployee(new Employee("Metric", "Boss", "Director", "metric-boss@example.com"));
+        for (int i = 0; i < 3; i++) {
+            Employee report = employeeService.createEmployee(new Employee("Metric", "Report" + i, "Engineer", "metric" + i + "@example.com"));
+            employeeService.setManager(report.getEmployeeNumber(), manager.getEmployeeNumber());
+        }
+        
+        mockMvc.perform(get("/API/employees/manager/{managerId}/all", manager.getEmployeeNumber()))
+            .andExpect(status().isOk());
+        
+        String scrape = mockMvc.perform(get("/actuator/prometheus"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        
+        assertTrue(scrape.contains("http_server_requests_seconds_bucket{"), "endpoint latency histogram");
+        assertTrue(scrape.contains("directory_service_seconds_count{class=\"io.zipcoder.persistenceapp.services.EmployeeService\""), "service timer");
+        assertTrue(scrape.contains("directory_sql_statements_count{method=\"GET\",uri=\"/API/employees/manager/{managerId}/all\",} 1.0"), "SQL statements per request");
+        assertTrue(scrape.contains("directory_hierarchy_nodes_sum{source=\"graph\",traversal=\"subtree\",} 3.0"), "traversal node count");
+        assertTrue(scrape.contains("directory_hierarchy_depth_max{source=\"graph\",traversal=\"subtree\",} 1.0"), "traversal depth");
+        assertTrue(scrape.contains("hikaricp_connections_pending{"), "connection pool saturation");
+        assertTrue(scrape.contains("cache_gets_total{cache=\"employees\""), "lookup cache");
+    }
+}
@@ -0,0 +1,130 @@
+package io.zipcoder.persistenceapp.replication;
+
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.services.DepartmentService;
+import io.zipcoder.persistenceapp.services.EmployeeService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Two H2 databases stand in for the replicas. They are not fed from the primary: each holds one employee of
+// its own, so a result shows which node answered.
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "app.datasource.replica-urls=" + ReplicaRoutingTests.REPLICA_A + "," + ReplicaRoutingTests.REPLICA_B,
+    "app.datasource.replica-lag-query=SELECT lag_seconds FROM replica_lag",
+    "app.datasource.replica-max-lag=5s",
+    "app.datasource.replica-check-interval=1h"
+})
+class ReplicaRoutingTests {
+    
+    static final String REPLICA_A = "jdbc:h2:mem:routing-replica-a;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_B = "jdbc:h2:mem:routing-replica-b;DB_CLOSE_DELAY=-1";
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private ReplicaRoutingDataSource routing;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @BeforeAll
+    static void createReplicas() {
+        createReplica(REPLICA_A, 1001, "Replica A");
+        createReplica(REPLICA_B, 2001, "Replica B");
+    }
+    
+    private static void createReplica(String url, long employeeNumber, String lastName) {
+        Flyway.configure().dataSource(url, "sa", "").locations("classpath:db/migration/h2").load().migrate();
+        JdbcTemplate replica = replica(url);
+        replica.update("INSERT INTO employees (emp_number, first_name, last_name, title, email) VALUES (?, 'On', ?, 'Copy', 'copy@example.com')",
+            employeeNumber, lastName);
+        replica.execute("CREATE TABLE replica_lag (lag_seconds DOUBLE)");
+        replica.update("INSERT INTO replica_lag VALUES (0)");
+    }
+    
+    private static JdbcTemplate replica(String url) {
+        return new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+    }
+    
+    @AfterEach
+    void catchUp() {
+        setLag(REPLICA_A, 0);
+        setLag(REPLICA_B, 0);
+    }
+    
+    @Test
+    void readsTakeTurnsOnTheReplicas() {
+        Set<String> answeredBy = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            answeredBy.add(lastNames(employeeService.getAllEmployees()));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("Replica A", "Replica B")), answeredBy);
+        assertEquals(Collections.emptyList(), departmentService.getAllDepartments());
+    }
+    
+    @Test
+    void writesAndCachedLookupsStayOnThePrimary() {
+        Employee created = employeeService.createEmployee(new Employee("Pri", "Mary", "Writer", "primary@example.com"));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM employees WHERE emp_number = ?", Integer.class,
+            created.getEmployeeNumber()));
+        assertEquals(0, replica(REPLICA_A).queryForObject("SELECT COUNT(*) FROM employees WHERE last_name = 'Mary'", Integer.class));
+        assertEquals(0, replica(REPLICA_B).queryForObject("SELECT COUNT(*) FROM employees WHERE last_name = 'Mary'", Integer.class));
+        assertEquals("Mary", employeeService.getEmployeeById(created.getEmployeeNumber()).get().getLastName());
+    }
+    
+    @Test
+    void laggingReplicasAreSkipped() {
+        setLag(REPLICA_A, 60);
+        routing.checkReplicas();
+        assertEquals(Collections.singletonList("replica-2"), routing.replicasInUse());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Replica B", lastNames(employeeService.getAllEmployees()));
+        }
+        
+        // Both behind: reads fall back to the primary, which has neither replica's employee
+        setLag(REPLICA_B, 60);
+        routing.checkReplicas();
+        assertTrue(routing.replicasInUse().isEmpty());
+        String onPrimary = lastNames(employeeService.getAllEmployees());
+        assertTrue(!onPrimary.contains("Replica"), onPrimary);
+        
+        // Caught up again
+        setLag(REPLICA_A, 0);
+        setLag(REPLICA_B, 0);
+        routing.checkReplicas();
+        assertEquals(Arrays.asList("replica-1", "replica-2"), routing.replicasInUse());
+    }
+    
+    private static void setLag(String url, double seconds) {
+        replica(url).update("UPDATE replica_lag SET lag_seconds = ?", seconds);
+    }
+    
+    private static String lastNames(List<Employee> employees) {
+        return employees.stream().map(Employee::getLastName).sorted().collect(Collectors.joining(","));
+    }
+}
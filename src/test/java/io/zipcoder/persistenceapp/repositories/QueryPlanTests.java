@@ -0,0 +1,89 @@
+package io.zipcoder.persistenceapp.repositories;
+
+import io.zipcoder.persistenceapp.schema.RequiredIndexes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The SQL the repository queries come down to, run through EXPLAIN on the migrated schema: each one has
+// to be answered from its index rather than a table scan
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:query-plans;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+class QueryPlanTests {
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private RequiredIndexes requiredIndexes;
+    
+    @BeforeEach
+    void populate() {
+        if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM employees", Long.class) > 0) {
+            return;
+        }
+        jdbcTemplate.update("INSERT INTO departments (dept_num, dept_name) VALUES (1, 'Plans')");
+        for (long id = 1; id <= 200; id++) {
+            Long manager = id == 1 ? null : id / 2;
+            jdbcTemplate.update("INSERT INTO employees (emp_number, first_name, last_name, title, email, manager_id, dept_num, org_path, org_depth)"
+                + " VALUES (?, 'First', 'Last', 'Title', 'plan@example.com', ?, ?, ?, 0)",
+                id, manager, id % 3 == 0 ? 1L : null, "/" + id + "/");
+        }
+        jdbcTemplate.execute("ANALYZE");
+    }
+    
+    @Test
+    void directReportsUseTheManagerIndex() {
+        assertUses("IDX_EMPLOYEES_MANAGER", "SELECT * FROM employees WHERE manager_id = 5");
+        assertUses("IDX_EMPLOYEES_MANAGER", "SELECT emp_number FROM employees WHERE manager_id = 5");
+        assertUses("IDX_EMPLOYEES_MANAGER", "SELECT * FROM employees WHERE manager_id IS NULL");
+    }
+    
+    @Test
+    void departmentPagesUseTheDepartmentIndex() {
+        assertUses("IDX_EMPLOYEES_DEPARTMENT",
+            "SELECT * FROM employees WHERE dept_num = 1 AND emp_number > 30 ORDER BY emp_number FETCH FIRST 20 ROWS ONLY");
+        assertUses("IDX_EMPLOYEES_DEPARTMENT", "SELECT emp_number FROM employees WHERE dept_num = 1");
+    }
+    
+    @Test
+    void subtreesUseThePathIndex() {
+        assertUses("IDX_EMPLOYEES_ORG_PATH", "SELECT * FROM employees WHERE org_path LIKE '/1/2/%' AND org_path <> '/1/2/'");
+        assertUses("IDX_EMPLOYEES_ORG_PATH", "SELECT emp_number FROM employees WHERE org_path IS NULL");
+    }
+    
+    @Test
+    void managedDepartmentsUseTheManagerIndex() {
+        assertUses("IDX_DEPARTMENTS_MANAGER", "SELECT dept_num FROM departments WHERE manager_id IN (4, 5)");
+    }
+    
+    @Test
+    void aMissingIndexIsReported() {
+        assertTrue(requiredIndexes.missing().isEmpty());
+        jdbcTemplate.execute("DROP INDEX idx_employees_org_path");
+        try {
+            assertEquals("idx_employees_org_path on employees (org_path)",
+                requiredIndexes.missing().stream().map(Object::toString).collect(Collectors.joining("; ")));
+        } finally {
+            jdbcTemplate.execute("CREATE INDEX idx_employees_org_path ON employees (org_path)");
+        }
+        assertTrue(requiredIndexes.missing().isEmpty());
+    }
+    
+    private void assertUses(String index, String sql) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+        assertTrue(plan.contains(index), "expected " + index + " in plan: " + plan);
+    }
+}
@@ -0,0 +1,201 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PessimisticLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Several threads reshuffle one org chart with random manager changes at once. Cycles must be rejected
+// however the changes interleave, and afterwards the manager links, the hierarchy paths and the counters
+// must still describe the same forest.
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:concurrent-manager;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+class ConcurrentManagerTests {
+    
+    private static final int EMPLOYEES = 60;
+    private static final int THREADS = 8;
+    private static final int CHANGES_PER_THREAD = 100;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Test
+    void concurrentManagerChangesNeverCreateACycle() throws Exception {
+        List<Department> departments = new ArrayList<>();
+        for (int d = 0; d < 3; d++) {
+            departments.add(departmentService.createDepartment(new Department("Concurrent " + d)));
+        }
+        Random setup = new Random(11);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < EMPLOYEES; i++) {
+            Employee employee = new Employee("First", "Last" + i, "Title", "someone@example.com");
+            if (!ids.isEmpty()) {
+                Employee manager = new Employee();
+                manager.setEmployeeNumber(ids.get(setup.nextInt(ids.size())));
+                employee.setManager(manager);
+            }
+            employee.setDepartment(departments.get(i % departments.size()));
+            ids.add(employeeService.createEmployee(employee).getEmployeeNumber());
+        }
+        
+        // The same random changes on one thread first, as the baseline (and warm-up)
+        Reshuffle serial = reshuffle(ids, 1, CHANGES_PER_THREAD, 1);
+        Reshuffle concurrent = reshuffle(ids, THREADS, CHANGES_PER_THREAD, 100);
+        
+        // Queued on row locks rather than failed: nearly every change either commits or is a genuine cycle,
+        // and contention on the shared chains of command does not drag throughput below the serial rate
+        assertTrue(concurrent.conflicts.get() <= concurrent.attempts / 20, concurrent.conflicts + " conflicts");
+        assertTrue(concurrent.committed.get() >= concurrent.attempts / 4, concurrent.committed + " committed");
+        assertTrue(concurrent.perSecond() >= serial.perSecond() / 2, "throughput " + concurrent + " vs " + serial);
+        assertConsistent();
+    }
+    
+    @Test
+    void staleVersionIsAConflict() throws Exception {
+        Employee employee = employeeService.createEmployee(new Employee("Ver", "Sion", "Engineer", "ver@example.com"));
+        EmployeeDto read = employeeService.getEmployeeById(employee.getEmployeeNumber()).get();
+        String update = "{\"firstName\":\"Ver\",\"lastName\":\"Sion\",\"title\":\"%s\",\"email\":\"ver@example.com\",\"version\":%d}";
+        
+        mockMvc.perform(put("/API/employees/{id}", employee.getEmployeeNumber())
+                .contentType(MediaType.APPLICATION_JSON).content(String.format(update, "Lead", read.getVersion())))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.version").value(read.getVersion() + 1));
+        // A second writer still holding the first read loses
+        mockMvc.perform(put("/API/employees/{id}", employee.getEmployeeNumber())
+                .contentType(MediaType.APPLICATION_JSON).content(String.format(update, "Manager", read.getVersion())))
+            .andExpect(status().isConflict());
+        assertEquals("Lead", employeeService.getEmployeeById(employee.getEmployeeNumber()).get().getTitle());
+    }
+    
+    // Random setManager calls from several threads; every call either commits, is rejected as a cycle or
+    // loses a race (409)
+    private Reshuffle reshuffle(List<Long> ids, int threads, int changesPerThread, long seed) throws Exception {
+        Reshuffle run = new Reshuffle(threads * changesPerThread);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed + t);
+            workers.add(pool.submit(() -> {
+                for (int i = 0; i < changesPerThread; i++) {
+                    Long employee = ids.get(random.nextInt(ids.size()));
+                    Long manager = ids.get(random.nextInt(ids.size()));
+                    try {
+                        employeeService.setManager(employee, manager);
+                        run.committed.incrementAndGet();
+                    } catch (ConcurrencyFailureException | OptimisticLockException | PessimisticLockException e) {
+                        run.conflicts.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        assertTrue(e.getMessage().contains("cycle"), e.toString());
+                        run.cycles.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+        run.nanos = System.nanoTime() - start;
+        assertEquals(run.attempts, run.committed.get() + run.cycles.get() + run.conflicts.get());
+        return run;
+    }
+    
+    private static final class Reshuffle {
+        
+        final int attempts;
+        final AtomicInteger committed = new AtomicInteger();
+        final AtomicInteger cycles = new AtomicInteger();
+        final AtomicInteger conflicts = new AtomicInteger();
+        long nanos;
+        
+        Reshuffle(int attempts) {
+            this.attempts = attempts;
+        }
+        
+        double perSecond() {
+            return attempts / (nanos / 1e9);
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%d changes at %.0f/s (%s committed, %s cycles, %s conflicts)",
+                attempts, perSecond(), committed, cycles, conflicts);
+        }
+    }
+    
+    // Every manager chain ends at the top within the org's size, every path spells out that chain, and
+    // the report counters match a recount
+    private void assertConsistent() {
+        Map<Long, Long> managers = new HashMap<>();
+        Map<Long, String> paths = new HashMap<>();
+        for (Map<String, Object> row : jdbcTemplate.queryForList("SELECT emp_number, manager_id, org_path FROM employees")) {
+            Object[] values = row.values().toArray();
+            Long manager = values[1] == null ? null : ((Number) values[1]).longValue();
+            managers.put(((Number) values[0]).longValue(), manager);
+            paths.put(((Number) values[0]).longValue(), (String) values[2]);
+        }
+        for (Long id : managers.keySet()) {
+            StringBuilder expected = new StringBuilder();
+            Long current = id;
+            for (int steps = 0; current != null; steps++) {
+                assertTrue(steps <= managers.size(), "reporting cycle through employee " + id);
+                expected.insert(0, "/" + current);
+                current = managers.get(current);
+            }
+            assertEquals(expected + "/", paths.get(id), "path of employee " + id);
+        }
+        for (Map<String, Object> row : jdbcTemplate.queryForList("SELECT e.emp_number, e.direct_reports,"
+                + " (SELECT COUNT(*) FROM employees r WHERE r.manager_id = e.emp_number), e.total_reports,"
+                + " (SELECT COUNT(*) FROM employees r WHERE r.org_path LIKE CONCAT(e.org_path, '%')) - 1 FROM employees e")) {
+            Object[] values = row.values().toArray();
+            assertEquals(((Number) values[2]).intValue(), ((Number) values[1]).intValue(), "direct reports of " + values[0]);
+            assertEquals(((Number) values[4]).intValue(), ((Number) values[3]).intValue(), "total reports of " + values[0]);
+        }
+        for (Map<String, Object> row : jdbcTemplate.queryForList("SELECT d.headcount,"
+                + " (SELECT COUNT(*) FROM employees e WHERE e.dept_num = d.dept_num) FROM departments d")) {
+            Object[] values = row.values().toArray();
+            assertEquals(((Number) values[1]).intValue(), ((Number) values[0]).intValue(), "headcount");
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Merges departments of growing size. The merge is a fixed number of set-based statements whatever
+// the headcount, so the statement count must not grow with the department. The database still touches
+// every moved row, so the time may grow with the headcount, but no faster than linearly (with slack for
+// noise on a shared machine).
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:merge-scaling;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class DepartmentMergeScalingTests {
+    
+    private static final int[] DEPARTMENT_SIZES = {100, 1_000, 4_000, 16_000};
+    
+    // Allowed slowdown per moved row from the 1,000 to the 16,000 employee merge, and a floor below which
+    // timings are too small to compare
+    private static final int PER_ROW_SLACK = 4;
+    private static final long NOISE_FLOOR_MILLIS = 2_000;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Autowired
+    private HierarchyIndexService hierarchyIndex;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    @Test
+    void mergeRunsFixedStatementsAndAtMostLinearTimeAsDepartmentGrows() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Long baselineStatements = null;
+        long[] elapsedMillis = new long[DEPARTMENT_SIZES.length];
+        
+        for (int run = 0; run < DEPARTMENT_SIZES.length; run++) {
+            int size = DEPARTMENT_SIZES[run];
+            Department absorbing = createDepartmentWithManager("A" + run);
+            Department absorbed = createDepartmentWithManager("B" + run);
+            addEmployees(absorbed, size);
+            
+            statistics.clear();
+            long start = System.nanoTime();
+            departmentService.mergeDepartments(absorbing.getDepartmentName(), absorbed.getDepartmentName());
+            elapsedMillis[run] = (System.nanoTime() - start) / 1_000_000;
+            long statements = statistics.getPrepareStatementCount();
+            
+            assertEquals(size + 2, employeeRepository.findByDepartment_DepartmentNumber(absorbing.getDepartmentNumber()).size());
+            if (baselineStatements == null) {
+                baselineStatements = statements;
+            }
+            assertEquals(baselineStatements, statements);
+        }
+        
+        long linearBound = elapsedMillis[1] * (DEPARTMENT_SIZES[3] / DEPARTMENT_SIZES[1]) * PER_ROW_SLACK;
+        assertTrue(elapsedMillis[3] <= Math.max(linearBound, NOISE_FLOOR_MILLIS),
+            "16,000 employees took " + elapsedMillis[3] + " ms against " + elapsedMillis[1] + " ms for 1,000");
+    }
+    
+    private Department createDepartmentWithManager(String name) {
+        Department department = departmentService.createDepartment(new Department(name));
+        Employee manager = employeeService.createEmployee(new Employee(name, "Manager", "Manager", name + "@example.com"));
+        departmentService.setDepartmentManager(department.getDepartmentNumber(), manager.getEmployeeNumber());
+        return department;
+    }
+    
+    // Seed reports of the department manager straight through JDBC, then index them
+    private void addEmployees(Department department, int count) {
+        Long managerId = jdbcTemplate.queryForObject(
+            "SELECT manager_id FROM departments WHERE dept_num = ?", Long.class, department.getDepartmentNumber());
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = department.getDepartmentName() + "-" + i;
+            rows.add(new Object[] {name, "Employee", "Engineer", name + "@example.com", managerId, department.getDepartmentNumber()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO employees (emp_number, first_name, last_name, title, email, manager_id, dept_num)"
+            + " VALUES (NEXT VALUE FOR employees_seq, ?, ?, ?, ?, ?, ?)", rows);
+        hierarchyIndex.rebuild();
+    }
+}
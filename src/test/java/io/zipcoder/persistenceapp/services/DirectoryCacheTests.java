@@ -0,0 +1,94 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.cache.DirectoryCache;
+import io.zipcoder.persistenceapp.models.CacheStatistics;
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:directory-cache;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+class DirectoryCacheTests {
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private DirectoryCache directoryCache;
+    
+    @Test
+    void repeatedLookupIsServedFromTheCache() {
+        Employee employee = employeeService.createEmployee(new Employee("Cache", "Hit", "Engineer", "hit@example.com"));
+        CacheStatistics before = statistics("employees");
+        
+        employeeService.getEmployeeById(employee.getEmployeeNumber());
+        employeeService.getEmployeeById(employee.getEmployeeNumber());
+        
+        CacheStatistics after = statistics("employees");
+        assertEquals(before.getMissCount() + 1, after.getMissCount());
+        assertEquals(before.getHitCount() + 1, after.getHitCount());
+    }
+    
+    @Test
+    void renamingAManagerRefreshesTheirReports() {
+        Employee manager = employeeService.createEmployee(new Employee("Old", "Name", "Director", "boss@example.com"));
+        Employee report = employeeService.createEmployee(new Employee("Re", "Port", "Engineer", "report@example.com"));
+        employeeService.setManager(report.getEmployeeNumber(), manager.getEmployeeNumber());
+        assertEquals("Old", employeeService.getEmployeeById(report.getEmployeeNumber()).get().getManager().getFirstName());
+        
+        Employee renamed = new Employee("New", "Name", "Director", "boss@example.com");
+        employeeService.updateEmployee(manager.getEmployeeNumber(), renamed);
+        
+        assertEquals("New", employeeService.getEmployeeById(manager.getEmployeeNumber()).get().getFirstName());
+        assertEquals("New", employeeService.getEmployeeById(report.getEmployeeNumber()).get().getManager().getFirstName());
+    }
+    
+    @Test
+    void renamingADepartmentRefreshesItsMembersAndNameLookup() {
+        Department department = departmentService.createDepartment(new Department("Cache Old"));
+        Employee member = employeeService.createEmployee(new Employee("Mem", "Ber", "Analyst", "member@example.com"));
+        departmentService.setDepartmentManager(department.getDepartmentNumber(), member.getEmployeeNumber());
+        EmployeeDto cached = employeeService.getEmployeeById(member.getEmployeeNumber()).get();
+        assertEquals("Cache Old", cached.getDepartment().getDepartmentName());
+        assertTrue(departmentService.getDepartmentByName("Cache Old").isPresent());
+        
+        departmentService.changeDepartmentName(department.getDepartmentNumber(), "Cache New");
+        
+        assertEquals("Cache New", employeeService.getEmployeeById(member.getEmployeeNumber()).get().getDepartment().getDepartmentName());
+        assertFalse(departmentService.getDepartmentByName("Cache Old").isPresent());
+        assertEquals(department.getDepartmentNumber(), departmentService.getDepartmentByName("Cache New").get().getDepartmentNumber());
+    }
+    
+    @Test
+    void deletedEmployeesDropOutOfTheCache() {
+        Employee manager = employeeService.createEmployee(new Employee("Gone", "Boss", "Director", "gone@example.com"));
+        Employee report = employeeService.createEmployee(new Employee("Gone", "Report", "Engineer", "gone-report@example.com"));
+        employeeService.setManager(report.getEmployeeNumber(), manager.getEmployeeNumber());
+        assertTrue(employeeService.getEmployeeById(report.getEmployeeNumber()).isPresent());
+        
+        employeeService.removeAllUnderManager(manager.getEmployeeNumber());
+        
+        assertFalse(employeeService.getEmployeeById(report.getEmployeeNumber()).isPresent());
+        assertTrue(employeeService.getEmployeeById(manager.getEmployeeNumber()).isPresent());
+    }
+    
+    private CacheStatistics statistics(String name) {
+        return directoryCache.statistics().stream().filter(s -> s.getName().equals(name)).findFirst()
+            .orElseThrow(AssertionError::new);
+    }
+}
@@ -0,0 +1,236 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeImportRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Drives random org changes through the services and after each one compares every precomputed
+// counter with a count from scratch over the manager links and hierarchy paths
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:org-statistics;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+@AutoConfigureMockMvc
+class OrgStatisticsTests {
+    
+    private static final String RECOUNT_EMPLOYEES = "SELECT e.emp_number,"
+        + " e.direct_reports, (SELECT COUNT(*) FROM employees r WHERE r.manager_id = e.emp_number),"
+        + " e.total_reports, (SELECT COUNT(*) FROM employees r WHERE r.org_path LIKE CONCAT(e.org_path, '%')) - 1,"
+        + " e.levels_below, (SELECT MAX(r.org_depth) FROM employees r WHERE r.org_path LIKE CONCAT(e.org_path, '%')) - e.org_depth"
+        + " FROM employees e";
+    
+    private static final String RECOUNT_DEPARTMENTS = "SELECT d.dept_num, d.headcount,"
+        + " (SELECT COUNT(*) FROM employees e WHERE e.dept_num = d.dept_num) FROM departments d";
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private EmployeeImportService employeeImportService;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Test
+    void countersMatchARecountAfterEveryChange() {
+        Random random = new Random(7);
+        List<Department> departments = new ArrayList<>();
+        for (int d = 0; d < 4; d++) {
+            departments.add(departmentService.createDepartment(new Department("Stats " + d)));
+        }
+        for (int i = 0; i < 40; i++) {
+            createEmployee(random, departments);
+        }
+        assertCountersMatch("setup");
+        
+        for (int step = 0; step < 150; step++) {
+            List<Long> ids = jdbcTemplate.queryForList("SELECT emp_number FROM employees ORDER BY emp_number", Long.class);
+            List<Long> deptNums = jdbcTemplate.queryForList("SELECT dept_num FROM departments ORDER BY dept_num", Long.class);
+            if (ids.size() < 10) {
+                for (int i = 0; i < 20; i++) {
+                    createEmployee(random, departments);
+                }
+                continue;
+            }
+            Long someone = ids.get(random.nextInt(ids.size()));
+            Long other = ids.get(random.nextInt(ids.size()));
+            Long deptNum = deptNums.isEmpty() ? null : deptNums.get(random.nextInt(deptNums.size()));
+            String operation = "";
+            try {
+                switch (random.nextInt(11)) {
+                    case 0:
+                    case 1:
+                        operation = "create";
+                        createEmployee(random, departments);
+                        break;
+                    case 2:
+                    case 3:
+                        operation = "setManager " + someone + " -> " + other;
+                        employeeService.setManager(someone, other);
+                        break;
+                    case 4:
+                        operation = "removeDirectReportsOnly " + someone;
+                        employeeService.removeDirectReportsOnly(someone);
+                        break;
+                    case 5:
+                        operation = "removeAllUnderManager " + someone;
+                        employeeService.removeAllUnderManager(someone);
+                        break;
+                    case 6:
+                        operation = "deleteEmployee " + someone;
+                        employeeService.deleteEmployee(someone);
+                        break;
+                    case 7:
+                        operation = "deleteEmployees " + someone + ", " + other;
+                        employeeService.deleteEmployees(Arrays.asList(someone, other));
+                        break;
+                    case 8:
+                        operation = "setDepartmentManager " + deptNum + " " + someone;
+                        departmentService.setDepartmentManager(deptNum, someone);
+                        break;
+                    case 9:
+                        operation = "importEmployees";
+                        importEmployees(step);
+                        break;
+                    default:
+                        operation = "mergeDepartments";
+                        Department absorbed = departmentService.createDepartment(new Department("Merged " + step));
+                        departments.add(absorbed);
+                        departmentService.setDepartmentManager(absorbed.getDepartmentNumber(), other);
+                        departmentService.mergeDepartments(departmentService.getDepartmentById(deptNum).get().getDepartmentName(),
+                            absorbed.getDepartmentName());
+                        departments.remove(absorbed);
+                }
+            } catch (RuntimeException rejected) {
+                // Cycles, missing employees and the like roll back and must leave the counters as they were
+            }
+            assertCountersMatch("step " + step + ": " + operation);
+        }
+        
+        // Department managers block deleting their employees, so free them first
+        jdbcTemplate.update("UPDATE departments SET manager_id = NULL");
+        departmentService.removeAllEmployeesFromDepartment(departments.get(0).getDepartmentNumber());
+        assertCountersMatch("removeAllEmployeesFromDepartment");
+        employeeService.removeAllFromDepartment(departments.get(1).getDepartmentNumber());
+        assertCountersMatch("removeAllFromDepartment");
+        departmentService.deleteDepartment(departments.get(2).getDepartmentNumber());
+        assertCountersMatch("deleteDepartment");
+    }
+    
+    @Test
+    void statsEndpoints() throws Exception {
+        Department department = departmentService.createDepartment(new Department("Endpoint Stats"));
+        Employee top = employeeService.createEmployee(new Employee("Tess", "Top", "Director", "tess@example.com"));
+        departmentService.setDepartmentManager(department.getDepartmentNumber(), top.getEmployeeNumber());
+        Employee middle = employeeService.createEmployee(member(new Employee("Mo", "Middle", "Lead", "mo@example.com"), top, department));
+        employeeService.createEmployee(member(new Employee("Lu", "Low", "Engineer", "lu@example.com"), middle, department));
+        employeeService.createEmployee(member(new Employee("Li", "Low", "Engineer", "li@example.com"), middle, department));
+        
+        mockMvc.perform(get("/API/employees/{id}/stats", top.getEmployeeNumber()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.directReports").value(1))
+            .andExpect(jsonPath("$.totalReports").value(3))
+            .andExpect(jsonPath("$.levelsBelow").value(2))
+            .andExpect(jsonPath("$.orgDepth").value(0));
+        mockMvc.perform(get("/API/departments/{id}/stats", department.getDepartmentNumber()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.headcount").value(4))
+            .andExpect(jsonPath("$.managerEmployeeNumber").value(top.getEmployeeNumber()))
+            .andExpect(jsonPath("$.managerTotalReports").value(3));
+        mockMvc.perform(get("/API/employees/{id}/span", middle.getEmployeeNumber()))
+            .andExpect(jsonPath("$").value(2));
+        mockMvc.perform(get("/API/employees/{id}/stats", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+    
+    @Test
+    void unindexedEmployeeIsNotDeleted() {
+        Employee employee = employeeService.createEmployee(new Employee("Not", "Indexed", "Engineer", "unindexed@example.com"));
+        Long id = employee.getEmployeeNumber();
+        jdbcTemplate.update("UPDATE employees SET org_path = NULL WHERE emp_number = ?", id);
+        try {
+            assertThrows(IllegalStateException.class, () -> employeeService.deleteEmployee(id));
+            assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM employees WHERE emp_number = ?", Integer.class, id));
+        } finally {
+            jdbcTemplate.update("UPDATE employees SET org_path = ? WHERE emp_number = ?", "/" + id + "/", id);
+        }
+    }
+    
+    private void createEmployee(Random random, List<Department> departments) {
+        Employee employee = new Employee("First", "Last", "Title", "someone@example.com");
+        List<Long> ids = jdbcTemplate.queryForList("SELECT emp_number FROM employees", Long.class);
+        if (!ids.isEmpty() && random.nextInt(5) > 0) {
+            Employee manager = new Employee();
+            manager.setEmployeeNumber(ids.get(random.nextInt(ids.size())));
+            employee.setManager(manager);
+        }
+        if (random.nextBoolean()) {
+            employee.setDepartment(departments.get(random.nextInt(departments.size())));
+        }
+        employeeService.createEmployee(employee);
+    }
+    
+    // A small imported tree, one manager row listed after its reports
+    private void importEmployees(int step) {
+        List<EmployeeImportRecord> records = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            EmployeeImportRecord record = new EmployeeImportRecord();
+            record.setSourceId(step + "-" + i);
+            record.setFirstName("Imported");
+            record.setLastName("Row" + i);
+            record.setTitle("Title");
+            record.setEmail("imported@example.com");
+            record.setManagerSourceId(i == 5 ? null : step + "-" + (i < 2 ? 5 : i / 2));
+            record.setDepartmentName(i % 2 == 0 ? "Stats 0" : "Imported " + step);
+            records.add(record);
+        }
+        employeeImportService.importEmployees(records.iterator());
+    }
+    
+    private static Employee member(Employee employee, Employee manager, Department department) {
+        employee.setManager(manager);
+        employee.setDepartment(department);
+        return employee;
+    }
+    
+    private void assertCountersMatch(String after) {
+        for (Map<String, Object> row : jdbcTemplate.queryForList(RECOUNT_EMPLOYEES)) {
+            Object[] values = row.values().toArray();
+            String employee = after + ", employee " + values[0];
+            assertEquals(((Number) values[2]).intValue(), ((Number) values[1]).intValue(), employee + " direct reports");
+            assertEquals(((Number) values[4]).intValue(), ((Number) values[3]).intValue(), employee + " total reports");
+            assertEquals(((Number) values[6]).intValue(), ((Number) values[5]).intValue(), employee + " levels below");
+        }
+        for (Map<String, Object> row : jdbcTemplate.queryForList(RECOUNT_DEPARTMENTS)) {
+            Object[] values = row.values().toArray();
+            assertEquals(((Number) values[2]).intValue(), ((Number) values[1]).intValue(), after + ", department " + values[0]);
+        }
+    }
+}
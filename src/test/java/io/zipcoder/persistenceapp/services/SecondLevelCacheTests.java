@@ -0,0 +1,179 @@
+package io.zipcoder.persistenceapp.services;
+
+import io.zipcoder.persistenceapp.cache.SecondLevelCache;
+import io.zipcoder.persistenceapp.models.CacheRegionStatistics;
+import io.zipcoder.persistenceapp.models.Department;
+import io.zipcoder.persistenceapp.models.Employee;
+import io.zipcoder.persistenceapp.models.EmployeeImportRecord;
+import io.zipcoder.persistenceapp.repositories.DepartmentRepository;
+import io.zipcoder.persistenceapp.repositories.EmployeeRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:second-level-cache;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false"
+})
+class SecondLevelCacheTests {
+    
+    @Autowired
+    private EmployeeService employeeService;
+    
+    @Autowired
+    private DepartmentService departmentService;
+    
+    @Autowired
+    private EmployeeImportService employeeImportService;
+    
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    
+    @Autowired
+    private DepartmentRepository departmentRepository;
+    
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+    
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Test
+    void departmentByNameIsAnsweredWithoutSql() {
+        Department department = departmentService.createDepartment(new Department("Cached Name"));
+        Employee manager = employeeService.createEmployee(new Employee("Name", "Keeper", "Director", "keeper@example.com"));
+        departmentService.setDepartmentManager(department.getDepartmentNumber(), manager.getEmployeeNumber());
+        
+        inTransaction(() -> departmentRepository.findByDepartmentName("Cached Name"));
+        inTransaction(() -> departmentRepository.existsByDepartmentName("Cached Name"));
+        long queryHits = statistics().getQueryCacheHitCount();
+        
+        assertEquals(0, statementsFor(() -> {
+            Department found = departmentRepository.findByDepartmentName("Cached Name").get();
+            assertEquals("Keeper", found.getManager().getLastName());
+            assertTrue(departmentRepository.existsByDepartmentName("Cached Name"));
+            return found;
+        }));
+        assertEquals(queryHits + 2, statistics().getQueryCacheHitCount());
+        
+        departmentService.changeDepartmentName(department.getDepartmentNumber(), "Cached Rename");
+        assertFalse(inTransaction(() -> departmentRepository.findByDepartmentName("Cached Name")).isPresent());
+        assertTrue(inTransaction(() -> departmentRepository.existsByDepartmentName("Cached Rename")));
+    }
+    
+    @Test
+    void topOfTheOrgIsCachedUntilEmployeesChange() {
+        employeeService.createEmployee(new Employee("Top", "One", "Chief", "top-one@example.com"));
+        inTransaction(() -> employeeRepository.findByManagerIsNull());
+        assertEquals(0, statementsFor(() -> lastNames(employeeRepository.findByManagerIsNull())));
+        
+        Employee added = employeeService.createEmployee(new Employee("Top", "Two", "Chief", "top-two@example.com"));
+        assertTrue(inTransaction(() -> lastNames(employeeRepository.findByManagerIsNull())).contains("Two"));
+        
+        employeeService.setManager(added.getEmployeeNumber(), employeeRepository.findByManagerIsNull().get(0).getEmployeeNumber());
+        assertFalse(inTransaction(() -> lastNames(employeeRepository.findByManagerIsNull())).contains("Two"));
+    }
+    
+    @Test
+    void employeesByIdComeFromTheCache() {
+        Employee employee = employeeService.createEmployee(new Employee("By", "Id", "Engineer", "by-id@example.com"));
+        inTransaction(() -> employeeRepository.findById(employee.getEmployeeNumber()));
+        
+        assertEquals(0, statementsFor(() -> employeeRepository.findById(employee.getEmployeeNumber()).get().getLastName()));
+        assertTrue(region("employee-entities").getHitCount() > 0);
+    }
+    
+    @Test
+    void bulkDepartmentChangesRefreshCachedMemberLists() {
+        Department survivor = departmentService.createDepartment(new Department("Merge Survivor"));
+        Department absorbed = departmentService.createDepartment(new Department("Merge Absorbed"));
+        Employee kept = member("Kept", survivor);
+        Employee moved = member("Moved", absorbed);
+        assertEquals(Collections.singleton("Kept"), members(survivor));
+        assertEquals(Collections.singleton("Moved"), members(absorbed));
+        
+        departmentService.mergeDepartments("Merge Survivor", "Merge Absorbed");
+        assertEquals(Set.of("Kept", "Moved"), members(survivor));
+        assertFalse(inTransaction(() -> departmentRepository.findByDepartmentName("Merge Absorbed")).isPresent());
+        
+        departmentService.removeAllEmployeesFromDepartment(survivor.getDepartmentNumber());
+        assertEquals(Collections.emptySet(), members(survivor));
+        assertFalse(inTransaction(() -> employeeRepository.findById(kept.getEmployeeNumber())).isPresent());
+        assertFalse(inTransaction(() -> employeeRepository.findById(moved.getEmployeeNumber())).isPresent());
+    }
+    
+    @Test
+    void importedEmployeesShowUpInCachedListsAndQueries() {
+        Department department = departmentService.createDepartment(new Department("Import Target"));
+        Employee manager = member("Existing", department);
+        assertEquals(Collections.singleton("Existing"), members(department));
+        inTransaction(() -> employeeRepository.findByManagerIsNull());
+        
+        EmployeeImportRecord record = new EmployeeImportRecord();
+        record.setFirstName("Imported");
+        record.setLastName("Newcomer");
+        record.setTitle("Analyst");
+        record.setEmail("newcomer@example.com");
+        record.setDepartmentName("Import Target");
+        employeeImportService.importEmployees(Collections.singletonList(record).iterator());
+        
+        assertEquals(Set.of("Existing", "Newcomer"), members(department));
+        assertTrue(inTransaction(() -> lastNames(employeeRepository.findByManagerIsNull())).contains("Newcomer"));
+        assertTrue(inTransaction(() -> employeeRepository.findById(manager.getEmployeeNumber())).isPresent());
+    }
+    
+    private Employee member(String lastName, Department department) {
+        Employee employee = new Employee("Member", lastName, "Engineer", lastName.toLowerCase() + "@example.com");
+        employee.setDepartment(department);
+        return employeeService.createEmployee(employee);
+    }
+    
+    // Last names of a department's employees, through the (cached) collection
+    private Set<String> members(Department department) {
+        return inTransaction(() -> departmentRepository.findById(department.getDepartmentNumber()).get().getEmployees()
+            .stream().map(Employee::getLastName).collect(Collectors.toSet()));
+    }
+    
+    private static List<String> lastNames(List<Employee> employees) {
+        return employees.stream().map(Employee::getLastName).collect(Collectors.toList());
+    }
+    
+    private <T> T inTransaction(Supplier<T> work) {
+        return transactionTemplate.execute(status -> work.get());
+    }
+    
+    // SQL statements prepared while running the work in a transaction of its own
+    private long statementsFor(Supplier<?> work) {
+        long before = statistics().getPrepareStatementCount();
+        inTransaction(work);
+        return statistics().getPrepareStatementCount() - before;
+    }
+    
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+    
+    private CacheRegionStatistics region(String name) {
+        return secondLevelCache.statistics().stream().filter(region -> region.getName().equals(name)).findFirst().get();
+    }
+}